@@ -0,0 +1,241 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.FilePath;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import jenkins.model.RunAction2;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+
+/**
+ * Compares the alerts of a scan with the alerts of the same scan in the last build which passed : 
+ * the alerts are new, fixed or persisting. With the gate on new alerts, the scan fails only if it 
+ * raised alerts which weren't raised by this baseline. A scan stopped by its window before its end is partial : 
+ * its alerts aren't compared, the build is unstable and it's never the baseline of the next builds.
+ * 
+ */
+public class ZAPalertDiffAction implements RunAction2 {
+	
+	private static final String FILE_EXTENSION = ".bin";
+	
+	/** Number of previous builds searched for the baseline */
+	private static final int MAX_BASELINE_DEPTH = 100;
+	
+	/** Name of the fingerprints file in the build directory */
+	private final String filename;
+	
+	/** Number of the build compared with, 0 if there is no baseline */
+	private final int baselineNumber;
+	
+	private final int newCount;
+	
+	private final int fixedCount;
+	
+	private final int persistingCount;
+	
+	/** True if the scan was stopped before its end, its alerts aren't compared */
+	private final boolean partial;
+	
+	private transient Run<?, ?> run;
+	
+	public ZAPalertDiffAction(String filename, int baselineNumber, ZAPalertFingerprints.Diff diff) {
+		this.filename = filename;
+		this.baselineNumber = baselineNumber;
+		this.newCount = diff.getNewCount();
+		this.fixedCount = diff.getFixedCount();
+		this.persistingCount = diff.getPersistingCount();
+		this.partial = false;
+	}
+	
+	private ZAPalertDiffAction(String filename) {
+		this.filename = filename;
+		this.baselineNumber = 0;
+		this.newCount = 0;
+		this.fixedCount = 0;
+		this.persistingCount = 0;
+		this.partial = true;
+	}
+	
+	/**
+	 * Move the fingerprints written in the workspace by the scan to the build directory, compare them with 
+	 * the baseline and add the action to the build. If the scan is partial, the build is unstable and the 
+	 * alerts aren't compared.
+	 * 
+	 * @param run the build
+	 * @param workspace the workspace of the build
+	 * @param plan the scan which wrote the fingerprints
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @return false if the gate on new alerts fails, true otherwise
+	 */
+	public static boolean attach(Run<?, ?> run, FilePath workspace, ZAPscanPlan plan, TaskListener listener) {
+		FilePath fingerprintsFile = workspace.child(plan.getResultFilename(ZAPalertFingerprints.FILENAME));
+		try {
+			if(!fingerprintsFile.exists()) {
+				return true;
+			}
+			// Several steps of a Pipeline can scan, each one is compared with the same step of the baseline
+			int index = run.getActions(ZAPalertDiffAction.class).size();
+			String filename = ZAPalertFingerprints.FILENAME.replace(FILE_EXTENSION, "") + "-" + index + FILE_EXTENSION;
+			File file = new File(run.getRootDir(), filename);
+			fingerprintsFile.copyTo(new FilePath(file));
+			fingerprintsFile.delete();
+			
+			FilePath partialScanFile = workspace.child(plan.getResultFilename(ZAPscanPlan.PARTIAL_SCAN_FILENAME));
+			if(partialScanFile.exists()) {
+				String reason = partialScanFile.readToString().trim();
+				partialScanFile.delete();
+				run.addAction(new ZAPalertDiffAction(filename));
+				listener.getLogger().println(reason);
+				listener.getLogger().println("The scan is partial, the build is unstable and the alerts aren't compared with the baseline "
+						+ "until the scan is finished");
+				run.setResult(Result.UNSTABLE);
+				return true;
+			}
+			
+			long startTime = System.currentTimeMillis();
+			ZAPalertFingerprints fingerprints = ZAPalertFingerprints.read(file);
+			ZAPalertDiffAction baseline = findBaseline(run, index);
+			ZAPalertFingerprints baselineFingerprints = new ZAPalertFingerprints();
+			if(baseline != null) {
+				try {
+					baselineFingerprints = baseline.readFingerprints();
+				} catch (IOException e) {
+					// e.g. the baseline was written by an older version of the plugin
+					listener.getLogger().println("The alerts can't be compared with build #" + baseline.getRun().getNumber() 
+							+ " : " + e.getMessage());
+					baseline = null;
+				}
+			}
+			ZAPalertFingerprints.Diff diff = fingerprints.diff(baselineFingerprints);
+			ZAPalertDiffAction action = new ZAPalertDiffAction(filename, baseline == null ? 0 : baseline.getRun().getNumber(), diff);
+			run.addAction(action);
+			
+			if(baseline == null) {
+				listener.getLogger().println("No baseline, the " + fingerprints.size() + " alerts are the baseline of the next builds");
+				return true;
+			}
+			listener.getLogger().println("Alerts compared with build #" + action.getBaselineNumber() + " : " 
+					+ diff.getNewCount() + " new, " + diff.getFixedCount() + " fixed, " + diff.getPersistingCount() 
+					+ " persisting (" + (System.currentTimeMillis() - startTime) + " ms)");
+			if(plan.getFailOnNewAlerts() && diff.getNewCount() > 0) {
+				listener.error(diff.getNewCount() + " new alerts since build #" + action.getBaselineNumber());
+				return false;
+			}
+		} catch (IOException e) {
+			listener.error(ExceptionUtils.getStackTrace(e));
+		} catch (InterruptedException e) {
+			listener.error(ExceptionUtils.getStackTrace(e));
+		}
+		return true;
+	}
+	
+	/**
+	 * Find the baseline of a scan : the same scan in the last completed build which didn't fail, so the 
+	 * new alerts of a failed build are still new in the next build. A partial scan misses alerts, it's skipped.
+	 * 
+	 * @param run the build
+	 * @param index the index of the scan in the build
+	 * @return the action of the baseline, null if there is none
+	 */
+	private static ZAPalertDiffAction findBaseline(Run<?, ?> run, int index) {
+		Run<?, ?> previous = run.getPreviousBuild();
+		for(int depth = 0; previous != null && depth < MAX_BASELINE_DEPTH; depth++) {
+			Result result = previous.getResult();
+			if(!previous.isBuilding() && result != null && result.isBetterOrEqualTo(Result.UNSTABLE)) {
+				List<ZAPalertDiffAction> actions = previous.getActions(ZAPalertDiffAction.class);
+				if(actions.size() > index && !actions.get(index).isPartial()) {
+					return actions.get(index);
+				}
+			}
+			previous = previous.getPreviousBuild();
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the fingerprints of the alerts of this scan
+	 * @throws IOException
+	 */
+	public ZAPalertFingerprints readFingerprints() throws IOException {
+		return ZAPalertFingerprints.read(new File(run.getRootDir(), filename));
+	}
+	
+	public int getBaselineNumber() {
+		return baselineNumber;
+	}
+	
+	public int getNewCount() {
+		return newCount;
+	}
+	
+	public int getFixedCount() {
+		return fixedCount;
+	}
+	
+	public int getPersistingCount() {
+		return persistingCount;
+	}
+	
+	public boolean isPartial() {
+		return partial;
+	}
+	
+	public Run<?, ?> getRun() {
+		return run;
+	}
+	
+	@Override
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+	
+	@Override
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+	
+	@Override
+	public String getIconFileName() {
+		return "search.gif";
+	}
+	
+	@Override
+	public String getDisplayName() {
+		return "ZAProxy New Alerts";
+	}
+	
+	@Override
+	public String getUrlName() {
+		return filename.replace(FILE_EXTENSION, "");
+	}
+}
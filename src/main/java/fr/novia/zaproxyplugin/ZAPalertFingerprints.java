@@ -0,0 +1,300 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fingerprints of the alerts of a scan, to compare the alerts of a build with the alerts of a previous build.
+ * <p>
+ * The fingerprint of an alert is a 64 bits hash of its rule, its normalized URL and its parameter, so 
+ * the same issue found again has the same fingerprint even if the values of the query changed. 
+ * The fingerprints are stored sorted, as deltas encoded on a variable number of bytes : the fingerprints 
+ * of 100 000 alerts take less than 1 MB and two builds are compared with a single merge of their fingerprints.
+ * 
+ */
+public class ZAPalertFingerprints {
+	
+	/** Name of the fingerprints file written in the workspace by the scan */
+	static final String FILENAME = "zaproxy-fingerprints.bin";
+	
+	/** "ZAPF" */
+	private static final int MAGIC = 0x5A415046;
+	
+	/** Version 2 : the URLs are normalized by {@link ZAPurlSampler#toTemplate(String)} */
+	private static final int VERSION = 2;
+	
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	
+	private static final long FNV_PRIME = 0x100000001b3L;
+	
+	/** Sorted fingerprints, without duplicates once {@link #sort()} is called */
+	private long[] fingerprints;
+	
+	private int size;
+	
+	private boolean sorted;
+	
+	public ZAPalertFingerprints() {
+		this.fingerprints = new long[1024];
+		this.sorted = true;
+	}
+	
+	private ZAPalertFingerprints(long[] fingerprints) {
+		this.fingerprints = fingerprints;
+		this.size = fingerprints.length;
+		this.sorted = true;
+	}
+	
+	/**
+	 * Add the fingerprint of an alert.
+	 * 
+	 * @param pluginId the id of the rule which raised the alert
+	 * @param url the URL of the alert
+	 * @param param the parameter of the alert, can be empty
+	 */
+	public void addAlert(String pluginId, String url, String param) {
+		if(size == fingerprints.length) {
+			fingerprints = Arrays.copyOf(fingerprints, size * 2);
+		}
+		fingerprints[size++] = fingerprint(pluginId, url, param);
+		sorted = false;
+	}
+	
+	/**
+	 * Add the fingerprints of another scan, e.g. of a shard of a distributed scan.
+	 * 
+	 * @param other the fingerprints to add
+	 */
+	public void addAll(ZAPalertFingerprints other) {
+		if(size + other.size > fingerprints.length) {
+			fingerprints = Arrays.copyOf(fingerprints, Math.max(size * 2, size + other.size));
+		}
+		System.arraycopy(other.fingerprints, 0, fingerprints, size, other.size);
+		size += other.size;
+		sorted = false;
+	}
+	
+	/**
+	 * @return the number of distinct fingerprints
+	 */
+	public int size() {
+		sort();
+		return size;
+	}
+	
+	/**
+	 * Sort the fingerprints and remove the duplicates : the same issue can be raised several times on a URL.
+	 */
+	private void sort() {
+		if(sorted) {
+			return;
+		}
+		Arrays.sort(fingerprints, 0, size);
+		int distinct = 0;
+		for(int i = 0; i < size; i++) {
+			if(distinct == 0 || fingerprints[i] != fingerprints[distinct - 1]) {
+				fingerprints[distinct++] = fingerprints[i];
+			}
+		}
+		size = distinct;
+		sorted = true;
+	}
+	
+	/**
+	 * Compare these fingerprints, of the current build, with the fingerprints of a previous build.
+	 * 
+	 * @param baseline the fingerprints of the previous build
+	 * @return the numbers of new, fixed and persisting alerts
+	 */
+	public Diff diff(ZAPalertFingerprints baseline) {
+		sort();
+		baseline.sort();
+		Diff diff = new Diff();
+		int i = 0;
+		int j = 0;
+		while(i < size && j < baseline.size) {
+			long current = fingerprints[i];
+			long previous = baseline.fingerprints[j];
+			if(current == previous) {
+				diff.persistingCount++;
+				i++;
+				j++;
+			} else if(current < previous) {
+				diff.newCount++;
+				i++;
+			} else {
+				diff.fixedCount++;
+				j++;
+			}
+		}
+		diff.newCount += size - i;
+		diff.fixedCount += baseline.size - j;
+		return diff;
+	}
+	
+	/**
+	 * Write the fingerprints to a file.
+	 * 
+	 * @param file the fingerprints file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		sort();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(size);
+			long previous = Long.MIN_VALUE;
+			for(int i = 0; i < size; i++) {
+				// The fingerprints are sorted, the delta is positive once read as an unsigned number
+				writeVarLong(out, fingerprints[i] - previous);
+				previous = fingerprints[i];
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Read a fingerprints file written by {@link #write(File)}.
+	 * 
+	 * @param file the fingerprints file
+	 * @return the fingerprints
+	 * @throws IOException if the file can't be read or isn't a fingerprints file
+	 */
+	public static ZAPalertFingerprints read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("[" + file + "] isn't a ZAProxy fingerprints file");
+			}
+			int version = in.readInt();
+			if(version != VERSION) {
+				// The fingerprints of another version don't hash the same URLs
+				throw new IOException("[" + file + "] is a fingerprints file of version " + version + ", not " + VERSION);
+			}
+			long[] fingerprints = new long[in.readInt()];
+			long previous = Long.MIN_VALUE;
+			for(int i = 0; i < fingerprints.length; i++) {
+				previous += readVarLong(in);
+				fingerprints[i] = previous;
+			}
+			return new ZAPalertFingerprints(fingerprints);
+		} finally {
+			in.close();
+		}
+	}
+	
+	static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+	
+	static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while((b & 0x80) != 0);
+		return value;
+	}
+	
+	/**
+	 * @return the FNV-1a hash of the rule, the normalized URL and the parameter of an alert
+	 */
+	static long fingerprint(String pluginId, String url, String param) {
+		long hash = FNV_OFFSET_BASIS;
+		hash = hash(hash, pluginId);
+		hash = hash(hash, normalizeUrl(url));
+		hash = hash(hash, param);
+		return hash;
+	}
+	
+	private static long hash(long hash, String s) {
+		if(s != null) {
+			for(int i = 0; i < s.length(); i++) {
+				hash ^= s.charAt(i);
+				hash *= FNV_PRIME;
+			}
+		}
+		// Separator, so "a"+"bc" and "ab"+"c" don't have the same hash
+		hash ^= 0xFFFF;
+		hash *= FNV_PRIME;
+		return hash;
+	}
+	
+	/**
+	 * Normalize a URL so the same page has the same URL in every scan, see {@link ZAPurlSampler#toTemplate(String)}.
+	 * 
+	 * @param url the URL of an alert
+	 * @return the normalized URL
+	 */
+	static String normalizeUrl(String url) {
+		return url == null ? "" : ZAPurlSampler.toTemplate(url);
+	}
+	
+	/**
+	 * Numbers of alerts of a build compared to a previous build.
+	 */
+	public static class Diff {
+		
+		/** Alerts of the build not raised by the previous build */
+		private int newCount;
+		
+		/** Alerts of the previous build not raised anymore */
+		private int fixedCount;
+		
+		/** Alerts raised by both builds */
+		private int persistingCount;
+		
+		public int getNewCount() {
+			return newCount;
+		}
+		
+		public int getFixedCount() {
+			return fixedCount;
+		}
+		
+		public int getPersistingCount() {
+			return persistingCount;
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import fr.novia.zaproxyplugin.report.ZAPalertFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Suppressions of false positives, read from a file with one suppression by line :
+ * <pre>
+ * # rule   URL regular expression            parameter (optional)
+ * 10202    https://example\.com/login.*      csrf_token
+ * 40012    https://example\.com/search\?.*
+ * *        https://example\.com/static/.*
+ * </pre>
+ * The rule is the plugin id of the alert, <code>*</code> for all the rules. Without parameter, or with 
+ * <code>*</code>, the alerts of all the parameters are suppressed. The URL regular expression must match 
+ * the whole URL of the alert. Blank lines and lines starting with '#' are ignored.
+ * <p>
+ * The suppressions of a rule are compiled into a single alternation, <code>(?:param)\n(?:URL)|...</code>, matched 
+ * against the parameter and the URL of the alert : an alert costs two matches (its rule and <code>*</code>) 
+ * whatever the number of suppressions. The URL expressions can't have back-references, their groups are 
+ * renumbered by the alternation.
+ * 
+ */
+public class ZAPalertSuppressions implements ZAPalertFilter {
+	
+	private static final String ANY = "*";
+	
+	/** Separates the parameter from the URL in the matched alert, a parameter can't contain it */
+	private static final char SEPARATOR = '\n';
+	
+	/** Matches all the parameters in the alternation */
+	private static final String ANY_PARAM = "[^\\n]*";
+	
+	/** Back-reference by number or by name, outside of a quotation */
+	private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+	
+	/** Alternations of the suppressions, by rule */
+	private final Map<String, Pattern> patterns;
+	
+	private final int size;
+	
+	private ZAPalertSuppressions(Map<String, Pattern> patterns, int size) {
+		this.patterns = patterns;
+		this.size = size;
+	}
+	
+	/**
+	 * Read and compile the suppressions of a file.
+	 * 
+	 * @param file the suppressions file
+	 * @return the suppressions
+	 * @throws IOException if the file can't be read or a line isn't valid
+	 */
+	public static ZAPalertSuppressions read(File file) throws IOException {
+		Map<String, StringBuilder> alternations = new LinkedHashMap<String, StringBuilder>();
+		int size = 0;
+		List<String> lines = FileUtils.readLines(file, "UTF-8");
+		for(int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i).trim();
+			if(line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] fields = line.split("\\s+", 3);
+			if(fields.length < 2) {
+				throw new IOException("[" + file + "] line " + (i + 1) + " : a suppression needs a rule and a URL regular expression");
+			}
+			try {
+				Pattern.compile(fields[1]);
+			} catch (PatternSyntaxException e) {
+				throw new IOException("[" + file + "] line " + (i + 1) + " : " + e.getDescription(), e);
+			}
+			if(hasBackReference(fields[1])) {
+				throw new IOException("[" + file + "] line " + (i + 1) + " : the URL regular expression can't have back-references");
+			}
+			String param = fields.length < 3 ? ANY : fields[2].trim();
+			
+			StringBuilder alternation = alternations.get(fields[0]);
+			if(alternation == null) {
+				alternation = new StringBuilder();
+				alternations.put(fields[0], alternation);
+			} else {
+				alternation.append('|');
+			}
+			alternation.append("(?:").append(ANY.equals(param) ? ANY_PARAM : Pattern.quote(param)).append(")\\n(?:")
+					.append(fields[1]).append(')');
+			size++;
+		}
+		
+		Map<String, Pattern> patterns = new HashMap<String, Pattern>();
+		for(Map.Entry<String, StringBuilder> alternation : alternations.entrySet()) {
+			try {
+				patterns.put(alternation.getKey(), Pattern.compile(alternation.getValue().toString()));
+			} catch (PatternSyntaxException e) {
+				// e.g. the same named group in two expressions
+				throw new IOException("[" + file + "] rule " + alternation.getKey() + " : " + e.getDescription(), e);
+			}
+		}
+		return new ZAPalertSuppressions(patterns, size);
+	}
+	
+	/**
+	 * @param regex a regular expression
+	 * @return true if regex has a back-reference outside of a \Q...\E quotation
+	 */
+	static boolean hasBackReference(String regex) {
+		StringBuilder unquoted = new StringBuilder();
+		int from = 0;
+		int quote;
+		while((quote = indexOfUnescaped(regex, "\\Q", from)) >= 0) {
+			unquoted.append(regex, from, quote);
+			int end = regex.indexOf("\\E", quote + 2);
+			from = end < 0 ? regex.length() : end + 2;
+		}
+		unquoted.append(regex.substring(from));
+		// An escaped backslash isn't the start of a back-reference
+		return BACK_REFERENCE.matcher(unquoted.toString().replace("\\\\", "")).find();
+	}
+	
+	private static int indexOfUnescaped(String regex, String s, int from) {
+		int index = regex.indexOf(s, from);
+		while(index > 0 && isEscaped(regex, index)) {
+			index = regex.indexOf(s, index + 1);
+		}
+		return index;
+	}
+	
+	/**
+	 * @return true if the character at index is preceded by an odd number of backslashes
+	 */
+	private static boolean isEscaped(String regex, int index) {
+		int backslashes = 0;
+		for(int i = index - 1; i >= 0 && regex.charAt(i) == '\\'; i--) {
+			backslashes++;
+		}
+		return backslashes % 2 == 1;
+	}
+	
+	/**
+	 * @param pluginId the id of the rule which raised the alert
+	 * @param url the URL of the alert
+	 * @param param the parameter of the alert, can be empty
+	 * @return true if the alert is suppressed
+	 */
+	@Override
+	public boolean isSuppressed(String pluginId, String url, String param) {
+		if(patterns.isEmpty()) {
+			return false;
+		}
+		String alert = (param == null ? "" : param) + SEPARATOR + (url == null ? "" : url);
+		Pattern rulePattern = patterns.get(pluginId);
+		Pattern anyPattern = patterns.get(ANY);
+		return (rulePattern != null && rulePattern.matcher(alert).matches()) 
+				|| (anyPattern != null && anyPattern.matcher(alert).matches());
+	}
+	
+	/**
+	 * @return the number of suppressions
+	 */
+	public int size() {
+		return size;
+	}
+}
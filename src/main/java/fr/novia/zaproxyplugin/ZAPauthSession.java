@@ -0,0 +1,204 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.zaproxy.clientapi.core.ClientApi;
+import org.zaproxy.clientapi.core.ClientApiException;
+
+/**
+ * Authenticated session of a user, kept on the build's machine so the next builds scan with it instead 
+ * of logging in again, while it's younger than its time to live.
+ * <p>
+ * The session is the Cookie header sent by ZAP for the forced user. A reused session is sent with the 
+ * requests of ZAP to the host of the target by a rule of the Replacer add-on, while the forced user stays 
+ * enabled : once the session expires, the rule is removed and ZAP logs the user in again. Each session has 
+ * its own file, named by a hash of the target and the user, readable by its owner only.
+ * 
+ */
+public class ZAPauthSession {
+	
+	/** Directory of the sessions, relative to the workspace */
+	static final String DEFAULT_DIR = "zap-auth-sessions";
+	
+	/** Description of the Replacer rule, its id in ZAP */
+	private static final String REPLACER_RULE = "zaproxy-plugin authenticated session";
+	
+	private static final String COOKIE_HEADER = "cookie:";
+	
+	private final File sessionFile;
+	
+	/**
+	 * @param sessionsDir the directory of the sessions
+	 * @param targetURL the target of the scan
+	 * @param username the authenticated user
+	 */
+	public ZAPauthSession(File sessionsDir, String targetURL, String username) {
+		this.sessionFile = new File(sessionsDir, sha256(targetURL.trim() + "\n" + username) + ".session");
+	}
+	
+	/**
+	 * @param ttlInMs the time to live of the session
+	 * @return the Cookie header of the session, null if there is no session or if it's too old
+	 * @throws IOException
+	 */
+	public String load(long ttlInMs) throws IOException {
+		if(!sessionFile.isFile()) {
+			return null;
+		}
+		if(System.currentTimeMillis() - sessionFile.lastModified() > ttlInMs) {
+			delete();
+			return null;
+		}
+		String cookie = FileUtils.readFileToString(sessionFile, "UTF-8").trim();
+		return cookie.isEmpty() ? null : cookie;
+	}
+	
+	/**
+	 * @return the age of the session in milliseconds
+	 */
+	public long getAgeInMs() {
+		return System.currentTimeMillis() - sessionFile.lastModified();
+	}
+	
+	/**
+	 * Save the session, its time to live starts now.
+	 * 
+	 * @param cookie the Cookie header of the session
+	 * @throws IOException
+	 */
+	public void save(String cookie) throws IOException {
+		FileUtils.forceMkdir(sessionFile.getParentFile());
+		FileUtils.writeStringToFile(sessionFile, cookie, "UTF-8");
+		// The session is as secret as the password
+		sessionFile.setReadable(false, false);
+		sessionFile.setReadable(true, true);
+	}
+	
+	public void delete() {
+		sessionFile.delete();
+	}
+	
+	/**
+	 * Send the session with the requests of ZAP to the host of the target. The versions of the Replacer 
+	 * add-on without URL for their rules send it to all the hosts.
+	 * 
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param apiKey ZAP apikey. Can be null.
+	 * @param cookie the Cookie header of the session
+	 * @param targetURL the target of the scan
+	 * @throws ClientApiException if the Replacer add-on isn't installed
+	 */
+	public static void install(ClientApi zapClientAPI, String apiKey, String cookie, String targetURL) throws ClientApiException {
+		Map<String, String> map = buildApiParams(apiKey);
+		map.put("url", getUrlRegex(targetURL));
+		map.put("description", REPLACER_RULE);
+		map.put("enabled", "true");
+		map.put("matchType", "REQ_HEADER");
+		map.put("matchRegex", "false");
+		map.put("matchString", "Cookie");
+		map.put("replacement", cookie);
+		map.put("initiators", "");
+		zapClientAPI.callApi("replacer", "action", "addRule", map);
+	}
+	
+	/**
+	 * Stop sending the session installed by {@link #install(ClientApi, String, String, String)}.
+	 * 
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param apiKey ZAP apikey. Can be null.
+	 * @throws ClientApiException
+	 */
+	public static void uninstall(ClientApi zapClientAPI, String apiKey) throws ClientApiException {
+		Map<String, String> map = buildApiParams(apiKey);
+		map.put("description", REPLACER_RULE);
+		zapClientAPI.callApi("replacer", "action", "removeRule", map);
+	}
+	
+	/**
+	 * @param targetURL the target of the scan
+	 * @return the regular expression of the URLs of the host of the target
+	 */
+	static String getUrlRegex(String targetURL) {
+		try {
+			URL url = new URL(targetURL.trim());
+			String origin = url.getProtocol() + "://" + url.getHost() + (url.getPort() < 0 ? "" : ":" + url.getPort());
+			return "(?i)" + Pattern.quote(origin) + "([/?#].*)?";
+		} catch (MalformedURLException e) {
+			return Pattern.quote(targetURL.trim()) + ".*";
+		}
+	}
+	
+	/**
+	 * @param requestHeader the header of a request sent by ZAP
+	 * @return the value of its Cookie header, null if it has none
+	 */
+	static String extractCookie(String requestHeader) {
+		if(requestHeader == null) {
+			return null;
+		}
+		for(String line : requestHeader.split("\r?\n")) {
+			if(line.toLowerCase().startsWith(COOKIE_HEADER)) {
+				String cookie = line.substring(COOKIE_HEADER.length()).trim();
+				return cookie.isEmpty() ? null : cookie;
+			}
+		}
+		return null;
+	}
+	
+	private static Map<String, String> buildApiParams(String apiKey) {
+		Map<String, String> map = new HashMap<String, String>();
+		if (apiKey != null) {
+			map.put("apikey", apiKey);
+		}
+		return map;
+	}
+	
+	private static String sha256(String s) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			StringBuilder hex = new StringBuilder();
+			for(byte b : digest.digest(s.getBytes("UTF-8"))) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
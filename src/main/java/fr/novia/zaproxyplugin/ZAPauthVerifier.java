@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.AbortException;
+import hudson.model.BuildListener;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.zaproxy.clientapi.core.ApiResponse;
+import org.zaproxy.clientapi.core.ApiResponseList;
+import org.zaproxy.clientapi.core.ApiResponseSet;
+import org.zaproxy.clientapi.core.ClientApi;
+import org.zaproxy.clientapi.core.ClientApiException;
+
+import fr.novia.zaproxyplugin.ZAPsiteTreeSeeder.SeedRequest;
+
+/**
+ * Checks the authentication of the forced user before the spiders and the scan : a probe request is sent 
+ * through ZAP, which logs the user in, and the logged in indicator must be found in the response. 
+ * With wrong credentials or a wrong indicator, the build fails within seconds instead of scanning the 
+ * login page for an hour.
+ * 
+ */
+public class ZAPauthVerifier {
+	
+	/** Number of characters of the response shown when the authentication fails */
+	private static final int RESPONSE_EXCERPT_LENGTH = 300;
+	
+	private final ClientApi zapClientAPI;
+	
+	private final String apiKey;
+	
+	/** Cookie header sent with the last successful probe request */
+	private String cookie;
+	
+	/**
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param apiKey ZAP apikey. Can be null.
+	 */
+	public ZAPauthVerifier(ClientApi zapClientAPI, String apiKey) {
+		this.zapClientAPI = zapClientAPI;
+		this.apiKey = apiKey;
+	}
+	
+	/**
+	 * Send the probe request and check the logged in indicator in its response.
+	 * 
+	 * @param probeURL the URL of the probe request, a page only shown to an authenticated user
+	 * @param loggedInIndicator the regular expression found in the responses of an authenticated user
+	 * @param loginUrl the login URL, for the diagnostic. Can be null
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @return the duration of the check in milliseconds
+	 * @throws AbortException if the user isn't authenticated
+	 * @throws IOException
+	 * @throws ClientApiException
+	 */
+	public long verify(String probeURL, String loggedInIndicator, String loginUrl, BuildListener listener) 
+			throws IOException, ClientApiException {
+		long startTime = System.currentTimeMillis();
+		if(loggedInIndicator == null || loggedInIndicator.isEmpty()) {
+			listener.getLogger().println("No logged in indicator, the authentication can't be checked before the scan");
+			return 0;
+		}
+		Pattern indicator;
+		try {
+			indicator = Pattern.compile(loggedInIndicator);
+		} catch (PatternSyntaxException e) {
+			throw new AbortException("Authentication check failed : the logged in indicator [" + loggedInIndicator 
+					+ "] isn't a valid regular expression (" + e.getDescription() + ")");
+		}
+		
+		ApiResponseSet response = sendProbe(probeURL);
+		long duration = System.currentTimeMillis() - startTime;
+		
+		if(response == null) {
+			throw new AbortException("Authentication check failed after " + duration + " ms : no response to [" + probeURL + "]");
+		}
+		String header = nullToEmpty(response.getAttribute("responseHeader"));
+		String body = nullToEmpty(response.getAttribute("responseBody"));
+		if(isLoggedIn(response, indicator)) {
+			listener.getLogger().println("Authentication checked in " + duration + " ms : the logged in indicator was found in the response of [" 
+					+ probeURL + "]");
+			return duration;
+		}
+		
+		int statusLineEnd = header.indexOf('\r');
+		throw new AbortException("Authentication check failed after " + duration + " ms : the logged in indicator [" 
+				+ loggedInIndicator + "] wasn't found in the response of [" + probeURL + "]\n"
+				+ "  Status : " + (statusLineEnd < 0 ? header : header.substring(0, statusLineEnd)) + "\n"
+				+ (loginUrl == null ? "" : "  Login URL : " + loginUrl + "\n")
+				+ "  Response : " + (body.length() > RESPONSE_EXCERPT_LENGTH ? body.substring(0, RESPONSE_EXCERPT_LENGTH) + "..." : body) + "\n"
+				+ "Check the credentials, the login URL and the logged in indicator");
+	}
+	
+	/**
+	 * Send the probe request again, without log, e.g. to find out whether a session expired during the scan.
+	 * 
+	 * @param probeURL the URL of the probe request, a page only shown to an authenticated user
+	 * @param loggedInIndicator the regular expression found in the responses of an authenticated user, 
+	 * checked by {@link #verify(String, String, String, BuildListener)}
+	 * @return true if the logged in indicator is found in the response
+	 * @throws IOException
+	 * @throws ClientApiException
+	 */
+	public boolean isAuthenticated(String probeURL, String loggedInIndicator) throws IOException, ClientApiException {
+		ApiResponseSet response = sendProbe(probeURL);
+		return response != null && isLoggedIn(response, Pattern.compile(loggedInIndicator));
+	}
+	
+	/**
+	 * @return the response of the probe request, after the redirections. Null without response
+	 */
+	private ApiResponseSet sendProbe(String probeURL) throws IOException, ClientApiException {
+		Map<String, String> map = new HashMap<String, String>();
+		if (apiKey != null) {
+			map.put("apikey", apiKey);
+		}
+		map.put("request", new SeedRequest("GET", probeURL.trim()).toRawRequest());
+		// The response of the last redirection is checked, an unauthenticated user is often redirected to the login page
+		map.put("followRedirects", "true");
+		List<ApiResponse> messages = ((ApiResponseList) zapClientAPI.callApi("core", "action", "sendRequest", map)).getItems();
+		return messages.isEmpty() ? null : (ApiResponseSet) messages.get(messages.size() - 1);
+	}
+	
+	/**
+	 * @return true if the indicator is found in the response, and keep the cookie sent with the request
+	 */
+	private boolean isLoggedIn(ApiResponseSet response, Pattern indicator) {
+		if(indicator.matcher(nullToEmpty(response.getAttribute("responseHeader"))).find() 
+				|| indicator.matcher(nullToEmpty(response.getAttribute("responseBody"))).find()) {
+			cookie = ZAPauthSession.extractCookie(response.getAttribute("requestHeader"));
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the Cookie header sent with the last successful probe request, the authenticated session. 
+	 * Null if there was no cookie
+	 */
+	public String getCookie() {
+		return cookie;
+	}
+	
+	private static String nullToEmpty(String s) {
+		return s == null ? "" : s;
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import fr.novia.zaproxyplugin.ZAPsiteTreeSeeder.SeedRequest;
+
+/**
+ * On-disk cache of the site tree discovered by the spiders, keyed by a fingerprint of the application
+ * (e.g. the hash of the deployed artifact). When the application didn't change, the site tree is loaded
+ * from the cache instead of spidering the target again.
+ * <p>
+ * Each fingerprint has its own gzipped file. The file contains a header line, then the sorted requests
+ * of the site tree. Each request is a "METHOD URL" line, followed by one "&gt; Name: value" line per header,
+ * an optional "= body" line with the URL encoded body, and an empty line. 
+ * Files of the first version (only "METHOD URL" lines) are still read.
+ * 
+ */
+public class ZAPcrawlCache {
+
+	private static final String HEADER = "# zaproxy-plugin crawl cache v2";
+	
+	/** Header of the files written by the first version, without the headers and the bodies of the requests */
+	private static final String HEADER_V1 = "# zaproxy-plugin crawl cache v1";
+	
+	private static final String HEADER_PREFIX = "> ";
+	
+	private static final String BODY_PREFIX = "= ";
+	
+	private static final String FILE_CACHE_EXTENSION = ".crawl.gz";
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	/** The directory containing the cache files */
+	private final File cacheDir;
+	
+	public ZAPcrawlCache(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+	
+	/**
+	 * @param fingerprint the fingerprint of the application
+	 * @return the cache file of the fingerprint. The name is a hash of the fingerprint, so any string can be used
+	 */
+	public File getCacheFile(String fingerprint) {
+		return new File(cacheDir, sha256(fingerprint) + FILE_CACHE_EXTENSION);
+	}
+	
+	/**
+	 * @param fingerprint the fingerprint of the application
+	 * @return true if a site tree is stored for this fingerprint
+	 */
+	public boolean contains(String fingerprint) {
+		return getCacheFile(fingerprint).isFile();
+	}
+	
+	/**
+	 * Load the site tree stored for a fingerprint.
+	 * 
+	 * @param fingerprint the fingerprint of the application
+	 * @return the requests of the site tree
+	 * @throws IOException if the file can't be read or is not a cache file
+	 */
+	public List<SeedRequest> load(String fingerprint) throws IOException {
+		List<SeedRequest> requests = new ArrayList<SeedRequest>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(new FileInputStream(getCacheFile(fingerprint))), UTF_8));
+		try {
+			String header = reader.readLine();
+			if(!HEADER.equals(header) && !HEADER_V1.equals(header)) {
+				throw new IOException("Invalid crawl cache file [" + getCacheFile(fingerprint) + "]");
+			}
+			String method = null;
+			String url = null;
+			Map<String, String> headers = null;
+			String body = null;
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.startsWith(HEADER_PREFIX) && method != null) {
+					int colonIndex = line.indexOf(':');
+					if(colonIndex > HEADER_PREFIX.length()) {
+						if(headers == null) {
+							headers = new LinkedHashMap<String, String>();
+						}
+						headers.put(line.substring(HEADER_PREFIX.length(), colonIndex), line.substring(colonIndex + 1).trim());
+					}
+				} else if(line.startsWith(BODY_PREFIX) && method != null) {
+					body = URLDecoder.decode(line.substring(BODY_PREFIX.length()), "UTF-8");
+				} else {
+					if(method != null) {
+						requests.add(new SeedRequest(method, url, headers, body));
+						method = null;
+						headers = null;
+						body = null;
+					}
+					int spaceIndex = line.indexOf(' ');
+					if(spaceIndex > 0) {
+						method = line.substring(0, spaceIndex);
+						url = line.substring(spaceIndex + 1);
+					}
+				}
+			}
+			if(method != null) {
+				requests.add(new SeedRequest(method, url, headers, body));
+			}
+		} finally {
+			reader.close();
+		}
+		return requests;
+	}
+	
+	/**
+	 * Store the site tree of a fingerprint. The file is written in a temporary file first, 
+	 * so a build reading the cache at the same time never reads a partial file.
+	 * 
+	 * @param fingerprint the fingerprint of the application
+	 * @param requests the requests of the site tree
+	 * @throws IOException
+	 */
+	public void save(String fingerprint, Collection<SeedRequest> requests) throws IOException {
+		if(!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+			throw new IOException("Unable to create the crawl cache directory [" + cacheDir + "]");
+		}
+		
+		// The entries are sorted and deduplicated, so the same site tree always gives the same file
+		TreeSet<String> entries = new TreeSet<String>();
+		for(SeedRequest request : requests) {
+			entries.add(toEntry(request));
+		}
+		
+		File cacheFile = getCacheFile(fingerprint);
+		File tmpFile = new File(cacheDir, cacheFile.getName() + ".tmp");
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+				new GZIPOutputStream(new FileOutputStream(tmpFile)), UTF_8));
+		try {
+			writer.write(HEADER);
+			writer.write('\n');
+			for(String entry : entries) {
+				writer.write(entry);
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+		
+		if(cacheFile.exists() && !cacheFile.delete() || !tmpFile.renameTo(cacheFile)) {
+			throw new IOException("Unable to write the crawl cache file [" + cacheFile + "]");
+		}
+	}
+	
+	/**
+	 * @param request the request to store
+	 * @return the lines of the request in the cache file, ending with an empty line
+	 * @throws UnsupportedEncodingException
+	 */
+	private static String toEntry(SeedRequest request) throws UnsupportedEncodingException {
+		StringBuilder entry = new StringBuilder();
+		entry.append(request.getMethod()).append(' ').append(request.getUrl()).append('\n');
+		if(request.getHeaders() != null) {
+			for(Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+				entry.append(HEADER_PREFIX).append(header.getKey()).append(": ").append(header.getValue()).append('\n');
+			}
+		}
+		if(request.getBody() != null && !request.getBody().isEmpty()) {
+			entry.append(BODY_PREFIX).append(URLEncoder.encode(request.getBody(), "UTF-8")).append('\n');
+		}
+		return entry.toString();
+	}
+	
+	/**
+	 * @param s the string to hash
+	 * @return the SHA-256 hash of s in hexadecimal
+	 */
+	private static String sha256(String s) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(s.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder();
+			for(byte b : hash) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
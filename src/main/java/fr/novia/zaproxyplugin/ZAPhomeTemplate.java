@@ -0,0 +1,372 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.EnvVars;
+import hudson.Launcher.LocalLauncher;
+import hudson.model.BuildListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Template of the ZAP home directory ({@code -dir}) on a build's machine. The template is initialized once by ZAP 
+ * from the default directory of the build (policies, authentication scripts and add-ons), then each ZAP launch 
+ * gets a clone of it instead of initializing its home directory from scratch.
+ * <p>
+ * The clone hard-links the add-ons and the libraries, which ZAP never modifies in place, and copies the other files
+ * (configuration, database...). A template is named after the ZAP installation (its path, and the size and the date 
+ * of its program and jars, so an upgrade of ZAP in place is seen) and the content of the default directory, 
+ * so a change of a policy or of an add-on initializes a new template.
+ * <p>
+ * The clones of a JVM are in their own directory, locked as long as the JVM runs. The clones left by a JVM which 
+ * stopped without deleting them (e.g. an agent killed during a build) are deleted by the next JVM cloning a template.
+ * <p>
+ * This class is used on the build's machine.
+ * 
+ */
+public class ZAPhomeTemplate {
+	
+	/** Name of the templates directory, in the root directory of the build's machine */
+	static final String TEMPLATES_DIR = "zap-home-templates";
+	
+	private static final String CLONES_DIR = "clones";
+	
+	/** Marker file written when a template is initialized */
+	private static final String COMPLETE_MARKER = ".complete";
+	
+	/** ZAP option which initializes the home directory then exits */
+	private static final String CMD_LINE_CMD = "-cmd";
+	
+	/** Files which are never modified by ZAP, hard-linked in the clones */
+	private static final List<String> SHARED_EXTENSIONS = Arrays.asList(".zap", ".jar");
+	
+	/** Files of the ZAP run which initialized the template, not kept in the template */
+	private static final List<String> TRANSIENT_FILES = Arrays.asList("session", "zap.log");
+	
+	/** Time given to ZAP to initialize a template */
+	private static final long INIT_TIMEOUT_IN_MIN = 10;
+	
+	/** Lock file of the clones directory of a JVM, locked while the JVM runs */
+	private static final String CLONES_LOCK_FILE = ".lock";
+	
+	/** Age from which a clone of a former version of the plugin (without lock file) is deleted */
+	private static final long UNLOCKED_CLONE_MAX_AGE_IN_MS = TimeUnit.DAYS.toMillis(1);
+	
+	/** Serializes the initialization of the templates of this machine */
+	private static final Object LOCK = new Object();
+	
+	/** The directory of the clones of this JVM, null until the first clone */
+	private static File jvmClonesDir;
+	
+	/** Lock of the clones directory of this JVM, never released : the JVM's end releases it */
+	private static FileLock jvmClonesLock;
+	
+	private final File templatesDir;
+	
+	/**
+	 * @param templatesDir the directory of the templates on the build's machine
+	 */
+	public ZAPhomeTemplate(File templatesDir) {
+		this.templatesDir = templatesDir;
+	}
+	
+	/**
+	 * Clone the template of a ZAP default directory, initialize the template if it doesn't exist yet.
+	 * 
+	 * @param defaultDir the default directory of ZAP configured for the build
+	 * @param zapProgram the path of zap.sh or zap.bat
+	 * @param envVars the environment variables of the ZAP process
+	 * @param workDir the working directory of the ZAP process
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @return the clone, to use as ZAP home directory
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public File cloneFor(File defaultDir, String zapProgram, EnvVars envVars, File workDir, BuildListener listener) 
+			throws IOException, InterruptedException {
+		File template = getTemplate(defaultDir, zapProgram, envVars, workDir, listener);
+		
+		Path clone = Files.createTempDirectory(getJvmClonesDir(listener).toPath(), "home");
+		
+		long start = System.currentTimeMillis();
+		int linked = copyTree(template.toPath(), clone);
+		listener.getLogger().println("ZAProxy home cloned from template [" + template.getName() + "] to [" + clone 
+				+ "] in " + (System.currentTimeMillis() - start) + " ms, " + linked + " file(s) hard-linked");
+		return clone.toFile();
+	}
+	
+	/**
+	 * Delete a clone once ZAP is stopped.
+	 * 
+	 * @param clone the clone returned by {@link #cloneFor}
+	 */
+	public static void deleteClone(File clone) {
+		FileUtils.deleteQuietly(clone);
+	}
+	
+	/**
+	 * @return the directory of the clones of this JVM. It's created and locked by the first clone, 
+	 * and the clones of the JVMs which are gone are deleted at the same time
+	 */
+	private File getJvmClonesDir(BuildListener listener) throws IOException {
+		synchronized (LOCK) {
+			File clonesDir = new File(templatesDir, CLONES_DIR);
+			if(jvmClonesDir != null && jvmClonesDir.getParentFile().equals(clonesDir) && jvmClonesDir.isDirectory()) {
+				return jvmClonesDir;
+			}
+			
+			File dir = new File(clonesDir, UUID.randomUUID().toString());
+			if(!dir.mkdirs()) {
+				throw new IOException("Unable to create the directory [" + dir + "]");
+			}
+			FileLock lock = new RandomAccessFile(new File(dir, CLONES_LOCK_FILE), "rw").getChannel().tryLock();
+			if(lock == null) {
+				throw new IOException("Unable to lock the directory [" + dir + "]");
+			}
+			jvmClonesDir = dir;
+			jvmClonesLock = lock;
+			
+			int deleted = deleteDeadClones(clonesDir);
+			if(deleted > 0) {
+				listener.getLogger().println("Deleted " + deleted + " ZAProxy home clone(s) left by stopped agents in [" + clonesDir + "]");
+			}
+			return jvmClonesDir;
+		}
+	}
+	
+	/**
+	 * Delete the clones directories whose JVM is gone : their lock file isn't locked anymore.
+	 * 
+	 * @param clonesDir the directory of the clones of all the JVMs
+	 * @return the number of deleted directories
+	 */
+	private static int deleteDeadClones(File clonesDir) throws IOException {
+		File[] dirs = clonesDir.listFiles();
+		if(dirs == null) {
+			return 0;
+		}
+		int deleted = 0;
+		for(File dir : dirs) {
+			if(dir.equals(jvmClonesDir) || !dir.isDirectory()) {
+				continue;
+			}
+			File lockFile = new File(dir, CLONES_LOCK_FILE);
+			if(!lockFile.isFile()) {
+				// A clone of a former version, or a directory of a JVM which didn't lock it yet
+				if(System.currentTimeMillis() - dir.lastModified() > UNLOCKED_CLONE_MAX_AGE_IN_MS) {
+					FileUtils.deleteQuietly(dir);
+					deleted++;
+				}
+				continue;
+			}
+			RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+			try {
+				FileLock lock = file.getChannel().tryLock();
+				if(lock != null) {
+					lock.release();
+					FileUtils.deleteQuietly(dir);
+					deleted++;
+				}
+			} catch (OverlappingFileLockException e) {
+				// Locked by this JVM
+			} finally {
+				file.close();
+			}
+		}
+		return deleted;
+	}
+	
+	private File getTemplate(File defaultDir, String zapProgram, EnvVars envVars, File workDir, BuildListener listener) 
+			throws IOException, InterruptedException {
+		String key = templateKey(defaultDir, zapProgram);
+		File template = new File(templatesDir, key);
+		
+		synchronized (LOCK) {
+			if(new File(template, COMPLETE_MARKER).isFile()) {
+				return template;
+			}
+			
+			listener.getLogger().println("Initialize ZAProxy home template [" + key + "] from [" + defaultDir + "]");
+			File tmpDir = new File(templatesDir, key + ".tmp");
+			FileUtils.deleteQuietly(template);
+			FileUtils.deleteQuietly(tmpDir);
+			if(defaultDir.isDirectory()) {
+				FileUtils.copyDirectory(defaultDir, tmpDir);
+			} else if(!tmpDir.mkdirs()) {
+				throw new IOException("Unable to create the directory [" + tmpDir + "]");
+			}
+			
+			// ZAP initializes its configuration and installs the add-ons, then exits
+			List<String> cmd = new ArrayList<String>();
+			cmd.add(zapProgram);
+			cmd.add(CMD_LINE_CMD);
+			cmd.add(ZAProxy.CMD_LINE_DIR);
+			cmd.add(tmpDir.getAbsolutePath());
+			int exitCode = new LocalLauncher(listener).launch().cmds(cmd).envs(envVars).stdout(listener).pwd(workDir).start()
+					.joinWithTimeout(INIT_TIMEOUT_IN_MIN, TimeUnit.MINUTES, listener);
+			if(exitCode != 0) {
+				throw new IOException("ZAProxy failed to initialize the home template [" + tmpDir + "], exit code " + exitCode);
+			}
+			
+			for(String transientFile : TRANSIENT_FILES) {
+				FileUtils.deleteQuietly(new File(tmpDir, transientFile));
+			}
+			if(!new File(tmpDir, COMPLETE_MARKER).createNewFile() || !tmpDir.renameTo(template)) {
+				throw new IOException("Unable to complete the ZAProxy home template [" + template + "]");
+			}
+			return template;
+		}
+	}
+	
+	/**
+	 * @return the key of the template : the hash of the path, the size and the date of the ZAP program and of its jars, 
+	 * and of the name, the size and the date of the files of the default directory
+	 */
+	static String templateKey(File defaultDir, String zapProgram) throws IOException {
+		File program = new File(zapProgram).getAbsoluteFile();
+		final StringBuilder content = new StringBuilder(program.getPath()).append(':').append(program.length()).append(':')
+				.append(program.lastModified()).append('\n');
+		// The jars of ZAP change with its version (e.g. zap-2.4.3.jar), even when it's upgraded in place
+		File[] jars = program.getParentFile() == null ? null : program.getParentFile().listFiles();
+		if(jars != null) {
+			Arrays.sort(jars);
+			for(File jar : jars) {
+				if(jar.getName().endsWith(".jar")) {
+					content.append(jar.getName()).append(':').append(jar.length()).append(':').append(jar.lastModified()).append('\n');
+				}
+			}
+		}
+		if(defaultDir.isDirectory()) {
+			final Path root = defaultDir.toPath();
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					content.append(root.relativize(file)).append(':').append(attrs.size()).append(':')
+							.append(attrs.lastModifiedTime().toMillis()).append('\n');
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		return sha256(content.toString());
+	}
+	
+	/**
+	 * Copy a directory tree, hard-link the files which are shared between the template and its clones.
+	 * 
+	 * @return the number of hard-linked files
+	 */
+	private static int copyTree(final Path from, final Path to) throws IOException {
+		final int[] linked = new int[1];
+		Files.walkFileTree(from, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Path target = to.resolve(from.relativize(dir).toString());
+				if(!Files.isDirectory(target)) {
+					Files.createDirectories(target);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				String name = file.getFileName().toString();
+				if(name.equals(COMPLETE_MARKER)) {
+					return FileVisitResult.CONTINUE;
+				}
+				Path target = to.resolve(from.relativize(file).toString());
+				if(isShared(name) && link(target, file)) {
+					linked[0]++;
+				} else {
+					Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return linked[0];
+	}
+	
+	private static boolean isShared(String name) {
+		for(String extension : SHARED_EXTENSIONS) {
+			if(name.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return true if the file is hard-linked, false if the file system doesn't support it
+	 */
+	private static boolean link(Path link, Path existing) throws IOException {
+		try {
+			Files.createLink(link, existing);
+			return true;
+		} catch (UnsupportedOperationException e) {
+			return false;
+		} catch (IOException e) {
+			// e.g. the clones and the template aren't on the same file system
+			return false;
+		}
+	}
+	
+	/**
+	 * @param s the string to hash
+	 * @return the SHA-256 hash of s in hexadecimal
+	 */
+	private static String sha256(String s) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(s.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder();
+			for(byte b : hash) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,381 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.channels.FileLock;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.jenkinsci.remoting.RoleChecker;
+
+/**
+ * Cache of pre-extracted ZAP installations on a build's machine, so a fresh agent doesn't download and extract 
+ * ZAP for each executor. An installation is extracted once from a ZAP archive (a local file for offline installs,
+ * or an URL), with its add-ons, in a directory named after the expected SHA-256 of the archive and the add-ons. 
+ * The executors of the machine then share this installation.
+ * <p>
+ * The archive is verified against its expected SHA-256 before being extracted. Without expected SHA-256, 
+ * the installation is named after the archive itself : its URL, or the path, the size and the date of the local file.
+ * So the archive is neither downloaded nor read again once it's extracted, and an URL must change with the version 
+ * of ZAP (as the URLs of the ZAP releases do). An installation is only used once its extraction is complete, 
+ * an interrupted extraction is done again by the next build.
+ * 
+ */
+public class ZAPinstallCache implements FileCallable<String> {
+
+	private static final long serialVersionUID = 8425917046581193744L;
+	
+	/** Name of the cache directory, in the root directory of the build's machine */
+	static final String CACHE_DIR = "zap-install-cache";
+	
+	/** Marker file written when an installation is complete */
+	private static final String COMPLETE_MARKER = ".complete";
+	
+	private static final String LOCK_FILE = ".lock";
+	
+	private static final String ZAP_PLUGIN_DIR = "plugin";
+	
+	private static final String ZAP_ADDON_EXTENSION = ".zap";
+	
+	/** Depth where zap.sh or zap.bat is searched in the extracted archive */
+	private static final int MAX_INSTALL_DEPTH = 2;
+	
+	/** A SHA-256 in hexadecimal, it names the directory of the installation */
+	private static final Pattern SHA256 = Pattern.compile("[0-9a-fA-F]{64}");
+	
+	/** Serializes the extractions of the executors of this machine */
+	private static final Object LOCK = new Object();
+	
+	private final String archive;
+	private final String archiveSha256;
+	private final List<String> addOns;
+	
+	/**
+	 * @param archive the path of the ZAP archive (.zip, .tar.gz or .tgz) on the build's machine, or its URL
+	 * @param archiveSha256 the expected SHA-256 of the archive, not verified if empty (the installation is then 
+	 * identified by the URL or the local file of the archive)
+	 * @param addOns the paths of the add-ons (.zap files) on the build's machine, separated by commas or new lines
+	 * @throws IllegalArgumentException if archiveSha256 isn't empty nor 64 hexadecimal characters
+	 */
+	public ZAPinstallCache(String archive, String archiveSha256, String addOns) {
+		this.archive = archive.trim();
+		this.archiveSha256 = archiveSha256 == null ? "" : archiveSha256.trim().toLowerCase();
+		if(!this.archiveSha256.isEmpty() && !isSha256(this.archiveSha256)) {
+			throw new IllegalArgumentException("The SHA-256 of the ZAP archive must be 64 hexadecimal characters : [" 
+					+ archiveSha256 + "]");
+		}
+		this.addOns = new ArrayList<String>();
+		if(addOns != null) {
+			for(String addOn : addOns.split("[,\\r\\n]+")) {
+				if(!addOn.trim().isEmpty()) {
+					this.addOns.add(addOn.trim());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param sha256 a value typed as a SHA-256
+	 * @return true if sha256 is 64 hexadecimal characters
+	 */
+	static boolean isSha256(String sha256) {
+		return SHA256.matcher(sha256).matches();
+	}
+	
+	/**
+	 * Get the ZAP installation of the build's machine, extract it if it's not in the cache yet.
+	 * 
+	 * @param root the root directory of the build's machine
+	 * @return the path of the installation on the build's machine, without zap.bat or zap.sh at the end
+	 * @throws IOException if the archive can't be read or doesn't match its SHA-256
+	 * @throws InterruptedException
+	 */
+	public String install(FilePath root) throws IOException, InterruptedException {
+		return root.child(CACHE_DIR).act(this);
+	}
+
+	@Override
+	public String invoke(File cacheDir, VirtualChannel channel) throws IOException, InterruptedException {
+		synchronized (LOCK) {
+			if(!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+				throw new IOException("Unable to create the ZAP installation cache [" + cacheDir + "]");
+			}
+			
+			// Other agents can share the root directory of this machine
+			RandomAccessFile lockFile = new RandomAccessFile(new File(cacheDir, LOCK_FILE), "rw");
+			try {
+				FileLock lock = lockFile.getChannel().lock();
+				try {
+					return getInstallation(cacheDir);
+				} finally {
+					lock.release();
+				}
+			} finally {
+				lockFile.close();
+			}
+		}
+	}
+	
+	private String getInstallation(File cacheDir) throws IOException, InterruptedException {
+		boolean downloaded = archive.matches("(?i)https?://.*");
+		
+		// The key of the installation is known before reading the archive, so an extracted archive is never read again
+		String key = installationKey(archiveSha256.isEmpty() ? sourceKey(downloaded) : archiveSha256);
+		File installation = find(cacheDir, key);
+		if(installation != null) {
+			return installation.getAbsolutePath();
+		}
+		
+		File archiveFile = downloaded ? download(cacheDir) : new File(archive);
+		try {
+			if(!archiveSha256.isEmpty()) {
+				String archiveHash = sha256(archiveFile);
+				if(!archiveSha256.equals(archiveHash)) {
+					throw new IOException("The SHA-256 of the ZAP archive [" + archive + "] is " + archiveHash 
+							+ ", expected " + archiveSha256);
+				}
+			}
+			return extract(cacheDir, key, archiveFile).getAbsolutePath();
+		} finally {
+			if(downloaded) {
+				archiveFile.delete();
+			}
+		}
+	}
+	
+	/**
+	 * @param remote true if the archive is an URL
+	 * @return the hash identifying an archive without expected SHA-256 : the hash of its URL, 
+	 * or of the path, the size and the date of the local file
+	 * @throws IOException if the local archive doesn't exist
+	 */
+	private String sourceKey(boolean remote) throws IOException {
+		String source;
+		if(remote) {
+			source = "url:" + archive;
+		} else {
+			File archiveFile = new File(archive);
+			if(!archiveFile.isFile()) {
+				throw new IOException("The ZAP archive [" + archive + "] doesn't exist");
+			}
+			source = "file:" + archiveFile.getAbsolutePath() + ":" + archiveFile.length() + ":" + archiveFile.lastModified();
+		}
+		return sha256(new ByteArrayInputStream(source.getBytes("UTF-8")));
+	}
+	
+	/**
+	 * @return the key of the installation : the hash identifying the archive, combined with the hashes of the add-ons
+	 */
+	private String installationKey(String archiveHash) throws IOException {
+		if(addOns.isEmpty()) {
+			return archiveHash;
+		}
+		StringBuilder hashes = new StringBuilder(archiveHash);
+		for(String addOn : addOns) {
+			hashes.append(':').append(sha256(new File(addOn)));
+		}
+		return archiveHash.substring(0, 32) + sha256(new ByteArrayInputStream(hashes.toString().getBytes("UTF-8"))).substring(0, 32);
+	}
+	
+	/**
+	 * @return the installation directory of a complete installation, null if there is no such installation
+	 */
+	private static File find(File cacheDir, String key) {
+		File keyDir = new File(cacheDir, key);
+		if(!new File(keyDir, COMPLETE_MARKER).isFile()) {
+			return null;
+		}
+		return findInstallation(keyDir, 0);
+	}
+	
+	/**
+	 * Extract the archive and copy the add-ons to a temporary directory, then rename it to the key of the installation.
+	 */
+	private File extract(File cacheDir, String key, File archiveFile) throws IOException, InterruptedException {
+		File keyDir = new File(cacheDir, key);
+		File tmpDir = new File(cacheDir, key + ".tmp");
+		deleteRecursive(keyDir);
+		deleteRecursive(tmpDir);
+		
+		InputStream in = new FileInputStream(archiveFile);
+		try {
+			if(archive.toLowerCase().endsWith(".zip")) {
+				new FilePath(tmpDir).unzipFrom(in);
+			} else {
+				new FilePath(tmpDir).untarFrom(in, FilePath.TarCompression.GZIP);
+			}
+		} finally {
+			in.close();
+		}
+		
+		File installation = findInstallation(tmpDir, 0);
+		if(installation == null) {
+			throw new IOException("No " + ZAProxy.ZAP_PROG_NAME_SH + " or " + ZAProxy.ZAP_PROG_NAME_BAT 
+					+ " in the ZAP archive [" + archive + "]");
+		}
+		
+		// The permissions aren't kept by the zip archives
+		new File(installation, ZAProxy.ZAP_PROG_NAME_SH).setExecutable(true);
+		
+		File pluginDir = new File(installation, ZAP_PLUGIN_DIR);
+		if(!addOns.isEmpty() && !pluginDir.isDirectory() && !pluginDir.mkdirs()) {
+			throw new IOException("Unable to create the directory [" + pluginDir + "]");
+		}
+		for(String addOn : addOns) {
+			File addOnFile = new File(addOn);
+			String name = addOnFile.getName().endsWith(ZAP_ADDON_EXTENSION) ? addOnFile.getName() 
+					: addOnFile.getName() + ZAP_ADDON_EXTENSION;
+			copy(addOnFile, new File(pluginDir, name));
+		}
+		
+		if(!new File(tmpDir, COMPLETE_MARKER).createNewFile() || !tmpDir.renameTo(keyDir)) {
+			throw new IOException("Unable to complete the ZAP installation [" + keyDir + "]");
+		}
+		return findInstallation(keyDir, 0);
+	}
+	
+	/**
+	 * @return the directory which contains zap.sh or zap.bat, null if there is none
+	 */
+	private static File findInstallation(File dir, int depth) {
+		if(new File(dir, ZAProxy.ZAP_PROG_NAME_SH).isFile() || new File(dir, ZAProxy.ZAP_PROG_NAME_BAT).isFile()) {
+			return dir;
+		}
+		File[] children = dir.listFiles();
+		if(depth >= MAX_INSTALL_DEPTH || children == null) {
+			return null;
+		}
+		for(File child : children) {
+			if(child.isDirectory()) {
+				File installation = findInstallation(child, depth + 1);
+				if(installation != null) {
+					return installation;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return a temporary file with the content of the archive URL
+	 */
+	private File download(File cacheDir) throws IOException {
+		File tmpFile = File.createTempFile("zap", ".archive", cacheDir);
+		InputStream in = new URL(archive).openStream();
+		try {
+			copy(in, tmpFile);
+		} catch (IOException e) {
+			tmpFile.delete();
+			throw e;
+		} finally {
+			in.close();
+		}
+		return tmpFile;
+	}
+	
+	private static void copy(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			copy(in, to);
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static void copy(InputStream in, File to) throws IOException {
+		OutputStream out = new FileOutputStream(to);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	private static void deleteRecursive(File f) throws IOException {
+		if(f.exists()) {
+			try {
+				new FilePath(f).deleteRecursive();
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while deleting [" + f + "]", e);
+			}
+		}
+	}
+	
+	/**
+	 * @param f the file to hash
+	 * @return the SHA-256 hash of the file in hexadecimal
+	 */
+	private static String sha256(File f) throws IOException {
+		InputStream in = new FileInputStream(f);
+		try {
+			return sha256(in);
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static String sha256(InputStream in) throws IOException {
+		try {
+			DigestInputStream digestIn = new DigestInputStream(in, MessageDigest.getInstance("SHA-256"));
+			byte[] buffer = new byte[8192];
+			while(digestIn.read(buffer) != -1) {
+				// Nothing to do, the stream is hashed while it's read
+			}
+			StringBuilder hex = new StringBuilder();
+			for(byte b : digestIn.getMessageDigest().digest()) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	@Override
+	public void checkRoles(RoleChecker checker) throws SecurityException {
+		// Nothing to do
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.EnvVars;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * JVM and thread settings of a ZAP daemon, computed from the memory and the cores of the build's machine 
+ * and from the number of ZAP daemons running or planned on it.
+ * <p>
+ * The ZAP daemons of the machine share a memory budget (a percentage of the physical memory). Each daemon 
+ * gets an equal share of the budget, capped by what the running daemons left of it and by the memory 
+ * available on the machine, so the heaps of all the daemons never exceed the budget.
+ * <p>
+ * The JVM options are given to ZAP with the environment variable _JAVA_OPTIONS, read by the JVM itself, 
+ * because zap.sh and zap.bat compute their own heap size. The thread settings are given with -config, 
+ * unless the job already sets them.
+ * 
+ */
+public class ZAPlaunchProfile {
+	
+	private static final String JAVA_OPTIONS_ENV = "_JAVA_OPTIONS";
+	
+	private static final String CMD_LINE_CONFIG = "-config";
+	
+	static final String CONFIG_SCANNER_THREADS = "scanner.threadPerHost";
+	
+	static final String CONFIG_SPIDER_THREADS = "spider.thread";
+	
+	private static final long BYTES_IN_MB = 1024L * 1024L;
+	
+	/** Below this heap, ZAP doesn't work well even on small targets. Only given if the memory is available */
+	static final int MIN_HEAP_IN_MB = 512;
+	
+	/** Heap given when even less memory is available, the JVM of ZAP can't start with less */
+	private static final int LOWEST_HEAP_IN_MB = 128;
+	
+	private static final String MEMINFO_FILE = "/proc/meminfo";
+	
+	/** Line of the available memory in /proc/meminfo, e.g. "MemAvailable:   12345678 kB" */
+	private static final Pattern MEMINFO_AVAILABLE = Pattern.compile("MemAvailable:\\s*(\\d+) kB");
+	
+	/** Above this heap, the pauses of the GC are longer than the gain */
+	private static final int MAX_HEAP_IN_MB = 16 * 1024;
+	
+	/** From this heap, G1 is used instead of the parallel GC */
+	private static final int G1_MIN_HEAP_IN_MB = 2048;
+	
+	private static final int THREADS_PER_CORE = 2;
+	
+	private static final int MIN_THREADS = 2;
+	
+	private static final int MAX_THREADS = 20;
+	
+	private final int heapInMb;
+	
+	private final boolean g1;
+	
+	private final int gcThreads;
+	
+	private final int scanThreads;
+	
+	private ZAPlaunchProfile(int heapInMb, boolean g1, int gcThreads, int scanThreads) {
+		this.heapInMb = heapInMb;
+		this.g1 = g1;
+		this.gcThreads = gcThreads;
+		this.scanThreads = scanThreads;
+	}
+	
+	/**
+	 * Compute the profile of a ZAP daemon.
+	 * 
+	 * @param physicalMemoryInBytes the memory of the machine
+	 * @param availableMemoryInBytes the memory of the machine which can be used without swapping
+	 * @param cores the number of cores of the machine
+	 * @param runningInstances the number of ZAP daemons already running on the machine
+	 * @param reservedHeapInMb the sum of the heaps of the running ZAP daemons
+	 * @param plannedInstances the number of ZAP daemons which can run at the same time on the machine, 
+	 * e.g. its number of executors
+	 * @param memoryPercent the percentage of the memory of the machine given to all the ZAP daemons
+	 * @return the profile of the ZAP daemon
+	 */
+	public static ZAPlaunchProfile compute(long physicalMemoryInBytes, long availableMemoryInBytes, int cores, 
+			int runningInstances, long reservedHeapInMb, int plannedInstances, int memoryPercent) {
+		int sharing = Math.max(Math.max(plannedInstances, runningInstances + 1), 1);
+		
+		long budget = physicalMemoryInBytes / BYTES_IN_MB * memoryPercent / 100;
+		// The heap can't be larger than what the running daemons left of the budget, nor than the free memory
+		long available = Math.min(budget - reservedHeapInMb, availableMemoryInBytes / BYTES_IN_MB);
+		long heap = Math.min(Math.min(budget / sharing, available), MAX_HEAP_IN_MB);
+		heap = Math.max(heap, Math.min(MIN_HEAP_IN_MB, available));
+		int heapInMb = (int) Math.max(LOWEST_HEAP_IN_MB, heap);
+		
+		int coresPerInstance = Math.max(1, cores / sharing);
+		int scanThreads = Math.max(MIN_THREADS, Math.min(MAX_THREADS, coresPerInstance * THREADS_PER_CORE));
+		
+		return new ZAPlaunchProfile(heapInMb, heapInMb >= G1_MIN_HEAP_IN_MB, coresPerInstance, scanThreads);
+	}
+	
+	/**
+	 * Compute the profile of a ZAP daemon launched on this machine.
+	 * 
+	 * @param runningInstances the number of ZAP daemons already running on the machine
+	 * @param reservedHeapInMb the sum of the heaps of the running ZAP daemons
+	 * @param plannedInstances the number of ZAP daemons which can run at the same time on the machine
+	 * @param memoryPercent the percentage of the memory of the machine given to all the ZAP daemons
+	 * @return the profile of the ZAP daemon, null if the memory of the machine is unknown
+	 */
+	public static ZAPlaunchProfile computeForThisMachine(int runningInstances, long reservedHeapInMb, int plannedInstances, 
+			int memoryPercent) {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if(!(os instanceof com.sun.management.OperatingSystemMXBean)) {
+			return null;
+		}
+		com.sun.management.OperatingSystemMXBean memory = (com.sun.management.OperatingSystemMXBean) os;
+		long availableMemory = readAvailableMemory();
+		if(availableMemory < 0) {
+			availableMemory = memory.getFreePhysicalMemorySize();
+		}
+		return compute(memory.getTotalPhysicalMemorySize(), availableMemory, Runtime.getRuntime().availableProcessors(), 
+				runningInstances, reservedHeapInMb, plannedInstances, memoryPercent);
+	}
+	
+	/**
+	 * The free memory of the JVM doesn't count the page cache, which Linux gives back on demand. 
+	 * So the available memory estimated by Linux is read first.
+	 * 
+	 * @return the available memory of the machine in bytes, -1 if unknown (e.g. not on Linux)
+	 */
+	private static long readAvailableMemory() {
+		File meminfo = new File(MEMINFO_FILE);
+		if(!meminfo.isFile()) {
+			return -1;
+		}
+		try {
+			Matcher matcher = MEMINFO_AVAILABLE.matcher(FileUtils.readFileToString(meminfo, "UTF-8"));
+			return matcher.find() ? Long.parseLong(matcher.group(1)) * 1024L : -1;
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Add the settings of the profile to the command line and to the environment of ZAP.
+	 * 
+	 * @param cmd the command line to launch ZAP
+	 * @param envVars the environment variables of the ZAP process
+	 */
+	public void applyTo(List<String> cmd, EnvVars envVars) {
+		String javaOptions = getJavaOptions();
+		String existing = envVars.get(JAVA_OPTIONS_ENV);
+		envVars.put(JAVA_OPTIONS_ENV, existing == null || existing.isEmpty() ? javaOptions : existing + " " + javaOptions);
+		
+		addConfig(cmd, CONFIG_SCANNER_THREADS, scanThreads);
+		addConfig(cmd, CONFIG_SPIDER_THREADS, scanThreads);
+	}
+	
+	/**
+	 * @return the options of the JVM of ZAP
+	 */
+	public String getJavaOptions() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("-Xmx").append(heapInMb).append('m');
+		sb.append(" -Xms").append(heapInMb / 4).append('m');
+		sb.append(g1 ? " -XX:+UseG1GC" : " -XX:+UseParallelGC");
+		sb.append(" -XX:ParallelGCThreads=").append(gcThreads);
+		return sb.toString();
+	}
+	
+	public int getHeapInMb() {
+		return heapInMb;
+	}
+	
+	public int getScanThreads() {
+		return scanThreads;
+	}
+	
+	/**
+	 * Add a ZAP option to the command line, unless it's already set.
+	 */
+	static void addConfig(List<String> cmd, String key, int value) {
+		for(int i = 0; i < cmd.size() - 1; i++) {
+			if(CMD_LINE_CONFIG.equals(cmd.get(i)) && cmd.get(i + 1).startsWith(key + "=")) {
+				return;
+			}
+		}
+		cmd.add(CMD_LINE_CONFIG);
+		cmd.add(key + "=" + value);
+	}
+	
+	@Override
+	public String toString() {
+		return "heap [" + heapInMb + " MB] GC [" + (g1 ? "G1" : "parallel") + ", " + gcThreads 
+				+ " thread(s)] scanner and spider threads [" + scanThreads + "]";
+	}
+}
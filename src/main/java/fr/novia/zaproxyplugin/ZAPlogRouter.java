@@ -0,0 +1,236 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Routes the output of the ZAP process. Every line is written in a size-capped rotating log file and only the 
+ * lines of at least a minimum level or matching a pattern are forwarded to the build console, with a rate limit.
+ * A line without level (e.g. a line of a stack trace) has the level of the previous line.
+ * <p>
+ * When the log file reaches its maximum size, it's renamed with the suffix ".1" (the previous ".1" 
+ * becomes ".2" and so on) and a new log file is started. The oldest file is deleted.
+ * 
+ */
+public class ZAPlogRouter extends OutputStream {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private static final long MILLISECONDS_IN_MINUTE = 60 * 1000L;
+	
+	private static final String CONSOLE_PREFIX = "[ZAP] ";
+	
+	/** The levels of the ZAP log, from the lowest to the highest */
+	static final String[] LEVELS = { "TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL" };
+	
+	/** Level of a log4j line, the first level word of the line (after the date and the thread) */
+	private static final Pattern LEVEL_PATTERN = Pattern.compile("\\b(TRACE|DEBUG|INFO|WARN|ERROR|FATAL)\\b");
+	
+	private final File logFile;
+	
+	private final long maxSizeInBytes;
+	
+	/** Number of rotated files kept in addition to the current log file */
+	private final int maxBackups;
+	
+	/** Lines forwarded to the console, null to forward nothing */
+	private final Pattern consolePattern;
+	
+	private final int maxConsoleLinesPerMin;
+	
+	private final PrintStream console;
+	
+	/** Index in {@link #LEVELS} of the minimum level of the lines forwarded to the console, -1 to forward by pattern only */
+	private final int minLevel;
+	
+	/** Index in {@link #LEVELS} of the level of the last line with a level */
+	private int currentLevel = LEVELS.length - 1;
+	
+	/** The current line, written when a line separator is received */
+	private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+	
+	private OutputStream out;
+	
+	private long size;
+	
+	/** Start of the current rate limit window */
+	private long windowStart;
+	
+	/** Lines forwarded to the console in the current rate limit window */
+	private int windowLines;
+	
+	/** Lines to forward but not forwarded because of the rate limit */
+	private int suppressedLines;
+	
+	/**
+	 * @param logFile the log file
+	 * @param maxSizeInBytes the size of the log file before rotation
+	 * @param maxBackups the number of rotated files kept
+	 * @param consolePattern the lines to forward to the console, null to forward nothing
+	 * @param maxConsoleLinesPerMin the maximum number of lines forwarded to the console per minute
+	 * @param console the build console
+	 * @param minLevel the minimum level of the lines forwarded to the console even if they don't match consolePattern 
+	 * (one of {@link #LEVELS}), null or empty to forward by pattern only
+	 * @throws IOException if the log file can't be created
+	 */
+	public ZAPlogRouter(File logFile, long maxSizeInBytes, int maxBackups, Pattern consolePattern, 
+			int maxConsoleLinesPerMin, PrintStream console, String minLevel) throws IOException {
+		this.logFile = logFile;
+		this.maxSizeInBytes = maxSizeInBytes;
+		this.maxBackups = maxBackups;
+		this.consolePattern = consolePattern;
+		this.maxConsoleLinesPerMin = maxConsoleLinesPerMin;
+		this.console = console;
+		this.minLevel = levelIndex(minLevel);
+		
+		File parent = logFile.getAbsoluteFile().getParentFile();
+		if(!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Unable to create the directory [" + parent + "]");
+		}
+		this.out = new FileOutputStream(logFile);
+	}
+	
+	@Override
+	public synchronized void write(int b) throws IOException {
+		line.write(b);
+		if(b == '\n') {
+			writeLine();
+		}
+	}
+	
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		int start = off;
+		for(int i = off; i < off + len; i++) {
+			if(b[i] == '\n') {
+				line.write(b, start, i + 1 - start);
+				writeLine();
+				start = i + 1;
+			}
+		}
+		line.write(b, start, off + len - start);
+	}
+	
+	@Override
+	public synchronized void flush() throws IOException {
+		out.flush();
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		if(line.size() > 0) {
+			writeLine();
+		}
+		reportSuppressedLines();
+		out.close();
+	}
+	
+	private void writeLine() throws IOException {
+		// The log file has every line, the level only decides what is forwarded to the console
+		if(size + line.size() > maxSizeInBytes && size > 0) {
+			rotate();
+		}
+		line.writeTo(out);
+		out.flush();
+		size += line.size();
+		
+		if(minLevel >= 0 || consolePattern != null) {
+			String s = new String(line.toByteArray(), UTF_8).trim();
+			if(minLevel >= 0) {
+				Matcher matcher = LEVEL_PATTERN.matcher(s);
+				if(matcher.find()) {
+					currentLevel = levelIndex(matcher.group(1));
+				}
+			}
+			if((minLevel >= 0 && currentLevel >= minLevel) || (consolePattern != null && consolePattern.matcher(s).find())) {
+				forwardToConsole(s);
+			}
+		}
+		line.reset();
+	}
+	
+	/**
+	 * Print a line to the console unless the rate limit is reached for the current minute.
+	 */
+	private void forwardToConsole(String s) {
+		long now = System.currentTimeMillis();
+		if(now - windowStart >= MILLISECONDS_IN_MINUTE) {
+			reportSuppressedLines();
+			windowStart = now;
+			windowLines = 0;
+		}
+		if(windowLines < maxConsoleLinesPerMin) {
+			console.println(CONSOLE_PREFIX + s);
+			windowLines++;
+		} else {
+			suppressedLines++;
+		}
+	}
+	
+	private void reportSuppressedLines() {
+		if(suppressedLines > 0) {
+			console.println(CONSOLE_PREFIX + suppressedLines + " lines not displayed (see " + logFile.getName() + ")");
+			suppressedLines = 0;
+		}
+	}
+	
+	/**
+	 * @param level a level of the ZAP log
+	 * @return the index of level in {@link #LEVELS}, -1 if it's not a level
+	 */
+	private static int levelIndex(String level) {
+		for(int i = 0; i < LEVELS.length; i++) {
+			if(LEVELS[i].equalsIgnoreCase(level)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	private void rotate() throws IOException {
+		out.close();
+		new File(logFile.getPath() + "." + maxBackups).delete();
+		for(int i = maxBackups - 1; i >= 1; i--) {
+			File backup = new File(logFile.getPath() + "." + i);
+			if(backup.exists()) {
+				backup.renameTo(new File(logFile.getPath() + "." + (i + 1)));
+			}
+		}
+		if(maxBackups > 0) {
+			logFile.renameTo(new File(logFile.getPath() + ".1"));
+		}
+		out = new FileOutputStream(logFile);
+		size = 0;
+	}
+}
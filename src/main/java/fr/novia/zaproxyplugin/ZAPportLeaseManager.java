@@ -0,0 +1,211 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.jenkinsci.remoting.RoleChecker;
+
+/**
+ * Leases the ports of the ZAP daemons of a build's machine, so several builds can run ZAProxy concurrently 
+ * on the same machine. The leases are kept in the JVM of the build's machine, a port is leased if it's 
+ * neither leased to another build nor bound by another process.
+ * <p>
+ * A block of consecutive ports can be leased for the modes which run several ZAP instances.
+ * 
+ */
+public class ZAPportLeaseManager {
+	
+	private static final int MAX_PORT = 65535;
+	
+	/** Owner of each leased port */
+	private static final Map<Integer, String> LEASES = new HashMap<Integer, String>();
+	
+	private ZAPportLeaseManager() {
+	}
+	
+	/**
+	 * Lease a block of free ports on this machine.
+	 * 
+	 * @param firstPort the first port to try
+	 * @param range the number of ports which can be tried from firstPort
+	 * @param count the number of consecutive ports to lease
+	 * @param owner identifies the build which leases the ports
+	 * @return the first port of the leased block
+	 * @throws IOException if there is no free block in the range
+	 */
+	static synchronized int lease(int firstPort, int range, int count, String owner) throws IOException {
+		int lastPort = Math.min(firstPort + Math.max(range, count) - 1, MAX_PORT);
+		for(int port = firstPort; port + count - 1 <= lastPort; port++) {
+			int busy = findBusyPort(port, count);
+			if(busy < 0) {
+				for(int i = 0; i < count; i++) {
+					LEASES.put(port + i, owner);
+				}
+				return port;
+			}
+			// The block can't contain the busy port
+			port = busy;
+		}
+		throw new IOException("No block of " + count + " free port(s) between " + firstPort + " and " + lastPort);
+	}
+	
+	/**
+	 * Release all the ports leased by a build.
+	 * 
+	 * @param owner identifies the build which leased the ports
+	 * @return the number of released ports
+	 */
+	static synchronized int release(String owner) {
+		int released = 0;
+		for(Iterator<String> it = LEASES.values().iterator(); it.hasNext();) {
+			if(it.next().equals(owner)) {
+				it.remove();
+				released++;
+			}
+		}
+		return released;
+	}
+	
+	/**
+	 * @return the first port of the block which is leased or bound, -1 if all the ports are free
+	 */
+	private static int findBusyPort(int firstPort, int count) {
+		for(int port = firstPort; port < firstPort + count; port++) {
+			if(LEASES.containsKey(port) || !canBind(port)) {
+				return port;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return true if no process listens on the port, on any interface
+	 */
+	private static boolean canBind(int port) {
+		ServerSocket socket = null;
+		try {
+			socket = new ServerSocket(port);
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if(socket != null) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// Nothing to do, the port is free
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Lease a block of ports on the machine of the workspace.
+	 * 
+	 * @param workspace the workspace of the build
+	 * @param firstPort the first port to try
+	 * @param range the number of ports which can be tried from firstPort
+	 * @param count the number of consecutive ports to lease
+	 * @param owner identifies the build which leases the ports
+	 * @return the first port of the leased block
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static int lease(FilePath workspace, int firstPort, int range, int count, String owner) 
+			throws IOException, InterruptedException {
+		return workspace.act(new LeaseCallable(firstPort, range, count, owner));
+	}
+	
+	/**
+	 * Release the ports leased by a build on the machine of the workspace.
+	 * 
+	 * @param workspace the workspace of the build
+	 * @param owner identifies the build which leased the ports
+	 * @return the number of released ports
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static int release(FilePath workspace, String owner) throws IOException, InterruptedException {
+		return workspace.act(new ReleaseCallable(owner));
+	}
+	
+	private static class LeaseCallable implements FileCallable<Integer> {
+
+		private static final long serialVersionUID = -5096213640285932817L;
+		
+		private final int firstPort;
+		private final int range;
+		private final int count;
+		private final String owner;
+		
+		public LeaseCallable(int firstPort, int range, int count, String owner) {
+			this.firstPort = firstPort;
+			this.range = range;
+			this.count = count;
+			this.owner = owner;
+		}
+
+		@Override
+		public Integer invoke(File f, VirtualChannel channel) throws IOException {
+			return lease(firstPort, range, count, owner);
+		}
+		
+		@Override
+		public void checkRoles(RoleChecker checker) throws SecurityException {
+			// Nothing to do
+		}
+	}
+	
+	private static class ReleaseCallable implements FileCallable<Integer> {
+
+		private static final long serialVersionUID = 3362950474125083461L;
+		
+		private final String owner;
+		
+		public ReleaseCallable(String owner) {
+			this.owner = owner;
+		}
+
+		@Override
+		public Integer invoke(File f, VirtualChannel channel) {
+			return release(owner);
+		}
+		
+		@Override
+		public void checkRoles(RoleChecker checker) throws SecurityException {
+			// Nothing to do
+		}
+	}
+}
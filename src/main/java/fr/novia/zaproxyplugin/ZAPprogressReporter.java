@@ -0,0 +1,165 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.io.PrintStream;
+
+/**
+ * Logs the progress of a scan polled regularly. A line is only printed when the progress moved by at least
+ * a step, when the number of alerts or of messages moved by at least a step and by a part of the last printed 
+ * number, when the first alert is raised, or when nothing was printed for a heartbeat period.
+ * The polls which didn't print anything are collapsed in the next printed line, so a scan of several
+ * hours doesn't fill the build console with identical lines.
+ * 
+ */
+public class ZAPprogressReporter {
+
+	/** Minimum move of the progress, in percent, to print a line */
+	private static final int PROGRESS_STEP = 10;
+	
+	/** Minimum move of the number of alerts and of messages, in percent of the last printed number, to print a line */
+	private static final int COUNT_STEP_PERCENT = 10;
+	
+	/** Minimum move of the number of alerts to print a line */
+	private static final long ALERTS_STEP = 10;
+	
+	/** Minimum move of the number of messages to print a line */
+	private static final long MESSAGES_STEP = 1000;
+	
+	private final PrintStream logger;
+	
+	/** Name of the polled phase (e.g. "scan", "spider") */
+	private final String phase;
+	
+	private final long heartbeatInMs;
+	
+	private int lastProgress = -1;
+	
+	private String lastStatus;
+	
+	private String lastAlerts;
+	
+	private String lastMessages;
+	
+	private long lastPrintTime;
+	
+	/** Number of polls since the last printed line */
+	private int skippedPolls;
+	
+	/**
+	 * @param logger the logger of the build
+	 * @param phase the name of the polled phase
+	 * @param heartbeatInMs the maximum time between two printed lines
+	 */
+	public ZAPprogressReporter(PrintStream logger, String phase, long heartbeatInMs) {
+		this.logger = logger;
+		this.phase = phase;
+		this.heartbeatInMs = heartbeatInMs;
+	}
+	
+	/**
+	 * Report the state of a poll of a phase with a progress in percent.
+	 * 
+	 * @param progress the progress of the phase (0 to 100)
+	 * @param alerts the number of alerts
+	 * @param messages the number of messages, null if not relevant for the phase
+	 */
+	public void report(int progress, String alerts, String messages) {
+		boolean progressMoved = lastProgress < 0 || progress >= 100 || progress - lastProgress >= PROGRESS_STEP;
+		if(progressMoved || hasCountsMoved(alerts, messages) || isHeartbeatDue()) {
+			print(progress + "%", alerts, messages);
+			lastProgress = progress;
+		} else {
+			skippedPolls++;
+		}
+	}
+	
+	/**
+	 * Report the state of a poll of a phase with a textual status (e.g. "running").
+	 * 
+	 * @param status the status of the phase
+	 * @param alerts the number of alerts
+	 * @param messages the number of messages, null if not relevant for the phase
+	 */
+	public void report(String status, String alerts, String messages) {
+		if(!status.equals(lastStatus) || hasCountsMoved(alerts, messages) || isHeartbeatDue()) {
+			print(status, alerts, messages);
+			lastStatus = status;
+		} else {
+			skippedPolls++;
+		}
+	}
+	
+	private boolean hasCountsMoved(String alerts, String messages) {
+		return hasCountMoved(lastAlerts, alerts, ALERTS_STEP) || hasCountMoved(lastMessages, messages, MESSAGES_STEP);
+	}
+	
+	/**
+	 * @param last the last printed number, null if none
+	 * @param current the current number, null if not relevant for the phase
+	 * @param step the minimum absolute move
+	 * @return true if current moved from last by at least step and {@link #COUNT_STEP_PERCENT} of last, or last is 0
+	 */
+	static boolean hasCountMoved(String last, String current, long step) {
+		if(current == null || current.equals(last)) {
+			return false;
+		}
+		long lastCount;
+		long currentCount;
+		try {
+			lastCount = Long.parseLong(last);
+			currentCount = Long.parseLong(current);
+		} catch (NumberFormatException e) {
+			// Not a number (e.g. the status is unknown), any change is printed
+			return true;
+		}
+		if(lastCount == 0) {
+			return true;
+		}
+		return Math.abs(currentCount - lastCount) >= Math.max(step, lastCount * COUNT_STEP_PERCENT / 100);
+	}
+	
+	private boolean isHeartbeatDue() {
+		return System.currentTimeMillis() - lastPrintTime >= heartbeatInMs;
+	}
+	
+	private void print(String status, String alerts, String messages) {
+		StringBuilder line = new StringBuilder();
+		line.append("Status ").append(phase).append(" = ").append(status);
+		line.append(" | Alerts number = ").append(alerts);
+		if(messages != null) {
+			line.append(" | Messages number = ").append(messages);
+		}
+		if(skippedPolls > 0) {
+			line.append(" (").append(skippedPolls).append(" polls without change)");
+		}
+		logger.println(line.toString());
+		
+		lastAlerts = alerts;
+		lastMessages = messages;
+		lastPrintTime = System.currentTimeMillis();
+		skippedPolls = 0;
+	}
+}
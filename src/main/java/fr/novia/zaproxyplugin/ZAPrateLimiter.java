@@ -0,0 +1,228 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares a budget of requests per second toward a target host between the ZAP daemons of the builds of a machine, 
+ * so concurrent scans of a shared backend don't overload it. The budget of a host is split evenly between the 
+ * builds scanning it, and each build turns its share into the threads and the delay of the ZAP scanner.
+ * The spider has no delay, it's paused when it's ahead of the share. The Ajax spider isn't limited, 
+ * its rate only depends on its number of browsers.
+ * <p>
+ * The shares are kept in the JVM of the build's machine, the share of a build changes when other builds start 
+ * or finish a scan of the same host.
+ * 
+ */
+public class ZAPrateLimiter {
+	
+	static final String CONFIG_SCANNER_DELAY = "scanner.delayInMs";
+	
+	/** Key of the limit applied to the hosts without their own limit */
+	private static final String ANY_HOST = "*";
+	
+	/** A scanner thread is given for each block of this number of requests per second */
+	private static final int REQUESTS_PER_THREAD = 10;
+	
+	private static final int MAX_THREADS = 10;
+	
+	/** Shares of the builds scanning each host */
+	private static final Map<String, List<Share>> SHARES = new HashMap<String, List<Share>>();
+	
+	private ZAPrateLimiter() {
+	}
+	
+	/**
+	 * Find the limit of a target in the limits configured for the build.
+	 * 
+	 * @param limits the limits, one {@code host=requests per second} per line, {@code *} for any host
+	 * @param targetURL the URL of the target
+	 * @return the limit of the target host in requests per second, 0 if it has no limit
+	 */
+	public static int findLimit(String limits, String targetURL) {
+		String host = getHost(targetURL);
+		if(limits == null || host == null) {
+			return 0;
+		}
+		int anyHostLimit = 0;
+		for(String line : limits.split("[\\r\\n]+")) {
+			int separator = line.indexOf('=');
+			if(separator < 0) {
+				continue;
+			}
+			String key = line.substring(0, separator).trim().toLowerCase();
+			int limit;
+			try {
+				limit = Integer.parseInt(line.substring(separator + 1).trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid request rate limit [" + line.trim() + "]");
+			}
+			if(key.equals(host)) {
+				return Math.max(limit, 0);
+			} else if(key.equals(ANY_HOST)) {
+				anyHostLimit = Math.max(limit, 0);
+			}
+		}
+		return anyHostLimit;
+	}
+	
+	/**
+	 * @param url an URL
+	 * @return the host of the URL in lower case, null if the URL is invalid
+	 */
+	static String getHost(String url) {
+		try {
+			return new URL(url).getHost().toLowerCase();
+		} catch (MalformedURLException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Take a share of the budget of a host for a scan.
+	 * 
+	 * @param targetURL the URL of the target
+	 * @param limit the budget of the host in requests per second
+	 * @return the share of the scan, to release once the scan is over
+	 */
+	public static synchronized Share acquire(String targetURL, int limit) {
+		String host = getHost(targetURL);
+		List<Share> shares = SHARES.get(host);
+		if(shares == null) {
+			shares = new ArrayList<Share>();
+			SHARES.put(host, shares);
+		}
+		Share share = new Share(host, limit);
+		shares.add(share);
+		return share;
+	}
+	
+	/**
+	 * Add the ZAP options of the share a new scan of a host would get to the command line of ZAP, 
+	 * unless they are already set.
+	 * 
+	 * @param cmd the command line of ZAP
+	 * @param targetURL the URL of the target
+	 * @param limit the budget of the host in requests per second
+	 * @return the requests per second of the share
+	 */
+	public static synchronized int applyTo(List<String> cmd, String targetURL, int limit) {
+		List<Share> shares = SHARES.get(getHost(targetURL));
+		int rate = computeRate(limit, shares == null ? 1 : shares.size() + 1);
+		ZAPlaunchProfile.addConfig(cmd, ZAPlaunchProfile.CONFIG_SCANNER_THREADS, getThreads(rate));
+		ZAPlaunchProfile.addConfig(cmd, CONFIG_SCANNER_DELAY, getDelayInMs(rate));
+		ZAPlaunchProfile.addConfig(cmd, ZAPlaunchProfile.CONFIG_SPIDER_THREADS, getThreads(rate));
+		return rate;
+	}
+	
+	private static int computeRate(int limit, int sharing) {
+		return Math.max(1, limit / Math.max(sharing, 1));
+	}
+	
+	/**
+	 * @param rate the requests per second of a scan
+	 * @return the number of threads of the scanner
+	 */
+	static int getThreads(int rate) {
+		return Math.max(1, Math.min(MAX_THREADS, (rate + REQUESTS_PER_THREAD - 1) / REQUESTS_PER_THREAD));
+	}
+	
+	/**
+	 * @param rate the requests per second of a scan
+	 * @return the delay of each thread of the scanner between two requests, in milliseconds
+	 */
+	static int getDelayInMs(int rate) {
+		return getThreads(rate) * 1000 / rate;
+	}
+	
+	/**
+	 * @param rate the requests per second of a scan
+	 * @param requests the number of requests sent since the start
+	 * @param elapsedInMs the time elapsed since the start
+	 * @return the pause needed to bring the average rate since the start back to rate, 0 if the rate isn't exceeded
+	 */
+	static long getPauseInMs(int rate, int requests, long elapsedInMs) {
+		if(rate <= 0) {
+			return 0;
+		}
+		return Math.max(0, requests * 1000L / rate - elapsedInMs);
+	}
+	
+	/**
+	 * The share of the budget of a host taken by a scan.
+	 */
+	public static class Share {
+		
+		private final String host;
+		
+		private final int limit;
+		
+		private final long startTime = System.currentTimeMillis();
+		
+		private Share(String host, int limit) {
+			this.host = host;
+			this.limit = limit;
+		}
+		
+		/**
+		 * @return the requests per second of this share, which depends on the number of scans of the host
+		 */
+		public int getRate() {
+			synchronized (ZAPrateLimiter.class) {
+				List<Share> shares = SHARES.get(host);
+				return computeRate(limit, shares == null ? 1 : shares.size());
+			}
+		}
+		
+		public String getHost() {
+			return host;
+		}
+		
+		/**
+		 * @return the time of the beginning of the share
+		 */
+		public long getStartTime() {
+			return startTime;
+		}
+		
+		/**
+		 * Give the share back to the other scans of the host.
+		 */
+		public void release() {
+			synchronized (ZAPrateLimiter.class) {
+				List<Share> shares = SHARES.get(host);
+				if(shares != null && shares.remove(this) && shares.isEmpty()) {
+					SHARES.remove(host);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import jenkins.model.RunAction2;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Serves the compressed reports of a build. The reports are kept compressed in the build directory and 
+ * decompressed on the fly, only when the browser can't do it itself.
+ * 
+ */
+public class ZAPreportAction implements RunAction2 {
+	
+	/** Directory of the compressed reports in the build directory */
+	static final String REPORTS_DIR = "zaproxy-reports";
+	
+	/** Extension of the compressed reports */
+	static final String COMPRESSED_EXTENSION = ".gz";
+	
+	/** 
+	 * Property of the Content-Security-Policy of the files served by Jenkins (e.g. the archived artifacts), 
+	 * also used for the reports, which contain the attacks of ZAP.
+	 */
+	static final String CSP_PROPERTY_NAME = "hudson.model.DirectoryBrowserSupport.CSP";
+	
+	/** Default Content-Security-Policy of the files served by Jenkins */
+	static final String DEFAULT_CSP = "sandbox; default-src 'none'; img-src 'self'; style-src 'self';";
+	
+	/** Names of the compressed reports, in the reports directory */
+	private final List<String> filenames;
+	
+	private transient Run<?, ?> run;
+	
+	public ZAPreportAction(List<String> filenames) {
+		this.filenames = new ArrayList<String>(filenames);
+	}
+	
+	/**
+	 * Copy the compressed reports written in the workspace by the scan to the build directory, 
+	 * and add their action to the build.
+	 * 
+	 * @param run the build
+	 * @param workspace the workspace of the build
+	 * @param plan the scan which wrote the reports
+	 * @param listener the listener to display log during the job execution in jenkins
+	 */
+	public static void attach(Run<?, ?> run, FilePath workspace, ZAPscanPlan plan, TaskListener listener) {
+		if(!plan.getCompressReports()) {
+			return;
+		}
+		List<String> copied = new ArrayList<String>();
+		try {
+			File reportsDir = new File(run.getRootDir(), REPORTS_DIR);
+			for(String reportFilename : plan.getReportFilenames()) {
+				FilePath report = workspace.child(reportFilename);
+				if(report.exists()) {
+					report.copyTo(new FilePath(new File(reportsDir, report.getName())));
+					copied.add(report.getName());
+				}
+			}
+		} catch (IOException e) {
+			listener.error(ExceptionUtils.getStackTrace(e));
+		} catch (InterruptedException e) {
+			listener.error(ExceptionUtils.getStackTrace(e));
+		}
+		
+		if(!copied.isEmpty()) {
+			// Several steps of a Pipeline can write reports
+			ZAPreportAction action = run.getAction(ZAPreportAction.class);
+			if(action == null) {
+				run.addAction(new ZAPreportAction(copied));
+			} else {
+				action.addFilenames(copied);
+			}
+		}
+	}
+	
+	private synchronized void addFilenames(List<String> added) {
+		for(String filename : added) {
+			if(!filenames.contains(filename)) {
+				filenames.add(filename);
+			}
+		}
+	}
+	
+	public synchronized List<String> getFilenames() {
+		return Collections.unmodifiableList(new ArrayList<String>(filenames));
+	}
+	
+	/**
+	 * @param filename the name of a compressed report
+	 * @return the name of the report once decompressed
+	 */
+	public String getDecompressedName(String filename) {
+		return filename.endsWith(COMPRESSED_EXTENSION) ? filename.substring(0, filename.length() - COMPRESSED_EXTENSION.length()) : filename;
+	}
+	
+	public Run<?, ?> getRun() {
+		return run;
+	}
+	
+	/**
+	 * Serve a report, at the URL of its decompressed name.
+	 */
+	public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		String name = req.getRestOfPath().replaceFirst("^/", "");
+		String filename = name + COMPRESSED_EXTENSION;
+		if(!getFilenames().contains(filename)) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		
+		rsp.setContentType(getContentType(name));
+		// The reports contain the payloads of the attacks, they mustn't run in the pages of Jenkins
+		String csp = System.getProperty(CSP_PROPERTY_NAME, DEFAULT_CSP);
+		if(csp.length() > 0) {
+			rsp.setHeader("Content-Security-Policy", csp);
+			rsp.setHeader("X-WebKit-CSP", csp);
+			rsp.setHeader("X-Content-Security-Policy", csp);
+		}
+		rsp.setHeader("X-Content-Type-Options", "nosniff");
+		InputStream in = new BufferedInputStream(new FileInputStream(new File(new File(run.getRootDir(), REPORTS_DIR), filename)));
+		try {
+			String acceptEncoding = req.getHeader("Accept-Encoding");
+			if(acceptEncoding != null && acceptEncoding.contains("gzip")) {
+				// The browser decompresses the report
+				rsp.setHeader("Content-Encoding", "gzip");
+			} else {
+				in = new GZIPInputStream(in);
+			}
+			OutputStream out = rsp.getOutputStream();
+			IOUtils.copy(in, out);
+			out.flush();
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static String getContentType(String name) {
+		if(name.endsWith(".html")) {
+			return "text/html;charset=UTF-8";
+		} else if(name.endsWith(".xml")) {
+			return "application/xml;charset=UTF-8";
+		} else if(name.endsWith(".json") || name.endsWith(".sarif")) {
+			return "application/json;charset=UTF-8";
+		}
+		return "text/plain;charset=UTF-8";
+	}
+	
+	@Override
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+	
+	@Override
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+	
+	@Override
+	public String getIconFileName() {
+		return "document.png";
+	}
+	
+	@Override
+	public String getDisplayName() {
+		return "ZAProxy Reports";
+	}
+	
+	@Override
+	public String getUrlName() {
+		return "zaproxy-reports";
+	}
+}
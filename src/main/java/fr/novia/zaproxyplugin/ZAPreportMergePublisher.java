@@ -0,0 +1,113 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractProject;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.BuildStepMonitor;
+import hudson.tasks.Publisher;
+import hudson.tasks.Recorder;
+
+import java.io.IOException;
+
+import jenkins.tasks.SimpleBuildStep;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Post-build action merging the ZAP XML reports of a build into one consolidated report, e.g. the reports 
+ * of the cells of a matrix job copied in the workspace or of the parallel branches of a Pipeline, and 
+ * summarizing its alerts on the build's page. The summary of the merged report replaces the summaries 
+ * of the scans of the build, so their alerts aren't counted twice.
+ * <p>
+ * In a Pipeline : <code>step([$class: 'ZAPreportMergePublisher', reports: 'reports/**&#47;*.xml'])</code>
+ * 
+ */
+public class ZAPreportMergePublisher extends Recorder implements SimpleBuildStep {
+	
+	/** Default merged report, relative to the workspace */
+	static final String DEFAULT_MERGED_REPORT = "zaproxy-merged-report.xml";
+	
+	/** The reports to merge, an Ant pattern relative to the workspace */
+	private final String reports;
+	
+	/** The merged report, relative to the workspace */
+	private final String mergedReport;
+	
+	@DataBoundConstructor
+	public ZAPreportMergePublisher(String reports, String mergedReport) {
+		this.reports = reports;
+		this.mergedReport = mergedReport == null || mergedReport.trim().isEmpty() ? DEFAULT_MERGED_REPORT : mergedReport.trim();
+	}
+	
+	public String getReports() {
+		return reports;
+	}
+	
+	public String getMergedReport() {
+		return mergedReport;
+	}
+	
+	@Override
+	public void perform(Run<?, ?> run, FilePath workspace, Launcher launcher, TaskListener listener) throws InterruptedException {
+		if(reports == null || reports.trim().isEmpty()) {
+			return;
+		}
+		try {
+			listener.getLogger().println(workspace.act(new ZAPreportMerger.MergeCallable(reports.trim(), mergedReport, true)));
+			ZAPscanSummaryAction.replace(run, workspace, listener);
+		} catch (IOException e) {
+			// The reports are kept, the build is marked unstable instead of failed
+			listener.error(ExceptionUtils.getStackTrace(e));
+			run.setResult(Result.UNSTABLE);
+		}
+	}
+	
+	@Override
+	public BuildStepMonitor getRequiredMonitorService() {
+		return BuildStepMonitor.NONE;
+	}
+	
+	@Extension
+	public static final class DescriptorImpl extends BuildStepDescriptor<Publisher> {
+		
+		@Override
+		public boolean isApplicable(Class<? extends AbstractProject> aClass) {
+			return true;
+		}
+		
+		@Override
+		public String getDisplayName() {
+			return "Merge ZAProxy XML reports";
+		}
+	}
+}
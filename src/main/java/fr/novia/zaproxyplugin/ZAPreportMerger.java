@@ -0,0 +1,492 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import fr.novia.zaproxyplugin.report.ZAPalertFilter;
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.remoting.VirtualChannel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.jenkinsci.remoting.RoleChecker;
+
+/**
+ * Merges ZAP XML reports, e.g. of the cells of a matrix job, of the parallel branches of a Pipeline or 
+ * of the shards of a scan, into one report. The alerts found by several reports are kept once.
+ * <p>
+ * The reports are read and written as streams of XML events, only the fields of an alert and one of its 
+ * instances are in memory at a time, whatever the number of instances of the alert, and the duplicates are found with the fingerprints of the alerts (see {@link ZAPalertFingerprints}), 
+ * 8 bytes by distinct alert. The sites of the reports are written one after the other, a site found by 
+ * several reports appears several times. The reports with the extension <code>.gz</code> are read and 
+ * written compressed. The alerts left out by a filter (e.g. the suppressed false positives) are dropped, 
+ * so merging a single report filters it.
+ * 
+ */
+public class ZAPreportMerger {
+	
+	private static final String ROOT = "OWASPZAPReport";
+	private static final String ALERT_ITEM = "alertitem";
+	private static final String INSTANCES = "instances";
+	private static final String INSTANCE = "instance";
+	private static final String COUNT = "count";
+	
+	private static final String COMPRESSED_EXTENSION = ".gz";
+	
+	/** Risks of the ZAP reports by riskcode */
+	private static final List<String> RISKS_BY_CODE = Arrays.asList("Informational", "Low", "Medium", "High");
+	
+	private final XMLInputFactory inputFactory;
+	
+	private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+	
+	private final XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+	
+	private final FingerprintSet seen = new FingerprintSet();
+	
+	/** Alerts to drop, can be null */
+	private final ZAPalertFilter filter;
+	
+	private final ZAPscanSummary summary = new ZAPscanSummary(System.currentTimeMillis());
+	
+	private int alertCount;
+	
+	private int duplicateCount;
+	
+	private int suppressedCount;
+	
+	public ZAPreportMerger() {
+		this(null);
+	}
+	
+	/**
+	 * @param filter the alerts to drop. Can be null.
+	 */
+	public ZAPreportMerger(ZAPalertFilter filter) {
+		this.filter = filter;
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		// The reports can come from any build, their DTD and external entities aren't resolved
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+	
+	/**
+	 * Merge reports into one.
+	 * 
+	 * @param reports the ZAP XML reports to merge
+	 * @param mergedReport the merged report to write
+	 * @throws IOException if a report can't be read or isn't a ZAP XML report
+	 */
+	public void merge(List<File> reports, File mergedReport) throws IOException {
+		OutputStream out = open(mergedReport);
+		try {
+			XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+			writer.add(eventFactory.createStartDocument("UTF-8", "1.0"));
+			writer.add(eventFactory.createStartElement("", "", ROOT));
+			writer.add(eventFactory.createAttribute("generated", new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss").format(new Date())));
+			for(File report : reports) {
+				mergeReport(report, writer);
+			}
+			writer.add(eventFactory.createEndElement("", "", ROOT));
+			writer.add(eventFactory.createEndDocument());
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Unable to write the merged report [" + mergedReport + "]", e);
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Copy the sites of a report to the merged report, without the alerts already merged.
+	 */
+	private void mergeReport(File report, XMLEventWriter writer) throws IOException, XMLStreamException {
+		InputStream in = report.getName().endsWith(COMPRESSED_EXTENSION) 
+				? new GZIPInputStream(new BufferedInputStream(new FileInputStream(report)))
+				: new BufferedInputStream(new FileInputStream(report));
+		try {
+			XMLEventReader reader = inputFactory.createXMLEventReader(in);
+			int depth = 0;
+			AlertItemWriter alertItem = null;
+			int alertItemDepth = 0;
+			while(reader.hasNext()) {
+				XMLEvent event = reader.nextEvent();
+				if(event.isStartElement()) {
+					depth++;
+					if(depth == 1) {
+						if(!ROOT.equals(event.asStartElement().getName().getLocalPart())) {
+							throw new IOException("[" + report + "] isn't a ZAP XML report");
+						}
+						copyVersion(event.asStartElement(), writer);
+						continue;
+					}
+					if(alertItem == null && ALERT_ITEM.equals(event.asStartElement().getName().getLocalPart())) {
+						alertItem = new AlertItemWriter(writer);
+						alertItemDepth = depth;
+					}
+				}
+				
+				if(depth >= 2 && alertItem != null) {
+					alertItem.add(event);
+				} else if(depth >= 2) {
+					writer.add(event);
+				}
+				
+				if(event.isEndElement()) {
+					if(alertItem != null && depth == alertItemDepth) {
+						alertItem.finish();
+						alertItem = null;
+					}
+					depth--;
+				}
+			}
+			reader.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("[" + report + "] isn't a valid ZAP XML report", e);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * The version of ZAP of the first report is the version of the merged report.
+	 */
+	private boolean versionCopied;
+	
+	private void copyVersion(StartElement root, XMLEventWriter writer) throws XMLStreamException {
+		if(versionCopied) {
+			return;
+		}
+		Attribute version = root.getAttributeByName(new javax.xml.namespace.QName("version"));
+		if(version != null) {
+			writer.add(eventFactory.createAttribute("version", version.getValue()));
+		}
+		versionCopied = true;
+	}
+	
+	/**
+	 * Writes an alert item without its instances suppressed or already merged. The instances are streamed : 
+	 * only the fields of the alert, before its instances, are kept until its first instance is written, then 
+	 * each instance is kept until its end, to decide whether it's written. The count of the alert is written 
+	 * after its instances, with the number of instances written. An alert item without instances (ZAP 2.4) 
+	 * is a single instance, written once read. An alert item whose instances are all left out isn't written.
+	 */
+	private class AlertItemWriter {
+		
+		private final XMLEventWriter writer;
+		
+		/** Names of the elements from the alert item to the current event */
+		private final List<String> path = new ArrayList<String>();
+		
+		/** Events of the alert up to its first instance written, null once written */
+		private List<XMLEvent> header = new ArrayList<XMLEvent>();
+		
+		private final Map<String, String> fields = new HashMap<String, String>();
+		
+		private boolean hasInstances;
+		
+		/** Events and fields of the current instance */
+		private List<XMLEvent> instance;
+		private final Map<String, String> instanceFields = new HashMap<String, String>();
+		
+		private int kept;
+		
+		private AlertItemWriter(XMLEventWriter writer) {
+			this.writer = writer;
+		}
+		
+		private void add(XMLEvent event) throws XMLStreamException {
+			if(event.isStartElement()) {
+				path.add(event.asStartElement().getName().getLocalPart());
+				if(path.size() == 2 && INSTANCES.equals(path.get(1))) {
+					hasInstances = true;
+				} else if(isInstance(path)) {
+					instance = new ArrayList<XMLEvent>();
+					instanceFields.clear();
+				}
+			} else if(event.isCharacters()) {
+				if(path.size() == 2) {
+					fields.put(path.get(1), event.asCharacters().getData());
+				} else if(path.size() == 4 && INSTANCE.equals(path.get(2))) {
+					instanceFields.put(path.get(3), event.asCharacters().getData());
+				}
+			}
+			
+			if(path.size() >= 2 && COUNT.equals(path.get(1))) {
+				// Written after the instances
+			} else if(path.size() >= 3 && INSTANCES.equals(path.get(1)) && INSTANCE.equals(path.get(2))) {
+				instance.add(event);
+				if(event.isEndElement() && path.size() == 3) {
+					mergeInstance();
+				}
+			} else if(path.size() == 2 && INSTANCES.equals(path.get(1)) && event.isCharacters()) {
+				// The blanks between the instances, which can be all left out
+			} else if(header != null) {
+				header.add(event);
+			} else {
+				writer.add(event);
+				if(event.isEndElement() && path.size() == 2 && INSTANCES.equals(path.get(1))) {
+					writer.add(eventFactory.createStartElement("", "", COUNT));
+					writer.add(eventFactory.createCharacters(String.valueOf(kept)));
+					writer.add(eventFactory.createEndElement("", "", COUNT));
+				}
+			}
+			
+			if(event.isEndElement()) {
+				path.remove(path.size() - 1);
+			}
+		}
+		
+		private void mergeInstance() throws XMLStreamException {
+			List<XMLEvent> events = instance;
+			instance = null;
+			String pluginId = fields.get("pluginid");
+			alertCount++;
+			if(isSuppressed(pluginId, instanceFields.get("uri"), instanceFields.get("param"))) {
+				return;
+			}
+			if(!seen.add(ZAPalertFingerprints.fingerprint(pluginId, instanceFields.get("uri"), instanceFields.get("param")))) {
+				duplicateCount++;
+				return;
+			}
+			addToSummary();
+			kept++;
+			writeHeader();
+			for(XMLEvent event : events) {
+				writer.add(event);
+			}
+		}
+		
+		/**
+		 * Called after the end element of the alert item.
+		 */
+		private void finish() throws XMLStreamException {
+			if(hasInstances) {
+				// Written with its first instance kept, or all left out
+				return;
+			}
+			String pluginId = fields.get("pluginid");
+			alertCount++;
+			if(isSuppressed(pluginId, fields.get("uri"), fields.get("param"))) {
+				return;
+			}
+			if(!seen.add(ZAPalertFingerprints.fingerprint(pluginId, fields.get("uri"), fields.get("param")))) {
+				duplicateCount++;
+				return;
+			}
+			addToSummary();
+			writeHeader();
+		}
+		
+		private void addToSummary() {
+			String name = fields.containsKey("alert") ? fields.get("alert") : fields.get("name");
+			summary.addAlert(fields.get("pluginid"), name, getRisk(fields.get("riskcode")));
+		}
+		
+		private void writeHeader() throws XMLStreamException {
+			if(header == null) {
+				return;
+			}
+			for(XMLEvent event : header) {
+				writer.add(event);
+			}
+			header = null;
+		}
+	}
+	
+	private boolean isSuppressed(String pluginId, String url, String param) {
+		if(filter != null && filter.isSuppressed(pluginId, url, param)) {
+			suppressedCount++;
+			return true;
+		}
+		return false;
+	}
+	
+	private static boolean isInstance(List<String> path) {
+		return path.size() == 3 && INSTANCES.equals(path.get(1)) && INSTANCE.equals(path.get(2));
+	}
+	
+	private static String getRisk(String riskCode) {
+		try {
+			return RISKS_BY_CODE.get(Integer.parseInt(riskCode.trim()));
+		} catch (RuntimeException e) {
+			// Missing or unknown, counted as informational by the summary
+			return null;
+		}
+	}
+	
+	private static OutputStream open(File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		return file.getName().endsWith(COMPRESSED_EXTENSION) ? new GZIPOutputStream(out) : out;
+	}
+	
+	/**
+	 * @return the summary of the alerts of the merged report
+	 */
+	public ZAPscanSummary getSummary() {
+		return summary;
+	}
+	
+	/**
+	 * @return the number of alerts of the reports, with the duplicates
+	 */
+	public int getAlertCount() {
+		return alertCount;
+	}
+	
+	/**
+	 * @return the number of alerts found by several reports, kept once
+	 */
+	public int getDuplicateCount() {
+		return duplicateCount;
+	}
+	
+	/**
+	 * @return the number of alerts dropped by the filter
+	 */
+	public int getSuppressedCount() {
+		return suppressedCount;
+	}
+	
+	/**
+	 * Set of fingerprints with open addressing, 8 bytes by fingerprint instead of the 50 of a set of Long.
+	 */
+	private static class FingerprintSet {
+		private long[] table = new long[1024];
+		private int size;
+		private boolean containsZero;
+		
+		/**
+		 * @return false if the fingerprint was already in the set
+		 */
+		private boolean add(long fingerprint) {
+			if(fingerprint == 0) {
+				boolean added = !containsZero;
+				containsZero = true;
+				return added;
+			}
+			if(size * 2 >= table.length) {
+				long[] old = table;
+				table = new long[old.length * 2];
+				size = 0;
+				for(long f : old) {
+					if(f != 0) {
+						add(f);
+					}
+				}
+			}
+			int mask = table.length - 1;
+			int i = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+			while(table[i] != 0) {
+				if(table[i] == fingerprint) {
+					return false;
+				}
+				i = (i + 1) & mask;
+			}
+			table[i] = fingerprint;
+			size++;
+			return true;
+		}
+	}
+	
+	/**
+	 * Merges the reports of a workspace on the build's machine.
+	 */
+	static class MergeCallable implements FileCallable<String> {
+		private static final long serialVersionUID = -6094853437610958466L;
+		
+		private final String reports;
+		private final String mergedReport;
+		private final boolean writeSummary;
+		
+		/**
+		 * @param reports the reports to merge, an Ant pattern relative to the workspace
+		 * @param mergedReport the merged report, relative to the workspace
+		 * @param writeSummary write the summary of the merged report in the workspace, for the build's action
+		 */
+		MergeCallable(String reports, String mergedReport, boolean writeSummary) {
+			this.reports = reports;
+			this.mergedReport = mergedReport;
+			this.writeSummary = writeSummary;
+		}
+		
+		@Override
+		public String invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+			File merged = new File(workspace, mergedReport);
+			List<File> files = new ArrayList<File>();
+			for(FilePath report : new FilePath(workspace).list(reports)) {
+				File file = new File(report.getRemote());
+				// The merged report of a previous build can match the pattern
+				if(!file.getCanonicalFile().equals(merged.getCanonicalFile())) {
+					files.add(file);
+				}
+			}
+			if(files.isEmpty()) {
+				return "No report matches [" + reports + "]";
+			}
+			
+			ZAPreportMerger merger = new ZAPreportMerger();
+			merged.getParentFile().mkdirs();
+			merger.merge(files, merged);
+			if(writeSummary) {
+				merger.getSummary().write(new File(workspace, ZAPscanSummary.FILENAME));
+			}
+			return files.size() + " reports merged into [" + merged + "] : " + merger.getAlertCount() + " alerts, " 
+					+ merger.getDuplicateCount() + " duplicates removed";
+		}
+		
+		@Override
+		public void checkRoles(RoleChecker checker) throws SecurityException {
+			// Nothing to do
+		}
+	}
+}
@@ -30,13 +30,10 @@ import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.FilePath.FileCallable;
-import hudson.Launcher;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.BuildListener;
 import hudson.model.EnvironmentSpecific;
 import hudson.model.AbstractBuild;
-import hudson.model.AbstractProject;
-import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.JDK;
 import hudson.model.Node;
@@ -53,11 +50,6 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException; 
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
-import java.net.URLEncoder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -70,14 +62,9 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.apache.commons.lang.exception.ExceptionUtils;
-import org.apache.tools.ant.BuildException;
 import org.jenkinsci.remoting.RoleChecker;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
-import org.zaproxy.clientapi.core.ApiResponse;
-import org.zaproxy.clientapi.core.ApiResponseElement;
-import org.zaproxy.clientapi.core.ClientApi;
-import org.zaproxy.clientapi.core.ClientApiException;
  
 
 /**
@@ -91,9 +78,15 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 
 	private static final long serialVersionUID = 3381268691497579059L;
 
-	private static final String API_KEY = "ZAPROXY-PLUGIN";
+	static final String API_KEY = "ZAPROXY-PLUGIN";
 	
 	private static final int MILLISECONDS_IN_SECOND = 1000;
+	static final int DEFAULT_SEED_CONCURRENCY = 4;
+	static final String DEFAULT_ZAP_LOG_FILENAME = "zap.log";
+	static final int DEFAULT_ZAP_LOG_MAX_SIZE_IN_MB = 10;
+	static final int DEFAULT_PROGRESS_HEARTBEAT_IN_SEC = 60;
+	private static final int DEFAULT_PORT_LEASE_RANGE = 100;
+	static final int DEFAULT_ZAP_MEMORY_PERCENT = 50;
 	public static final String FILE_POLICY_EXTENSION = ".policy";
 	public static final String FILE_SESSION_EXTENSION = ".session";
 	public static final String NAME_POLICIES_DIR_ZAP = "policies";
@@ -114,8 +107,11 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 //	public static final String CMD_LINE_PORT = CommandLine.PORT;
 //	public static final String CMD_LINE_DAEMON = CommandLine.DAEMON;
 	
-	private static final String ZAP_PROG_NAME_BAT = "zap.bat";
-	private static final String ZAP_PROG_NAME_SH = "zap.sh";
+	static final String ZAP_PROG_NAME_BAT = "zap.bat";
+	static final String ZAP_PROG_NAME_SH = "zap.sh";
+	
+	/** Browsers supported by the AjaxSpider. The first ones are headless */
+	private static final String[] AJAX_SPIDER_BROWSERS = { "htmlunit", "phantomjs", "firefox", "chrome" };
 
 
 	
@@ -201,21 +197,51 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 	/** logged in indication*/
 	private final String loggedInIndicator;
 
-	/** Id of the newly created context*/
-	private String contextId;
-
-	/** Id of the newly created user*/
-	private String userId;
-
 	/** Realize a url AjaxSpider or not by ZAProxy */
 	private final boolean ajaxSpiderURL;
 	
 	/** Realize a url AjaxSpider as user or not by ZAProxy */
 	private final boolean ajaxSpiderURLAsUser;
 	
+	/** Browser used by the AjaxSpider (htmlunit, phantomjs, firefox...) */
+	private final String ajaxSpiderBrowserId;
+	
+	/** Number of browsers crawling in parallel with the AjaxSpider. 0 means one browser per core of the build's machine */
+	private final int ajaxSpiderBrowsers;
+	
+	/** Maximum depth crawled by the AjaxSpider. 0 means unlimited */
+	private final int ajaxSpiderMaxDepth;
+	
+	/** Maximum duration of the AjaxSpider in minutes. 0 means unlimited */
+	private final int ajaxSpiderMaxDurationInMin;
+	
 	/** Realize a url scan or not by ZAProxy */
 	private final boolean scanURL;
 	
+	/** Scan only a representative sample of the URLs found, grouped by structural template */
+	private final boolean sampleURLs;
+	
+	/** Number of URLs scanned for each structural template when sampleURLs is set */
+	private final int sampleSizePerCluster;
+	
+	/** Fingerprint of the application identifying the crawl cache entry (e.g. the hash of the deployed artifact). It can contain environment variable */
+	private final String crawlCacheFingerprint;
+	
+	/** Evaluated fingerprint of the application (it's derived from the one above). Empty to disable the crawl cache */
+	private String evaluatedCrawlCacheFingerprint;
+	
+	/** Directory of the crawl cache files. It can contain a relative path to the workspace */
+	private final String crawlCacheDir;
+	
+	/** Files describing the target (OpenAPI, HAR, URL lists) to import in the site tree. Comma separated Ant patterns relative to the workspace */
+	private final String importFiles;
+	
+	/** Skip the spiders when the site tree has been seeded from the imported files */
+	private final boolean skipSpidersOnImport;
+	
+	/** Maximum number of requests sent in parallel to ZAP to seed the site tree */
+	private final int seedConcurrency;
+	
 	/** Save reports or not */
 	private final boolean saveReports;
 
@@ -250,6 +276,90 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 	
 	/** The jdk to use to start ZAProxy */
 	private final String jdk;
+	
+	/** Maximum time in seconds between two progress lines of a scan in the build console */
+	private final int progressHeartbeatInSec;
+	
+	/** Write the ZAProxy output in a rotating log file instead of the build console */
+	private final boolean zapLogToFile;
+	
+	/** Filename of the ZAProxy log file. It can contain a relative path to the workspace */
+	private final String zapLogFilename;
+	
+	/** Size of the ZAProxy log file before rotation, in MB */
+	private final int zapLogMaxSizeInMb;
+	
+	/** Regular expression of the ZAProxy log lines still displayed in the build console */
+	private final String zapLogConsolePattern;
+	
+	/** Maximum number of ZAProxy log lines displayed in the build console per minute */
+	private final int zapLogConsoleMaxLinesPerMin;
+	
+	/** Lease a free port on the build's machine from zapProxyPort, instead of always using zapProxyPort */
+	private final boolean leasePort;
+	
+	/** Number of ports which can be leased from zapProxyPort */
+	private final int portLeaseRange;
+	
+	/** Compute the heap, the GC and the threads of ZAProxy from the memory and the cores of the build's machine */
+	private final boolean autoSizeZap;
+	
+	/** Percentage of the memory of the build's machine shared by the ZAProxy instances running on it */
+	private final int zapMemoryPercent;
+	
+	/** Use a ZAP installation extracted once on the build's machine from zapArchive, instead of zapHome or toolUsed */
+	private final boolean useInstallCache;
+	
+	/** Path of the ZAP archive on the build's machine (offline install) or its URL */
+	private final String zapArchive;
+	
+	/** Expected SHA-256 of zapArchive */
+	private final String zapArchiveSha256;
+	
+	/** Paths of the add-ons to install with ZAP, on the build's machine */
+	private final String zapAddOns;
+	
+	/** Launch ZAProxy with a clone of a home directory template initialized once from zapDefaultDir */
+	private final boolean useHomeTemplate;
+	
+	/** Requests per second toward each target host, shared by the builds of the build's machine */
+	private final String requestRateLimits;
+	
+	/** Compress the reports with gzip while they're written */
+	private final boolean compressReports;
+	
+	/** Fail the build if the scan raised alerts which weren't raised by the last build which passed */
+	private final boolean failOnNewAlerts;
+	
+	/** File of the false positives suppressions, relative to the workspace */
+	private final String suppressionsFile;
+	
+	/** Regular expression found in the responses once the session is lost, the session is refreshed only then */
+	private final String loggedOutIndicator;
+	
+	/** Reuse the authenticated session in the next builds during this time, 0 to log in at each build */
+	private final int authSessionTtlInMin;
+	
+	/** Number of shards of the active scan, each one scanned by its own ZAProxy, 0 or 1 to scan on the build's machine only */
+	private final int shardCount;
+	
+	/** Label of the machines scanning the shards */
+	private final String shardLabel;
+	
+	/** Save a checkpoint of the active scan at this interval, 0 to never resume the scan */
+	private final int checkpointIntervalInMin;
+	
+	/** Stop the active scan after this duration, the next build resumes it from its checkpoint, 0 for no limit */
+	private final int scanWindowInMin;
+	
+	/** Scan in chunks, the most valuable rules and endpoints first */
+	private final boolean prioritizeScan;
+	
+	/** Minimum level of the ZAP log lines displayed in the console, empty to display only the lines matching the pattern */
+	private final String zapLogMinLevel;
+	
+	/** Create the Jira issues with a suppressions file, the suppressed alerts are deleted from ZAP first */
+	private final boolean createJirasWithSuppressions;
 
 
 	/** List of all parameters used for the
@@ -338,6 +448,64 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		this.alertMedium=alertMedium;
 		this.alertLow=alertLow;
 		this.filterIssuesByResourceType=filterIssuesByResourceType;
+		
+		this.sampleURLs=false;
+		this.sampleSizePerCluster=0;
+		
+		this.ajaxSpiderBrowserId="";
+		this.ajaxSpiderBrowsers=1;
+		this.ajaxSpiderMaxDepth=0;
+		this.ajaxSpiderMaxDurationInMin=0;
+		
+		this.crawlCacheFingerprint="";
+		this.crawlCacheDir="";
+		
+		this.importFiles="";
+		this.skipSpidersOnImport=false;
+		this.seedConcurrency=DEFAULT_SEED_CONCURRENCY;
+		
+		this.zapLogToFile=false;
+		this.zapLogFilename="";
+		this.zapLogMaxSizeInMb=0;
+		this.zapLogConsolePattern="";
+		this.zapLogConsoleMaxLinesPerMin=0;
+		
+		this.progressHeartbeatInSec=DEFAULT_PROGRESS_HEARTBEAT_IN_SEC;
+		
+		this.leasePort=false;
+		this.portLeaseRange=DEFAULT_PORT_LEASE_RANGE;
+		
+		this.autoSizeZap=false;
+		this.zapMemoryPercent=DEFAULT_ZAP_MEMORY_PERCENT;
+		
+		this.useInstallCache=false;
+		this.zapArchive="";
+		this.zapArchiveSha256="";
+		this.zapAddOns="";
+		
+		this.useHomeTemplate=false;
+		
+		this.requestRateLimits="";
+		
+		this.compressReports=false;
+		
+		this.failOnNewAlerts=false;
+		
+		this.suppressionsFile="";
+		
+		this.loggedOutIndicator="";
+		this.authSessionTtlInMin=0;
+		
+		this.shardCount=0;
+		this.shardLabel="";
+		
+		this.checkpointIntervalInMin=0;
+		this.scanWindowInMin=0;
+		this.prioritizeScan=false;
+		
+		this.zapLogMinLevel="";
+		
+		this.createJirasWithSuppressions=false;
 
 		System.out.println(this.toString());
 	}
@@ -349,7 +517,18 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 			boolean saveSession, String filenameSaveSession, String zapDefaultDir, String chosenPolicy,
 			List<ZAPcmdLine> cmdLinesZAP, String jdk, String username, String password, String usernameParameter, 
 			String passwordParameter, String extraPostData,String loginUrl, String loggedInIndicator,String scriptUsername, String scriptPassword,String scriptLoggedInIndicator, String authenticationScriptName ,
-			boolean createJiras, String projectKey,String assignee, boolean alertHigh, boolean alertMedium, boolean alertLow, boolean filterIssuesByResourceType) {
+			boolean createJiras, String projectKey,String assignee, boolean alertHigh, boolean alertMedium, boolean alertLow, boolean filterIssuesByResourceType,
+			boolean sampleURLs, int sampleSizePerCluster,
+			String ajaxSpiderBrowserId, int ajaxSpiderBrowsers, int ajaxSpiderMaxDepth, int ajaxSpiderMaxDurationInMin,
+			String crawlCacheFingerprint, String crawlCacheDir,
+			String importFiles, boolean skipSpidersOnImport, int seedConcurrency,
+			boolean zapLogToFile, String zapLogFilename, int zapLogMaxSizeInMb, String zapLogConsolePattern, int zapLogConsoleMaxLinesPerMin,
+			int progressHeartbeatInSec, boolean leasePort, int portLeaseRange, boolean autoSizeZap, int zapMemoryPercent,
+			boolean useInstallCache, String zapArchive, String zapArchiveSha256, String zapAddOns,
+			boolean useHomeTemplate, String requestRateLimits, boolean compressReports,
+			boolean failOnNewAlerts, String suppressionsFile, String loggedOutIndicator, int authSessionTtlInMin,
+			int shardCount, String shardLabel, int checkpointIntervalInMin, int scanWindowInMin,
+			boolean prioritizeScan, String zapLogMinLevel, boolean createJirasWithSuppressions) {
 		
 		this.autoInstall = autoInstall;
 		this.toolUsed = toolUsed;
@@ -398,6 +577,64 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		this.alertMedium=alertMedium;
 		this.alertLow=alertLow;
 		this.filterIssuesByResourceType=filterIssuesByResourceType;
+		
+		this.sampleURLs=sampleURLs;
+		this.sampleSizePerCluster=sampleSizePerCluster;
+		
+		this.ajaxSpiderBrowserId=ajaxSpiderBrowserId;
+		this.ajaxSpiderBrowsers=ajaxSpiderBrowsers;
+		this.ajaxSpiderMaxDepth=ajaxSpiderMaxDepth;
+		this.ajaxSpiderMaxDurationInMin=ajaxSpiderMaxDurationInMin;
+		
+		this.crawlCacheFingerprint=crawlCacheFingerprint;
+		this.crawlCacheDir=crawlCacheDir;
+		
+		this.importFiles=importFiles;
+		this.skipSpidersOnImport=skipSpidersOnImport;
+		this.seedConcurrency=seedConcurrency;
+		
+		this.zapLogToFile=zapLogToFile;
+		this.zapLogFilename=zapLogFilename;
+		this.zapLogMaxSizeInMb=zapLogMaxSizeInMb;
+		this.zapLogConsolePattern=zapLogConsolePattern;
+		this.zapLogConsoleMaxLinesPerMin=zapLogConsoleMaxLinesPerMin;
+		
+		this.progressHeartbeatInSec=progressHeartbeatInSec;
+		
+		this.leasePort=leasePort;
+		this.portLeaseRange=portLeaseRange;
+		
+		this.autoSizeZap=autoSizeZap;
+		this.zapMemoryPercent=zapMemoryPercent;
+		
+		this.useInstallCache=useInstallCache;
+		this.zapArchive=zapArchive;
+		this.zapArchiveSha256=zapArchiveSha256;
+		this.zapAddOns=zapAddOns;
+		
+		this.useHomeTemplate=useHomeTemplate;
+		
+		this.requestRateLimits=requestRateLimits;
+		
+		this.compressReports=compressReports;
+		
+		this.failOnNewAlerts=failOnNewAlerts;
+		
+		this.suppressionsFile=suppressionsFile;
+		
+		this.loggedOutIndicator=loggedOutIndicator;
+		this.authSessionTtlInMin=authSessionTtlInMin;
+		
+		this.shardCount=shardCount;
+		this.shardLabel=shardLabel;
+		
+		this.checkpointIntervalInMin=checkpointIntervalInMin;
+		this.scanWindowInMin=scanWindowInMin;
+		this.prioritizeScan=prioritizeScan;
+		
+		this.zapLogMinLevel=zapLogMinLevel;
+		
+		this.createJirasWithSuppressions=createJirasWithSuppressions;
 		System.out.println(this.toString());
 	}
 	
@@ -408,6 +645,35 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		s += "toolUsed ["+toolUsed+"]\n";
 		s+= "jdk ["+jdk+"]";
 		
+		s += "zapLogToFile ["+zapLogToFile+"]\n";
+		s += "zapLogFilename ["+zapLogFilename+"]\n";
+		s += "zapLogMaxSizeInMb ["+zapLogMaxSizeInMb+"]\n";
+		s += "zapLogConsolePattern ["+zapLogConsolePattern+"]\n";
+		s += "zapLogConsoleMaxLinesPerMin ["+zapLogConsoleMaxLinesPerMin+"]\n";
+		s += "progressHeartbeatInSec ["+progressHeartbeatInSec+"]\n";
+		s += "leasePort ["+leasePort+"]\n";
+		s += "portLeaseRange ["+portLeaseRange+"]\n";
+		s += "autoSizeZap ["+autoSizeZap+"]\n";
+		s += "zapMemoryPercent ["+zapMemoryPercent+"]\n";
+		s += "useInstallCache ["+useInstallCache+"]\n";
+		s += "zapArchive ["+zapArchive+"]\n";
+		s += "zapArchiveSha256 ["+zapArchiveSha256+"]\n";
+		s += "zapAddOns ["+zapAddOns+"]\n";
+		s += "useHomeTemplate ["+useHomeTemplate+"]\n";
+		s += "requestRateLimits ["+requestRateLimits+"]\n";
+		s += "compressReports ["+compressReports+"]\n";
+		s += "failOnNewAlerts ["+failOnNewAlerts+"]\n";
+		s += "suppressionsFile ["+suppressionsFile+"]\n";
+		s += "loggedOutIndicator ["+loggedOutIndicator+"]\n";
+		s += "authSessionTtlInMin ["+authSessionTtlInMin+"]\n";
+		s += "shardCount ["+shardCount+"]\n";
+		s += "shardLabel ["+shardLabel+"]\n";
+		s += "checkpointIntervalInMin ["+checkpointIntervalInMin+"]\n";
+		s += "scanWindowInMin ["+scanWindowInMin+"]\n";
+		s += "prioritizeScan ["+prioritizeScan+"]\n";
+		s += "zapLogMinLevel ["+zapLogMinLevel+"]\n";
+		s += "createJirasWithSuppressions ["+createJirasWithSuppressions+"]\n";
+		
 		s += "zapHome ["+zapHome+"]\n";
 		s += "zapProxyHost ["+zapProxyHost+"]\n";
 		s += "zapProxyPort ["+zapProxyPort+"]\n";		
@@ -440,7 +706,19 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		
 		s += "spider as user ["+spiderAsUser+"]\n";			
 		s += "ajaxSpiderURLAsUser ["+ajaxSpiderURLAsUser+"]\n";		
+		s += "ajaxSpiderBrowserId ["+ajaxSpiderBrowserId+"]\n";
+		s += "ajaxSpiderBrowsers ["+ajaxSpiderBrowsers+"]\n";
+		s += "ajaxSpiderMaxDepth ["+ajaxSpiderMaxDepth+"]\n";
+		s += "ajaxSpiderMaxDurationInMin ["+ajaxSpiderMaxDurationInMin+"]\n";
 		s += "scanURLAsUser ["+scanURLAsUser+"]\n";
+		s += "sampleURLs ["+sampleURLs+"]\n";
+		s += "sampleSizePerCluster ["+sampleSizePerCluster+"]\n";
+		
+		s += "crawlCacheFingerprint ["+evaluatedCrawlCacheFingerprint+"]\n";
+		s += "crawlCacheDir ["+crawlCacheDir+"]\n";
+		s += "importFiles ["+importFiles+"]\n";
+		s += "skipSpidersOnImport ["+skipSpidersOnImport+"]\n";
+		s += "seedConcurrency ["+seedConcurrency+"]\n";
 		
 		s += "saveReports ["+saveReports+"]\n";
 		s += "chosenFormats ["+chosenFormats+"]\n";
@@ -495,6 +773,14 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		return timeoutInSec;
 	}
 
+	public String getZapProxyHost() {
+		return zapProxyHost;
+	}
+	
+	public int getZapProxyPort() {
+		return zapProxyPort;
+	}
+	
 	public String getFilenameLoadSession() {
 		return filenameLoadSession;
 	}
@@ -559,10 +845,54 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		return ajaxSpiderURLAsUser;
 	}
 
+	public String getAjaxSpiderBrowserId() {
+		return ajaxSpiderBrowserId;
+	}
+
+	public int getAjaxSpiderBrowsers() {
+		return ajaxSpiderBrowsers;
+	}
+
+	public int getAjaxSpiderMaxDepth() {
+		return ajaxSpiderMaxDepth;
+	}
+
+	public int getAjaxSpiderMaxDurationInMin() {
+		return ajaxSpiderMaxDurationInMin;
+	}
+
 	public boolean getScanURL() {
 		return scanURL;
 	}
 
+	public boolean getSampleURLs() {
+		return sampleURLs;
+	}
+
+	public int getSampleSizePerCluster() {
+		return sampleSizePerCluster;
+	}
+
+	public String getCrawlCacheFingerprint() {
+		return crawlCacheFingerprint;
+	}
+
+	public String getCrawlCacheDir() {
+		return crawlCacheDir;
+	}
+
+	public String getImportFiles() {
+		return importFiles;
+	}
+
+	public boolean getSkipSpidersOnImport() {
+		return skipSpidersOnImport;
+	}
+
+	public int getSeedConcurrency() {
+		return seedConcurrency;
+	}
+
 	public boolean getSaveReports() {
 		return saveReports;
 	}
@@ -673,10 +1003,16 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 	* method call is from Zaproxybuilder*/
 
 	public void setJiraBaseURL(String jiraBaseURL){ this.jiraBaseURL=jiraBaseURL; }
+	
+	String getJiraBaseURL(){ return jiraBaseURL; }
 
 	public void setJiraUserName(String jiraUserName){this.jiraUserName=jiraUserName;}
+	
+	String getJiraUserName(){ return jiraUserName; }
 
 	public void setJiraPassword(String jiraPassword){this.jiraPassword=jiraPassword;}
+	
+	String getJiraPassword(){ return jiraPassword; }
 
 	/**
 	 * Gets the JDK that this Sonar builder is configured with, or null.
@@ -689,6 +1025,118 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		return jdk;
 	}
 	
+	public int getProgressHeartbeatInSec() {
+		return progressHeartbeatInSec;
+	}
+	
+	public boolean getZapLogToFile() {
+		return zapLogToFile;
+	}
+
+	public String getZapLogFilename() {
+		return zapLogFilename;
+	}
+
+	public int getZapLogMaxSizeInMb() {
+		return zapLogMaxSizeInMb;
+	}
+
+	public String getZapLogConsolePattern() {
+		return zapLogConsolePattern;
+	}
+
+	public int getZapLogConsoleMaxLinesPerMin() {
+		return zapLogConsoleMaxLinesPerMin;
+	}
+	
+	public boolean getLeasePort() {
+		return leasePort;
+	}
+	
+	public int getPortLeaseRange() {
+		return portLeaseRange;
+	}
+	
+	public boolean getAutoSizeZap() {
+		return autoSizeZap;
+	}
+	
+	public int getZapMemoryPercent() {
+		return zapMemoryPercent;
+	}
+	
+	public boolean getUseInstallCache() {
+		return useInstallCache;
+	}
+	
+	public String getZapArchive() {
+		return zapArchive;
+	}
+	
+	public String getZapArchiveSha256() {
+		return zapArchiveSha256;
+	}
+	
+	public String getZapAddOns() {
+		return zapAddOns;
+	}
+	
+	public boolean getUseHomeTemplate() {
+		return useHomeTemplate;
+	}
+	
+	public String getRequestRateLimits() {
+		return requestRateLimits;
+	}
+	
+	public boolean getCompressReports() {
+		return compressReports;
+	}
+	
+	public boolean getFailOnNewAlerts() {
+		return failOnNewAlerts;
+	}
+	
+	public String getSuppressionsFile() {
+		return suppressionsFile;
+	}
+	
+	public String getLoggedOutIndicator() {
+		return loggedOutIndicator;
+	}
+	
+	public int getAuthSessionTtlInMin() {
+		return authSessionTtlInMin;
+	}
+	
+	public int getShardCount() {
+		return shardCount;
+	}
+	
+	public String getShardLabel() {
+		return shardLabel;
+	}
+	
+	public int getCheckpointIntervalInMin() {
+		return checkpointIntervalInMin;
+	}
+	
+	public int getScanWindowInMin() {
+		return scanWindowInMin;
+	}
+	
+	public boolean getPrioritizeScan() {
+		return prioritizeScan;
+	}
+	
+	public String getZapLogMinLevel() {
+		return zapLogMinLevel;
+	}
+	
+	public boolean getCreateJirasWithSuppressions() {
+		return createJirasWithSuppressions;
+	}
+	
 	/**
 	 * Test if the test type names match (for marking the radio button).
 	 * 
@@ -714,12 +1162,22 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 	public void setEvaluatedFilenameReports(String evaluatedFilenameReports) {
 			this.evaluatedFilenameReports = evaluatedFilenameReports;
 		}
+	
+	public String getEvaluatedCrawlCacheFingerprint() {
+		return evaluatedCrawlCacheFingerprint;
+	}
+	
+	public void setEvaluatedCrawlCacheFingerprint(String evaluatedCrawlCacheFingerprint) {
+		this.evaluatedCrawlCacheFingerprint = evaluatedCrawlCacheFingerprint;
+	}
 		
 
 	/**
-	 * Get the ZAP_HOME setup by Custom Tools Plugin or already present on the build's machine. 
+	 * Get the ZAP_HOME setup by Custom Tools Plugin, by the ZAP installation cache or already present on the build's machine. 
 	 * 
-	 * @param build
+	 * @param ws the workspace on the build's machine
+	 * @param node the build's machine
+	 * @param env the environment variables of the build
 	 * @param listener the listener to display log during the job execution in jenkins
 	 * @return the installed tool location, without zap.bat or zap.sh at the end
 	 * @throws InterruptedException 
@@ -727,16 +1185,22 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 	 * @see <a href="https://groups.google.com/forum/#!topic/jenkinsci-dev/RludxaYjtDk">
 	 * 	https://groups.google.com/forum/#!topic/jenkinsci-dev/RludxaYjtDk</a>
 	 */
-	private String retrieveZapHomeWithToolInstall(AbstractBuild<?, ?> build, BuildListener listener) 
+	private String retrieveZapHomeWithToolInstall(FilePath ws, Node node, EnvVars env, BuildListener listener) 
 			throws IOException, InterruptedException {	
 		
-		EnvVars env = null;
-		Node node = null;
 		String installPath = null;
+		
+		if(useInstallCache) {
+			if(zapArchive == null || zapArchive.isEmpty()) {
+				throw new IllegalArgumentException("zapArchive is missing");
+			}
+			// The installations are shared by the executors of the machine, not by its workspaces
+			FilePath root = node.getRootPath() != null ? node.getRootPath() : ws;
+			listener.getLogger().println("Get ZAProxy installation from cache [" + root.child(ZAPinstallCache.CACHE_DIR).getRemote() + "]");
+			return new ZAPinstallCache(env.expand(zapArchive), zapArchiveSha256, env.expand(zapAddOns)).install(root);
+		}
 			
 		if(autoInstall) {
-			env = build.getEnvironment(listener);
-			node = build.getBuiltOn();
 			for (ToolDescriptor<?> desc : ToolInstallation.all()) {
 				for (ToolInstallation tool : desc.getInstallations()) {
 					if (tool.getName().equals(toolUsed)) {
@@ -753,7 +1217,7 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 				}
 			}
 		} else {
-			installPath = build.getEnvironment(listener).get(zapHome);
+			installPath = env.get(zapHome);
 		}
 		return installPath;
 	}
@@ -761,13 +1225,12 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 	/**
 	 * Return the ZAProxy program name with separator prefix (\zap.bat or /zap.sh) depending of the build node and the OS.
 	 * 
-	 * @param build
+	 * @param node the build's machine
 	 * @return the ZAProxy program name with separator prefix (\zap.bat or /zap.sh)
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
-	private String getZAPProgramNameWithSeparator(AbstractBuild<?, ?> build) throws IOException, InterruptedException {
-		Node node = build.getBuiltOn();
+	private String getZAPProgramNameWithSeparator(Node node) throws IOException, InterruptedException {
 		String zapProgramName = "";
 		
 		// Append zap program following Master/Slave and Windows/Unix
@@ -791,15 +1254,17 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 	/**
 	 * Verify parameters of the build setup are correct (null, empty, negative ...)
 	 * 
-	 * @param build
+	 * @param ws the workspace on the build's machine
+	 * @param node the build's machine
+	 * @param env the environment variables of the build
 	 * @param listener the listener to display log during the job execution in jenkins
 	 * @throws InterruptedException 
 	 * @throws IOException 
 	 * @throws Exception throw an exception if a parameter is invalid.
 	 */
-	private void checkParams(AbstractBuild<?, ?> build, BuildListener listener) 
+	private void checkParams(FilePath ws, Node node, EnvVars env, BuildListener listener) 
 			throws IllegalArgumentException, IOException, InterruptedException {
-		zapProgram = retrieveZapHomeWithToolInstall(build, listener);
+		zapProgram = retrieveZapHomeWithToolInstall(ws, node, env, listener);
 		
 		if(zapProgram == null || zapProgram.isEmpty()) {
 			throw new IllegalArgumentException("zapProgram is missing");
@@ -846,31 +1311,117 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 	/**
 	 * Start ZAProxy using command line. It uses host and port configured in Jenkins admin mode and
 	 * ZAProxy program is launched in daemon mode (i.e without UI).
-	 * ZAProxy is started on the build's machine (so master machine ou slave machine) thanks to 
-	 * {@link FilePath} object and {@link Launcher} object.
+	 * ZAProxy is started on the build's machine (so master machine ou slave machine) by a 
+	 * {@link ZAPscanController}, which also waits for its initialization.
 	 * 
 	 * @param build
 	 * @param listener the listener to display log during the job execution in jenkins
-	 * @param launcher the object to launch a process locally or remotely
+	 * @param port the port of ZAProxy for this build, see {@link #leasePort(FilePath, String, BuildListener)}
 	 * @throws InterruptedException 
 	 * @throws IOException 
 	 * @throws IllegalArgumentException 
 	 */
-	public void startZAP(AbstractBuild<?, ?> build, BuildListener listener, Launcher launcher) 
+	public void startZAP(AbstractBuild<?, ?> build, BuildListener listener, int port) 
+			throws IllegalArgumentException, IOException, InterruptedException {
+		ZAPscanController.execute(build.getWorkspace(), prepareLaunch(build, listener, port), listener);
+	}
+	
+	/**
+	 * Get the port of ZAProxy for a build: a free port leased on the build's machine if leasePort is set, 
+	 * the configured port otherwise. The leased port must be released with 
+	 * {@link #releasePort(FilePath, String, BuildListener)} at the end of the build.
+	 * 
+	 * @param ws the workspace on the build's machine
+	 * @param owner identifies the build
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @return the port of ZAProxy for this build
+	 * @throws IOException if there is no free port
+	 * @throws InterruptedException
+	 */
+	public int leasePort(FilePath ws, String owner, BuildListener listener) throws IOException, InterruptedException {
+		if(!leasePort) {
+			return zapProxyPort;
+		}
+		int range = portLeaseRange > 0 ? portLeaseRange : DEFAULT_PORT_LEASE_RANGE;
+		int port = ZAPportLeaseManager.lease(ws, zapProxyPort, range, 1, owner);
+		listener.getLogger().println("Port [" + port + "] leased for ZAProxy");
+		return port;
+	}
+	
+	/**
+	 * Release the port leased by {@link #leasePort(FilePath, String, BuildListener)}. 
+	 * 
+	 * @param ws the workspace on the build's machine
+	 * @param owner identifies the build
+	 * @param listener the listener to display log during the job execution in jenkins
+	 */
+	public void releasePort(FilePath ws, String owner, BuildListener listener) {
+		if(!leasePort) {
+			return;
+		}
+		try {
+			ZAPportLeaseManager.release(ws, owner);
+		} catch (IOException e) {
+			listener.error(ExceptionUtils.getStackTrace(e));
+		} catch (InterruptedException e) {
+			listener.error(ExceptionUtils.getStackTrace(e));
+		}
+	}
+	
+	/**
+	 * Prepare the command line to start ZAProxy. The returned controller launches ZAProxy on the build's 
+	 * machine and waits for its initialization. A scan plan can be added to it to run the whole 
+	 * lifecycle of ZAProxy in a single remote call.
+	 * 
+	 * @param build
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param port the port of ZAProxy for this build
+	 * @return the controller which launches ZAProxy
+	 * @throws InterruptedException 
+	 * @throws IOException 
+	 * @throws IllegalArgumentException 
+	 */
+	ZAPscanController prepareLaunch(AbstractBuild<?, ?> build, BuildListener listener, int port) 
 			throws IllegalArgumentException, IOException, InterruptedException {
-		checkParams(build, listener);
-		
 		FilePath ws = build.getWorkspace();
+		Node node = build.getBuiltOn();
 		if (ws == null) {
-			Node node = build.getBuiltOn();
 			if (node == null) {
 				throw new NullPointerException("no such build node: " + build.getBuiltOnStr());
 			}
 			throw new NullPointerException("no workspace from node " + node + " which is computer " + node.toComputer() + " and has channel " + node.getChannel());
 		}
 		
+		EnvVars envVars = build.getEnvironment(listener);
+		// on Windows environment variables are converted to all upper case,
+		// but no such conversions are done on Unix, so to make this cross-platform,
+		// convert variables to all upper cases.
+		for(Map.Entry<String,String> e : build.getBuildVariables().entrySet())
+			envVars.put(e.getKey(),e.getValue());
+		
+		return prepareLaunch(ws, node, envVars, build.getProject().getJDK(), listener, port);
+	}
+	
+	/**
+	 * Prepare the command line to start ZAProxy on a node, without a freestyle build (e.g. from a Pipeline step).
+	 * 
+	 * @param ws the workspace on the build's machine
+	 * @param node the build's machine
+	 * @param envVars the environment variables of the build, the JDK to use is added to them
+	 * @param projectJdk the JDK of the project, used if no JDK is chosen for ZAProxy. Can be null
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param port the port of ZAProxy for this build
+	 * @return the controller which launches ZAProxy
+	 * @throws InterruptedException 
+	 * @throws IOException 
+	 * @throws IllegalArgumentException 
+	 */
+	ZAPscanController prepareLaunch(FilePath ws, Node node, EnvVars envVars, JDK projectJdk, BuildListener listener, int port) 
+			throws IllegalArgumentException, IOException, InterruptedException {
+		checkParams(ws, node, envVars, listener);
+		
 		// Contains the absolute path to ZAP program
-		FilePath zapPathWithProgName = new FilePath(ws.getChannel(), zapProgram + getZAPProgramNameWithSeparator(build));
+		FilePath zapPathWithProgName = new FilePath(ws.getChannel(), zapProgram + getZAPProgramNameWithSeparator(node));
 		listener.getLogger().println("Start ZAProxy [" + zapPathWithProgName.getRemote() + "]");
 		
 		// Command to start ZAProxy with parameters
@@ -880,7 +1431,7 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		cmd.add(CMD_LINE_HOST);
 		cmd.add(zapProxyHost);
 		cmd.add(CMD_LINE_PORT);
-		cmd.add(String.valueOf(zapProxyPort));
+		cmd.add(String.valueOf(port));
 		cmd.add(CMD_LINE_CONFIG);
 		cmd.add(CMD_LINE_API_KEY + "=" + API_KEY);
 		
@@ -894,55 +1445,53 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		if(!cmdLinesZAP.isEmpty()) {
 			addZapCmdLine(cmd);
 		}
-			
-		EnvVars envVars = build.getEnvironment(listener);
-		// on Windows environment variables are converted to all upper case,
-		// but no such conversions are done on Unix, so to make this cross-platform,
-		// convert variables to all upper cases.
-		for(Map.Entry<String,String> e : build.getBuildVariables().entrySet())
-			envVars.put(e.getKey(),e.getValue());
 		
 		FilePath workDir = new FilePath(ws.getChannel(), zapProgram);
 		
 		// JDK choice
-		computeJdkToUse(build, listener, envVars);
-		
-		// Launch ZAP process on remote machine (on master if no remote machine)
-		launcher.launch().cmds(cmd).envs(envVars).stdout(listener).pwd(workDir).start();
-		
-		// Call waitForSuccessfulConnectionToZap(int, BuildListener) remotely
-		build.getWorkspace().act(new WaitZAProxyInitCallable(this, listener));
+		computeJdkToUse(projectJdk, node, listener, envVars);
+		
+		// ZAP process is launched by the remote machine itself (by master if no remote machine)
+		ZAPscanController controller = new ZAPscanController(cmd, envVars, workDir.getRemote(), this, port);
+		// Each executor of the machine can run a ZAProxy
+		controller.setPlannedZapInstances(node.getNumExecutors());
+		if(useHomeTemplate && cmd.contains(CMD_LINE_DIR)) {
+			FilePath root = node.getRootPath() != null ? node.getRootPath() : ws;
+			controller.setHomeTemplatesDir(root.child(ZAPhomeTemplate.TEMPLATES_DIR).getRemote());
+		}
+		return controller;
 	}
 	
 	/**
 	 * Set the JDK to use to start ZAP.
 	 * 
-	 * @param build
+	 * @param projectJdk the JDK of the project, can be null
+	 * @param node the build's machine
 	 * @param listener the listener to display log during the job execution in jenkins
 	 * @param env list of environment variables. Used to set the path to the JDK
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
-	private void computeJdkToUse(AbstractBuild<?, ?> build,
+	private void computeJdkToUse(JDK projectJdk, Node node,
 			BuildListener listener, EnvVars env) throws IOException, InterruptedException {
-		JDK jdkToUse = getJdkToUse(build.getProject());
+		JDK jdkToUse = getJdkToUse(projectJdk);
 		if (jdkToUse != null) {
-			Computer computer = Computer.currentComputer();
 			// just in case we are not in a build
-			if (computer != null) {
-				jdkToUse = jdkToUse.forNode(computer.getNode(), listener);
+			if (node != null) {
+				jdkToUse = jdkToUse.forNode(node, listener);
 			}
 			jdkToUse.buildEnvVars(env);
 		}
 	}
 
 	/**
+	 * @param projectJdk the JDK of the project, can be null
 	 * @return JDK to be used with this project.
 	 */
-	private JDK getJdkToUse(AbstractProject<?, ?> project) {
+	private JDK getJdkToUse(JDK projectJdk) {
 		JDK jdkToUse = getJDK();
 		if (jdkToUse == null) {
-			jdkToUse = project.getJDK();
+			jdkToUse = projectJdk;
 		}
 		return jdkToUse;
 	}
@@ -962,776 +1511,18 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		}
 	}
 	
-	/**
-	 * Wait for ZAProxy initialization, so it's ready to use at the end of this method
-	 * (otherwise, catch exception). This method is launched on the remote machine (if there is one)
-	 *   
-	 * @param timeout the time in sec to try to connect at zap proxy. 
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @see <a href="https://groups.google.com/forum/#!topic/zaproxy-develop/gZxYp8Og960">
-	 * 		https://groups.google.com/forum/#!topic/zaproxy-develop/gZxYp8Og960</a>
-	 */
-	private void waitForSuccessfulConnectionToZap(int timeout, BuildListener listener) {
-		int timeoutInMs = getMilliseconds(timeout);
-		int connectionTimeoutInMs = timeoutInMs;
-		int pollingIntervalInMs = getMilliseconds(1);
-		boolean connectionSuccessful = false;
-		long startTime = System.currentTimeMillis();
-		Socket socket = null;
-		do {
-			try {
-				socket = new Socket();
-				socket.connect(new InetSocketAddress(zapProxyHost, zapProxyPort), connectionTimeoutInMs);
-				connectionSuccessful = true;
-			} catch (SocketTimeoutException ignore) {
-				listener.error(ExceptionUtils.getStackTrace(ignore));
-				throw new BuildException("Unable to connect to ZAP's proxy after " + timeout + " seconds.");
-				
-			} catch (IOException ignore) {
-				// and keep trying but wait some time first...
-				try {
-					Thread.sleep(pollingIntervalInMs);
-				} catch (InterruptedException e) {
-					listener.error(ExceptionUtils.getStackTrace(ignore));
-					throw new BuildException("The task was interrupted while sleeping between connection polling.", e);
-				}
-
-				long ellapsedTime = System.currentTimeMillis() - startTime;
-				if (ellapsedTime >= timeoutInMs) {
-					listener.error(ExceptionUtils.getStackTrace(ignore));
-					throw new BuildException("Unable to connect to ZAP's proxy after " + timeout + " seconds.");
-				}
-				connectionTimeoutInMs = (int) (timeoutInMs - ellapsedTime);
-			} finally {
-				if(socket != null) {
-					try {
-						socket.close();
-					} catch (IOException e) {
-						listener.error(ExceptionUtils.getStackTrace(e));
-					}
-				}
-			}
-		} while (!connectionSuccessful);
-	}
-	
 	/**
 	 * Converts seconds in milliseconds.
 	 * @param seconds the time in second to convert
 	 * @return the time in milliseconds
 	 */
-	private static int getMilliseconds(int seconds) {
+	static int getMilliseconds(int seconds) {
 		return seconds * MILLISECONDS_IN_SECOND;
 	}
 	
  
-	/**
-	 * Generates security report for one format. Reports are saved into build's workspace.
-	 * 
-	 * @param reportFormat the format of the report
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @param workspace a {@link FilePath} representing the build's workspace
-	 * @param clientApi the ZAP client API to call method
-	 * @throws ClientApiException 
-	 * @throws IOException
-	 */
-	private void saveReport(ZAPreport reportFormat, BuildListener listener, FilePath workspace, 
-			ClientApi clientApi) throws IOException, ClientApiException {
-		final String fullFileName = evaluatedFilenameReports + "." + reportFormat.getFormat();
-		File reportsFile = new File(workspace.getRemote(), fullFileName);
-		FileUtils.writeByteArrayToFile(reportsFile, reportFormat.generateReport(clientApi, API_KEY));
-		listener.getLogger().println("File [" + reportsFile.getAbsolutePath() + "] saved");
-	}
-
-	/**
-	 * Execute ZAProxy method following build's setup and stop ZAP at the end.
-	 * 
-	 * @param workspace a {@link FilePath} representing the build's workspace
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @return true is no exception is caught, false otherwise.
-	 */
-	public boolean executeZAP(FilePath workspace, BuildListener listener) {
-		ClientApi zapClientAPI = new ClientApi(zapProxyHost, zapProxyPort);
-		boolean buildSuccess = true;	
-		
-		
-		// Try/catch here because I need to stopZAP in finally block and for that,
-		// I need the zapClientAPI created in this method
-		try {
-			/* ======================================================= 
-			 * |                  LOAD SESSION                        |
-			 * ======================================================= 
-			 */
-			if(filenameLoadSession != null && filenameLoadSession.length() != 0) {
-				File sessionFile = new File(filenameLoadSession);
-				listener.getLogger().println("Load session at ["+ sessionFile.getAbsolutePath() +"]");
-				zapClientAPI.core.loadSession(API_KEY, sessionFile.getAbsolutePath());
-			} else {
-				listener.getLogger().println("Skip loadSession");
-			}
-			
-			/* ======================================================= 
-			 * |                  SE UP CONTEXT                       |
-			 * ======================================================= 
-			 */
-			
-			//setup context
-			this.contextId=setUpContext(listener,targetURL,excludedUrl,zapClientAPI);
-			
-			
-			
-			if(scanMode.equals("NOT_AUTHENTICATED")) {
-
-			 
-				listener.getLogger().println("SCANMOD : NOT_AUTHENTICATED");
-			
-			//Non authenticated mod : spider url, ajax spider url, scan url
-			/* ======================================================= 
-			 * |                  SPIDER URL                          |
-			 * ======================================================= 
-			 */
-			if (spiderURL) {
-				listener.getLogger().println("Spider the site [" + targetURL + "]");
-				spiderURL(targetURL, listener, zapClientAPI);
-			} else {
-				listener.getLogger().println("Skip spidering the site [" + targetURL + "]");
-			}
-
-			/* ======================================================= 
-			 * |                AJAX SPIDER URL                       |
-			 * ======================================================= 
-			 */
-			if (ajaxSpiderURL) {
-				listener.getLogger().println("Ajax Spider the site [" + targetURL + "]");
-				ajaxSpiderURL(targetURL, listener, zapClientAPI);
-			} else {
-				listener.getLogger().println("Skip Ajax spidering the site [" + targetURL + "]");
-			}
-			
-			/* ======================================================= 
-			 * |                  SCAN URL                            |
-			 * ======================================================= 
-			 */
-			if (scanURL) {				
-				listener.getLogger().println("Scan the site [" + targetURL + "]");
-				scanURL(targetURL, listener, zapClientAPI);
-			} else {
-				listener.getLogger().println("Skip scanning the site [" + targetURL + "]");
-			}
-			 
-			} 
-			
-			else if(scanMode.equals("AUTHENTICATED"))   {
-			//Authenticated mod : spider url as user, ajax spider url as user, scan url as user
-			listener.getLogger().println("SCANMOD : AUTHENTICATED");			
-			
-			listener.getLogger().println("Setting up Authentication");
-			
-			if(authenticationMode.equals("FORM_BASED")){
-			/* ======================================================= 
-			 * |                  FORM BASED AUTHENTICATION           |
-			 * ======================================================= 
-			 */
-			 
-			setUpAuthentication("FORMBASED",listener,zapClientAPI, username,password,usernameParameter,passwordParameter,extraPostData,loginUrl,loggedInIndicator,null);
-			}
-			else if(authenticationMode.equals("SCRIPT_BASED")){
-				
-			/* ======================================================= 
-			 * |                  SCRIPT BASED AUTHENTICATION         |
-			 * ======================================================= 
-			 */
-			
-			setUpAuthentication("SCRIPTBASED",listener,zapClientAPI, scriptUsername,scriptPassword,null,null,null,null,scriptLoggedInIndicator,authenticationScriptName);
-
-			}			
-			
-			/* ======================================================= 
-			 * |                  SPIDER AS USER                      |
-			 * ======================================================= 
-			 */
-			if (spiderAsUser) {	
-				listener.getLogger().println("Spider the site [" + targetURL + "] as user ["+username+"]");				
-				spiderURLAsUser(targetURL, listener, zapClientAPI, contextId, userId);
-			} else {
-				listener.getLogger().println("Skip spidering the site [" + targetURL + "] as user ["+username+"]");
-			}
-			
-			/* ======================================================= 
-			 * |                AJAX SPIDER URL AS USER               |
-			 * ======================================================= 
-			 */
-			if (ajaxSpiderURLAsUser) {
-				listener.getLogger().println("Ajax Spider the site [" + targetURL + "] as user ["+username+"]");
-				ajaxSpiderURL(targetURL, listener, zapClientAPI);
-			} else {
-				listener.getLogger().println("Skip Ajax spidering the site [" + targetURL + "] as user ["+username+"]");
-			}
-
-			/* ======================================================= 
-			 * |                  SCAN URL AS USER                    |
-			 * ======================================================= 
-			 */
-			if (scanURLAsUser) {				
-				listener.getLogger().println("Scan the site [" + targetURL + "] as user ["+username+"]");
-				scanURLAsUser(targetURL, listener, zapClientAPI,contextId, userId);
-			} else {
-				listener.getLogger().println("Skip scanning the site [" + targetURL + "] as user ["+username+"]");
-			}
-			
-			 
-			}
-			
-			
-			/* ======================================================= 
-			 * |                  SAVE REPORTS                        |
-			 * ======================================================= 
-			 */
-			if (saveReports) {			
-				// Generates reports for all formats selected
-				for(String format : chosenFormats) {
-					ZAPreport report = ZAPreportCollection.getInstance().getMapFormatReport().get(format);
-					saveReport(report, listener, workspace, zapClientAPI);
-				}
-			}
-			 /* =======================================================
-			 * |                  CREATE JIRA ISSUES                       |
-			 * =======================================================
-			 */
-			if (createJiras) {
-				// Generates reports for all formats selected
-
-				listener.getLogger().println("******************    Strated creating jiras    ************************");
-				Map<String, String> map = null;
-				map = new HashMap<String, String>();
-
-				if (API_KEY != null) {
-					map.put("apikey", API_KEY);
-				}
-				map.put("jiraBaseURL",jiraBaseURL);
-				map.put("jiraUserName",jiraUserName);
-				map.put("jiraPassword",jiraPassword);
-				map.put("projectKey",projectKey);
-				//map.put("jiraUserName",jiraUserName);
-				map.put("assignee",assignee);
-				map.put("high",returnCheckedStatus(alertHigh));
-				map.put("medium",returnCheckedStatus(alertMedium));
-				map.put("low",returnCheckedStatus(alertLow));
-				map.put("filterIssuesByResourceType",returnCheckedStatus(filterIssuesByResourceType));
-
-				listener.getLogger().println("******************    initialized variables     *************************");
-
-				listener.getLogger().println("            Api key  : " + API_KEY);
-				listener.getLogger().println("            Base URL  : " + jiraBaseURL);
-				listener.getLogger().println("            UserName  : " + jiraUserName);
-				listener.getLogger().println("            Project key  : " + projectKey);
-				listener.getLogger().println("            Assignee  : " + assignee);
-				listener.getLogger().println("            Export High alerts  : " + alertHigh);
-				listener.getLogger().println("            Export Medium alerts  : "+alertMedium);
-				listener.getLogger().println("            Export Low alerts  : "+alertLow);
-				listener.getLogger().println("            Filter by resource Type  : "+filterIssuesByResourceType);
-
-				try{
-
-					zapClientAPI.callApi("jiraIssueCreater", "action", "createJiraIssues", map);
-					
-
-				}catch(ClientApiException e){
-
-					listener.getLogger().println(e.getMessage());
-				}
-
-			}else{
-				listener.getLogger().println("Skipped creating jiras");
-			}
-
-			
-			/* ======================================================= 
-			 * |                  SAVE SESSION                        |
-			 * ======================================================= 
-			 */
-			if(saveSession) {
-				if(filenameSaveSession != null && !filenameSaveSession.isEmpty()) {
-					File sessionFile = new File(workspace.getRemote(), filenameSaveSession);
-					listener.getLogger().println("Save session to ["+ sessionFile.getAbsolutePath() +"]");
-					
-					// Path creation if it doesn't exist
-					if(!sessionFile.getParentFile().exists()) {
-						sessionFile.getParentFile().mkdirs();
-					}
-					
-					// Method signature : saveSession(String apikey, String name, String overwrite)
-					zapClientAPI.core.saveSession(API_KEY, sessionFile.getAbsolutePath(), "true");
-				} 
-			} else {
-				listener.getLogger().println("Skip saveSession");
-			}
-			
-			listener.getLogger().println("Total alerts = " + zapClientAPI.core.numberOfAlerts("").toString(2));
-			listener.getLogger().println("Total messages = " + zapClientAPI.core.numberOfMessages("").toString(2));
-			
-		} catch (Exception e) {
-			listener.error(ExceptionUtils.getStackTrace(e));
-			buildSuccess = false;
-		} finally {
-			try {
-				stopZAP(zapClientAPI, listener);
-			} catch (ClientApiException e) {
-				listener.error(ExceptionUtils.getStackTrace(e));
-				buildSuccess = false;
-			}
-		}
-		return buildSuccess;
-	}
-	
-
-	/**method used to return the checked state
-	 * inside CREATE JIRA ISSUES
-	 * **/
-	private String returnCheckedStatus(boolean checkedStatus){
-		if(checkedStatus){
-			return "1";
-		}else{
-			return "0";
-		}
-	}
-	
-	/**
-	 * Converts the ZAP API status response to an integer
-	 *
-	 * @param response the ZAP API response code
-	 * @return the integer status of the ApiResponse
-	 */
-	private int statusToInt(final ApiResponse response) {
-		return Integer.parseInt(((ApiResponseElement)response).getValue());
-	}
-
-	/**
-	 * Converts the ZAP API status response to an String
-	 *
-	 * @param response the ZAP API response code
-	 * @return the String status of the ApiResponse
-	 */
-	@SuppressWarnings("unchecked")
-	private String statusToString(final ApiResponse response) {
-		return ((ApiResponseElement)response).getValue();
-	}
-
-	/**
-	 *get user id
-	 * @param response the ZAP API response code
-	 * @return the user ID of the  user
-	 */
-	@SuppressWarnings("unchecked")
-	private String extractUserId(ApiResponse response) {
-		return ((ApiResponseElement) response).getValue();
-	}
-
-	/**
-	 *get context id
-	 * @param response the ZAP API response code
-	 * @return the context ID of the context
-	 */
-	@SuppressWarnings("unchecked")
-	private String extractContextId(ApiResponse response) {
-		return ((ApiResponseElement) response).getValue();
-	}
-
-	/**
-	 * set up a context and add/exclude url to/from it
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @param URL the URL to be added to context
-	 * @param excludedUrl the URL to exclude from context
-	 * @param zapClientAPI the client API to use ZAP API methods
-	 * @return the context ID of the context
-	 * @throws ClientApiException
-	 */
-	private String setUpContext(BuildListener listener, String url, String excludedUrl,ClientApi zapClientAPI) 
-				throws ClientApiException {
-		
-		url=url.trim();		 
-		
-		String contextName="context1";//name of the Context to be created
-		String contextURL="\\Q"+url+"\\E.*";//url to be added to the context (the same url given by the user to be scanned)
-		
-		
-		String contextIdTemp;
-
-		//Create new context
-		//method signature : newContext(String apikey,String contextname) throws ClientApiException
-		contextIdTemp=extractContextId(zapClientAPI.context.newContext(API_KEY,contextName));
-
-		//add url to the context
-		//method signature : includeInContext(String apikey, String contextname, String regex) 
-		//					 throws ClientApiException
-		zapClientAPI.context.includeInContext(API_KEY,contextName,contextURL);
-		listener.getLogger().println("URL "+url+" added to Context ["+contextIdTemp+"]");
-		
-		//excluded urls from context
-		if (!excludedUrl.equals("")) {
-			
-			try {
-
-				String[] urls = excludedUrl.split("\n");
-				String contextExcludedUrl="";//url to exclude from context like the log out url
-			
-
-				for (int i = 0; i < urls.length; i++) {
-					urls[i] = urls[i].trim();
-					if (!urls[i].isEmpty()) {
-						contextExcludedUrl="\\Q"+urls[i]+"\\E";
-						zapClientAPI.context.excludeFromContext(API_KEY, contextName, contextExcludedUrl);
-						listener.getLogger().println("URL exluded from context : "+urls[i]);
-					}
-
-				}
-
-			} catch (ClientApiException e) {
-				e.printStackTrace();
-				listener.error(ExceptionUtils.getStackTrace(e));
-			}
-			 
-		}
-
-		
-		
-		return contextIdTemp;
-	}
-
- 	
-	/**
-	 * set up form based authentication method for the created context
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @param zapClientAPI the client API to use ZAP API methods
-	 * @param loggedInIdicator indication for know its logged in
-	 * @param usernameParameter parameter define in passing username
-	 * @param passwordParameter parameter that define in passing password for the user
-	 * @param extraPostData other post data than credentials
-	 * @param contextId id of the creted context
-	 * @param loginUrl login page url
-	 * @throws ClientApiException
-	 * @throws UnsupportedEncodingException
-	 */
-	private void setUpFormBasedAuthenticationMethod(BuildListener listener, ClientApi zapClientAPI, 
-				String loggedInIndicator, String usernameParameter, String passwordParameter,String extraPostData,
-				String contextId, String loginUrl) 
-				throws ClientApiException, UnsupportedEncodingException{
-
-		String loginRequestData = usernameParameter+"={%username%}&"+passwordParameter+"={%password%}&"+extraPostData;
-
-		// set form based authentication method 		
-		// Prepare the configuration in a format similar to how URL parameters are formed. This
-		// means that any value we add for the configuration values has to be URL encoded.
-		StringBuilder formBasedConfig = new StringBuilder();
-		formBasedConfig.append("loginUrl=").append(URLEncoder.encode(loginUrl, "UTF-8"));
-		formBasedConfig.append("&loginRequestData=").append(URLEncoder.encode(loginRequestData, "UTF-8"));
-
-		zapClientAPI.authentication.setAuthenticationMethod(API_KEY, contextId, "formBasedAuthentication",formBasedConfig.toString());
-		
-		listener.getLogger().println("Authentication config: " + zapClientAPI.authentication.getAuthenticationMethod(contextId).toString(0));
-		
-		//end set auth method
-		listener.getLogger().println("Form Based Authentication added to context");
-
-		//add logged in idicator
-		if (!loggedInIndicator.equals("")) {
-		zapClientAPI.authentication.setLoggedInIndicator(API_KEY, contextId, loggedInIndicator);
-		listener.getLogger().println("Logged in indicator "+loggedInIndicator+" added to context ");
-		}
-
-	}
-	
-	/**
-	 * set up script based authentication method for the created context
-	 * @author Abdellah AZOUGARH
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @param zapClientAPI the ZAP API client  
-	 * @param scriptName the name of the authentication script used to authenticate the user
-	 * @param scriptLoggedInIndicator the indication that the user is logged in
-	 * @throws UnsupportedEncodingException
-	 * @throws ClientApiException
-	 */
-	private void setUpScriptBasedAuthenticationMethod( BuildListener listener, ClientApi zapClientAPI,String scriptName , String contextId, String scriptLoggedInIndicator) throws UnsupportedEncodingException, ClientApiException {
- 		
-		// set script based authentication method 		
-		// Prepare the configuration in a format similar to how URL parameters are formed. This
-		// means that any value we add for the configuration values has to be URL encoded.
-		StringBuilder scriptBasedConfig = new StringBuilder();
-		scriptBasedConfig.append("scriptName=").append(URLEncoder.encode(scriptName, "UTF-8"));
-		listener.getLogger().println("Setting Script based authentication configuration as: " + scriptBasedConfig.toString());
-		
-		zapClientAPI.authentication.setAuthenticationMethod(API_KEY, contextId, "scriptBasedAuthentication",scriptBasedConfig.toString());
-					
-		listener.getLogger().println("Authentication config: " + zapClientAPI.authentication.getAuthenticationMethod(contextId).toString(0));
-		
-		//add logged in idicator
-		if (!scriptLoggedInIndicator.equals("")) {
-		listener.getLogger().println("---------------------------------------");
-		zapClientAPI.authentication.setLoggedInIndicator(API_KEY,contextId, scriptLoggedInIndicator );
-		}
- 
-
-	}
-			
-
-	/**
-	 * set up user for the context and enable user
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @param zapClientAPI the client API to use ZAP API methods
-	 * @param username user name to be used in authentication
-	 * @param password password for the authentication user
-	 * @param contextId id of the created context
-	 * @return userId id of the newly setup user
-	 * @throws ClientApiException
-	 * @throws UnsupportedEncodingException 
-	 */
-	private String setUpUser(BuildListener listener, ClientApi zapClientAPI, String username,
-						String password, String contextId) 
-						throws ClientApiException, UnsupportedEncodingException {
-
-		String userIdTemp;
-		// add new user and authentication details
-		// Make sure we have at least one user
-		// extract user id 
-		userIdTemp = extractUserId(zapClientAPI.users.newUser(API_KEY, contextId, username));
-
-		// Prepare the configuration in a format similar to how URL parameters are formed. This
-		// means that any value we add for the configuration values has to be URL encoded.
-		StringBuilder userAuthConfig = new StringBuilder();
-		userAuthConfig.append("username=").append(URLEncoder.encode(username, "UTF-8"));
-		userAuthConfig.append("&password=").append(URLEncoder.encode(password, "UTF-8"));
-		String authCon=userAuthConfig.toString();
-		
-		zapClientAPI.users.setAuthenticationCredentials(API_KEY, contextId, userIdTemp, authCon);
-
-		listener.getLogger().println("New user added. username :" +username);
-		
-		zapClientAPI.users.setUserEnabled(API_KEY, contextId,userIdTemp,"true");
-		listener.getLogger().println("User : "+username+" is now Enabled");
-		
-		//to make spidering and ajax spidering in authentication mod
-		setUpForcedUser(listener, zapClientAPI, contextId,  userIdTemp) ;
-
-		return userIdTemp;
-	}
-	
-	/**
-	 * set up forced user for the context and enable user, this help to make spidering and ajax spidering as authenticated user
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @param zapClientAPI the client API to use ZAP API methods
-	 * @param contextId id of the created context
-	 * @return userId id of the newly setup user
-	 * @throws ClientApiException
-	 * @throws UnsupportedEncodingException 
-	 */
-	private void setUpForcedUser(BuildListener listener, ClientApi zapClientAPI, String contextid, String userid) 
-						throws ClientApiException, UnsupportedEncodingException {
-		
-		zapClientAPI.forcedUser.setForcedUser(API_KEY, contextid,userid);
-		zapClientAPI.forcedUser.setForcedUserModeEnabled(API_KEY, true);
-		
-
-	}
-	
-	
-	/**
-	 * Set up all authentication details
-	 * @author thilina27
-	 * @param username user name to be used in authentication
-	 * @param password password for the authentication user
-	 * @param usernameParameter parameter define in passing username
-	 * @param passwordParameter parameter that define in passing password for the user
-	 * @param extraPostData other post data than credentials
-	 * @param loginUrl login page url
-	 * @param loggedInIdicator indication for know its logged in
-	 * @throws ClientApiException
-	 * @throws InterruptedException 
-	 * @throws UnsupportedEncodingException
-	 */
-	private void setUpAuthentication( String authenticationMethod,BuildListener listener, ClientApi zapClientAPI, 
-			String username, String password, String usernameParameter, 
-			String passwordParameter, String extraPostData, String loginUrl, String loggedInIndicator,String scriptName)
-			throws ClientApiException, UnsupportedEncodingException {
-
-	//setup context
-	//this.contextId=setUpContext(listener,url,zapClientAPI);
-			
-	//set up authentication method
-	if(authenticationMethod.equals("FORMBASED")){
-	setUpFormBasedAuthenticationMethod(listener,zapClientAPI,loggedInIndicator,usernameParameter,
-								passwordParameter,extraPostData,contextId,loginUrl);
-	}
-	else if(authenticationMethod.equals("SCRIPTBASED")){
-		 
-	setUpScriptBasedAuthenticationMethod(listener, zapClientAPI, scriptName , contextId, loggedInIndicator);
-	}
-
-	//set up user
-	this.userId=setUpUser(listener,zapClientAPI,username,password,contextId);
-}
-
-	
-	/**
-	 * Search for all links and pages on the URL and raised passives alerts
-	 *
-	 * @param url the url to investigate
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @param zapClientAPI the client API to use ZAP API methods
-	 * @throws ClientApiException
-	 * @throws InterruptedException 
-	 */
-	private void spiderURL(final String url, BuildListener listener, ClientApi zapClientAPI) 
-			throws ClientApiException, InterruptedException {
-		// Method signature : scan(String key, String url, String maxChildren, String recurse)
-		zapClientAPI.spider.scan(API_KEY, url, "", "");
-
-		// Wait for complete spidering (equal to 100)
-		// Method signature : status(String scanId)
-		while (statusToInt(zapClientAPI.spider.status("")) < 100) {
-			listener.getLogger().println("Status spider = " + statusToInt(zapClientAPI.spider.status("")) + "%");
-			listener.getLogger().println("Alerts number = " + zapClientAPI.core.numberOfAlerts("").toString(2));
-			Thread.sleep(1000);
-		}
-	}
-
-	/**
-	 * Search for all links and pages on the URL and raised passives alerts
-	 * @author thilina27
-	 * @param url the url to investigate
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @param zapClientAPI the client API to use ZAP API methods
-	 * @param contextId the id number of the contexte created for this scan
-	 * @param userId the id number of the user created for this scan
-	 * @throws ClientApiException
-	 * @throws InterruptedException
-	 */
-	 
-	private void spiderURLAsUser(final String url, BuildListener listener, ClientApi zapClientAPI, 
-				String contextId, String userId)
-				throws ClientApiException, InterruptedException {
-		
-		
-		// Start spider as user
-		zapClientAPI.spider.scanAsUser(API_KEY, url, contextId, userId, "0", "");
-		
-		// Wait for complete spidering (equal to 100)
-		// Method signature : status(String scanId)
-		while (statusToInt(zapClientAPI.spider.status("")) < 100) {
-			listener.getLogger().println("Status spider = " + statusToInt(zapClientAPI.spider.status("")) + "%");
-			listener.getLogger().println("Alerts number = " + zapClientAPI.core.numberOfAlerts("").toString(2));
-			Thread.sleep(1000);
-		}
-	}
-
-	/**
-	 * Search for all links and pages on the URL and raised passives alerts
-	 * @author thilina27
-	 * @param url the url to investigate
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @param zapClientAPI the client API to use ZAP API methods
-	 * @throws ClientApiException
-	 * @throws InterruptedException 
-	 */
-	private void ajaxSpiderURL(final String url, BuildListener listener, ClientApi zapClientAPI) 
-			throws ClientApiException, InterruptedException{
-
-
-		//Method signature : scan(String apikey,String url,String inscope)
-		zapClientAPI.ajaxSpider.scan(API_KEY, url, "false");
- 		
- 		// Wait for complete spidering (equal to status complete)
-		// Method signature : status(String scanId)
-		while ("running".equalsIgnoreCase(statusToString(zapClientAPI.ajaxSpider.status()))) { 
-		    listener.getLogger().println("Status spider = " + statusToString(zapClientAPI.ajaxSpider.status()));
-			listener.getLogger().println("Alerts number = " + zapClientAPI.core.numberOfAlerts("").toString(2));
-			Thread.sleep(2500);
-		} 
-	}
-	
-	/**
-	 * Scan all pages found at url and raised actives alerts
-	 *
-	 * @param url the url to scan
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @param zapClientAPI the client API to use ZAP API methods
-	 * @throws ClientApiException
-	 * @throws InterruptedException 
-	 */
-	private void scanURL(final String url, BuildListener listener, ClientApi zapClientAPI) 
-			throws ClientApiException, InterruptedException {
-		if(chosenPolicy == null || chosenPolicy.isEmpty()) {
-			listener.getLogger().println("Scan url [" + url + "] with the policy by default");		
-		} else {
-			listener.getLogger().println("Scan url [" + url + "] with the following policy ["
-							+ chosenPolicy + "]");
-		}
-		
-		// Method signature : scan(String apikey, String url, String recurse, String inscopeonly, String scanpolicyname, String method, String postdata)
-		// Use a default policy if chosenPolicy is null or empty
-		zapClientAPI.ascan.scan(API_KEY, url, "true", "false", chosenPolicy, null, null);
-
-		// Wait for complete scanning (equal to 100)
-		// Method signature : status(String scanId)
-		while (statusToInt(zapClientAPI.ascan.status("")) < 100) {
-			listener.getLogger().println("Status scan = " + statusToInt(zapClientAPI.ascan.status("")) + "%");
-			listener.getLogger().println("Alerts number = " + zapClientAPI.core.numberOfAlerts("").toString(2));
-			listener.getLogger().println("Messages number = " + zapClientAPI.core.numberOfMessages("").toString(2));
-			Thread.sleep(5000);
-		}
-	}
-	
-	/**
-	 * Scan all pages found at url and raised actives alerts
-	 *
-	 * @author abdellah.azougarh
-	 * @param url the url to scan
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @param zapClientAPI the client API to use ZAP API methods
-	 * @param contextId the id number of the contexte created for this scan
-	 * @param userId the id number of the user created for this scan
-	 * @throws ClientApiException
-	 * @throws InterruptedException 
-	 */
-	private void scanURLAsUser(final String url, BuildListener listener, ClientApi zapClientAPI, String contextId, String userId) 
-			throws ClientApiException, InterruptedException {
-		if(chosenPolicy == null || chosenPolicy.isEmpty()) {
-			listener.getLogger().println("Scan url [" + url + "] with the policy by default");		
-		} else {
-			listener.getLogger().println("Scan url [" + url + "] with the following policy ["
-							+ chosenPolicy + "]");
-		}
-		
-		// Method signature : scan(String apikey, String url, String recurse, String inscopeonly, String scanpolicyname, String method, String postdata)
-		// Use a default policy if chosenPolicy is null or empty
-		zapClientAPI.ascan.scanAsUser(API_KEY, url, contextId, userId,"true", chosenPolicy, null, null);//arg2, arg3, arg4, arg5, arg6, arg7)scan(API_KEY, url, "true", "false", chosenPolicy, null, null);
-
-		// Wait for complete scanning (equal to 100)
-		// Method signature : status(String scanId)
-		while (statusToInt(zapClientAPI.ascan.status("")) < 100) {
-			listener.getLogger().println("Status scan = " + statusToInt(zapClientAPI.ascan.status("")) + "%");
-			listener.getLogger().println("Alerts number = " + zapClientAPI.core.numberOfAlerts("").toString(2));
-			listener.getLogger().println("Messages number = " + zapClientAPI.core.numberOfMessages("").toString(2));
-			Thread.sleep(5000);
-		}
-	}
-	
-	/**
-	 * Stop ZAproxy if it has been previously started.
-	 * 
-	 * @param zapClientAPI the client API to use ZAP API methods
-	 * @param listener the listener to display log during the job execution in jenkins
-	 * @throws ClientApiException 
-	 */
-	private void stopZAP(ClientApi zapClientAPI, BuildListener listener) throws ClientApiException {
-		if (zapClientAPI != null) {
-			listener.getLogger().println("Shutdown ZAProxy");
-			//throw new ClientApiException("Exception lancee dans stopZAP");
-			zapClientAPI.core.shutdown(API_KEY);
-		} else {
-			listener.getLogger().println("No shutdown of ZAP (zapClientAPI==null)");
-		}
-	}
-	
-	
+	
+	
 	/**
 	 * Descriptor for {@link ZAProxy}. Used as a singleton.
 	 * The class is marked as public so that it can be accessed from views.
@@ -1753,11 +1544,6 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		 * If you don't want fields to be persisted, use <tt>transient</tt>.
 		 */
 		
-		/** Map where key is the report format represented by a String
-		 *  and value is a ZAPreport object allowing to generate a report with the corresponding format.
-		 */
-		private Map<String, ZAPreport> mapFormatReport;
-		
 		/** Represents the build's workspace */
 		private FilePath workspace;
 		
@@ -1766,7 +1552,6 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		 * call load() in the constructor.
 		 */
 		public ZAProxyDescriptorImpl() {
-			mapFormatReport = ZAPreportCollection.getInstance().getMapFormatReport();
 			load();
 		}
 		
@@ -1775,18 +1560,72 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 			return null; 
 		}
 
+		/**
+		 * @return a map where key is the report format represented by a String
+		 *  and value is a ZAPreport object allowing to generate a report with the corresponding format.
+		 *  The formats of the plugins installed after this descriptor's creation are included.
+		 */
 		public Map<String, ZAPreport> getMapFormatReport() {
-			return mapFormatReport;
+			return ZAPreportCollection.getInstance().getMapFormatReport();
 		}
 		
 		public List<String> getAllFormats() {
-			return new ArrayList<String>(mapFormatReport.keySet());
+			return new ArrayList<String>(getMapFormatReport().keySet());
 		}
 		
 		public void setWorkspace(FilePath ws) {
 			this.workspace = ws;
 		}
 		
+		/**
+		 * Performs on-the-fly validation of the form field 'suppressionsFile'.
+		 * <p>
+		 * The reports generated by ZAP and the Jira issues created by ZAP still have the suppressed alerts.
+		 *
+		 * @param suppressionsFile
+		 *      This parameter receives the value that the user has typed.
+		 * @param createJiras
+		 *      true if the Jira issues are created
+		 * @param createJirasWithSuppressions
+		 *      true if the Jira issues are created with a suppressions file
+		 * @return
+		 *      Indicates the outcome of the validation. This is sent to the browser.
+		 */
+		public FormValidation doCheckSuppressionsFile(@QueryParameter("suppressionsFile") final String suppressionsFile,
+				@QueryParameter("createJiras") final boolean createJiras, 
+				@QueryParameter("createJirasWithSuppressions") final boolean createJirasWithSuppressions) {
+			if(suppressionsFile.trim().isEmpty())
+				return FormValidation.ok();
+			String unfilteredFormats = "";
+			for(Map.Entry<String, ZAPreport> format : getMapFormatReport().entrySet()) {
+				if(!format.getValue().isAlertFilterSupported()) {
+					unfilteredFormats += (unfilteredFormats.isEmpty() ? "" : ", ") + format.getKey();
+				}
+			}
+			String message = "The reports generated by ZAP (" + unfilteredFormats + ") keep the suppressed alerts, don't choose them with a suppressions file.";
+			if(createJiras && !createJirasWithSuppressions)
+				message += " The Jira issues aren't created with a suppressions file, unless 'Create the Jira issues with the suppressions file' is checked.";
+			return FormValidation.warning(message);
+		}
+		
+		/**
+		 * Performs on-the-fly validation of the form field 'zapArchiveSha256'.
+		 * <p>
+		 * The SHA-256 names the directory of the installation in the cache, it must be 64 hexadecimal characters.
+		 *
+		 * @param zapArchiveSha256
+		 *      This parameter receives the value that the user has typed.
+		 * @return
+		 *      Indicates the outcome of the validation. This is sent to the browser.
+		 */
+		public FormValidation doCheckZapArchiveSha256(@QueryParameter("zapArchiveSha256") final String zapArchiveSha256) {
+			if(zapArchiveSha256.trim().isEmpty())
+				return FormValidation.ok();
+			if(!ZAPinstallCache.isSha256(zapArchiveSha256.trim()))
+				return FormValidation.error("The SHA-256 must be 64 hexadecimal characters.");
+			return FormValidation.ok();
+		}
+		
 		/**
 		 * Performs on-the-fly validation of the form field 'filenameReports'.
 		 *
@@ -1856,12 +1695,39 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 		 */
 		public ListBoxModel doFillChosenFormatsItems() {
 			ListBoxModel items = new ListBoxModel();
-			for(String format: mapFormatReport.keySet()) {
+			for(String format: getMapFormatReport().keySet()) {
 				items.add(format);
 			}
 			return items;
 		}
 		
+		/**
+		 * List model to choose the browser used by the AjaxSpider.
+		 * 
+		 * @return a {@link ListBoxModel}
+		 */
+		public ListBoxModel doFillAjaxSpiderBrowserIdItems() {
+			ListBoxModel items = new ListBoxModel();
+			for(String browserId : AJAX_SPIDER_BROWSERS) {
+				items.add(browserId);
+			}
+			return items;
+		}
+		
+		/**
+		 * List model to choose the minimum level of the ZAP log lines displayed in the build console.
+		 * 
+		 * @return a {@link ListBoxModel}
+		 */
+		public ListBoxModel doFillZapLogMinLevelItems() {
+			ListBoxModel items = new ListBoxModel();
+			items.add("NONE", "");
+			for(String level : ZAPlogRouter.LEVELS) {
+				items.add(level);
+			}
+			return items;
+		}
+		
 		/**
 		 * List model to choose the tool used (normally, it should be the ZAProxy tool).
 		 * 
@@ -2110,36 +1976,4 @@ public class ZAProxy extends AbstractDescribableImpl<ZAProxy> implements Seriali
 	
 	
 	}
-	
-	/**
-	 * This class allows to launch a method on a remote machine (if there is, otherwise, on a local machine).
-	 * The method launched is to wait the complete initialization of ZAProxy.
-	 * 
-	 * @author ludovic.roucoux
-	 *
-	 */
-	private static class WaitZAProxyInitCallable implements FileCallable<Void> {
-
-		private static final long serialVersionUID = -313398999885177679L;
-		
-		private ZAProxy zaproxy; 
-		private BuildListener listener;
-		
-		public WaitZAProxyInitCallable(ZAProxy zaproxy, BuildListener listener) {
-			this.zaproxy = zaproxy;
-			this.listener = listener;
-		}
-
-		@Override
-		public Void invoke(File f, VirtualChannel channel) {
-			zaproxy.waitForSuccessfulConnectionToZap(zaproxy.timeoutInSec, listener);
-			return null;
-		}
-		
-		@Override
-		public void checkRoles(RoleChecker checker) throws SecurityException {
-			// Nothing to do
-		}
-	}
 }
-
@@ -29,16 +29,12 @@ import hudson.Extension;
 import hudson.FilePath;
 import hudson.FilePath.FileCallable;
 import hudson.Launcher;
-import hudson.Launcher.LocalLauncher;
-import hudson.Launcher.RemoteLauncher;
 import hudson.Util;
 import hudson.model.BuildListener;
 import hudson.model.Computer;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
-import hudson.model.Node;
 import hudson.remoting.VirtualChannel;
-import hudson.slaves.SlaveComputer;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 import net.sf.json.JSONObject;
@@ -143,6 +139,18 @@ public class ZAProxyBuilder extends Builder {
 				
 		listener.getLogger().println("ReportName : "+reportName);
 		
+		String crawlCacheFingerprint=zaproxy.getCrawlCacheFingerprint();
+		if(crawlCacheFingerprint != null && !crawlCacheFingerprint.isEmpty()) {
+			try {
+				crawlCacheFingerprint=applyMacro( build,  listener,  crawlCacheFingerprint);
+			} catch (InterruptedException e1) {
+				listener.error(ExceptionUtils.getStackTrace(e1));
+			}
+		}
+		zaproxy.setEvaluatedCrawlCacheFingerprint(crawlCacheFingerprint);
+		
+		listener.getLogger().println("Crawl cache fingerprint : "+crawlCacheFingerprint);
+		
 		listener.getLogger().println("------- END Replace environment variables -------");
 		
 		
@@ -151,26 +159,11 @@ public class ZAProxyBuilder extends Builder {
 			listener.getLogger().println("------- START Prebuild -------");
 			
 			try {
-				Launcher launcher = null;
-				Node node = build.getBuiltOn();
-				
-				// Create launcher according to the build's location (Master or Slave) and the build's OS
-				
-				if("".equals(node.getNodeName())) { // Build on master 
-					launcher = new LocalLauncher(listener, build.getWorkspace().getChannel());
-				} else { // Build on slave
-					boolean isUnix;
-					if( "Unix".equals(((SlaveComputer)node.toComputer()).getOSDescription()) ) {
-						isUnix = true;
-					} else {
-						isUnix = false;
-					}
-					launcher = new RemoteLauncher(listener, build.getWorkspace().getChannel(), isUnix);
-				}		
-				zaproxy.startZAP(build, listener, launcher);
+				zaproxy.startZAP(build, listener, leasePort(build, listener));
 			} catch (Exception e) {
 				e.printStackTrace();
 				listener.error(ExceptionUtils.getStackTrace(e));
+				releasePort(build, listener);
 				return false;
 			}
 			listener.getLogger().println("------- END Prebuild -------");
@@ -184,28 +177,77 @@ public class ZAProxyBuilder extends Builder {
 		
 		listener.getLogger().println("Perform ZAProxy");
 		
-		if(!startZAPFirst) {
-			try {
-				zaproxy.startZAP(build, listener, launcher);
-			} catch (Exception e) {
-				e.printStackTrace();
-				listener.error(ExceptionUtils.getStackTrace(e));
-				return false;
-			}
-		}
-		
 		boolean res;
 		try {
 			//copyPolicyFile(build.getWorkspace(), listener); // TODO maybe in future version
-			res = build.getWorkspace().act(new ZAProxyCallable(this.zaproxy, listener));
+			int port = leasePort(build, listener);
+			ZAPscanPlan plan = new ZAPscanPlan(this.zaproxy, port);
+			// A sharded scan only crawls here, the shards are scanned on other machines
+			boolean sharded = zaproxy.getShardCount() > 1;
+			if(sharded) {
+				plan.setCrawlOnly();
+			}
+			ZAPscanController controller;
+			if(startZAPFirst) {
+				// ZAP is already started, only the scan is left
+				controller = new ZAPscanController(plan);
+			} else {
+				// Launch, wait, scan, report and shut down ZAP in a single remote call
+				controller = zaproxy.prepareLaunch(build, listener, port);
+				controller.setPlan(plan);
+			}
+			long crawlStartTime = System.currentTimeMillis();
+			res = ZAPscanController.execute(build.getWorkspace(), controller, listener);
+			if(res && sharded) {
+				res = new ZAPshardCoordinator(zaproxy).scanShards(build, listener, plan, System.currentTimeMillis() - crawlStartTime);
+			}
+			ZAPscanSummaryAction.attach(build, build.getWorkspace(), plan.getResultFilename(ZAPscanSummary.FILENAME), listener);
+			ZAPreportAction.attach(build, build.getWorkspace(), plan, listener);
+			// Gate on the new alerts only, the alerts already raised by the baseline don't fail the build
+			res = ZAPalertDiffAction.attach(build, build.getWorkspace(), plan, listener) && res;
 		} catch (Exception e) {
 			e.printStackTrace();
 			listener.error(ExceptionUtils.getStackTrace(e));
 			return false;
+		} finally {
+			releasePort(build, listener);
 		}
 		return res;
 	}
 	
+	/**
+	 * Get the port of ZAProxy for this build. The port is leased once, by the pre-build step if ZAProxy 
+	 * is started first.
+	 * 
+	 * @param build
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @return the port of ZAProxy for this build
+	 * @throws IOException if there is no free port
+	 * @throws InterruptedException
+	 */
+	private int leasePort(AbstractBuild<?, ?> build, BuildListener listener) throws IOException, InterruptedException {
+		ZAPportLease lease = build.getAction(ZAPportLease.class);
+		if(lease == null) {
+			lease = new ZAPportLease(zaproxy.leasePort(build.getWorkspace(), build.getExternalizableId(), listener));
+			build.addAction(lease);
+		}
+		return lease.getPort();
+	}
+	
+	/**
+	 * Release the port of ZAProxy at the end of the build step, so the next ZAProxy build step leases its own.
+	 * 
+	 * @param build
+	 * @param listener the listener to display log during the job execution in jenkins
+	 */
+	private void releasePort(AbstractBuild<?, ?> build, BuildListener listener) {
+		ZAPportLease lease = build.getAction(ZAPportLease.class);
+		if(lease != null) {
+			zaproxy.releasePort(build.getWorkspace(), build.getExternalizableId(), listener);
+			build.getActions().remove(lease);
+		}
+	}
+	
 		
 	/**
      * Replace macro with environment variable if it exists
@@ -371,33 +413,4 @@ public class ZAProxyBuilder extends Builder {
 		public  String getJiraPassword(){return jiraPassword;}
 
 	}
-	
-	/**
-	 * Used to execute ZAP remotely.
-	 * 
-	 * @author ludovic.roucoux
-	 *
-	 */
-	private static class ZAProxyCallable implements FileCallable<Boolean> {
-
-		private static final long serialVersionUID = -313398999885177679L;
-		
-		private ZAProxy zaproxy;
-		private BuildListener listener;
-		
-		public ZAProxyCallable(ZAProxy zaproxy, BuildListener listener) {
-			this.zaproxy = zaproxy;
-			this.listener = listener;
-		}
-
-		@Override
-		public Boolean invoke(File f, VirtualChannel channel) {
-			return zaproxy.executeZAP(new FilePath(f), listener);
-		}
-		
-		@Override
-		public void checkRoles(RoleChecker checker) throws SecurityException {
-			// Nothing to do
-		}
-	}
 }
@@ -0,0 +1,286 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.BuildListener;
+import hudson.model.Computer;
+import hudson.model.StreamBuildListener;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.nio.charset.Charset;
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import com.google.inject.Inject;
+
+/**
+ * Pipeline step to launch ZAProxy, scan the target and save the results, like {@link ZAProxyBuilder} 
+ * does for a freestyle job.
+ * <p>
+ * The step is asynchronous: ZAProxy is driven from a thread of the remoting pool, not from the 
+ * thread of the Pipeline. The settings to reattach to the scan (without its credentials) are saved with the 
+ * Pipeline and the scan handle is saved in the workspace, so after a restart of Jenkins the step reattaches 
+ * to the ZAProxy still running on the build's machine instead of starting over. The result files of the 
+ * step have the same suffix as its scan handle, parallel steps can share the workspace.
+ * 
+ */
+public class ZAProxyStep extends AbstractStepImpl {
+	
+	/** The objet to start and call ZAProxy methods */
+	private final ZAProxy zaproxy;
+	
+	/** Host configured when ZAProxy is used as proxy */
+	private final String zapProxyHost;
+	
+	/** Port configured when ZAProxy is used as proxy */
+	private final int zapProxyPort;
+	
+	@DataBoundConstructor
+	public ZAProxyStep(String zapProxyHost, int zapProxyPort, ZAProxy zaproxy) {
+		this.zaproxy = zaproxy;
+		this.zapProxyHost = zapProxyHost == null || zapProxyHost.isEmpty() 
+				? ZAProxyBuilder.DESCRIPTOR.getZapProxyDefaultHost() : zapProxyHost;
+		this.zapProxyPort = zapProxyPort > 0 ? zapProxyPort : ZAProxyBuilder.DESCRIPTOR.getZapProxyDefaultPort();
+		this.zaproxy.setZapProxyHost(this.zapProxyHost);
+		this.zaproxy.setZapProxyPort(this.zapProxyPort);
+		
+		this.zaproxy.setJiraBaseURL(ZAProxyBuilder.DESCRIPTOR.getJiraBaseURL());
+		this.zaproxy.setJiraUserName(ZAProxyBuilder.DESCRIPTOR.getJiraUserName());
+		this.zaproxy.setJiraPassword(ZAProxyBuilder.DESCRIPTOR.getJiraPassword());
+	}
+	
+	public ZAProxy getZaproxy() {
+		return zaproxy;
+	}
+	
+	public String getZapProxyHost() {
+		return zapProxyHost;
+	}
+
+	public int getZapProxyPort() {
+		return zapProxyPort;
+	}
+	
+	@Extension
+	public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+		public DescriptorImpl() {
+			super(Execution.class);
+		}
+
+		@Override
+		public String getFunctionName() {
+			return "zaproxy";
+		}
+
+		@Override
+		public String getDisplayName() {
+			return "Execute ZAProxy";
+		}
+	}
+	
+	/**
+	 * Drives ZAProxy without holding the thread of the Pipeline.
+	 * 
+	 */
+	public static class Execution extends AbstractStepExecutionImpl {
+		
+		private static final long serialVersionUID = 4218391528705264861L;
+		
+		/** Prefix of the file of the scan handle, relative to the workspace. The file name ends with the id of the step */
+		private static final String SCAN_HANDLE_PREFIX = "zaproxy-scan-";
+		
+		private static final String SCAN_HANDLE_EXTENSION = ".handle";
+		
+		@Inject
+		private transient ZAProxyStep step;
+		
+		@StepContextParameter
+		private transient FilePath workspace;
+		
+		@StepContextParameter
+		private transient TaskListener listener;
+		
+		@StepContextParameter
+		private transient EnvVars envVars;
+		
+		@StepContextParameter
+		private transient Computer computer;
+		
+		@StepContextParameter
+		private transient Run<?, ?> run;
+		
+		/** The scan of this step */
+		private transient ZAPscanPlan plan;
+		
+		/** The settings to reattach to the scan of this step, saved with the Pipeline instead of the whole plan */
+		private ZAPscanPlan reattachPlan;
+		
+		/** Owner of the port leased for this step, null if the port isn't leased */
+		private String portLeaseOwner;
+		
+		private transient Future<?> task;
+
+		@Override
+		public boolean start() throws Exception {
+			ZAProxy zaproxy = step.getZaproxy();
+			BuildListener buildListener = new StreamBuildListener(listener.getLogger(), Charset.defaultCharset());
+			
+			// Environment variables are replaced by ZAProxyBuilder.prebuild() in a freestyle job
+			zaproxy.setEvaluatedFilenameReports(envVars.expand(zaproxy.getFilenameReports()));
+			String crawlCacheFingerprint = zaproxy.getCrawlCacheFingerprint();
+			if(crawlCacheFingerprint != null && !crawlCacheFingerprint.isEmpty()) {
+				crawlCacheFingerprint = envVars.expand(crawlCacheFingerprint);
+			}
+			zaproxy.setEvaluatedCrawlCacheFingerprint(crawlCacheFingerprint);
+			
+			// Several steps of the same run can lease a port or share the workspace
+			String stepId = UUID.randomUUID().toString();
+			String owner = run.getExternalizableId() + "#" + stepId;
+			int port = zaproxy.leasePort(workspace, owner, buildListener);
+			if(zaproxy.getLeasePort()) {
+				portLeaseOwner = owner;
+			}
+			
+			ZAPscanController controller;
+			try {
+				controller = zaproxy.prepareLaunch(workspace, computer.getNode(), envVars, null, buildListener, port);
+			} catch (Exception e) {
+				releasePort(workspace, buildListener);
+				throw e;
+			}
+			plan = new ZAPscanPlan(zaproxy, port);
+			String suffix = run.getNumber() + "-" + stepId;
+			plan.setScanHandle(SCAN_HANDLE_PREFIX + suffix + SCAN_HANDLE_EXTENSION, owner);
+			plan.setResultFileSuffix(suffix);
+			reattachPlan = plan.getReattachPlan();
+			if(zaproxy.getShardCount() > 1) {
+				// The shards of a Pipeline are its parallel branches
+				buildListener.getLogger().println("The shards are only scanned by the freestyle build step, the scan isn't sharded");
+			}
+			controller.setPlan(plan);
+			
+			execute(workspace, controller, buildListener);
+			return false;
+		}
+
+		@Override
+		public void stop(Throwable cause) throws Exception {
+			if(task != null) {
+				task.cancel(true);
+			}
+			getContext().onFailure(cause);
+		}
+		
+		@Override
+		public void onResume() {
+			super.onResume();
+			try {
+				if(reattachPlan == null) {
+					throw new AbortException("ZAProxy wasn't started before the restart of Jenkins");
+				}
+				// The step isn't injected again after a restart, the plan is rebuilt from the saved settings
+				plan = reattachPlan;
+				FilePath ws = getContext().get(FilePath.class);
+				BuildListener buildListener = new StreamBuildListener(getContext().get(TaskListener.class).getLogger(), 
+						Charset.defaultCharset());
+				buildListener.getLogger().println("Jenkins restarted, reattach to ZAProxy [" 
+						+ plan.getZapProxyHost() + ":" + plan.getZapProxyPort() + "]");
+				
+				execute(ws, ZAPscanController.resume(plan), buildListener);
+			} catch (Exception e) {
+				getContext().onFailure(e);
+			}
+		}
+		
+		/**
+		 * Run the controller from a thread of the remoting pool and complete the step at its end.
+		 */
+		private void execute(final FilePath ws, final ZAPscanController controller, final BuildListener buildListener) {
+			task = Computer.threadPoolForRemoting.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						boolean success = ZAPscanController.execute(ws, controller, buildListener);
+						Run<?, ?> r = getContext().get(Run.class);
+						ZAPscanSummaryAction.attach(r, ws, plan.getResultFilename(ZAPscanSummary.FILENAME), buildListener);
+						ZAPreportAction.attach(r, ws, plan, buildListener);
+						boolean gatePassed = ZAPalertDiffAction.attach(r, ws, plan, buildListener);
+						if(!success) {
+							getContext().onFailure(new AbortException("ZAProxy scan failed"));
+						} else if(!gatePassed) {
+							getContext().onFailure(new AbortException("ZAProxy scan raised new alerts"));
+						} else {
+							getContext().onSuccess(null);
+						}
+					} catch (Exception e) {
+						getContext().onFailure(e);
+					} finally {
+						releasePort(ws, buildListener);
+						deleteScanHandle(ws, buildListener);
+					}
+				}
+			});
+		}
+		
+		/**
+		 * Delete the scan handle of the step once the step is completed, it's only needed to resume the step.
+		 */
+		private void deleteScanHandle(FilePath ws, BuildListener buildListener) {
+			try {
+				ws.child(plan.getScanHandleFilename()).delete();
+			} catch (Exception e) {
+				buildListener.error(ExceptionUtils.getStackTrace(e));
+			}
+		}
+		
+		/**
+		 * Release the port leased on the build's machine, if any.
+		 */
+		private void releasePort(FilePath ws, BuildListener buildListener) {
+			if(portLeaseOwner == null) {
+				return;
+			}
+			try {
+				ZAPportLeaseManager.release(ws, portLeaseOwner);
+				portLeaseOwner = null;
+			} catch (Exception e) {
+				buildListener.error(ExceptionUtils.getStackTrace(e));
+			}
+		}
+	}
+}
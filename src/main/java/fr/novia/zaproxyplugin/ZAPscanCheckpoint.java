@@ -0,0 +1,388 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.zaproxy.clientapi.core.ApiResponse;
+import org.zaproxy.clientapi.core.ApiResponseElement;
+import org.zaproxy.clientapi.core.ApiResponseList;
+import org.zaproxy.clientapi.core.ClientApi;
+import org.zaproxy.clientapi.core.ClientApiException;
+
+/**
+ * Checkpoint of an active scan too long for one build, kept in the workspace so the next build resumes 
+ * the scan instead of starting over.
+ * <p>
+ * A checkpoint is a ZAP session, with the site tree and the alerts found so far, and the rules of the scan 
+ * policy already run on the whole site tree. The next build loads the session and scans with the other 
+ * rules only. ZAP reports the progress of a scan by host and rule, not by node, so a rule interrupted 
+ * midway is run again from its start.
+ * <p>
+ * Each checkpoint saves the session in a new file, the previous one is deleted once the progress file 
+ * points to the new one, so an interrupted save never corrupts the checkpoint. The session files are 
+ * used by ZAP until it stops, so a complete scan only deletes the progress file, the next build deletes 
+ * the session files left.
+ * 
+ */
+public class ZAPscanCheckpoint {
+	
+	/** Directory of the checkpoint, relative to the workspace */
+	static final String DEFAULT_DIR = "zaproxy-checkpoint";
+	
+	private static final String PROGRESS_FILENAME = "checkpoint.properties";
+	
+	private static final String SESSION_PREFIX = "checkpoint-";
+	private static final String SESSION_EXTENSION = ".session";
+	
+	private static final String TARGET = "target";
+	private static final String POLICY = "policy";
+	private static final String SESSION = "session";
+	private static final String COMPLETED_RULES = "completedRules";
+	private static final String SCAN_DURATION = "scanDurationInMs";
+	private static final String PART = "part";
+	
+	/** Status of the rules run on a host */
+	private static final String STATUS_COMPLETE = "Complete";
+	private static final String STATUS_SKIPPED = "Skipped";
+	
+	private final File checkpointDir;
+	private final String targetURL;
+	private final String policy;
+	
+	/** The session of the checkpoint, null if there is no checkpoint */
+	private String sessionFilename;
+	private TreeSet<String> completedRules = new TreeSet<String>();
+	
+	/** The rules disabled in the scan policy for this part of the scan */
+	private String disabledRules;
+	private long scanDurationInMs;
+	private int part;
+	
+	/**
+	 * @param checkpointDir the directory of the checkpoint
+	 * @param targetURL the target of the scan
+	 * @param policy the scan policy, null or empty for the default policy
+	 */
+	public ZAPscanCheckpoint(File checkpointDir, String targetURL, String policy) {
+		this.checkpointDir = checkpointDir;
+		this.targetURL = targetURL.trim();
+		this.policy = policy == null ? "" : policy;
+	}
+	
+	/**
+	 * Load the checkpoint of a previous build. The checkpoint of another target or policy is deleted.
+	 * 
+	 * @return true if there is a checkpoint to resume
+	 * @throws IOException
+	 */
+	public boolean load() throws IOException {
+		File progressFile = new File(checkpointDir, PROGRESS_FILENAME);
+		if(!progressFile.isFile()) {
+			// The session of a complete scan
+			delete();
+			return false;
+		}
+		Properties progress = new Properties();
+		InputStream in = new FileInputStream(progressFile);
+		try {
+			progress.load(in);
+		} finally {
+			in.close();
+		}
+		
+		String session = progress.getProperty(SESSION);
+		if(!targetURL.equals(progress.getProperty(TARGET)) || !policy.equals(progress.getProperty(POLICY)) 
+				|| session == null || !new File(checkpointDir, session).isFile()) {
+			delete();
+			return false;
+		}
+		sessionFilename = session;
+		completedRules = new TreeSet<String>();
+		for(String rule : progress.getProperty(COMPLETED_RULES, "").split(",")) {
+			if(!rule.trim().isEmpty()) {
+				completedRules.add(rule.trim());
+			}
+		}
+		try {
+			scanDurationInMs = Long.parseLong(progress.getProperty(SCAN_DURATION, "0"));
+			part = Integer.parseInt(progress.getProperty(PART, "0"));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid checkpoint file [" + progressFile + "]", e);
+		}
+		return true;
+	}
+	
+	/**
+	 * Save the session and the progress of a running scan. The scan is paused while ZAP writes the session.
+	 * 
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param apikey ZAP apikey. Can be null.
+	 * @param scanId the id of the running scan
+	 * @param partDurationInMs the duration of the scan in this build
+	 * @throws ClientApiException
+	 * @throws IOException
+	 */
+	public void save(ClientApi zapClientAPI, String apikey, String scanId, long partDurationInMs) 
+			throws ClientApiException, IOException {
+		if(!checkpointDir.isDirectory() && !checkpointDir.mkdirs()) {
+			throw new IOException("Unable to create the checkpoint directory [" + checkpointDir + "]");
+		}
+		String previousSession = sessionFilename;
+		String session = SESSION_PREFIX + System.currentTimeMillis() + SESSION_EXTENSION;
+		
+		Map<String, String> map = buildApiParams(apikey, "scanId", scanId);
+		zapClientAPI.callApi("ascan", "action", "pause", map);
+		try {
+			zapClientAPI.core.saveSession(apikey, new File(checkpointDir, session).getAbsolutePath(), "true");
+		} finally {
+			zapClientAPI.callApi("ascan", "action", "resume", map);
+		}
+		// The rules disabled because they were completed by the previous builds aren't in the progress
+		completedRules.addAll(getCompletedRules(zapClientAPI, apikey, scanId));
+		sessionFilename = session;
+		writeProgress(partDurationInMs);
+		if(previousSession != null) {
+			deleteSession(previousSession);
+		}
+	}
+	
+	/**
+	 * Write the progress file in a temporary file first, the progress file always points to a complete session.
+	 */
+	private void writeProgress(long partDurationInMs) throws IOException {
+		Properties progress = new Properties();
+		progress.setProperty(TARGET, targetURL);
+		progress.setProperty(POLICY, policy);
+		progress.setProperty(SESSION, sessionFilename);
+		progress.setProperty(COMPLETED_RULES, join(completedRules));
+		progress.setProperty(SCAN_DURATION, String.valueOf(scanDurationInMs + partDurationInMs));
+		progress.setProperty(PART, String.valueOf(part));
+		
+		File progressFile = new File(checkpointDir, PROGRESS_FILENAME);
+		File tmpFile = new File(checkpointDir, PROGRESS_FILENAME + ".tmp");
+		OutputStream out = new FileOutputStream(tmpFile);
+		try {
+			progress.store(out, "zaproxy-plugin scan checkpoint");
+		} finally {
+			out.close();
+		}
+		if(progressFile.exists() && !progressFile.delete() || !tmpFile.renameTo(progressFile)) {
+			throw new IOException("Unable to write the checkpoint file [" + progressFile + "]");
+		}
+	}
+	
+	/**
+	 * Start a new part of the scan, from the loaded checkpoint if any.
+	 */
+	public void startPart() {
+		part++;
+	}
+	
+	/**
+	 * End the checkpoint once the scan is complete, the next build starts a new scan.
+	 * 
+	 * @throws IOException
+	 */
+	public void complete() throws IOException {
+		File progressFile = new File(checkpointDir, PROGRESS_FILENAME);
+		if(progressFile.exists() && !progressFile.delete()) {
+			throw new IOException("Unable to delete the checkpoint file [" + progressFile + "]");
+		}
+		sessionFilename = null;
+		completedRules.clear();
+	}
+	
+	/**
+	 * Delete the checkpoint and its sessions.
+	 */
+	private void delete() {
+		File[] files = checkpointDir.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				file.delete();
+			}
+		}
+		checkpointDir.delete();
+		sessionFilename = null;
+		completedRules.clear();
+		scanDurationInMs = 0;
+		part = 0;
+	}
+	
+	/**
+	 * Delete the files of a session (the database, its log, its properties, ...).
+	 */
+	private void deleteSession(String session) {
+		File[] files = checkpointDir.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				if(file.getName().startsWith(session)) {
+					file.delete();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param apikey ZAP apikey. Can be null.
+	 * @param scanId the id of a scan
+	 * @return the ids of the rules completed (or skipped) on all the hosts of the scan
+	 * @throws ClientApiException
+	 */
+	static Collection<String> getCompletedRules(ClientApi zapClientAPI, String apikey, String scanId) 
+			throws ClientApiException {
+		ApiResponse response = zapClientAPI.callApi("ascan", "view", "scanProgress", buildApiParams(apikey, "scanId", scanId));
+		TreeSet<String> completed = null;
+		for(ApiResponse item : getItems(response)) {
+			// Each host is an "id" element followed by the list of its rules
+			if(!(item instanceof ApiResponseList)) {
+				continue;
+			}
+			TreeSet<String> hostCompleted = new TreeSet<String>();
+			for(ApiResponse rule : getItems(item)) {
+				Map<String, String> values = new HashMap<String, String>();
+				for(ApiResponse value : getItems(rule)) {
+					if(value instanceof ApiResponseElement) {
+						values.put(value.getName(), ((ApiResponseElement) value).getValue());
+					}
+				}
+				String status = values.get("status");
+				if(values.get("id") != null && (STATUS_COMPLETE.equals(status) || STATUS_SKIPPED.equals(status))) {
+					hostCompleted.add(values.get("id"));
+				}
+			}
+			if(completed == null) {
+				completed = hostCompleted;
+			} else {
+				completed.retainAll(hostCompleted);
+			}
+		}
+		return completed == null ? new TreeSet<String>() : completed;
+	}
+	
+	/**
+	 * Disable the rules completed by the previous parts of the scan in the scan policy.
+	 * 
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param apikey ZAP apikey. Can be null.
+	 * @throws ClientApiException
+	 */
+	public void disableCompletedRules(ClientApi zapClientAPI, String apikey) throws ClientApiException {
+		if(completedRules.isEmpty()) {
+			return;
+		}
+		disabledRules = join(completedRules);
+		Map<String, String> map = buildApiParams(apikey, "ids", disabledRules);
+		map.put("scanPolicyName", policy);
+		zapClientAPI.callApi("ascan", "action", "disableScanners", map);
+	}
+	
+	/**
+	 * Enable again the rules disabled by {@link #disableCompletedRules(ClientApi, String)}, the scan policy 
+	 * can be kept in the home of ZAP.
+	 * 
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param apikey ZAP apikey. Can be null.
+	 * @throws ClientApiException
+	 */
+	public void restoreRules(ClientApi zapClientAPI, String apikey) throws ClientApiException {
+		if(disabledRules == null) {
+			return;
+		}
+		Map<String, String> map = buildApiParams(apikey, "ids", disabledRules);
+		map.put("scanPolicyName", policy);
+		zapClientAPI.callApi("ascan", "action", "enableScanners", map);
+		disabledRules = null;
+	}
+	
+	private static List<ApiResponse> getItems(ApiResponse response) {
+		if(response instanceof ApiResponseList && ((ApiResponseList) response).getItems() != null) {
+			return ((ApiResponseList) response).getItems();
+		}
+		return new ArrayList<ApiResponse>();
+	}
+	
+	private static Map<String, String> buildApiParams(String apikey, String name, String value) {
+		Map<String, String> map = new HashMap<String, String>();
+		if(apikey != null) {
+			map.put("apikey", apikey);
+		}
+		map.put(name, value);
+		return map;
+	}
+	
+	private static String join(Collection<String> values) {
+		StringBuilder sb = new StringBuilder();
+		for(String value : values) {
+			if(sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(value);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * @return the session file of the checkpoint, null if there is no checkpoint
+	 */
+	public File getSessionFile() {
+		return sessionFilename == null ? null : new File(checkpointDir, sessionFilename);
+	}
+	
+	/**
+	 * @return the number of rules completed by the previous parts of the scan
+	 */
+	public int getCompletedRuleCount() {
+		return completedRules.size();
+	}
+	
+	/**
+	 * @return the duration of the previous parts of the scan
+	 */
+	public long getScanDurationInMs() {
+		return scanDurationInMs;
+	}
+	
+	/**
+	 * @return the number of the part of the scan, from 1
+	 */
+	public int getPart() {
+		return part;
+	}
+}
@@ -0,0 +1,407 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.Launcher.LocalLauncher;
+import hudson.Proc;
+import hudson.model.BuildListener;
+import hudson.model.StreamBuildListener;
+import hudson.remoting.Pipe;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.apache.tools.ant.BuildException;
+import org.jenkinsci.remoting.RoleChecker;
+
+/**
+ * Runs the lifecycle of ZAProxy on the build's machine in a single remote call: launch ZAP, wait for its 
+ * initialization, then execute the {@link ZAPscanPlan} (scan, reports and shutdown).
+ * <p>
+ * The launch part is optional (ZAP already started as a prebuild step) and so is the scan part (ZAP started 
+ * as a prebuild step). The messages of the controller are sent back to the build's console asynchronously 
+ * through a {@link Pipe}, so the remote machine never waits for the master to write them.
+ * 
+ */
+public class ZAPscanController implements FileCallable<Boolean> {
+
+	private static final long serialVersionUID = 6914388612097735246L;
+	
+	private static final int MAX_LOG_BACKUPS = 5;
+	
+	private static final long BYTES_IN_MB = 1024L * 1024L;
+	
+	/** Number of ZAP daemons launched by this JVM and still running */
+	private static final AtomicInteger RUNNING_ZAP = new AtomicInteger();
+	
+	/** Sum of the heaps given by their launch profile to the ZAP daemons still running */
+	private static final AtomicLong RESERVED_HEAP_IN_MB = new AtomicLong();
+	
+	/** Time to wait for the last messages of the controller once the remote call is over */
+	private static final long EVENTS_DRAIN_TIMEOUT_IN_MS = 10 * 1000L;
+	
+	/** Command to launch ZAP, null if ZAP is already started */
+	private ArrayList<String> cmd;
+	private EnvVars envVars;
+	private String workDir;
+	
+	private String zapProxyHost;
+	private int zapProxyPort;
+	private int timeoutInSec;
+	
+	private boolean zapLogToFile;
+	private String zapLogFilename;
+	private int zapLogMaxSizeInMb;
+	private String zapLogConsolePattern;
+	private int zapLogConsoleMaxLinesPerMin;
+	private String zapLogMinLevel;
+	
+	/** Size the JVM and the threads of ZAP from the resources of the build's machine */
+	private boolean autoSizeZap;
+	private int zapMemoryPercent;
+	
+	/** Number of ZAP daemons which can run at the same time on the build's machine */
+	private int plannedZapInstances = 1;
+	
+	/** Directory of the ZAP home templates on the build's machine, null to launch ZAP with its default directory */
+	private String homeTemplatesDir;
+	
+	/** The scan to execute once ZAP is started, null to only start ZAP */
+	private ZAPscanPlan plan;
+	
+	/** Reattach to the scan started by a previous execution of the plan instead of starting it */
+	private boolean resume;
+	
+	/** Used for the output of the ZAP process, which outlives the remote call when ZAP is started as a prebuild step */
+	private BuildListener listener;
+	
+	/** Carries the messages of the controller to the build's console */
+	private Pipe events;
+	
+	/**
+	 * Controller which launches ZAP and waits for its initialization.
+	 * 
+	 * @param cmd the command to launch ZAP
+	 * @param envVars the environment variables of the ZAP process
+	 * @param workDir the working directory of the ZAP process
+	 * @param zaproxy the configuration of the build step
+	 * @param zapProxyPort the port of ZAP for this build
+	 */
+	ZAPscanController(List<String> cmd, EnvVars envVars, String workDir, ZAProxy zaproxy, int zapProxyPort) {
+		this.cmd = new ArrayList<String>(cmd);
+		this.envVars = envVars;
+		this.workDir = workDir;
+		this.zapProxyHost = zaproxy.getZapProxyHost();
+		this.zapProxyPort = zapProxyPort;
+		this.timeoutInSec = zaproxy.getTimeoutInSec();
+		this.zapLogToFile = zaproxy.getZapLogToFile();
+		this.zapLogFilename = zaproxy.getZapLogFilename() == null || zaproxy.getZapLogFilename().isEmpty() 
+				? ZAProxy.DEFAULT_ZAP_LOG_FILENAME : zaproxy.getZapLogFilename();
+		this.zapLogMaxSizeInMb = zaproxy.getZapLogMaxSizeInMb() > 0 ? zaproxy.getZapLogMaxSizeInMb() : ZAProxy.DEFAULT_ZAP_LOG_MAX_SIZE_IN_MB;
+		this.zapLogConsolePattern = zaproxy.getZapLogConsolePattern();
+		this.zapLogConsoleMaxLinesPerMin = zaproxy.getZapLogConsoleMaxLinesPerMin();
+		this.zapLogMinLevel = zaproxy.getZapLogMinLevel();
+		this.autoSizeZap = zaproxy.getAutoSizeZap();
+		this.zapMemoryPercent = zaproxy.getZapMemoryPercent() > 0 ? zaproxy.getZapMemoryPercent() : ZAProxy.DEFAULT_ZAP_MEMORY_PERCENT;
+	}
+	
+	/**
+	 * Controller which only executes the scan plan, ZAP being already started.
+	 * 
+	 * @param plan the scan to execute
+	 */
+	ZAPscanController(ZAPscanPlan plan) {
+		this.plan = plan;
+	}
+	
+	/**
+	 * Controller which reattaches to the ZAP started by a previous execution of the scan plan, 
+	 * e.g. after a restart of Jenkins.
+	 * 
+	 * @param plan the scan to resume, its scan handle must be set
+	 * @return the controller
+	 */
+	static ZAPscanController resume(ZAPscanPlan plan) {
+		ZAPscanController controller = new ZAPscanController(plan);
+		controller.resume = true;
+		return controller;
+	}
+	
+	/**
+	 * Launch ZAP with a clone of the template of its default directory.
+	 * 
+	 * @param homeTemplatesDir the directory of the ZAP home templates on the build's machine
+	 */
+	void setHomeTemplatesDir(String homeTemplatesDir) {
+		this.homeTemplatesDir = homeTemplatesDir;
+	}
+	
+	/**
+	 * @param plannedZapInstances the number of ZAP daemons which can run at the same time on the build's machine 
+	 * (e.g. its number of executors), they share the memory given to ZAP
+	 */
+	void setPlannedZapInstances(int plannedZapInstances) {
+		this.plannedZapInstances = Math.max(plannedZapInstances, 1);
+	}
+	
+	/**
+	 * Set the scan to execute once ZAP is started.
+	 * 
+	 * @param plan the scan to execute
+	 */
+	void setPlan(ZAPscanPlan plan) {
+		this.plan = plan;
+	}
+	
+	/**
+	 * Execute the controller on the machine of the workspace and copy its messages in the build's console.
+	 * 
+	 * @param workspace the workspace of the build
+	 * @param controller the controller to execute
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @return the result of the scan plan, true if there is no scan plan
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static boolean execute(FilePath workspace, ZAPscanController controller, final BuildListener listener) 
+			throws IOException, InterruptedException {
+		controller.listener = listener;
+		controller.events = Pipe.createRemoteToLocal();
+		
+		final InputStream in = controller.events.getIn();
+		Thread copier = new Thread("ZAProxy controller events") {
+			@Override
+			public void run() {
+				try {
+					IOUtils.copy(in, listener.getLogger());
+				} catch (IOException e) {
+					listener.error(ExceptionUtils.getStackTrace(e));
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
+			}
+		};
+		copier.setDaemon(true);
+		copier.start();
+		
+		try {
+			return workspace.act(controller);
+		} finally {
+			// The remote side closes the pipe at the end of the call, wait for the messages still in transit
+			copier.join(EVENTS_DRAIN_TIMEOUT_IN_MS);
+		}
+	}
+
+	@Override
+	public Boolean invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+		OutputStream out = events.getOut();
+		BuildListener controllerListener = new StreamBuildListener(out, Charset.defaultCharset());
+		try {
+			if(cmd != null) {
+				launchZAP(f, controllerListener);
+				waitForSuccessfulConnectionToZap(controllerListener);
+			}
+			if(plan != null) {
+				return resume ? plan.resumeZAP(new FilePath(f), controllerListener) : plan.executeZAP(new FilePath(f), controllerListener);
+			}
+			return true;
+		} finally {
+			controllerListener.getLogger().flush();
+			IOUtils.closeQuietly(out);
+		}
+	}
+	
+	/**
+	 * Launch the ZAP process from the build's machine. 
+	 * 
+	 * @param f the workspace
+	 * @param controllerListener the listener of the controller
+	 * @throws IOException
+	 * @throws InterruptedException 
+	 */
+	private void launchZAP(File f, BuildListener controllerListener) throws IOException, InterruptedException {
+		final File homeClone = cloneHomeTemplate(controllerListener);
+		
+		// Before the launch profile, the threads follow the request rate of the target
+		if(plan != null && plan.getRequestRateLimit() > 0) {
+			int rate = ZAPrateLimiter.applyTo(cmd, plan.getTargetURL(), plan.getRequestRateLimit());
+			controllerListener.getLogger().println("ZAProxy launched for " + rate + " req/s toward [" 
+					+ ZAPrateLimiter.getHost(plan.getTargetURL()) + "]");
+		}
+		
+		final long reservedHeapInMb;
+		if(autoSizeZap) {
+			ZAPlaunchProfile profile = ZAPlaunchProfile.computeForThisMachine(RUNNING_ZAP.get(), RESERVED_HEAP_IN_MB.get(), 
+					plannedZapInstances, zapMemoryPercent);
+			if(profile != null) {
+				profile.applyTo(cmd, envVars);
+				reservedHeapInMb = profile.getHeapInMb();
+				controllerListener.getLogger().println("ZAProxy launch profile : " + profile);
+				if(profile.getHeapInMb() < ZAPlaunchProfile.MIN_HEAP_IN_MB) {
+					controllerListener.getLogger().println("Not enough memory left on the build's machine, ZAProxy may be short of memory");
+				}
+			} else {
+				reservedHeapInMb = 0;
+				controllerListener.getLogger().println("Memory of the build's machine unknown, ZAProxy is launched without launch profile");
+			}
+		} else {
+			reservedHeapInMb = 0;
+		}
+		
+		final Proc proc;
+		final ZAPlogRouter router;
+		if(!zapLogToFile) {
+			router = null;
+			proc = new LocalLauncher(listener).launch().cmds(cmd).envs(envVars).stdout(listener).pwd(new File(workDir)).start();
+		} else {
+			// The ZAP output stays on the build's machine
+			File logFile = new File(zapLogFilename);
+			if(!logFile.isAbsolute()) {
+				logFile = new File(f, zapLogFilename);
+			}
+			Pattern pattern = zapLogConsolePattern == null || zapLogConsolePattern.isEmpty() ? null : Pattern.compile(zapLogConsolePattern);
+			
+			router = new ZAPlogRouter(logFile, zapLogMaxSizeInMb * BYTES_IN_MB, MAX_LOG_BACKUPS, 
+					pattern, zapLogConsoleMaxLinesPerMin, listener.getLogger(), zapLogMinLevel);
+			proc = new LocalLauncher(listener).launch().cmds(cmd).envs(envVars).stdout(router).pwd(new File(workDir)).start();
+			controllerListener.getLogger().println("ZAProxy output is written to [" + logFile.getAbsolutePath() + "]");
+		}
+		RUNNING_ZAP.incrementAndGet();
+		RESERVED_HEAP_IN_MB.addAndGet(reservedHeapInMb);
+		
+		// ZAP runs after the end of this call, the log file is closed when the process ends
+		Thread watcher = new Thread("ZAProxy process watcher [" + zapProxyHost + ":" + zapProxyPort + "]") {
+			@Override
+			public void run() {
+				try {
+					proc.join();
+				} catch (IOException e) {
+					e.printStackTrace();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					RUNNING_ZAP.decrementAndGet();
+					RESERVED_HEAP_IN_MB.addAndGet(-reservedHeapInMb);
+					IOUtils.closeQuietly(router);
+					if(homeClone != null) {
+						ZAPhomeTemplate.deleteClone(homeClone);
+					}
+				}
+			}
+		};
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+	
+	/**
+	 * Replace the default directory of ZAP in its command by a clone of its template.
+	 * 
+	 * @return the clone, null if there is no template to use
+	 */
+	private File cloneHomeTemplate(BuildListener controllerListener) throws IOException, InterruptedException {
+		int dirIndex = cmd.indexOf(ZAProxy.CMD_LINE_DIR);
+		if(homeTemplatesDir == null || dirIndex < 0 || dirIndex + 1 >= cmd.size()) {
+			return null;
+		}
+		File clone = new ZAPhomeTemplate(new File(homeTemplatesDir)).cloneFor(new File(cmd.get(dirIndex + 1)), cmd.get(0), 
+				envVars, new File(workDir), controllerListener);
+		cmd.set(dirIndex + 1, clone.getAbsolutePath());
+		return clone;
+	}
+	
+	/**
+	 * Wait for ZAProxy initialization, so it's ready to use at the end of this method
+	 * (otherwise, catch exception). This method is launched on the remote machine (if there is one)
+	 * 
+	 * @param controllerListener the listener of the controller
+	 * @see <a href="https://groups.google.com/forum/#!topic/zaproxy-develop/gZxYp8Og960">
+	 * 		https://groups.google.com/forum/#!topic/zaproxy-develop/gZxYp8Og960</a>
+	 */
+	private void waitForSuccessfulConnectionToZap(BuildListener controllerListener) {
+		int timeoutInMs = ZAProxy.getMilliseconds(timeoutInSec);
+		int connectionTimeoutInMs = timeoutInMs;
+		int pollingIntervalInMs = ZAProxy.getMilliseconds(1);
+		boolean connectionSuccessful = false;
+		long startTime = System.currentTimeMillis();
+		Socket socket = null;
+		do {
+			try {
+				socket = new Socket();
+				socket.connect(new InetSocketAddress(zapProxyHost, zapProxyPort), connectionTimeoutInMs);
+				connectionSuccessful = true;
+			} catch (SocketTimeoutException ignore) {
+				controllerListener.error(ExceptionUtils.getStackTrace(ignore));
+				throw new BuildException("Unable to connect to ZAP's proxy after " + timeoutInSec + " seconds.");
+				
+			} catch (IOException ignore) {
+				// and keep trying but wait some time first...
+				try {
+					Thread.sleep(pollingIntervalInMs);
+				} catch (InterruptedException e) {
+					controllerListener.error(ExceptionUtils.getStackTrace(ignore));
+					throw new BuildException("The task was interrupted while sleeping between connection polling.", e);
+				}
+
+				long ellapsedTime = System.currentTimeMillis() - startTime;
+				if (ellapsedTime >= timeoutInMs) {
+					controllerListener.error(ExceptionUtils.getStackTrace(ignore));
+					throw new BuildException("Unable to connect to ZAP's proxy after " + timeoutInSec + " seconds.");
+				}
+				connectionTimeoutInMs = (int) (timeoutInMs - ellapsedTime);
+			} finally {
+				if(socket != null) {
+					try {
+						socket.close();
+					} catch (IOException e) {
+						controllerListener.error(ExceptionUtils.getStackTrace(e));
+					}
+				}
+			}
+		} while (!connectionSuccessful);
+		controllerListener.getLogger().println("ZAProxy is ready on [" + zapProxyHost + ":" + zapProxyPort + "]");
+	}
+	
+	@Override
+	public void checkRoles(RoleChecker checker) throws SecurityException {
+		// Nothing to do
+	}
+}
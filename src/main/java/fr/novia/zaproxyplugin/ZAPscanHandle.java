@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Where a scan is in its lifecycle: the ZAP it runs on, its phase and the id of the running active scan. 
+ * The handle is written in the workspace on the build's machine each time the phase changes, so a 
+ * Pipeline step resumed after a restart of Jenkins can reattach to the scan instead of starting over.
+ * <p>
+ * A handle belongs to one execution (e.g. a step of a run) : the handle left in the workspace by another 
+ * execution is ignored, so a resumed step never takes the result of an earlier build for its own.
+ * <p>
+ * The handles of the scans running in this JVM are registered: when only the master restarts, the execution 
+ * on the build's machine isn't interrupted and keeps the ownership of the scan.
+ * 
+ */
+public class ZAPscanHandle {
+
+	/** Site tree seeding, spiders and set up of the context */
+	public static final String PHASE_CRAWL = "crawl";
+	
+	/** Active scan, the only phase which can be reattached to */
+	public static final String PHASE_SCAN = "scan";
+	
+	/** Reports, Jira issues and session */
+	public static final String PHASE_RESULTS = "results";
+	
+	/** ZAP is stopped and the results are saved */
+	public static final String PHASE_DONE = "done";
+	
+	private static final String KEY_HOST = "host";
+	private static final String KEY_PORT = "port";
+	private static final String KEY_PHASE = "phase";
+	private static final String KEY_SCAN_ID = "scanId";
+	private static final String KEY_OWNER = "owner";
+	
+	/** Absolute paths of the handles owned by an execution running in this JVM */
+	private static final Set<String> ACTIVE_HANDLES = Collections.synchronizedSet(new HashSet<String>());
+	
+	private final File file;
+	
+	/** Id of the execution which owns the handle */
+	private final String owner;
+	
+	private final String host;
+	
+	private final int port;
+	
+	private String phase;
+	
+	/** Id of the running active scan, null if unknown */
+	private String scanId;
+	
+	/**
+	 * @param file the file of the handle
+	 * @param owner the id of the execution which owns the handle (e.g. the id of the run and of the step)
+	 * @param host the host of ZAP
+	 * @param port the port of ZAP
+	 */
+	public ZAPscanHandle(File file, String owner, String host, int port) {
+		this.file = file;
+		this.owner = owner;
+		this.host = host;
+		this.port = port;
+	}
+	
+	public String getOwner() {
+		return owner;
+	}
+	
+	public String getHost() {
+		return host;
+	}
+	
+	public int getPort() {
+		return port;
+	}
+	
+	public String getPhase() {
+		return phase;
+	}
+	
+	public String getScanId() {
+		return scanId;
+	}
+	
+	/**
+	 * Change the phase of the scan and save the handle.
+	 * 
+	 * @param phase the new phase
+	 * @param scanId the id of the running active scan, null if there isn't one
+	 * @throws IOException
+	 */
+	public void update(String phase, String scanId) throws IOException {
+		this.phase = phase;
+		this.scanId = scanId;
+		
+		Properties properties = new Properties();
+		if(owner != null) {
+			properties.setProperty(KEY_OWNER, owner);
+		}
+		properties.setProperty(KEY_HOST, host);
+		properties.setProperty(KEY_PORT, String.valueOf(port));
+		properties.setProperty(KEY_PHASE, phase);
+		if(scanId != null) {
+			properties.setProperty(KEY_SCAN_ID, scanId);
+		}
+		
+		if(file.getParentFile() != null && !file.getParentFile().exists()) {
+			file.getParentFile().mkdirs();
+		}
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, "zaproxy-plugin scan handle");
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+	
+	/**
+	 * Register the handle as owned by the current execution.
+	 */
+	public void activate() {
+		ACTIVE_HANDLES.add(file.getAbsolutePath());
+	}
+	
+	/**
+	 * Release the ownership of the handle, at the end of the execution.
+	 */
+	public void deactivate() {
+		ACTIVE_HANDLES.remove(file.getAbsolutePath());
+	}
+	
+	/**
+	 * @param file the file of a handle
+	 * @return true if an execution running in this JVM owns the handle
+	 */
+	public static boolean isActive(File file) {
+		return ACTIVE_HANDLES.contains(file.getAbsolutePath());
+	}
+	
+	/**
+	 * Read the handle saved by a previous run of the same execution.
+	 * 
+	 * @param file the file of the handle
+	 * @param owner the id of the execution
+	 * @return the handle, null if there is no handle or if it belongs to another execution
+	 * @throws IOException
+	 */
+	public static ZAPscanHandle load(File file, String owner) throws IOException {
+		if(!file.isFile()) {
+			return null;
+		}
+		
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		
+		if(owner == null ? properties.getProperty(KEY_OWNER) != null : !owner.equals(properties.getProperty(KEY_OWNER))) {
+			return null;
+		}
+		
+		ZAPscanHandle handle;
+		try {
+			handle = new ZAPscanHandle(file, owner, properties.getProperty(KEY_HOST), 
+					Integer.parseInt(properties.getProperty(KEY_PORT, "-1")));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid scan handle [" + file.getAbsolutePath() + "]", e);
+		}
+		handle.phase = properties.getProperty(KEY_PHASE);
+		handle.scanId = properties.getProperty(KEY_SCAN_ID);
+		return handle;
+	}
+	
+	@Override
+	public String toString() {
+		return "phase [" + phase + "] scan [" + scanId + "] on [" + host + ":" + port + "] for [" + owner + "]";
+	}
+}
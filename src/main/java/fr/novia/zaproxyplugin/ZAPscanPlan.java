@@ -0,0 +1,2842 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import fr.novia.zaproxyplugin.ZAPsiteTreeSeeder.SeedRequest;
+import fr.novia.zaproxyplugin.report.ZAPalertReader;
+import fr.novia.zaproxyplugin.report.ZAPreport;
+import fr.novia.zaproxyplugin.report.ZAPreportCollection;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.model.BuildListener;
+
+import java.io.BufferedOutputStream;
+import java.io.Externalizable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.zaproxy.clientapi.core.ApiResponse;
+import org.zaproxy.clientapi.core.ApiResponseElement;
+import org.zaproxy.clientapi.core.ApiResponseList;
+import org.zaproxy.clientapi.core.ApiResponseSet;
+import org.zaproxy.clientapi.core.ClientApi;
+import org.zaproxy.clientapi.core.ClientApiException;
+
+/**
+ * Everything needed to execute ZAProxy on the build's machine, built once per build from the {@link ZAProxy} 
+ * configuration and sent to the remote machine (if there is one) to run the scan.
+ * <p>
+ * Unlike {@link ZAProxy}, it contains neither the UI-only state (tool installation, JDK, command line options...) 
+ * nor the configuration with unevaluated environment variables. It's encoded field by field with 
+ * {@link Externalizable}, so the remoting payload stays small.
+ * 
+ */
+public class ZAPscanPlan implements Externalizable {
+
+	private static final long serialVersionUID = -2781964716257310432L;
+	
+	private static final String API_KEY = ZAProxy.API_KEY;
+	
+	private static final int AJAX_SPIDER_STOP_GRACE_IN_SEC = 60;
+	
+	private static final String DEFAULT_CRAWL_CACHE_DIR = "zap-crawl-cache";
+	
+	/** Number of messages read at once from the ZAP history to fill the crawl cache */
+	private static final int MESSAGES_PAGE_SIZE = 500;
+	
+	/** Maximum duration of the scan of a single URL, without recursion */
+	private static final int URL_SCAN_TIMEOUT_IN_MIN = 30;
+	
+	/** Interval between the checks of a reused authenticated session during the spider and the scan */
+	private static final long AUTH_SESSION_CHECK_INTERVAL_IN_MS = 60000L;
+	
+	/** Name of the context of the scan */
+	private static final String CONTEXT_NAME = "context1";
+	
+	/** Name of the file of the site tree URLs written in the workspace by a crawl only plan */
+	static final String SITE_TREE_FILENAME = "zaproxy-site-tree.txt";
+	
+	/** Name of the file written in the workspace when the scan window stopped the scan before its end */
+	static final String PARTIAL_SCAN_FILENAME = "zaproxy-partial-scan.txt";
+	
+	private static final int COMPRESSION_BUFFER_SIZE = 64 * 1024;
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** Host configured when ZAProxy is used as proxy */
+	private String zapProxyHost;
+
+	/** Port configured when ZAProxy is used as proxy */
+	private int zapProxyPort;
+
+	/** Filename to load ZAProxy session. Contains the absolute path to the session */
+	private String filenameLoadSession;
+
+	/** URL to attack by ZAProxy */
+	private String targetURL;
+
+	/** Exclude url from scan */
+	private String excludedUrl;
+
+	/** the scan mode (AUTHENTICATED/NOT_AUTHENTICATED) */
+	private String scanMode;
+
+	/** the authentication method type (SCRIPT_BASED/FORM_BASED) */
+	private String authenticationMode;
+
+	/** Realize a url spider or not by ZAProxy */
+	private boolean spiderURL;
+
+	/** Realize a url spider as user or not by ZAProxy */
+	private boolean spiderAsUser;
+
+	/** Realize a url AjaxSpider or not by ZAProxy */
+	private boolean ajaxSpiderURL;
+
+	/** Realize a url AjaxSpider as user or not by ZAProxy */
+	private boolean ajaxSpiderURLAsUser;
+
+	/** Browser used by the AjaxSpider */
+	private String ajaxSpiderBrowserId;
+
+	/** Number of browsers crawling in parallel with the AjaxSpider. 0 means one browser per core */
+	private int ajaxSpiderBrowsers;
+
+	/** Maximum depth crawled by the AjaxSpider */
+	private int ajaxSpiderMaxDepth;
+
+	/** Maximum duration of the AjaxSpider in minutes */
+	private int ajaxSpiderMaxDurationInMin;
+
+	/** Realize a url scan or not by ZAProxy */
+	private boolean scanURL;
+
+	/** Realize a url scan as user or not by ZAProxy */
+	private boolean scanURLAsUser;
+
+	/** Scan only a representative sample of the URLs found */
+	private boolean sampleURLs;
+
+	/** Number of URLs scanned for each structural template */
+	private int sampleSizePerCluster;
+
+	/** The policy to use for the scan */
+	private String chosenPolicy;
+
+	/** Username for the defined user (script based authentication) */
+	private String scriptUsername;
+
+	/** Password for the defined user (script based authentication) */
+	private String scriptPassword;
+
+	/** logged in indication (script based authentication) */
+	private String scriptLoggedInIndicator;
+
+	/** Authentication script name used (script based authentication) */
+	private String authenticationScriptName;
+
+	/** Username for the defined user (form based authentication) */
+	private String username;
+
+	/** Password for the defined user (form based authentication) */
+	private String password;
+
+	/** username post data parameter (form based authentication) */
+	private String usernameParameter;
+
+	/** password post data parameter (form based authentication) */
+	private String passwordParameter;
+
+	/** extra post data needed to authenticate the user (form based authentication) */
+	private String extraPostData;
+
+	/** loggin url */
+	private String loginUrl;
+
+	/** logged in indication */
+	private String loggedInIndicator;
+
+	/** Evaluated fingerprint of the application. Empty to disable the crawl cache */
+	private String evaluatedCrawlCacheFingerprint;
+
+	/** Directory of the crawl cache files */
+	private String crawlCacheDir;
+
+	/** Files to import in the site tree */
+	private String importFiles;
+
+	/** Skip the spiders when the site tree has been seeded from the imported files */
+	private boolean skipSpidersOnImport;
+
+	/** Maximum number of requests sent in parallel to ZAP to seed the site tree */
+	private int seedConcurrency;
+
+	/** Maximum time in seconds between two progress lines of a scan */
+	private int progressHeartbeatInSec;
+
+	/** Save reports or not */
+	private boolean saveReports;
+
+	/** List of chosen format for reports */
+	private ArrayList<ZAPreport> reports;
+
+	/** Filename for ZAProxy reports, with environment variables replaced */
+	private String evaluatedFilenameReports;
+
+	/** Save session or not */
+	private boolean saveSession;
+
+	/** Filename to save ZAProxy session. It can contain a relative path. */
+	private String filenameSaveSession;
+
+	/** create jiras or not */
+	private boolean createJiras;
+	
+	/** create jiras with a suppressions file or not, the suppressed alerts are deleted from ZAP before */
+	private boolean createJirasWithSuppressions;
+
+	/** The jira base URL */
+	private String jiraBaseURL;
+
+	/** The jira user name */
+	private String jiraUserName;
+
+	/** The jira password */
+	private String jiraPassword;
+
+	/** The jira project key */
+	private String projectKey;
+
+	/** The jira assignee */
+	private String assignee;
+
+	/** select alert type high */
+	private boolean alertHigh;
+
+	/** select alert type medium */
+	private boolean alertMedium;
+
+	/** select alert type low */
+	private boolean alertLow;
+
+	/** Filetr issues by resource type */
+	private boolean filterIssuesByResourceType;
+	
+	/** File of the scan handle, relative to the workspace. Null if the scan can't be resumed */
+	private String scanHandleFilename;
+	
+	/** Id of the execution owning the scan handle */
+	private String scanHandleOwner;
+	
+	/** Suffix of the names of the result files in the workspace, unique to the execution. Null for the default names */
+	private String resultFileSuffix;
+	
+	/** The plan only reattaches to a running execution, it doesn't have the configuration to start a scan */
+	private boolean reattachOnly;
+	
+	/** Requests per second toward the target host, shared by the builds of the machine. 0 for no limit */
+	private int requestRateLimit;
+	
+	/** Compress the reports with gzip while they're written */
+	private boolean compressReports;
+	
+	/** Fail the build on the alerts not raised by the baseline */
+	private boolean failOnNewAlerts;
+	
+	/** File of the false positives suppressions, relative to the workspace */
+	private String suppressionsFile;
+	
+	/** Regular expression found in the responses once the session is lost */
+	private String loggedOutIndicator;
+	
+	/** Time to live of the authenticated session kept for the next builds, 0 to log in at each build */
+	private int authSessionTtlInMin;
+	
+	/** Only crawl the target and write its site tree, for the shards of a distributed scan */
+	private boolean crawlOnly;
+	
+	/** URLs of the site tree to scan instead of crawling the target, null if this plan isn't a shard */
+	private ArrayList<String> shardURLs;
+	
+	/** Save a checkpoint of the active scan at this interval, 0 to never resume the scan */
+	private int checkpointIntervalInMin;
+	
+	/** Stop the active scan after this duration, the next build resumes it from its checkpoint, 0 for no limit */
+	private int scanWindowInMin;
+	
+	/** Scan in chunks, the most valuable rules and endpoints first */
+	private boolean prioritizeScan;
+	
+	/** Share of requestRateLimit taken by the running scan, null if there is no limit */
+	private transient ZAPrateLimiter.Share rateShare;
+	
+	/** Requests per second applied to ZAP for the running scan */
+	private transient int appliedRate;
+	
+	/** Number of messages sent by ZAP when the share was taken */
+	private transient int rateStartMessages;
+	
+	/** Durations of the phases of the running execution, for its summary */
+	private transient long crawlDurationInMs;
+	private transient long scanDurationInMs;
+	private transient long authDurationInMs;
+	
+	/** The session of a previous build sent by ZAP to the target, null once it expires or if ZAP logs in */
+	private transient ZAPauthSession reusedAuthSession;
+	
+	/** The authentication check, which finds out when the reused session expires */
+	private transient ZAPauthVerifier authVerifier;
+	
+	private transient long authSessionCheckTime;
+	
+	/** Checkpoint of the running scan, null if the scan isn't checkpointed */
+	private transient ZAPscanCheckpoint checkpoint;
+	
+	/** Prioritizer of the running scan and the rules it ran, null if the scan isn't prioritized */
+	private transient ZAPscanPrioritizer prioritizer;
+	private transient TreeSet<String> rulesRun;
+	
+	/** Suppressions of the false positives of the running scan, null without suppressions file */
+	private transient ZAPalertSuppressions suppressions;
+	
+	/** Why the running scan was stopped before its end, null if it finished */
+	private transient String partialScanReason;
+
+	/**
+	 * Used by {@link Externalizable} only.
+	 */
+	public ZAPscanPlan() {
+	}
+	
+	/**
+	 * Build the scan plan of a build. Environment variables must be already evaluated in zaproxy.
+	 * 
+	 * @param zaproxy the configuration of the build step
+	 * @param zapProxyPort the port of ZAP for this build
+	 */
+	ZAPscanPlan(ZAProxy zaproxy, int zapProxyPort) {
+		this.zapProxyHost = zaproxy.getZapProxyHost();
+		this.zapProxyPort = zapProxyPort;
+		this.filenameLoadSession = zaproxy.getFilenameLoadSession();
+		this.targetURL = zaproxy.getTargetURL();
+		this.excludedUrl = zaproxy.getExcludedUrl();
+		this.scanMode = zaproxy.getScanMode();
+		this.authenticationMode = zaproxy.getAuthenticationMode();
+		this.spiderURL = zaproxy.getSpiderURL();
+		this.spiderAsUser = zaproxy.getSpiderAsUser();
+		this.ajaxSpiderURL = zaproxy.getAjaxSpiderURL();
+		this.ajaxSpiderURLAsUser = zaproxy.getAjaxSpiderURLAsUser();
+		this.ajaxSpiderBrowserId = zaproxy.getAjaxSpiderBrowserId();
+		this.ajaxSpiderBrowsers = zaproxy.getAjaxSpiderBrowsers();
+		this.ajaxSpiderMaxDepth = zaproxy.getAjaxSpiderMaxDepth();
+		this.ajaxSpiderMaxDurationInMin = zaproxy.getAjaxSpiderMaxDurationInMin();
+		this.scanURL = zaproxy.getScanURL();
+		this.scanURLAsUser = zaproxy.getScanURLAsUser();
+		this.sampleURLs = zaproxy.getSampleURLs();
+		this.sampleSizePerCluster = zaproxy.getSampleSizePerCluster();
+		this.chosenPolicy = zaproxy.getChosenPolicy();
+		this.scriptUsername = zaproxy.getScriptUsername();
+		this.scriptPassword = zaproxy.getScriptPassword();
+		this.scriptLoggedInIndicator = zaproxy.getScriptLoggedInIndicator();
+		this.authenticationScriptName = zaproxy.getAuthenticationScriptName();
+		this.username = zaproxy.getusername();
+		this.password = zaproxy.getpassword();
+		this.usernameParameter = zaproxy.getUsernameParameter();
+		this.passwordParameter = zaproxy.getpasswordParameter();
+		this.extraPostData = zaproxy.getExtraPostData();
+		this.loginUrl = zaproxy.getLoginUrl();
+		this.loggedInIndicator = zaproxy.getLoggedInIndicator();
+		this.evaluatedCrawlCacheFingerprint = zaproxy.getEvaluatedCrawlCacheFingerprint();
+		this.crawlCacheDir = zaproxy.getCrawlCacheDir();
+		this.importFiles = zaproxy.getImportFiles();
+		this.skipSpidersOnImport = zaproxy.getSkipSpidersOnImport();
+		this.seedConcurrency = zaproxy.getSeedConcurrency();
+		this.progressHeartbeatInSec = zaproxy.getProgressHeartbeatInSec();
+		this.saveReports = zaproxy.getSaveReports();
+		// The formats are resolved here, the report formats of other plugins aren't known on the build's machine
+		this.reports = new ArrayList<ZAPreport>();
+		Map<String, ZAPreport> mapFormatReport = ZAPreportCollection.getInstance().getMapFormatReport();
+		for(String format : zaproxy.getChosenFormats()) {
+			if(mapFormatReport.containsKey(format)) {
+				reports.add(mapFormatReport.get(format));
+			}
+		}
+		this.evaluatedFilenameReports = zaproxy.getEvaluatedFilenameReports();
+		this.saveSession = zaproxy.getSaveSession();
+		this.filenameSaveSession = zaproxy.getFilenameSaveSession();
+		this.createJiras = zaproxy.getcreateJiras();
+		this.createJirasWithSuppressions = zaproxy.getCreateJirasWithSuppressions();
+		this.jiraBaseURL = zaproxy.getJiraBaseURL();
+		this.jiraUserName = zaproxy.getJiraUserName();
+		this.jiraPassword = zaproxy.getJiraPassword();
+		this.projectKey = zaproxy.getProjectKey();
+		this.assignee = zaproxy.getassignee();
+		this.alertHigh = zaproxy.getalertHigh();
+		this.alertMedium = zaproxy.getalertMedium();
+		this.alertLow = zaproxy.getalertLow();
+		this.filterIssuesByResourceType = zaproxy.getfilterIssuesByResourceType();
+		this.requestRateLimit = ZAPrateLimiter.findLimit(zaproxy.getRequestRateLimits(), targetURL);
+		this.compressReports = zaproxy.getCompressReports();
+		this.failOnNewAlerts = zaproxy.getFailOnNewAlerts();
+		this.suppressionsFile = zaproxy.getSuppressionsFile();
+		this.loggedOutIndicator = zaproxy.getLoggedOutIndicator();
+		this.authSessionTtlInMin = zaproxy.getAuthSessionTtlInMin();
+		this.checkpointIntervalInMin = zaproxy.getCheckpointIntervalInMin();
+		this.scanWindowInMin = zaproxy.getScanWindowInMin();
+		this.prioritizeScan = zaproxy.getPrioritizeScan();
+	}
+	
+	public String getZapProxyHost() {
+		return zapProxyHost;
+	}
+
+	public int getZapProxyPort() {
+		return zapProxyPort;
+	}
+	
+	public boolean getCompressReports() {
+		return compressReports;
+	}
+	
+	/**
+	 * @return the names of the report files written by the scan, relative to the workspace
+	 */
+	public List<String> getReportFilenames() {
+		List<String> filenames = new ArrayList<String>();
+		if(saveReports) {
+			for(ZAPreport report : reports) {
+				filenames.add(getReportFilename(report));
+			}
+		}
+		return filenames;
+	}
+	
+	/**
+	 * @param format the format of a report, e.g. {@link ZAPreport#REPORT_FORMAT_XML}
+	 * @return the name of the report file of this format written by the scan, null if the scan doesn't write it
+	 */
+	String getReportFilename(String format) {
+		if(saveReports) {
+			for(ZAPreport report : reports) {
+				if(report.getFormat().equals(format)) {
+					return getReportFilename(report);
+				}
+			}
+		}
+		return null;
+	}
+	
+	private String getReportFilename(ZAPreport reportFormat) {
+		String filename = evaluatedFilenameReports + "." + reportFormat.getFileExtension();
+		return compressReports ? filename + ZAPreportAction.COMPRESSED_EXTENSION : filename;
+	}
+	
+	/**
+	 * Only crawl the target and write the URLs of its site tree in the workspace, the scan is done by shards.
+	 */
+	void setCrawlOnly() {
+		this.crawlOnly = true;
+	}
+	
+	/**
+	 * Scan a shard of the site tree : the site tree is seeded with its URLs instead of crawling the target. 
+	 * The Jira issues aren't created by the shards, each one only has a part of the alerts.
+	 * 
+	 * @param shardURLs the URLs of the shard
+	 */
+	void setShardURLs(List<String> shardURLs) {
+		this.shardURLs = new ArrayList<String>(shardURLs);
+		this.createJiras = false;
+	}
+	
+	public boolean getFailOnNewAlerts() {
+		return failOnNewAlerts;
+	}
+	
+	public int getRequestRateLimit() {
+		return requestRateLimit;
+	}
+	
+	public String getTargetURL() {
+		return targetURL;
+	}
+	
+	/**
+	 * Save the progress of the scan in a file of the workspace, so it can be resumed with 
+	 * {@link #resumeZAP(FilePath, BuildListener)}.
+	 * 
+	 * @param scanHandleFilename the file of the scan handle, relative to the workspace. It must be unique 
+	 * to the execution, so parallel executions in the same workspace don't share it
+	 * @param scanHandleOwner the id of the execution, a handle saved by another execution is never resumed
+	 */
+	void setScanHandle(String scanHandleFilename, String scanHandleOwner) {
+		this.scanHandleFilename = scanHandleFilename;
+		this.scanHandleOwner = scanHandleOwner;
+	}
+	
+	/**
+	 * @return the file of the scan handle, relative to the workspace. Null if the scan handle isn't used
+	 */
+	String getScanHandleFilename() {
+		return scanHandleFilename;
+	}
+	
+	/**
+	 * Name the result files of the scan (summary, fingerprints, ...) with a suffix, so parallel executions 
+	 * in the same workspace don't overwrite the results of each other.
+	 * 
+	 * @param resultFileSuffix the suffix, unique to the execution
+	 */
+	void setResultFileSuffix(String resultFileSuffix) {
+		this.resultFileSuffix = resultFileSuffix;
+	}
+	
+	/**
+	 * @param filename the default name of a result file, e.g. {@link ZAPscanSummary#FILENAME}
+	 * @return the name of the result file of this execution, relative to the workspace
+	 */
+	String getResultFilename(String filename) {
+		if(resultFileSuffix == null || resultFileSuffix.isEmpty()) {
+			return filename;
+		}
+		int extension = filename.lastIndexOf('.');
+		return extension < 0 ? filename + "-" + resultFileSuffix 
+				: filename.substring(0, extension) + "-" + resultFileSuffix + filename.substring(extension);
+	}
+	
+	/**
+	 * The history of the prioritized scans is kept from build to build : with a result file suffix, it's 
+	 * named after the target, not after the execution.
+	 * 
+	 * @return the name of the scan history file, relative to the workspace
+	 */
+	String getHistoryFilename() {
+		if(resultFileSuffix == null || resultFileSuffix.isEmpty()) {
+			return ZAPscanPrioritizer.HISTORY_FILENAME;
+		}
+		String filename = ZAPscanPrioritizer.HISTORY_FILENAME;
+		int extension = filename.lastIndexOf('.');
+		return filename.substring(0, extension) + "-" + Integer.toHexString(String.valueOf(targetURL).hashCode()) 
+				+ filename.substring(extension);
+	}
+	
+	/**
+	 * Copy the settings needed to reattach to this execution and to attach its results, without the 
+	 * credentials and the rest of the configuration, e.g. to be saved with a Pipeline.
+	 * 
+	 * @return the plan which can only reattach to this execution
+	 */
+	ZAPscanPlan getReattachPlan() {
+		ZAPscanPlan plan = new ZAPscanPlan();
+		plan.zapProxyHost = zapProxyHost;
+		plan.zapProxyPort = zapProxyPort;
+		plan.targetURL = targetURL;
+		plan.progressHeartbeatInSec = progressHeartbeatInSec;
+		plan.saveReports = saveReports;
+		plan.reports = reports == null ? new ArrayList<ZAPreport>() : new ArrayList<ZAPreport>(reports);
+		plan.evaluatedFilenameReports = evaluatedFilenameReports;
+		plan.compressReports = compressReports;
+		plan.failOnNewAlerts = failOnNewAlerts;
+		plan.scanHandleFilename = scanHandleFilename;
+		plan.scanHandleOwner = scanHandleOwner;
+		plan.resultFileSuffix = resultFileSuffix;
+		plan.reattachOnly = true;
+		return plan;
+	}
+	
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		writeString(out, zapProxyHost);
+		out.writeInt(zapProxyPort);
+		writeString(out, filenameLoadSession);
+		writeString(out, targetURL);
+		writeString(out, excludedUrl);
+		writeString(out, scanMode);
+		writeString(out, authenticationMode);
+		out.writeBoolean(spiderURL);
+		out.writeBoolean(spiderAsUser);
+		out.writeBoolean(ajaxSpiderURL);
+		out.writeBoolean(ajaxSpiderURLAsUser);
+		writeString(out, ajaxSpiderBrowserId);
+		out.writeInt(ajaxSpiderBrowsers);
+		out.writeInt(ajaxSpiderMaxDepth);
+		out.writeInt(ajaxSpiderMaxDurationInMin);
+		out.writeBoolean(scanURL);
+		out.writeBoolean(scanURLAsUser);
+		out.writeBoolean(sampleURLs);
+		out.writeInt(sampleSizePerCluster);
+		writeString(out, chosenPolicy);
+		writeString(out, scriptUsername);
+		writeString(out, scriptPassword);
+		writeString(out, scriptLoggedInIndicator);
+		writeString(out, authenticationScriptName);
+		writeString(out, username);
+		writeString(out, password);
+		writeString(out, usernameParameter);
+		writeString(out, passwordParameter);
+		writeString(out, extraPostData);
+		writeString(out, loginUrl);
+		writeString(out, loggedInIndicator);
+		writeString(out, evaluatedCrawlCacheFingerprint);
+		writeString(out, crawlCacheDir);
+		writeString(out, importFiles);
+		out.writeBoolean(skipSpidersOnImport);
+		out.writeInt(seedConcurrency);
+		out.writeInt(progressHeartbeatInSec);
+		out.writeBoolean(saveReports);
+		out.writeInt(reports.size());
+		for(ZAPreport report : reports) {
+			out.writeObject(report);
+		}
+		writeString(out, evaluatedFilenameReports);
+		out.writeBoolean(saveSession);
+		writeString(out, filenameSaveSession);
+		out.writeBoolean(createJiras);
+		writeString(out, jiraBaseURL);
+		writeString(out, jiraUserName);
+		writeString(out, jiraPassword);
+		writeString(out, projectKey);
+		writeString(out, assignee);
+		out.writeBoolean(alertHigh);
+		out.writeBoolean(alertMedium);
+		out.writeBoolean(alertLow);
+		out.writeBoolean(filterIssuesByResourceType);
+		writeString(out, scanHandleFilename);
+		out.writeInt(requestRateLimit);
+		out.writeBoolean(compressReports);
+		out.writeBoolean(failOnNewAlerts);
+		writeString(out, suppressionsFile);
+		writeString(out, loggedOutIndicator);
+		out.writeInt(authSessionTtlInMin);
+		out.writeBoolean(crawlOnly);
+		out.writeInt(shardURLs == null ? -1 : shardURLs.size());
+		if(shardURLs != null) {
+			for(String url : shardURLs) {
+				writeString(out, url);
+			}
+		}
+		out.writeInt(checkpointIntervalInMin);
+		out.writeInt(scanWindowInMin);
+		out.writeBoolean(prioritizeScan);
+		writeString(out, scanHandleOwner);
+		writeString(out, resultFileSuffix);
+		out.writeBoolean(reattachOnly);
+		out.writeBoolean(createJirasWithSuppressions);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		zapProxyHost = readString(in);
+		zapProxyPort = in.readInt();
+		filenameLoadSession = readString(in);
+		targetURL = readString(in);
+		excludedUrl = readString(in);
+		scanMode = readString(in);
+		authenticationMode = readString(in);
+		spiderURL = in.readBoolean();
+		spiderAsUser = in.readBoolean();
+		ajaxSpiderURL = in.readBoolean();
+		ajaxSpiderURLAsUser = in.readBoolean();
+		ajaxSpiderBrowserId = readString(in);
+		ajaxSpiderBrowsers = in.readInt();
+		ajaxSpiderMaxDepth = in.readInt();
+		ajaxSpiderMaxDurationInMin = in.readInt();
+		scanURL = in.readBoolean();
+		scanURLAsUser = in.readBoolean();
+		sampleURLs = in.readBoolean();
+		sampleSizePerCluster = in.readInt();
+		chosenPolicy = readString(in);
+		scriptUsername = readString(in);
+		scriptPassword = readString(in);
+		scriptLoggedInIndicator = readString(in);
+		authenticationScriptName = readString(in);
+		username = readString(in);
+		password = readString(in);
+		usernameParameter = readString(in);
+		passwordParameter = readString(in);
+		extraPostData = readString(in);
+		loginUrl = readString(in);
+		loggedInIndicator = readString(in);
+		evaluatedCrawlCacheFingerprint = readString(in);
+		crawlCacheDir = readString(in);
+		importFiles = readString(in);
+		skipSpidersOnImport = in.readBoolean();
+		seedConcurrency = in.readInt();
+		progressHeartbeatInSec = in.readInt();
+		saveReports = in.readBoolean();
+		int reportsSize = in.readInt();
+		reports = new ArrayList<ZAPreport>(reportsSize);
+		for(int i = 0; i < reportsSize; i++) {
+			reports.add((ZAPreport) in.readObject());
+		}
+		evaluatedFilenameReports = readString(in);
+		saveSession = in.readBoolean();
+		filenameSaveSession = readString(in);
+		createJiras = in.readBoolean();
+		jiraBaseURL = readString(in);
+		jiraUserName = readString(in);
+		jiraPassword = readString(in);
+		projectKey = readString(in);
+		assignee = readString(in);
+		alertHigh = in.readBoolean();
+		alertMedium = in.readBoolean();
+		alertLow = in.readBoolean();
+		filterIssuesByResourceType = in.readBoolean();
+		scanHandleFilename = readString(in);
+		requestRateLimit = in.readInt();
+		compressReports = in.readBoolean();
+		failOnNewAlerts = in.readBoolean();
+		suppressionsFile = readString(in);
+		loggedOutIndicator = readString(in);
+		authSessionTtlInMin = in.readInt();
+		crawlOnly = in.readBoolean();
+		int shardURLsSize = in.readInt();
+		shardURLs = shardURLsSize < 0 ? null : new ArrayList<String>(shardURLsSize);
+		for(int i = 0; i < shardURLsSize; i++) {
+			shardURLs.add(readString(in));
+		}
+		checkpointIntervalInMin = in.readInt();
+		scanWindowInMin = in.readInt();
+		prioritizeScan = in.readBoolean();
+		scanHandleOwner = readString(in);
+		resultFileSuffix = readString(in);
+		reattachOnly = in.readBoolean();
+		createJirasWithSuppressions = in.readBoolean();
+	}
+	
+	/**
+	 * Write a string which can be null, as its length followed by its UTF-8 bytes. 
+	 * {@link ObjectOutput#writeUTF(String)} isn't used because it fails for strings above 64 KB 
+	 * (e.g. a long list of excluded URLs or a large login request).
+	 */
+	static void writeString(ObjectOutput out, String s) throws IOException {
+		if(s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Read a string written by {@link #writeString(ObjectOutput, String)}.
+	 */
+	static String readString(ObjectInput in) throws IOException {
+		int length = in.readInt();
+		if(length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+	
+
+	/**
+	 * Generates security report for one format. Reports are saved into build's workspace.
+	 * 
+	 * @param reportFormat the format of the report
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param clientApi the ZAP client API to call method
+	 * @throws ClientApiException 
+	 * @throws IOException
+	 */
+	private void saveReport(ZAPreport reportFormat, BuildListener listener, FilePath workspace, 
+			ClientApi clientApi) throws IOException, ClientApiException {
+		final String fullFileName = getReportFilename(reportFormat);
+		File reportsFile = new File(workspace.getRemote(), fullFileName);
+		FileUtils.forceMkdir(reportsFile.getParentFile());
+		if(suppressions != null && !reportFormat.isAlertFilterSupported() 
+				&& ZAPreport.REPORT_FORMAT_XML.equals(reportFormat.getFormat())) {
+			saveFilteredXmlReport(reportFormat, reportsFile, clientApi);
+		} else {
+			if(suppressions != null && !reportFormat.isAlertFilterSupported()) {
+				listener.getLogger().println("The " + reportFormat.getFormat() + " report is generated by ZAP from all its alerts, " 
+						+ "the suppressions of [" + suppressionsFile + "] don't apply to it");
+			}
+			OutputStream out = openReport(reportsFile);
+			try {
+				reportFormat.writeReport(clientApi, API_KEY, suppressions, out);
+			} finally {
+				out.close();
+			}
+		}
+		listener.getLogger().println("File [" + reportsFile.getAbsolutePath() + "] saved");
+	}
+	
+	/**
+	 * Write the XML report generated by ZAP without the suppressed alerts : the report of ZAP is written 
+	 * next to the report file, then copied without the suppressed alerts by a {@link ZAPreportMerger}.
+	 * 
+	 * @param reportFormat the XML format
+	 * @param reportsFile the report file
+	 * @param clientApi the ZAP client API to call method
+	 * @throws ClientApiException 
+	 * @throws IOException
+	 */
+	private void saveFilteredXmlReport(ZAPreport reportFormat, File reportsFile, ClientApi clientApi) 
+			throws IOException, ClientApiException {
+		File unfiltered = new File(reportsFile.getParentFile(), reportsFile.getName() + ".unfiltered" 
+				+ (compressReports ? ZAPreportAction.COMPRESSED_EXTENSION : ""));
+		try {
+			OutputStream out = openReport(unfiltered);
+			try {
+				reportFormat.writeReport(clientApi, API_KEY, out);
+			} finally {
+				out.close();
+			}
+			// The merger compresses the report by its extension
+			new ZAPreportMerger(suppressions).merge(Collections.singletonList(unfiltered), reportsFile);
+		} finally {
+			unfiltered.delete();
+		}
+	}
+	
+	/**
+	 * @param reportsFile the report file to write
+	 * @return the stream of the report, compressed if the reports are compressed
+	 * @throws IOException
+	 */
+	private OutputStream openReport(File reportsFile) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(reportsFile));
+		if(compressReports) {
+			// Compressed while it's written, the report is never written uncompressed on the disk
+			out = new GZIPOutputStream(out, COMPRESSION_BUFFER_SIZE);
+		}
+		return out;
+	}
+
+	/**
+	 * Execute ZAProxy method following build's setup and stop ZAP at the end.
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @return true is no exception is caught, false otherwise.
+	 */
+	public boolean executeZAP(FilePath workspace, BuildListener listener) {
+		return executeZAP(workspace, listener, false);
+	}
+	
+	/**
+	 * Reattach to the ZAProxy started by a previous execution of this plan, from the scan handle saved in 
+	 * the workspace. A running active scan is waited for, an earlier phase is started again on the same 
+	 * ZAProxy. Then the results are saved and ZAP is stopped as usual.
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @return true is no exception is caught, false otherwise.
+	 */
+	public boolean resumeZAP(FilePath workspace, BuildListener listener) {
+		return executeZAP(workspace, listener, true);
+	}
+	
+	private boolean executeZAP(FilePath workspace, BuildListener listener, boolean resume) {
+		ClientApi zapClientAPI = new ClientApi(zapProxyHost, zapProxyPort);
+		boolean buildSuccess = true;	
+		boolean stopZAPOnExit = true;
+		ZAPscanHandle handle = null;
+		long startTime = System.currentTimeMillis();
+		crawlDurationInMs = 0;
+		scanDurationInMs = 0;
+		authDurationInMs = 0;
+		reusedAuthSession = null;
+		authVerifier = null;
+		checkpoint = null;
+		prioritizer = null;
+		suppressions = null;
+		partialScanReason = null;
+		
+		// Try/catch here because I need to stopZAP in finally block and for that,
+		// I need the zapClientAPI created in this method
+		try {
+			if(resume && isScanHandleActive(workspace)) {
+				// Only the master restarted, the execution on this machine goes on
+				stopZAPOnExit = false;
+				return waitForActiveExecution(workspace, listener);
+			}
+			
+			ZAPscanHandle previous = resume ? loadScanHandle(workspace) : null;
+			if(previous != null && ZAPscanHandle.PHASE_DONE.equals(previous.getPhase())) {
+				listener.getLogger().println("The scan was already finished before the restart");
+				stopZAPOnExit = false;
+				return true;
+			}
+			if(reattachOnly) {
+				// The credentials of the scan aren't saved with the Pipeline, it can't be started again
+				listener.error("The scan was interrupted by the restart (" + (previous == null ? "no scan handle" : previous) 
+						+ ") and can't be started again, run the build again");
+				return false;
+			}
+			
+			// The summary of a previous build mustn't be attached to this one
+			new File(workspace.getRemote(), getResultFilename(ZAPscanSummary.FILENAME)).delete();
+			new File(workspace.getRemote(), getResultFilename(ZAPalertFingerprints.FILENAME)).delete();
+			new File(workspace.getRemote(), SITE_TREE_FILENAME).delete();
+			new File(workspace.getRemote(), getResultFilename(PARTIAL_SCAN_FILENAME)).delete();
+			
+			handle = createScanHandle(workspace);
+			if(handle != null) {
+				handle.activate();
+			}
+			acquireRequestRate(listener, zapClientAPI);
+			if(resume) {
+				// Fails if ZAProxy has been stopped in the meantime
+				listener.getLogger().println("Reattach to ZAProxy [" + zapProxyHost + ":" + zapProxyPort + "] version [" 
+						+ statusToString(zapClientAPI.core.version()) + "]");
+			}
+			
+			if(previous != null && ZAPscanHandle.PHASE_SCAN.equals(previous.getPhase()) && previous.getScanId() != null) {
+				listener.getLogger().println("Reattach to the running scan [" + previous.getScanId() + "]");
+				// The scan goes on saving its checkpoints after the restart
+				checkpoint = loadCheckpoint(workspace);
+				if(handle != null) {
+					handle.update(ZAPscanHandle.PHASE_SCAN, previous.getScanId());
+				}
+				waitForScan(previous.getScanId(), listener, zapClientAPI);
+			} else if(previous != null && ZAPscanHandle.PHASE_RESULTS.equals(previous.getPhase())) {
+				listener.getLogger().println("The scan was finished before the restart, only the results are left");
+			} else {
+				if(resume) {
+					listener.getLogger().println("The scan was interrupted before its active scan (" 
+							+ (previous == null ? "no scan handle" : previous) + "), it's started again");
+				}
+				scanTarget(workspace, listener, zapClientAPI, handle);
+			}
+			
+			if(crawlOnly) {
+				// The shards scan the site tree and save the results
+				saveSiteTree(workspace, listener, zapClientAPI);
+				return true;
+			}
+			
+			releaseRequestRate(listener, zapClientAPI);
+			if(handle != null) {
+				handle.update(ZAPscanHandle.PHASE_RESULTS, null);
+			}
+			// Before all the results, the reports and the gate don't see the false positives
+			loadSuppressions(workspace, listener);
+			writeScanSummary(workspace, listener, zapClientAPI, startTime);
+			
+			/* ======================================================= 
+			 * |                  SAVE REPORTS                        |
+			 * ======================================================= 
+			 */
+			if (saveReports) {			
+				// Generates reports for all formats selected
+				for(ZAPreport report : reports) {
+					saveReport(report, listener, workspace, zapClientAPI);
+				}
+			}
+			/* ======================================================= 
+			 * |                  SAVE SESSION                        |
+			 * ======================================================= 
+			 */
+			// Before the Jira issues, the session keeps the suppressed alerts
+			if(saveSession) {
+				if(filenameSaveSession != null && !filenameSaveSession.isEmpty()) {
+					File sessionFile = new File(workspace.getRemote(), filenameSaveSession);
+					listener.getLogger().println("Save session to ["+ sessionFile.getAbsolutePath() +"]");
+					
+					// Path creation if it doesn't exist
+					if(!sessionFile.getParentFile().exists()) {
+						sessionFile.getParentFile().mkdirs();
+					}
+					
+					// Method signature : saveSession(String apikey, String name, String overwrite)
+					zapClientAPI.core.saveSession(API_KEY, sessionFile.getAbsolutePath(), "true");
+				} 
+			} else {
+				listener.getLogger().println("Skip saveSession");
+			}
+			
+			 /* =======================================================
+			 * |                  CREATE JIRA ISSUES                       |
+			 * =======================================================
+			 */
+			if (createJiras && suppressions != null && !createJirasWithSuppressions) {
+				listener.getLogger().println("Skipped creating jiras, ZAP would create them from the alerts suppressed by [" 
+						+ suppressionsFile + "] too (see 'Create the Jira issues with the suppressions file')");
+			} else if (createJiras) {
+				if(suppressions != null) {
+					// ZAP creates the issues from all its alerts
+					deleteSuppressedAlerts(listener, zapClientAPI);
+				}
+
+				listener.getLogger().println("******************    Strated creating jiras    ************************");
+				Map<String, String> map = null;
+				map = new HashMap<String, String>();
+
+				if (API_KEY != null) {
+					map.put("apikey", API_KEY);
+				}
+				map.put("jiraBaseURL",jiraBaseURL);
+				map.put("jiraUserName",jiraUserName);
+				map.put("jiraPassword",jiraPassword);
+				map.put("projectKey",projectKey);
+				//map.put("jiraUserName",jiraUserName);
+				map.put("assignee",assignee);
+				map.put("high",returnCheckedStatus(alertHigh));
+				map.put("medium",returnCheckedStatus(alertMedium));
+				map.put("low",returnCheckedStatus(alertLow));
+				map.put("filterIssuesByResourceType",returnCheckedStatus(filterIssuesByResourceType));
+
+				listener.getLogger().println("******************    initialized variables     *************************");
+
+				listener.getLogger().println("            Api key  : " + API_KEY);
+				listener.getLogger().println("            Base URL  : " + jiraBaseURL);
+				listener.getLogger().println("            UserName  : " + jiraUserName);
+				listener.getLogger().println("            Project key  : " + projectKey);
+				listener.getLogger().println("            Assignee  : " + assignee);
+				listener.getLogger().println("            Export High alerts  : " + alertHigh);
+				listener.getLogger().println("            Export Medium alerts  : "+alertMedium);
+				listener.getLogger().println("            Export Low alerts  : "+alertLow);
+				listener.getLogger().println("            Filter by resource Type  : "+filterIssuesByResourceType);
+
+				try{
+
+					zapClientAPI.callApi("jiraIssueCreater", "action", "createJiraIssues", map);
+					
+
+				}catch(ClientApiException e){
+
+					listener.getLogger().println(e.getMessage());
+				}
+
+			}else{
+				listener.getLogger().println("Skipped creating jiras");
+			}
+
+			
+			listener.getLogger().println("Total alerts = " + zapClientAPI.core.numberOfAlerts("").toString(2));
+			listener.getLogger().println("Total messages = " + zapClientAPI.core.numberOfMessages("").toString(2));
+			
+		} catch (AbortException e) {
+			listener.error(e.getMessage());
+			buildSuccess = false;
+		} catch (Exception e) {
+			listener.error(ExceptionUtils.getStackTrace(e));
+			buildSuccess = false;
+		} finally {
+			// Before the shutdown of ZAP, to count its messages
+			releaseRequestRate(listener, zapClientAPI);
+			if(stopZAPOnExit) {
+				try {
+					stopZAP(zapClientAPI, listener);
+					markScanDone(workspace, buildSuccess);
+				} catch (ClientApiException e) {
+					listener.error(ExceptionUtils.getStackTrace(e));
+					buildSuccess = false;
+				} catch (IOException e) {
+					listener.error(ExceptionUtils.getStackTrace(e));
+				}
+			}
+			if(handle != null) {
+				handle.deactivate();
+			}
+		}
+		return buildSuccess;
+	}
+	
+	/**
+	 * Load the session, set up the context and the authentication, then crawl and scan the target.
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param handle the scan handle to update, null if the scan can't be resumed
+	 * @throws ClientApiException
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private void scanTarget(FilePath workspace, BuildListener listener, ClientApi zapClientAPI, ZAPscanHandle handle) 
+			throws ClientApiException, IOException, InterruptedException {
+		long crawlStartTime = System.currentTimeMillis();
+		if(handle != null) {
+			handle.update(ZAPscanHandle.PHASE_CRAWL, null);
+		}
+		
+		/* ======================================================= 
+		 * |                  LOAD SESSION                        |
+		 * ======================================================= 
+		 */
+		boolean checkpointLoaded = resumeFromCheckpoint(workspace, listener, zapClientAPI);
+		if(prioritizeScan && !crawlOnly) {
+			// The history of the previous scans orders this one
+			prioritizer = ZAPscanPrioritizer.load(new File(workspace.getRemote(), getHistoryFilename()));
+			rulesRun = new TreeSet<String>();
+		}
+		if(checkpointLoaded) {
+			listener.getLogger().println("Skip loadSession, the session of the checkpoint is loaded");
+		} else if(filenameLoadSession != null && filenameLoadSession.length() != 0) {
+			File sessionFile = new File(filenameLoadSession);
+			listener.getLogger().println("Load session at ["+ sessionFile.getAbsolutePath() +"]");
+			zapClientAPI.core.loadSession(API_KEY, sessionFile.getAbsolutePath());
+		} else {
+			listener.getLogger().println("Skip loadSession");
+		}
+		
+		/* ======================================================= 
+		 * |                  SE UP CONTEXT                       |
+		 * ======================================================= 
+		 */
+		
+		//setup context
+		String contextId=setUpContext(listener,targetURL,excludedUrl,zapClientAPI);
+		String userId=null;
+		
+		
+		
+		if(scanMode.equals("NOT_AUTHENTICATED")) {
+
+		 
+			listener.getLogger().println("SCANMOD : NOT_AUTHENTICATED");
+		
+		// The session of the checkpoint has the site tree
+		boolean siteTreeImported = !checkpointLoaded && importSiteTree(workspace, listener, zapClientAPI);
+		// A shard only scans its URLs, the crawl cache has the whole site tree
+		boolean siteTreeLoaded = checkpointLoaded || (siteTreeImported && shardURLs != null) 
+				|| loadCrawlCache(workspace, listener, zapClientAPI) || (siteTreeImported && skipSpidersOnImport);
+		
+		//Non authenticated mod : spider url, ajax spider url, scan url
+		/* ======================================================= 
+		 * |                  SPIDER URL                          |
+		 * ======================================================= 
+		 */
+		if (spiderURL && !siteTreeLoaded) {
+			listener.getLogger().println("Spider the site [" + targetURL + "]");
+			spiderURL(targetURL, listener, zapClientAPI);
+		} else {
+			listener.getLogger().println("Skip spidering the site [" + targetURL + "]");
+		}
+
+		/* ======================================================= 
+		 * |                AJAX SPIDER URL                       |
+		 * ======================================================= 
+		 */
+		if (ajaxSpiderURL && !siteTreeLoaded) {
+			listener.getLogger().println("Ajax Spider the site [" + targetURL + "]");
+			ajaxSpiderURL(targetURL, listener, zapClientAPI);
+		} else {
+			listener.getLogger().println("Skip Ajax spidering the site [" + targetURL + "]");
+		}
+		
+		if ((spiderURL || ajaxSpiderURL) && !siteTreeLoaded) {
+			saveCrawlCache(workspace, listener, zapClientAPI);
+		}
+		
+		/* ======================================================= 
+		 * |                  SCAN URL                            |
+		 * ======================================================= 
+		 */
+		crawlDurationInMs = System.currentTimeMillis() - crawlStartTime;
+		long scanStartTime = System.currentTimeMillis();
+		if (scanURL && !crawlOnly) {				
+			listener.getLogger().println("Scan the site [" + targetURL + "]");
+			scanURL(targetURL, listener, zapClientAPI, handle);
+		} else {
+			listener.getLogger().println("Skip scanning the site [" + targetURL + "]");
+		}
+		scanDurationInMs = System.currentTimeMillis() - scanStartTime;
+		 
+		} 
+		
+		else if(scanMode.equals("AUTHENTICATED"))   {
+		//Authenticated mod : spider url as user, ajax spider url as user, scan url as user
+		listener.getLogger().println("SCANMOD : AUTHENTICATED");			
+		
+		listener.getLogger().println("Setting up Authentication");
+		
+		if(authenticationMode.equals("FORM_BASED")){
+		/* ======================================================= 
+		 * |                  FORM BASED AUTHENTICATION           |
+		 * ======================================================= 
+		 */
+		 
+		userId=setUpAuthentication("FORMBASED",listener,zapClientAPI, contextId, username,password,usernameParameter,passwordParameter,extraPostData,loginUrl,loggedInIndicator,null);
+		}
+		else if(authenticationMode.equals("SCRIPT_BASED")){
+			
+		/* ======================================================= 
+		 * |                  SCRIPT BASED AUTHENTICATION         |
+		 * ======================================================= 
+		 */
+		
+		userId=setUpAuthentication("SCRIPTBASED",listener,zapClientAPI, contextId, scriptUsername,scriptPassword,null,null,null,null,scriptLoggedInIndicator,authenticationScriptName);
+
+		}			
+		
+		/* ======================================================= 
+		 * |                  CHECK AUTHENTICATION                |
+		 * ======================================================= 
+		 */
+		// Fails fast with wrong credentials, before spidering the login page for an hour
+		boolean formBased = authenticationMode.equals("FORM_BASED");
+		authVerifier = new ZAPauthVerifier(zapClientAPI, API_KEY);
+		ZAPauthSession session = getAuthSession(workspace, formBased ? username : scriptUsername);
+		if(session != null && reuseAuthSession(session, authVerifier, formBased ? loggedInIndicator : scriptLoggedInIndicator, listener, zapClientAPI)) {
+			reusedAuthSession = session;
+			authSessionCheckTime = System.currentTimeMillis();
+		} else {
+			authDurationInMs = authVerifier.verify(targetURL, 
+					formBased ? loggedInIndicator : scriptLoggedInIndicator, formBased ? loginUrl : null, listener);
+			keepAuthSession(session, listener);
+		}
+		
+		// The forced user is set up, so the requests sent to seed the site tree are authenticated, 
+		// the session of the checkpoint has the site tree
+		boolean siteTreeImported = !checkpointLoaded && importSiteTree(workspace, listener, zapClientAPI);
+		// A shard only scans its URLs, the crawl cache has the whole site tree
+		boolean siteTreeLoaded = checkpointLoaded || (siteTreeImported && shardURLs != null) 
+				|| loadCrawlCache(workspace, listener, zapClientAPI) || (siteTreeImported && skipSpidersOnImport);
+		
+		/* ======================================================= 
+		 * |                  SPIDER AS USER                      |
+		 * ======================================================= 
+		 */
+		if (spiderAsUser && !siteTreeLoaded) {	
+			listener.getLogger().println("Spider the site [" + targetURL + "] as user ["+username+"]");				
+			spiderURLAsUser(targetURL, listener, zapClientAPI, contextId, userId);
+		} else {
+			listener.getLogger().println("Skip spidering the site [" + targetURL + "] as user ["+username+"]");
+		}
+		
+		/* ======================================================= 
+		 * |                AJAX SPIDER URL AS USER               |
+		 * ======================================================= 
+		 */
+		if (ajaxSpiderURLAsUser && !siteTreeLoaded) {
+			listener.getLogger().println("Ajax Spider the site [" + targetURL + "] as user ["+username+"]");
+			ajaxSpiderURL(targetURL, listener, zapClientAPI);
+		} else {
+			listener.getLogger().println("Skip Ajax spidering the site [" + targetURL + "] as user ["+username+"]");
+		}
+		
+		if ((spiderAsUser || ajaxSpiderURLAsUser) && !siteTreeLoaded) {
+			saveCrawlCache(workspace, listener, zapClientAPI);
+		}
+
+		/* ======================================================= 
+		 * |                  SCAN URL AS USER                    |
+		 * ======================================================= 
+		 */
+		crawlDurationInMs = System.currentTimeMillis() - crawlStartTime;
+		long scanStartTime = System.currentTimeMillis();
+		if (scanURLAsUser && !crawlOnly) {				
+			listener.getLogger().println("Scan the site [" + targetURL + "] as user ["+username+"]");
+			scanURLAsUser(targetURL, listener, zapClientAPI,contextId, userId, handle);
+		} else {
+			listener.getLogger().println("Skip scanning the site [" + targetURL + "] as user ["+username+"]");
+		}
+		scanDurationInMs = System.currentTimeMillis() - scanStartTime;
+		
+		 
+		}
+	}
+	
+	/**
+	 * Write the summary of the alerts and of the durations of the scan, and the fingerprints of the alerts, 
+	 * in the workspace, for the build's actions.
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param startTime the start time of this execution
+	 * @throws ClientApiException
+	 * @throws IOException
+	 */
+	private void writeScanSummary(FilePath workspace, BuildListener listener, ClientApi zapClientAPI, long startTime) 
+			throws ClientApiException, IOException {
+		ZAPscanSummary summary = new ZAPscanSummary(startTime);
+		ZAPalertFingerprints fingerprints = new ZAPalertFingerprints();
+		
+		// The alerts are read by pages, a big scan has hundreds of thousands of them
+		ZAPalertReader alerts = new ZAPalertReader(zapClientAPI, API_KEY, suppressions);
+		while(alerts.next()) {
+			summary.addAlert(alerts.get(ZAPalertReader.PLUGIN_ID), alerts.get(ZAPalertReader.ALERT), alerts.get(ZAPalertReader.RISK));
+			fingerprints.addAlert(alerts.get(ZAPalertReader.PLUGIN_ID), alerts.get(ZAPalertReader.URL), alerts.get(ZAPalertReader.PARAM));
+			if(prioritizer != null) {
+				prioritizer.addAlert(alerts.get(ZAPalertReader.PLUGIN_ID), alerts.get(ZAPalertReader.RISK), alerts.get(ZAPalertReader.URL));
+			}
+		}
+		if(prioritizer != null) {
+			// The next scans are ordered by the alerts of this one
+			prioritizer.save(new File(workspace.getRemote(), getHistoryFilename()), rulesRun);
+		}
+		
+		summary.setDurations(crawlDurationInMs, scanDurationInMs, System.currentTimeMillis() - startTime);
+		summary.setAuthDurationInMs(authDurationInMs);
+		summary.write(new File(workspace.getRemote(), getResultFilename(ZAPscanSummary.FILENAME)));
+		fingerprints.write(new File(workspace.getRemote(), getResultFilename(ZAPalertFingerprints.FILENAME)));
+		if(partialScanReason != null) {
+			// The alerts of the rules not run yet are missing, they mustn't be compared as fixed
+			FileUtils.writeStringToFile(new File(workspace.getRemote(), getResultFilename(PARTIAL_SCAN_FILENAME)), partialScanReason, "UTF-8");
+		}
+		listener.getLogger().println("Scan summary : " + summary.getTotalCount() + " alerts, " + summary.getRules().size() + " rules");
+		if(suppressions != null) {
+			listener.getLogger().println("Suppressed " + alerts.getSuppressedCount() + " alerts with the " + suppressions.size() 
+					+ " suppressions of [" + suppressionsFile + "]");
+		}
+	}
+	
+	/**
+	 * Read the suppressions file. The suppressed alerts are left out of the results while they're read, 
+	 * ZAP keeps all its alerts.
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @throws IOException if the suppressions file can't be read or isn't valid
+	 */
+	private void loadSuppressions(FilePath workspace, BuildListener listener) throws IOException {
+		if(suppressionsFile == null || suppressionsFile.trim().isEmpty()) {
+			return;
+		}
+		suppressions = ZAPalertSuppressions.read(new File(workspace.getRemote(), suppressionsFile.trim()));
+	}
+	
+	/**
+	 * Delete the suppressed alerts from ZAP, for the results it builds itself from all its alerts (the Jira issues).
+	 * 
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws ClientApiException
+	 */
+	private void deleteSuppressedAlerts(BuildListener listener, ClientApi zapClientAPI) throws ClientApiException {
+		// The IDs are read before the deletions, which would move the pages of the reader
+		List<String> suppressedIds = new ArrayList<String>();
+		ZAPalertReader alerts = new ZAPalertReader(zapClientAPI, API_KEY);
+		while(alerts.next()) {
+			if(suppressions.isSuppressed(alerts.get(ZAPalertReader.PLUGIN_ID), alerts.get(ZAPalertReader.URL), 
+					alerts.get(ZAPalertReader.PARAM))) {
+				suppressedIds.add(alerts.get(ZAPalertReader.ID));
+			}
+		}
+		
+		try {
+			for(String id : suppressedIds) {
+				zapClientAPI.callApi("core", "action", "deleteAlert", buildApiParams("id", id));
+			}
+		} catch (ClientApiException e) {
+			listener.error("The suppressed alerts can't be deleted before the Jira issues, ZAP 2.6 or later is required to delete alerts");
+			throw e;
+		}
+		listener.getLogger().println("Deleted " + suppressedIds.size() + " suppressed alerts from ZAP before the Jira issues");
+	}
+	
+	/**
+	 * Create the scan handle of this execution. The handle of a previous execution is replaced.
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @return the scan handle, null if the scan handle isn't used
+	 */
+	private ZAPscanHandle createScanHandle(FilePath workspace) {
+		if(scanHandleFilename == null || scanHandleFilename.isEmpty()) {
+			return null;
+		}
+		return new ZAPscanHandle(new File(workspace.getRemote(), scanHandleFilename), scanHandleOwner, zapProxyHost, zapProxyPort);
+	}
+	
+	/**
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @return the scan handle saved by the previous run of this execution, null if there isn't one
+	 * @throws IOException
+	 */
+	private ZAPscanHandle loadScanHandle(FilePath workspace) throws IOException {
+		if(scanHandleFilename == null || scanHandleFilename.isEmpty()) {
+			return null;
+		}
+		return ZAPscanHandle.load(new File(workspace.getRemote(), scanHandleFilename), scanHandleOwner);
+	}
+	
+	/**
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @return true if an execution of this machine still owns the scan handle
+	 */
+	private boolean isScanHandleActive(FilePath workspace) {
+		return scanHandleFilename != null && !scanHandleFilename.isEmpty() 
+				&& ZAPscanHandle.isActive(new File(workspace.getRemote(), scanHandleFilename));
+	}
+	
+	/**
+	 * Wait for the end of the execution which still owns the scan handle, showing its phase.
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @return true if the execution has finished successfully
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private boolean waitForActiveExecution(FilePath workspace, BuildListener listener) 
+			throws IOException, InterruptedException {
+		listener.getLogger().println("The scan is still running on the build's machine, wait for its end");
+		ZAPprogressReporter progressReporter = createProgressReporter(listener, "scan");
+		while (isScanHandleActive(workspace)) {
+			ZAPscanHandle current = loadScanHandle(workspace);
+			progressReporter.report(current == null ? "unknown" : current.getPhase(), "-", "-");
+			Thread.sleep(5000);
+		}
+		
+		ZAPscanHandle last = loadScanHandle(workspace);
+		return last != null && ZAPscanHandle.PHASE_DONE.equals(last.getPhase());
+	}
+	
+	/**
+	 * Record that ZAP is stopped and the results are saved, so a resumed execution doesn't start again.
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param buildSuccess the result of the execution, nothing is recorded on failure
+	 * @throws IOException
+	 */
+	private void markScanDone(FilePath workspace, boolean buildSuccess) throws IOException {
+		ZAPscanHandle handle = createScanHandle(workspace);
+		if(handle != null && buildSuccess) {
+			handle.update(ZAPscanHandle.PHASE_DONE, null);
+		}
+	}
+	
+
+	/**method used to return the checked state
+	 * inside CREATE JIRA ISSUES
+	 * **/
+	private String returnCheckedStatus(boolean checkedStatus){
+		if(checkedStatus){
+			return "1";
+		}else{
+			return "0";
+		}
+	}
+	
+	/**
+	 * Converts the ZAP API status response to an integer
+	 *
+	 * @param response the ZAP API response code
+	 * @return the integer status of the ApiResponse
+	 */
+	private int statusToInt(final ApiResponse response) {
+		return Integer.parseInt(((ApiResponseElement)response).getValue());
+	}
+
+	/**
+	 * Converts the ZAP API status response to an String
+	 *
+	 * @param response the ZAP API response code
+	 * @return the String status of the ApiResponse
+	 */
+	@SuppressWarnings("unchecked")
+	private String statusToString(final ApiResponse response) {
+		return ((ApiResponseElement)response).getValue();
+	}
+
+	/**
+	 *get user id
+	 * @param response the ZAP API response code
+	 * @return the user ID of the  user
+	 */
+	@SuppressWarnings("unchecked")
+	private String extractUserId(ApiResponse response) {
+		return ((ApiResponseElement) response).getValue();
+	}
+
+	/**
+	 *get context id
+	 * @param response the ZAP API response code
+	 * @return the context ID of the context
+	 */
+	@SuppressWarnings("unchecked")
+	private String extractContextId(ApiResponse response) {
+		return ((ApiResponseElement) response).getValue();
+	}
+
+	/**
+	 * set up a context and add/exclude url to/from it
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param URL the URL to be added to context
+	 * @param excludedUrl the URL to exclude from context
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @return the context ID of the context
+	 * @throws ClientApiException
+	 */
+	private String setUpContext(BuildListener listener, String url, String excludedUrl,ClientApi zapClientAPI) 
+				throws ClientApiException {
+		
+		url=url.trim();		 
+		
+		String contextName=CONTEXT_NAME;//name of the Context to be created
+		String contextURL="\\Q"+url+"\\E.*";//url to be added to the context (the same url given by the user to be scanned)
+		
+		
+		String contextIdTemp;
+
+		//Create new context
+		//method signature : newContext(String apikey,String contextname) throws ClientApiException
+		contextIdTemp=extractContextId(zapClientAPI.context.newContext(API_KEY,contextName));
+
+		//add url to the context
+		//method signature : includeInContext(String apikey, String contextname, String regex) 
+		//					 throws ClientApiException
+		zapClientAPI.context.includeInContext(API_KEY,contextName,contextURL);
+		listener.getLogger().println("URL "+url+" added to Context ["+contextIdTemp+"]");
+		
+		//excluded urls from context
+		if (!excludedUrl.equals("")) {
+			
+			try {
+
+				String[] urls = excludedUrl.split("\n");
+				String contextExcludedUrl="";//url to exclude from context like the log out url
+			
+
+				for (int i = 0; i < urls.length; i++) {
+					urls[i] = urls[i].trim();
+					if (!urls[i].isEmpty()) {
+						contextExcludedUrl="\\Q"+urls[i]+"\\E";
+						zapClientAPI.context.excludeFromContext(API_KEY, contextName, contextExcludedUrl);
+						listener.getLogger().println("URL exluded from context : "+urls[i]);
+					}
+
+				}
+
+			} catch (ClientApiException e) {
+				e.printStackTrace();
+				listener.error(ExceptionUtils.getStackTrace(e));
+			}
+			 
+		}
+
+		
+		
+		return contextIdTemp;
+	}
+
+ 	
+	/**
+	 * set up form based authentication method for the created context
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param loggedInIdicator indication for know its logged in
+	 * @param usernameParameter parameter define in passing username
+	 * @param passwordParameter parameter that define in passing password for the user
+	 * @param extraPostData other post data than credentials
+	 * @param contextId id of the creted context
+	 * @param loginUrl login page url
+	 * @throws ClientApiException
+	 * @throws UnsupportedEncodingException
+	 */
+	private void setUpFormBasedAuthenticationMethod(BuildListener listener, ClientApi zapClientAPI, 
+				String loggedInIndicator, String usernameParameter, String passwordParameter,String extraPostData,
+				String contextId, String loginUrl) 
+				throws ClientApiException, UnsupportedEncodingException{
+
+		String loginRequestData = usernameParameter+"={%username%}&"+passwordParameter+"={%password%}&"+extraPostData;
+
+		// set form based authentication method 		
+		// Prepare the configuration in a format similar to how URL parameters are formed. This
+		// means that any value we add for the configuration values has to be URL encoded.
+		StringBuilder formBasedConfig = new StringBuilder();
+		formBasedConfig.append("loginUrl=").append(URLEncoder.encode(loginUrl, "UTF-8"));
+		formBasedConfig.append("&loginRequestData=").append(URLEncoder.encode(loginRequestData, "UTF-8"));
+
+		zapClientAPI.authentication.setAuthenticationMethod(API_KEY, contextId, "formBasedAuthentication",formBasedConfig.toString());
+		
+		listener.getLogger().println("Authentication config: " + zapClientAPI.authentication.getAuthenticationMethod(contextId).toString(0));
+		
+		//end set auth method
+		listener.getLogger().println("Form Based Authentication added to context");
+
+		setUpSessionIndicator(listener, zapClientAPI, contextId, loggedInIndicator);
+
+	}
+	
+	/**
+	 * set up script based authentication method for the created context
+	 * @author Abdellah AZOUGARH
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the ZAP API client  
+	 * @param scriptName the name of the authentication script used to authenticate the user
+	 * @param scriptLoggedInIndicator the indication that the user is logged in
+	 * @throws UnsupportedEncodingException
+	 * @throws ClientApiException
+	 */
+	private void setUpScriptBasedAuthenticationMethod( BuildListener listener, ClientApi zapClientAPI,String scriptName , String contextId, String scriptLoggedInIndicator) throws UnsupportedEncodingException, ClientApiException {
+ 		
+		// set script based authentication method 		
+		// Prepare the configuration in a format similar to how URL parameters are formed. This
+		// means that any value we add for the configuration values has to be URL encoded.
+		StringBuilder scriptBasedConfig = new StringBuilder();
+		scriptBasedConfig.append("scriptName=").append(URLEncoder.encode(scriptName, "UTF-8"));
+		listener.getLogger().println("Setting Script based authentication configuration as: " + scriptBasedConfig.toString());
+		
+		zapClientAPI.authentication.setAuthenticationMethod(API_KEY, contextId, "scriptBasedAuthentication",scriptBasedConfig.toString());
+					
+		listener.getLogger().println("Authentication config: " + zapClientAPI.authentication.getAuthenticationMethod(contextId).toString(0));
+		
+		setUpSessionIndicator(listener, zapClientAPI, contextId, scriptLoggedInIndicator);
+ 
+
+	}
+			
+
+	/**
+	 * Set up how ZAP knows the session is lost. With a logged out indicator, ZAP logs in again only when 
+	 * it's found, while with a logged in indicator, ZAP logs in again on each response without it (e.g. 
+	 * the static resources and the API responses), thousands of times during a scan.
+	 * 
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param contextId id of the created context
+	 * @param loggedInIndicator indication for know its logged in, used without logged out indicator
+	 * @throws ClientApiException
+	 */
+	private void setUpSessionIndicator(BuildListener listener, ClientApi zapClientAPI, String contextId, 
+			String loggedInIndicator) throws ClientApiException {
+		if(loggedOutIndicator != null && !loggedOutIndicator.isEmpty()) {
+			// The logged in indicator is only used to check the authentication before the scan
+			zapClientAPI.authentication.setLoggedOutIndicator(API_KEY, contextId, loggedOutIndicator);
+			listener.getLogger().println("Logged out indicator "+loggedOutIndicator+" added to context ");
+		} else if (!loggedInIndicator.equals("")) {
+			zapClientAPI.authentication.setLoggedInIndicator(API_KEY, contextId, loggedInIndicator);
+			listener.getLogger().println("Logged in indicator "+loggedInIndicator+" added to context ");
+		}
+	}
+	
+	/**
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param user the authenticated user
+	 * @return the session kept for the next builds, null if the session isn't kept
+	 */
+	private ZAPauthSession getAuthSession(FilePath workspace, String user) {
+		if(authSessionTtlInMin <= 0) {
+			return null;
+		}
+		return new ZAPauthSession(new File(workspace.getRemote(), ZAPauthSession.DEFAULT_DIR), targetURL, user);
+	}
+	
+	/**
+	 * Send the session kept by a previous build with the requests of ZAP to the target, and check it's still 
+	 * authenticated. Otherwise the forced user logs in as usual.
+	 * 
+	 * @param session the session kept for the next builds
+	 * @param verifier the authentication check
+	 * @param loggedInIndicator indication for know its logged in
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @return true if the session is reused
+	 * @throws IOException
+	 * @throws ClientApiException
+	 */
+	private boolean reuseAuthSession(ZAPauthSession session, ZAPauthVerifier verifier, String loggedInIndicator, 
+			BuildListener listener, ClientApi zapClientAPI) throws IOException, ClientApiException {
+		String cookie = session.load(authSessionTtlInMin * 60000L);
+		if(cookie == null) {
+			return false;
+		}
+		if(loggedInIndicator == null || loggedInIndicator.isEmpty()) {
+			listener.getLogger().println("No logged in indicator, the kept authenticated session can't be checked and isn't reused");
+			return false;
+		}
+		try {
+			ZAPauthSession.install(zapClientAPI, API_KEY, cookie, targetURL);
+		} catch (ClientApiException e) {
+			listener.getLogger().println("The kept authenticated session can't be sent, the Replacer add-on of ZAP is required : " 
+					+ e.getMessage());
+			return false;
+		}
+		
+		try {
+			authDurationInMs = verifier.verify(targetURL, loggedInIndicator, null, listener);
+			listener.getLogger().println("Reuse the authenticated session kept " + (session.getAgeInMs() / 60000) 
+					+ " min ago, checked every " + (AUTH_SESSION_CHECK_INTERVAL_IN_MS / 60000) + " min during the scan");
+			return true;
+		} catch (AbortException e) {
+			listener.getLogger().println("The kept authenticated session expired, log in again");
+			session.delete();
+			ZAPauthSession.uninstall(zapClientAPI, API_KEY);
+			return false;
+		}
+	}
+	
+	/**
+	 * Keep the session of the user checked by the authentication check for the next builds.
+	 * 
+	 * @param session the session kept for the next builds, null if the session isn't kept
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @throws IOException
+	 */
+	private void keepAuthSession(ZAPauthSession session, BuildListener listener) throws IOException {
+		if(session != null && authVerifier.getCookie() != null) {
+			session.save(authVerifier.getCookie());
+			listener.getLogger().println("Authenticated session kept for " + authSessionTtlInMin + " min");
+		} else if(session != null) {
+			listener.getLogger().println("No cookie was sent for the user, the authenticated session can't be kept");
+		}
+	}
+	
+	/**
+	 * Check the reused session every {@link #AUTH_SESSION_CHECK_INTERVAL_IN_MS} during the spider and the scan. 
+	 * Once it expired, it isn't sent anymore and the forced user logs in again, its new session is kept 
+	 * for the next builds.
+	 * 
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws IOException if the user can't log in again
+	 * @throws ClientApiException
+	 */
+	private void checkAuthSession(BuildListener listener, ClientApi zapClientAPI) throws IOException, ClientApiException {
+		if(reusedAuthSession == null || System.currentTimeMillis() - authSessionCheckTime < AUTH_SESSION_CHECK_INTERVAL_IN_MS) {
+			return;
+		}
+		authSessionCheckTime = System.currentTimeMillis();
+		boolean formBased = authenticationMode.equals("FORM_BASED");
+		String indicator = formBased ? loggedInIndicator : scriptLoggedInIndicator;
+		if(authVerifier.isAuthenticated(targetURL, indicator)) {
+			return;
+		}
+		
+		listener.getLogger().println("The reused authenticated session expired during the scan, ZAP logs the user in again");
+		ZAPauthSession expired = reusedAuthSession;
+		reusedAuthSession = null;
+		expired.delete();
+		ZAPauthSession.uninstall(zapClientAPI, API_KEY);
+		// The probe request is sent as the forced user, which logs in
+		authVerifier.verify(targetURL, indicator, formBased ? loginUrl : null, listener);
+		keepAuthSession(expired, listener);
+	}
+	
+	/**
+	 * set up user for the context and enable user
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param username user name to be used in authentication
+	 * @param password password for the authentication user
+	 * @param contextId id of the created context
+	 * @return userId id of the newly setup user
+	 * @throws ClientApiException
+	 * @throws UnsupportedEncodingException 
+	 */
+	private String setUpUser(BuildListener listener, ClientApi zapClientAPI, String username,
+						String password, String contextId) 
+						throws ClientApiException, UnsupportedEncodingException {
+
+		String userIdTemp;
+		// add new user and authentication details
+		// Make sure we have at least one user
+		// extract user id 
+		userIdTemp = extractUserId(zapClientAPI.users.newUser(API_KEY, contextId, username));
+
+		// Prepare the configuration in a format similar to how URL parameters are formed. This
+		// means that any value we add for the configuration values has to be URL encoded.
+		StringBuilder userAuthConfig = new StringBuilder();
+		userAuthConfig.append("username=").append(URLEncoder.encode(username, "UTF-8"));
+		userAuthConfig.append("&password=").append(URLEncoder.encode(password, "UTF-8"));
+		String authCon=userAuthConfig.toString();
+		
+		zapClientAPI.users.setAuthenticationCredentials(API_KEY, contextId, userIdTemp, authCon);
+
+		listener.getLogger().println("New user added. username :" +username);
+		
+		zapClientAPI.users.setUserEnabled(API_KEY, contextId,userIdTemp,"true");
+		listener.getLogger().println("User : "+username+" is now Enabled");
+		
+		//to make spidering and ajax spidering in authentication mod
+		setUpForcedUser(listener, zapClientAPI, contextId,  userIdTemp) ;
+
+		return userIdTemp;
+	}
+	
+	/**
+	 * set up forced user for the context and enable user, this help to make spidering and ajax spidering as authenticated user
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param contextId id of the created context
+	 * @return userId id of the newly setup user
+	 * @throws ClientApiException
+	 * @throws UnsupportedEncodingException 
+	 */
+	private void setUpForcedUser(BuildListener listener, ClientApi zapClientAPI, String contextid, String userid) 
+						throws ClientApiException, UnsupportedEncodingException {
+		
+		zapClientAPI.forcedUser.setForcedUser(API_KEY, contextid,userid);
+		zapClientAPI.forcedUser.setForcedUserModeEnabled(API_KEY, true);
+		
+
+	}
+	
+	
+	/**
+	 * Set up all authentication details
+	 * @author thilina27
+	 * @param username user name to be used in authentication
+	 * @param password password for the authentication user
+	 * @param usernameParameter parameter define in passing username
+	 * @param passwordParameter parameter that define in passing password for the user
+	 * @param extraPostData other post data than credentials
+	 * @param loginUrl login page url
+	 * @param loggedInIdicator indication for know its logged in
+	 * @return userId id of the newly setup user
+	 * @throws ClientApiException
+	 * @throws InterruptedException 
+	 * @throws UnsupportedEncodingException
+	 */
+	private String setUpAuthentication( String authenticationMethod,BuildListener listener, ClientApi zapClientAPI, String contextId,
+			String username, String password, String usernameParameter, 
+			String passwordParameter, String extraPostData, String loginUrl, String loggedInIndicator,String scriptName)
+			throws ClientApiException, UnsupportedEncodingException {
+
+	//setup context
+	//this.contextId=setUpContext(listener,url,zapClientAPI);
+			
+	//set up authentication method
+	if(authenticationMethod.equals("FORMBASED")){
+	setUpFormBasedAuthenticationMethod(listener,zapClientAPI,loggedInIndicator,usernameParameter,
+								passwordParameter,extraPostData,contextId,loginUrl);
+	}
+	else if(authenticationMethod.equals("SCRIPTBASED")){
+		 
+	setUpScriptBasedAuthenticationMethod(listener, zapClientAPI, scriptName , contextId, loggedInIndicator);
+	}
+
+	//set up user
+	return setUpUser(listener,zapClientAPI,username,password,contextId);
+}
+
+	
+	/**
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @return the crawl cache, or null if there is no fingerprint for this build
+	 */
+	private ZAPcrawlCache getCrawlCache(FilePath workspace) {
+		if(evaluatedCrawlCacheFingerprint == null || evaluatedCrawlCacheFingerprint.trim().isEmpty()) {
+			return null;
+		}
+		String dir = crawlCacheDir == null || crawlCacheDir.trim().isEmpty() ? DEFAULT_CRAWL_CACHE_DIR : crawlCacheDir.trim();
+		File cacheDir = new File(dir);
+		if(!cacheDir.isAbsolute()) {
+			cacheDir = new File(workspace.getRemote(), dir);
+		}
+		return new ZAPcrawlCache(cacheDir);
+	}
+	
+	/**
+	 * Seed the site tree with the requests stored in the crawl cache for the fingerprint of this build.
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @return true if the site tree has been loaded from the cache, so the spiders can be skipped
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private boolean loadCrawlCache(FilePath workspace, BuildListener listener, ClientApi zapClientAPI) 
+			throws IOException, InterruptedException {
+		ZAPcrawlCache crawlCache = getCrawlCache(workspace);
+		if(crawlCache == null) {
+			return false;
+		}
+		if(!crawlCache.contains(evaluatedCrawlCacheFingerprint)) {
+			listener.getLogger().println("No crawl cache for the fingerprint [" + evaluatedCrawlCacheFingerprint + "]");
+			return false;
+		}
+		
+		List<SeedRequest> requests = crawlCache.load(evaluatedCrawlCacheFingerprint);
+		listener.getLogger().println("Load " + requests.size() + " requests from the crawl cache [" 
+				+ crawlCache.getCacheFile(evaluatedCrawlCacheFingerprint) + "]");
+		new ZAPsiteTreeSeeder(zapClientAPI, API_KEY, getEffectiveSeedConcurrency()).seed(requests, listener);
+		return true;
+	}
+	
+	/**
+	 * @return the number of requests sent in parallel to seed the site tree
+	 */
+	private int getEffectiveSeedConcurrency() {
+		return seedConcurrency > 0 ? seedConcurrency : ZAProxy.DEFAULT_SEED_CONCURRENCY;
+	}
+	
+	/**
+	 * Seed the site tree with the URLs of the shard, or with the requests described by the imported files 
+	 * (OpenAPI, HAR, URL lists).
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @return true if at least one request has been imported
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private boolean importSiteTree(FilePath workspace, BuildListener listener, ClientApi zapClientAPI) 
+			throws IOException, InterruptedException {
+		if(shardURLs != null) {
+			List<SeedRequest> requests = new ArrayList<SeedRequest>();
+			for(String url : shardURLs) {
+				requests.add(new SeedRequest("GET", url));
+			}
+			listener.getLogger().println("Seed the site tree with the " + requests.size() + " URLs of the shard");
+			return new ZAPsiteTreeSeeder(zapClientAPI, API_KEY, getEffectiveSeedConcurrency()).seed(requests, listener) > 0;
+		}
+		if(importFiles == null || importFiles.trim().isEmpty()) {
+			return false;
+		}
+		
+		ZAPsiteTreeImporter importer = new ZAPsiteTreeImporter(targetURL);
+		List<SeedRequest> requests = new ArrayList<SeedRequest>();
+		for(FilePath file : workspace.list(importFiles.trim())) {
+			List<SeedRequest> fileRequests = importer.read(new File(file.getRemote()));
+			listener.getLogger().println("Import " + fileRequests.size() + " requests from [" + file.getRemote() + "]");
+			requests.addAll(fileRequests);
+		}
+		if(requests.isEmpty()) {
+			listener.getLogger().println("No request to import from [" + importFiles + "]");
+			return false;
+		}
+		
+		int sent = new ZAPsiteTreeSeeder(zapClientAPI, API_KEY, getEffectiveSeedConcurrency()).seed(requests, listener);
+		return sent > 0;
+	}
+	
+	/**
+	 * Store the site tree found by the spiders in the crawl cache, for the fingerprint of this build.
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws IOException
+	 * @throws ClientApiException
+	 */
+	private void saveCrawlCache(FilePath workspace, BuildListener listener, ClientApi zapClientAPI) 
+			throws IOException, ClientApiException {
+		ZAPcrawlCache crawlCache = getCrawlCache(workspace);
+		if(crawlCache == null) {
+			return;
+		}
+		
+		List<SeedRequest> requests = getSiteTreeRequests(targetURL.trim(), zapClientAPI);
+		crawlCache.save(evaluatedCrawlCacheFingerprint, requests);
+		listener.getLogger().println("Save " + requests.size() + " requests to the crawl cache [" 
+				+ crawlCache.getCacheFile(evaluatedCrawlCacheFingerprint) + "]");
+	}
+	
+	/**
+	 * Write the URLs of the site tree in the workspace, one by line.
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws IOException
+	 * @throws ClientApiException
+	 */
+	private void saveSiteTree(FilePath workspace, BuildListener listener, ClientApi zapClientAPI) 
+			throws IOException, ClientApiException {
+		List<String> urls = getSiteTreeURLs(targetURL.trim(), zapClientAPI);
+		FileUtils.writeLines(new File(workspace.getRemote(), SITE_TREE_FILENAME), "UTF-8", urls);
+		listener.getLogger().println("Site tree of " + urls.size() + " URLs saved for the shards");
+	}
+	
+	/**
+	 * Search for all links and pages on the URL and raised passives alerts
+	 *
+	 * @param url the url to investigate
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws ClientApiException
+	 * @throws InterruptedException 
+	 * @throws IOException
+	 */
+	private void spiderURL(final String url, BuildListener listener, ClientApi zapClientAPI) 
+			throws ClientApiException, InterruptedException, IOException {
+		// Method signature : scan(String key, String url, String maxChildren, String recurse)
+		zapClientAPI.spider.scan(API_KEY, url, "", "");
+		long spiderStartTime = System.currentTimeMillis();
+
+		// Wait for complete spidering (equal to 100)
+		// Method signature : status(String scanId)
+		ZAPprogressReporter progressReporter = createProgressReporter(listener, "spider");
+		int status;
+		while ((status = statusToInt(zapClientAPI.spider.status(""))) < 100) {
+			progressReporter.report(status, countAlerts(zapClientAPI), null);
+			adjustRequestRate(listener, zapClientAPI);
+			checkAuthSession(listener, zapClientAPI);
+			throttleSpider(spiderStartTime, zapClientAPI);
+			Thread.sleep(1000);
+		}
+	}
+
+	/**
+	 * Search for all links and pages on the URL and raised passives alerts
+	 * @author thilina27
+	 * @param url the url to investigate
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param contextId the id number of the contexte created for this scan
+	 * @param userId the id number of the user created for this scan
+	 * @throws ClientApiException
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	 
+	private void spiderURLAsUser(final String url, BuildListener listener, ClientApi zapClientAPI, 
+				String contextId, String userId)
+				throws ClientApiException, InterruptedException, IOException {
+		
+		
+		// Start spider as user
+		zapClientAPI.spider.scanAsUser(API_KEY, url, contextId, userId, "0", "");
+		long spiderStartTime = System.currentTimeMillis();
+		
+		// Wait for complete spidering (equal to 100)
+		// Method signature : status(String scanId)
+		ZAPprogressReporter progressReporter = createProgressReporter(listener, "spider");
+		int status;
+		while ((status = statusToInt(zapClientAPI.spider.status(""))) < 100) {
+			progressReporter.report(status, countAlerts(zapClientAPI), null);
+			adjustRequestRate(listener, zapClientAPI);
+			checkAuthSession(listener, zapClientAPI);
+			throttleSpider(spiderStartTime, zapClientAPI);
+			Thread.sleep(1000);
+		}
+	}
+
+	/**
+	 * Search for all links and pages on the URL and raised passives alerts
+	 * @author thilina27
+	 * @param url the url to investigate
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws ClientApiException
+	 * @throws InterruptedException 
+	 */
+	private void ajaxSpiderURL(final String url, BuildListener listener, ClientApi zapClientAPI) 
+			throws ClientApiException, InterruptedException{
+
+		setUpAjaxSpider(listener, zapClientAPI);
+
+		//Method signature : scan(String apikey,String url,String inscope)
+		zapClientAPI.ajaxSpider.scan(API_KEY, url, "false");
+		long startTime = System.currentTimeMillis();
+ 		
+ 		// Wait for complete spidering (equal to status complete)
+		// Method signature : status(String scanId)
+		ZAPprogressReporter progressReporter = createProgressReporter(listener, "ajax spider");
+		String status;
+		while ("running".equalsIgnoreCase(status = statusToString(zapClientAPI.ajaxSpider.status()))) { 
+			progressReporter.report(status, countAlerts(zapClientAPI), null);
+			
+			// ZAP stops the crawl by itself after the max duration, but the browsers may be slow to close
+			if(ajaxSpiderMaxDurationInMin > 0 
+					&& System.currentTimeMillis() - startTime > ZAProxy.getMilliseconds(ajaxSpiderMaxDurationInMin * 60 + AJAX_SPIDER_STOP_GRACE_IN_SEC)) {
+				listener.getLogger().println("Stop Ajax spider after " + ajaxSpiderMaxDurationInMin + " minutes");
+				zapClientAPI.callApi("ajaxSpider", "action", "stop", buildApiParams(null, null));
+				break;
+			}
+			Thread.sleep(2500);
+		} 
+	}
+	
+	/**
+	 * Set up the AjaxSpider options : the browser to use, the number of browsers crawling in parallel 
+	 * and the bounds (depth and duration) of the crawl. The browsers share the same crawl state, so the
+	 * states already visited by a browser are not crawled again by the others.
+	 * 
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws ClientApiException
+	 */
+	private void setUpAjaxSpider(BuildListener listener, ClientApi zapClientAPI) throws ClientApiException {
+		if(ajaxSpiderBrowserId != null && !ajaxSpiderBrowserId.isEmpty()) {
+			zapClientAPI.callApi("ajaxSpider", "action", "setOptionBrowserId", buildApiParams("String", ajaxSpiderBrowserId));
+		}
+		
+		// One browser per core of the machine where ZAP runs (this method is called on the remote machine)
+		int browsers = ajaxSpiderBrowsers > 0 ? ajaxSpiderBrowsers : Runtime.getRuntime().availableProcessors();
+		zapClientAPI.callApi("ajaxSpider", "action", "setOptionNumberOfBrowsers", buildApiParams("Integer", String.valueOf(browsers)));
+		// 0 is unlimited for ZAP, but it's the value of the jobs saved before these options : ZAP keeps its bounds
+		if(ajaxSpiderMaxDepth > 0) {
+			zapClientAPI.callApi("ajaxSpider", "action", "setOptionMaxCrawlDepth", buildApiParams("Integer", String.valueOf(ajaxSpiderMaxDepth)));
+		}
+		if(ajaxSpiderMaxDurationInMin > 0) {
+			zapClientAPI.callApi("ajaxSpider", "action", "setOptionMaxDuration", buildApiParams("Integer", String.valueOf(ajaxSpiderMaxDurationInMin)));
+		}
+		
+		listener.getLogger().println("Ajax spider : browser [" + ajaxSpiderBrowserId + "], " + browsers + " browsers, max depth [" 
+				+ (ajaxSpiderMaxDepth > 0 ? ajaxSpiderMaxDepth : "ZAProxy default") + "], max duration [" 
+				+ (ajaxSpiderMaxDurationInMin > 0 ? ajaxSpiderMaxDurationInMin + " min" : "ZAProxy default") + "]");
+	}
+	
+	/**
+	 * Build the parameters of a ZAP API call, with the API key.
+	 * 
+	 * @param name the name of the parameter, null if there is no parameter
+	 * @param value the value of the parameter
+	 * @return a map of parameters usable by {@link ClientApi#callApi(String, String, String, Map)}
+	 */
+	private static Map<String, String> buildApiParams(String name, String value) {
+		Map<String, String> map = new HashMap<String, String>();
+		map.put("apikey", API_KEY);
+		if(name != null) {
+			map.put(name, value);
+		}
+		return map;
+	}
+	
+	/**
+	 * Scan all pages found at url and raised actives alerts
+	 *
+	 * @param url the url to scan
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param handle the scan handle to update, null if the scan can't be resumed
+	 * @throws ClientApiException
+	 * @throws IOException
+	 * @throws InterruptedException 
+	 */
+	private void scanURL(final String url, BuildListener listener, ClientApi zapClientAPI, ZAPscanHandle handle) 
+			throws ClientApiException, IOException, InterruptedException {
+		if(chosenPolicy == null || chosenPolicy.isEmpty()) {
+			listener.getLogger().println("Scan url [" + url + "] with the policy by default");		
+		} else {
+			listener.getLogger().println("Scan url [" + url + "] with the following policy ["
+							+ chosenPolicy + "]");
+		}
+		
+		if(prioritizer != null) {
+			scanPrioritizedURLs(url, listener, zapClientAPI, null, null);
+			return;
+		}
+		if(sampleURLs) {
+			scanSampledURLs(url, listener, zapClientAPI, null, null);
+			return;
+		}
+		
+		// Method signature : scan(String apikey, String url, String recurse, String inscopeonly, String scanpolicyname, String method, String postdata)
+		// Use a default policy if chosenPolicy is null or empty
+		if(checkpoint != null) {
+			checkpoint.disableCompletedRules(zapClientAPI, API_KEY);
+		}
+		try {
+			String scanId = statusToString(zapClientAPI.ascan.scan(API_KEY, url, "true", "false", chosenPolicy, null, null));
+			if(handle != null) {
+				handle.update(ZAPscanHandle.PHASE_SCAN, scanId);
+			}
+		
+			waitForScan(scanId, listener, zapClientAPI);
+		} finally {
+			if(checkpoint != null) {
+				checkpoint.restoreRules(zapClientAPI, API_KEY);
+			}
+		}
+	}
+	
+	/**
+	 * Scan all pages found at url and raised actives alerts
+	 *
+	 * @author abdellah.azougarh
+	 * @param url the url to scan
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param contextId the id number of the contexte created for this scan
+	 * @param userId the id number of the user created for this scan
+	 * @param handle the scan handle to update, null if the scan can't be resumed
+	 * @throws ClientApiException
+	 * @throws IOException
+	 * @throws InterruptedException 
+	 */
+	private void scanURLAsUser(final String url, BuildListener listener, ClientApi zapClientAPI, String contextId, String userId, ZAPscanHandle handle) 
+			throws ClientApiException, IOException, InterruptedException {
+		if(chosenPolicy == null || chosenPolicy.isEmpty()) {
+			listener.getLogger().println("Scan url [" + url + "] with the policy by default");		
+		} else {
+			listener.getLogger().println("Scan url [" + url + "] with the following policy ["
+							+ chosenPolicy + "]");
+		}
+		
+		if(prioritizer != null) {
+			scanPrioritizedURLs(url, listener, zapClientAPI, contextId, userId);
+			return;
+		}
+		if(sampleURLs) {
+			scanSampledURLs(url, listener, zapClientAPI, contextId, userId);
+			return;
+		}
+		
+		// Method signature : scan(String apikey, String url, String recurse, String inscopeonly, String scanpolicyname, String method, String postdata)
+		// Use a default policy if chosenPolicy is null or empty
+		if(checkpoint != null) {
+			checkpoint.disableCompletedRules(zapClientAPI, API_KEY);
+		}
+		try {
+			String scanId = statusToString(zapClientAPI.ascan.scanAsUser(API_KEY, url, contextId, userId,"true", chosenPolicy, null, null));//arg2, arg3, arg4, arg5, arg6, arg7)scan(API_KEY, url, "true", "false", chosenPolicy, null, null);
+			if(handle != null) {
+				handle.update(ZAPscanHandle.PHASE_SCAN, scanId);
+			}
+		
+			waitForScan(scanId, listener, zapClientAPI);
+		} finally {
+			if(checkpoint != null) {
+				checkpoint.restoreRules(zapClientAPI, API_KEY);
+			}
+		}
+	}
+	
+	/**
+	 * Wait for complete scanning (equal to 100).
+	 * 
+	 * @param scanId the id of the scan
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws ClientApiException
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	private void waitForScan(String scanId, BuildListener listener, ClientApi zapClientAPI) 
+			throws ClientApiException, InterruptedException, IOException {
+		// Method signature : status(String scanId)
+		ZAPprogressReporter progressReporter = createProgressReporter(listener, "scan");
+		long startTime = System.currentTimeMillis();
+		long checkpointTime = startTime;
+		int status;
+		while ((status = statusToInt(zapClientAPI.ascan.status(scanId))) < 100) {
+			progressReporter.report(status, countAlerts(zapClientAPI), countMessages(zapClientAPI));
+			adjustRequestRate(listener, zapClientAPI);
+			checkAuthSession(listener, zapClientAPI);
+			if(checkpoint != null) {
+				long now = System.currentTimeMillis();
+				if(scanWindowInMin > 0 && now - startTime >= scanWindowInMin * 60000L) {
+					saveCheckpoint(scanId, now - startTime, listener, zapClientAPI);
+					// Method signature : stop(String scanId)
+					zapClientAPI.callApi("ascan", "action", "stop", buildApiParams("scanId", scanId));
+					partialScanReason = "Scan window of " + scanWindowInMin 
+							+ " min elapsed, the scan is stopped and resumed by the next build from its checkpoint";
+					listener.getLogger().println(partialScanReason);
+					return;
+				}
+				if(checkpointIntervalInMin > 0 && now - checkpointTime >= checkpointIntervalInMin * 60000L) {
+					saveCheckpoint(scanId, now - startTime, listener, zapClientAPI);
+					checkpointTime = now;
+				}
+			}
+			Thread.sleep(5000);
+		}
+		if(checkpoint != null) {
+			completeCheckpoint(listener);
+		}
+	}
+	
+	/**
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @return the checkpoint of the scan, loaded if a previous build saved it, null if the scan isn't checkpointed
+	 * @throws IOException
+	 */
+	private ZAPscanCheckpoint loadCheckpoint(FilePath workspace) throws IOException {
+		// The shards and the sampled scans are short, the prioritized scans are cut by the scan window, they aren't checkpointed
+		if((checkpointIntervalInMin <= 0 && scanWindowInMin <= 0) || crawlOnly || shardURLs != null || sampleURLs || prioritizeScan) {
+			return null;
+		}
+		ZAPscanCheckpoint scanCheckpoint = new ZAPscanCheckpoint(new File(workspace.getRemote(), ZAPscanCheckpoint.DEFAULT_DIR), 
+				targetURL, chosenPolicy);
+		scanCheckpoint.load();
+		return scanCheckpoint;
+	}
+	
+	/**
+	 * Load the session of the checkpoint saved by a previous build, the scan goes on with the rules left.
+	 * 
+	 * @param workspace a {@link FilePath} representing the build's workspace
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @return true if the session of a checkpoint is loaded
+	 * @throws ClientApiException
+	 * @throws IOException
+	 */
+	private boolean resumeFromCheckpoint(FilePath workspace, BuildListener listener, ClientApi zapClientAPI) 
+			throws ClientApiException, IOException {
+		checkpoint = loadCheckpoint(workspace);
+		if(checkpoint == null) {
+			return false;
+		}
+		checkpoint.startPart();
+		File sessionFile = checkpoint.getSessionFile();
+		if(sessionFile == null) {
+			return false;
+		}
+		listener.getLogger().println("Resume the scan from the checkpoint [" + sessionFile.getAbsolutePath() + "] : part " 
+				+ checkpoint.getPart() + ", " + checkpoint.getCompletedRuleCount() + " rules completed in " 
+				+ checkpoint.getScanDurationInMs() / 60000 + " min");
+		zapClientAPI.core.loadSession(API_KEY, sessionFile.getAbsolutePath());
+		try {
+			// The session has the context of the previous part, it's set up again
+			zapClientAPI.callApi("context", "action", "removeContext", buildApiParams("contextName", CONTEXT_NAME));
+		} catch (ClientApiException e) {
+			listener.getLogger().println("Unable to remove the context of the checkpoint : " + e.getMessage());
+		}
+		return true;
+	}
+	
+	/**
+	 * Save the session and the progress of the running scan, a failed checkpoint doesn't stop the scan.
+	 * 
+	 * @param scanId the id of the scan
+	 * @param partDurationInMs the duration of the scan in this build
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 */
+	private void saveCheckpoint(String scanId, long partDurationInMs, BuildListener listener, ClientApi zapClientAPI) {
+		try {
+			long startTime = System.currentTimeMillis();
+			checkpoint.save(zapClientAPI, API_KEY, scanId, partDurationInMs);
+			listener.getLogger().println("Checkpoint of the scan saved in " + (System.currentTimeMillis() - startTime) + " ms : " 
+					+ checkpoint.getCompletedRuleCount() + " rules completed");
+		} catch (ClientApiException e) {
+			listener.error("Unable to save the checkpoint of the scan : " + e.getMessage());
+		} catch (IOException e) {
+			listener.error("Unable to save the checkpoint of the scan : " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * The scan is complete, the next build starts a new scan.
+	 * 
+	 * @param listener the listener to display log during the job execution in jenkins
+	 */
+	private void completeCheckpoint(BuildListener listener) {
+		try {
+			if(checkpoint.getPart() > 1) {
+				listener.getLogger().println("Scan complete in " + checkpoint.getPart() + " parts");
+			}
+			checkpoint.complete();
+		} catch (IOException e) {
+			listener.error("Unable to end the checkpoint of the scan : " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Take a share of the request rate of the target host, if it has a limit, and apply it to ZAP.
+	 * 
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws ClientApiException
+	 */
+	private void acquireRequestRate(BuildListener listener, ClientApi zapClientAPI) throws ClientApiException {
+		if(requestRateLimit <= 0) {
+			return;
+		}
+		rateShare = ZAPrateLimiter.acquire(targetURL, requestRateLimit);
+		rateStartMessages = statusToInt(zapClientAPI.core.numberOfMessages(""));
+		appliedRate = 0;
+		adjustRequestRate(listener, zapClientAPI);
+	}
+	
+	/**
+	 * Apply the share of the request rate to the threads and the delay of ZAP, if it changed since it was applied.
+	 * 
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws ClientApiException
+	 */
+	private void adjustRequestRate(BuildListener listener, ClientApi zapClientAPI) throws ClientApiException {
+		if(rateShare == null) {
+			return;
+		}
+		int rate = rateShare.getRate();
+		if(rate == appliedRate) {
+			return;
+		}
+		int threads = ZAPrateLimiter.getThreads(rate);
+		int delayInMs = ZAPrateLimiter.getDelayInMs(rate);
+		zapClientAPI.callApi("ascan", "action", "setOptionThreadPerHost", buildApiParams("Integer", String.valueOf(threads)));
+		zapClientAPI.callApi("ascan", "action", "setOptionDelayInMs", buildApiParams("Integer", String.valueOf(delayInMs)));
+		zapClientAPI.callApi("spider", "action", "setOptionThreadCount", buildApiParams("Integer", String.valueOf(threads)));
+		listener.getLogger().println("Request rate toward [" + rateShare.getHost() + "] = " + rate + " req/s of " + requestRateLimit 
+				+ " req/s (" + threads + " threads, delay " + delayInMs + " ms)");
+		appliedRate = rate;
+	}
+	
+	/**
+	 * The spider of ZAP has no delay between its requests, only a number of threads. So the spider is paused 
+	 * when it's ahead of the share of the request rate, until its average rate is back to the share. 
+	 * The requests of the spider are counted from its results, one request per URL found.
+	 * 
+	 * @param spiderStartTime the start time of the spider
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws ClientApiException
+	 * @throws InterruptedException
+	 */
+	private void throttleSpider(long spiderStartTime, ClientApi zapClientAPI) throws ClientApiException, InterruptedException {
+		if(rateShare == null) {
+			return;
+		}
+		// Method signature : results(String scanId)
+		int requests = ((ApiResponseList) zapClientAPI.callApi("spider", "view", "results", buildApiParams("scanId", ""))).getItems().size();
+		long pauseInMs = ZAPrateLimiter.getPauseInMs(rateShare.getRate(), requests, System.currentTimeMillis() - spiderStartTime);
+		if(pauseInMs <= 0) {
+			return;
+		}
+		zapClientAPI.callApi("spider", "action", "pauseAllScans", buildApiParams(null, null));
+		try {
+			Thread.sleep(pauseInMs);
+		} finally {
+			zapClientAPI.callApi("spider", "action", "resumeAllScans", buildApiParams(null, null));
+		}
+	}
+	
+	/**
+	 * Report the request rate achieved by the scan and give its share back to the other builds.
+	 * 
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 */
+	private void releaseRequestRate(BuildListener listener, ClientApi zapClientAPI) {
+		if(rateShare == null) {
+			return;
+		}
+		try {
+			long elapsedInMs = Math.max(1, System.currentTimeMillis() - rateShare.getStartTime());
+			int messages = statusToInt(zapClientAPI.core.numberOfMessages("")) - rateStartMessages;
+			listener.getLogger().println(String.format("Request rate achieved toward [%s] = %.1f req/s (%d requests in %d s, limit %d req/s)", 
+					rateShare.getHost(), messages * 1000.0 / elapsedInMs, messages, elapsedInMs / 1000, requestRateLimit));
+		} catch (ClientApiException e) {
+			// ZAP doesn't answer anymore
+			listener.getLogger().println("Request rate achieved toward [" + rateShare.getHost() + "] unknown, ZAProxy is stopped");
+		} finally {
+			rateShare.release();
+			rateShare = null;
+		}
+	}
+	
+	/**
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param phase the name of the polled phase
+	 * @return a progress reporter printing at least one line each progressHeartbeatInSec
+	 */
+	private ZAPprogressReporter createProgressReporter(BuildListener listener, String phase) {
+		int heartbeat = progressHeartbeatInSec > 0 ? progressHeartbeatInSec : ZAProxy.DEFAULT_PROGRESS_HEARTBEAT_IN_SEC;
+		return new ZAPprogressReporter(listener.getLogger(), phase, ZAProxy.getMilliseconds(heartbeat));
+	}
+	
+	/**
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @return the number of alerts raised by ZAP
+	 * @throws ClientApiException
+	 */
+	private String countAlerts(ClientApi zapClientAPI) throws ClientApiException {
+		return statusToString(zapClientAPI.core.numberOfAlerts(""));
+	}
+	
+	/**
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @return the number of messages sent by ZAP
+	 * @throws ClientApiException
+	 */
+	private String countMessages(ClientApi zapClientAPI) throws ClientApiException {
+		return statusToString(zapClientAPI.core.numberOfMessages(""));
+	}
+	
+	/**
+	 * Return all URLs of the site tree which start with the url in param.
+	 * 
+	 * @param url the root of the URLs to keep
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @return the URLs found by ZAP under url
+	 * @throws ClientApiException
+	 */
+	private List<String> getSiteTreeURLs(final String url, ClientApi zapClientAPI) throws ClientApiException {
+		List<String> urls = new ArrayList<String>();
+		ApiResponse response = zapClientAPI.callApi("core", "view", "urls", buildApiParams(null, null));
+		for(ApiResponse item : ((ApiResponseList) response).getItems()) {
+			String foundUrl = ((ApiResponseElement) item).getValue();
+			if(foundUrl.startsWith(url)) {
+				urls.add(foundUrl);
+			}
+		}
+		return urls;
+	}
+	
+	/**
+	 * Get the requests sent to url during the crawl, with their method, headers and body, 
+	 * so they can be replayed as they were sent. The same request sent several times is only returned once.
+	 * 
+	 * @param url the url of the site tree
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @return the requests recorded by ZAP under url
+	 * @throws ClientApiException
+	 */
+	private List<SeedRequest> getSiteTreeRequests(final String url, ClientApi zapClientAPI) throws ClientApiException {
+		Map<String, SeedRequest> requests = new LinkedHashMap<String, SeedRequest>();
+		// The messages are read by pages, the history of a large crawl doesn't fit in one response
+		for(int start = 0; ; start += MESSAGES_PAGE_SIZE) {
+			Map<String, String> map = buildApiParams("baseurl", url);
+			map.put("start", String.valueOf(start));
+			map.put("count", String.valueOf(MESSAGES_PAGE_SIZE));
+			List<ApiResponse> messages = ((ApiResponseList) zapClientAPI.callApi("core", "view", "messages", map)).getItems();
+			for(ApiResponse message : messages) {
+				SeedRequest request = SeedRequest.fromRawRequest(((ApiResponseSet) message).getAttribute("requestHeader"), 
+						((ApiResponseSet) message).getAttribute("requestBody"));
+				if(request != null && request.getUrl().startsWith(url)) {
+					requests.put(request.getMethod() + " " + request.getUrl() + "\n" + request.getBody(), request);
+				}
+			}
+			if(messages.size() < MESSAGES_PAGE_SIZE) {
+				break;
+			}
+		}
+		return new ArrayList<SeedRequest>(requests.values());
+	}
+	
+	/**
+	 * Scan a representative sample of the pages found at url. Pages are grouped by structural template
+	 * (see {@link ZAPurlSampler}) and only sampleSizePerCluster pages of each group are scanned, without recursion.
+	 * So the scan time depends on the number of distinct endpoints rather than the number of pages.
+	 * 
+	 * @param url the url to scan
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param contextId the id number of the contexte created for this scan, null to scan as anonymous
+	 * @param userId the id number of the user created for this scan, null to scan as anonymous
+	 * @throws ClientApiException
+	 * @throws InterruptedException 
+	 * @throws IOException
+	 */
+	private void scanSampledURLs(final String url, final BuildListener listener, final ClientApi zapClientAPI, final String contextId, 
+			final String userId) 
+			throws ClientApiException, InterruptedException, IOException {
+		ZAPurlSampler sampler = new ZAPurlSampler(sampleSizePerCluster);
+		List<String> urls = getSiteTreeURLs(url, zapClientAPI);
+		Map<String, List<String>> clusters = sampler.cluster(urls);
+		List<String> sample = sampler.sample(clusters);
+		listener.getLogger().println("Sampling : " + urls.size() + " URLs grouped in " + clusters.size() 
+				+ " templates, " + sample.size() + " URLs to scan");
+		
+		final ZAPprogressReporter progressReporter = createProgressReporter(listener, "sampled scan");
+		final long windowEnd = getScanWindowEnd();
+		final int sampleSize = sample.size();
+		String reason = scanSample(sample, windowEnd, scanWindowInMin, new SampledURLScanner() {
+			@Override
+			public boolean scan(String sampledUrl, int index) throws ClientApiException, InterruptedException, IOException {
+				progressReporter.report(index * 100 / sampleSize, countAlerts(zapClientAPI), countMessages(zapClientAPI));
+				String scanId;
+				if(userId == null) {
+					scanId = statusToString(zapClientAPI.ascan.scan(API_KEY, sampledUrl, "false", "false", chosenPolicy, null, null));
+				} else {
+					scanId = statusToString(zapClientAPI.ascan.scanAsUser(API_KEY, sampledUrl, contextId, userId, "false", chosenPolicy, null, null));
+				}
+				
+				// Wait for complete scanning of this url (equal to 100)
+				return waitForURLScan(scanId, sampledUrl, windowEnd, listener, zapClientAPI);
+			}
+		});
+		if(reason != null) {
+			// The alerts of the URLs not fully scanned are missing, they mustn't be compared as fixed
+			partialScanReason = reason;
+			listener.getLogger().println(partialScanReason);
+		}
+		listener.getLogger().println("Alerts number = " + zapClientAPI.core.numberOfAlerts("").toString(2));
+		listener.getLogger().println("Messages number = " + zapClientAPI.core.numberOfMessages("").toString(2));
+	}
+	
+	/**
+	 * Scans a sampled URL, see {@link ZAPscanPlan#scanSample(List, long, int, SampledURLScanner)}.
+	 */
+	interface SampledURLScanner {
+		/**
+		 * @param url the sampled URL to scan
+		 * @param index the index of the URL in the sample
+		 * @return true if the scan is complete, false if it was stopped
+		 */
+		boolean scan(String url, int index) throws ClientApiException, InterruptedException, IOException;
+	}
+	
+	/**
+	 * Scan the sampled URLs one after the other, up to the end of the scan window.
+	 * 
+	 * @param sample the sampled URLs
+	 * @param windowEnd the time the scan window ends
+	 * @param scanWindowInMin the scan window, for the reason of a partial scan
+	 * @param scanner the scan of a URL
+	 * @return why the sampled scan is partial, null if all the URLs were fully scanned
+	 * @throws ClientApiException
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	static String scanSample(List<String> sample, long windowEnd, int scanWindowInMin, SampledURLScanner scanner) 
+			throws ClientApiException, InterruptedException, IOException {
+		int scanned = 0;
+		int stopped = 0;
+		for(String sampledUrl : sample) {
+			if(System.currentTimeMillis() >= windowEnd) {
+				break;
+			}
+			if(!scanner.scan(sampledUrl, scanned)) {
+				stopped++;
+			}
+			scanned++;
+		}
+		if(scanned < sample.size()) {
+			return "Scan window of " + scanWindowInMin + " min elapsed, the sampled scan is stopped after " 
+					+ scanned + " of " + sample.size() + " URLs" + (stopped > 0 ? ", " + stopped + " of them stopped before the end of their scan" : "");
+		}
+		if(stopped > 0) {
+			return stopped + " of " + sample.size() + " sampled URLs were stopped before the end of their scan";
+		}
+		return null;
+	}
+	
+	/**
+	 * Scan the pages found at url in prioritized chunks, the most valuable rules on the riskiest pages first 
+	 * (see {@link ZAPscanPrioritizer}), so a scan cut by the scan window has run the most important checks. 
+	 * Each chunk enables a tier of rules in a temporary copy of the policy and scans a batch of pages, with a single 
+	 * recursive scan of the site which excludes the other pages, besides the URLs already excluded from the scan. 
+	 * The scan stopped by the scan window is partial.
+	 * 
+	 * @param url the url to scan
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param contextId the id number of the contexte created for this scan, null to scan as anonymous
+	 * @param userId the id number of the user created for this scan, null to scan as anonymous
+	 * @throws ClientApiException
+	 * @throws InterruptedException 
+	 * @throws IOException
+	 */
+	private void scanPrioritizedURLs(final String url, BuildListener listener, ClientApi zapClientAPI, String contextId, String userId) 
+			throws ClientApiException, InterruptedException, IOException {
+		// The forms are seen by the passive scan of the crawl
+		ZAPalertReader alerts = new ZAPalertReader(zapClientAPI, API_KEY, suppressions);
+		while(alerts.next()) {
+			prioritizer.addPassiveAlert(alerts.get(ZAPalertReader.URL), alerts.get(ZAPalertReader.PARAM));
+		}
+		List<String> urls = getSiteTreeURLs(url, zapClientAPI);
+		if(sampleURLs) {
+			ZAPurlSampler sampler = new ZAPurlSampler(sampleSizePerCluster);
+			urls = sampler.sample(sampler.cluster(urls));
+		}
+		
+		String policyName = chosenPolicy == null ? "" : chosenPolicy;
+		List<String> enabledRules = new ArrayList<String>();
+		List<ApiResponseSet> enabledScanners = new ArrayList<ApiResponseSet>();
+		ApiResponse scanners = zapClientAPI.callApi("ascan", "view", "scanners", buildApiParams("scanPolicyName", policyName));
+		for(ApiResponse scanner : ((ApiResponseList) scanners).getItems()) {
+			if("true".equals(((ApiResponseSet) scanner).getAttribute("enabled"))) {
+				enabledRules.add(((ApiResponseSet) scanner).getAttribute("id"));
+				enabledScanners.add((ApiResponseSet) scanner);
+			}
+		}
+		// The exclusions of the user are kept in each chunk and restored after the scan
+		List<String> userExclusions = new ArrayList<String>();
+		for(ApiResponse exclusion : ((ApiResponseList) zapClientAPI.callApi("ascan", "view", "excludedFromScan", buildApiParams(null, null))).getItems()) {
+			userExclusions.add(((ApiResponseElement) exclusion).getValue());
+		}
+		List<List<String>> tiers = prioritizer.rankRules(enabledRules);
+		List<List<String>> batches = prioritizer.rankEndpoints(urls);
+		List<int[]> chunks = ZAPscanPrioritizer.orderChunks(tiers.size(), batches.size());
+		listener.getLogger().println("Prioritized scan : " + enabledRules.size() + " rules in " + tiers.size() + " tiers, " 
+				+ urls.size() + " URLs in " + batches.size() + " batches, " + chunks.size() + " chunks");
+		
+		long windowEnd = getScanWindowEnd();
+		ZAPprogressReporter progressReporter = createProgressReporter(listener, "prioritized scan");
+		int chunkCount = 0;
+		// The tiers are enabled in a copy of the policy, the policy of the user is never modified
+		String chunkPolicyName = createChunkPolicy(enabledScanners, zapClientAPI);
+		try {
+			for(int[] chunk : chunks) {
+				if(System.currentTimeMillis() >= windowEnd) {
+					stopPrioritizedScan(null, chunkCount, chunks.size(), listener, zapClientAPI);
+					return;
+				}
+				List<String> tier = tiers.get(chunk[0]);
+				// Method signature : disableAllScanners(String scanPolicyName), enableScanners(String ids, String scanPolicyName)
+				zapClientAPI.callApi("ascan", "action", "disableAllScanners", buildApiParams("scanPolicyName", chunkPolicyName));
+				Map<String, String> map = buildApiParams("ids", StringUtils.join(tier, ","));
+				map.put("scanPolicyName", chunkPolicyName);
+				zapClientAPI.callApi("ascan", "action", "enableScanners", map);
+				
+				// One recursive scan of the site for the chunk, the URLs out of the batch are excluded
+				// Method signature : clearExcludedFromScan(), excludeFromScan(String regex)
+				zapClientAPI.callApi("ascan", "action", "clearExcludedFromScan", buildApiParams(null, null));
+				excludeFromScan(userExclusions, zapClientAPI);
+				zapClientAPI.callApi("ascan", "action", "excludeFromScan", 
+						buildApiParams("regex", ZAPscanPrioritizer.toExclusionRegex(batches.get(chunk[1]))));
+				String scanId;
+				if(userId == null) {
+					scanId = statusToString(zapClientAPI.ascan.scan(API_KEY, url, "true", "false", chunkPolicyName, null, null));
+				} else {
+					scanId = statusToString(zapClientAPI.ascan.scanAsUser(API_KEY, url, contextId, userId, "true", chunkPolicyName, null, null));
+				}
+				int status;
+				while ((status = statusToInt(zapClientAPI.ascan.status(scanId))) < 100) {
+					if(System.currentTimeMillis() >= windowEnd) {
+						stopPrioritizedScan(scanId, chunkCount, chunks.size(), listener, zapClientAPI);
+						return;
+					}
+					progressReporter.report((chunkCount * 100 + status) / chunks.size(), countAlerts(zapClientAPI), countMessages(zapClientAPI));
+					adjustRequestRate(listener, zapClientAPI);
+					checkAuthSession(listener, zapClientAPI);
+					Thread.sleep(1000);
+				}
+				chunkCount++;
+				// The rules of a tier have run once a chunk of the tier is scanned, the first batch is scanned first
+				rulesRun.addAll(tier);
+			}
+			listener.getLogger().println("Prioritized scan complete : " + chunks.size() + " chunks");
+		} finally {
+			zapClientAPI.callApi("ascan", "action", "clearExcludedFromScan", buildApiParams(null, null));
+			excludeFromScan(userExclusions, zapClientAPI);
+			// Method signature : removeScanPolicy(String scanPolicyName)
+			zapClientAPI.callApi("ascan", "action", "removeScanPolicy", buildApiParams("scanPolicyName", chunkPolicyName));
+		}
+	}
+	
+	/**
+	 * Create the policy of the chunks of a prioritized scan, with the enabled rules of the chosen policy and 
+	 * their strength and threshold. The chunks enable their tier of rules in this policy.
+	 * 
+	 * @param enabledScanners the enabled rules of the chosen policy
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @return the name of the policy, to remove after the scan
+	 * @throws ClientApiException
+	 */
+	private String createChunkPolicy(List<ApiResponseSet> enabledScanners, ClientApi zapClientAPI) throws ClientApiException {
+		String chunkPolicyName = "zaproxy-prioritized-scan-" + System.currentTimeMillis();
+		// Method signature : addScanPolicy(String scanPolicyName)
+		zapClientAPI.callApi("ascan", "action", "addScanPolicy", buildApiParams("scanPolicyName", chunkPolicyName));
+		for(ApiResponseSet scanner : enabledScanners) {
+			// Method signature : setScannerAttackStrength(String id, String attackStrength, String scanPolicyName)
+			Map<String, String> map = buildApiParams("id", scanner.getAttribute("id"));
+			map.put("attackStrength", scanner.getAttribute("attackStrength"));
+			map.put("scanPolicyName", chunkPolicyName);
+			zapClientAPI.callApi("ascan", "action", "setScannerAttackStrength", map);
+			// Method signature : setScannerAlertThreshold(String id, String alertThreshold, String scanPolicyName)
+			map = buildApiParams("id", scanner.getAttribute("id"));
+			map.put("alertThreshold", scanner.getAttribute("alertThreshold"));
+			map.put("scanPolicyName", chunkPolicyName);
+			zapClientAPI.callApi("ascan", "action", "setScannerAlertThreshold", map);
+		}
+		return chunkPolicyName;
+	}
+	
+	/**
+	 * Exclude URLs from the active scan.
+	 * 
+	 * @param regexes the regular expressions of the excluded URLs
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws ClientApiException
+	 */
+	private void excludeFromScan(List<String> regexes, ClientApi zapClientAPI) throws ClientApiException {
+		for(String regex : regexes) {
+			zapClientAPI.callApi("ascan", "action", "excludeFromScan", buildApiParams("regex", regex));
+		}
+	}
+	
+	/**
+	 * Stop a prioritized scan at the end of the scan window, the scan is partial.
+	 * 
+	 * @param scanId the id of the scan of the running chunk, null if no chunk is running
+	 * @param chunkCount the number of chunks scanned
+	 * @param chunkTotal the number of chunks of the scan
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @throws ClientApiException
+	 */
+	private void stopPrioritizedScan(String scanId, int chunkCount, int chunkTotal, BuildListener listener, ClientApi zapClientAPI) 
+			throws ClientApiException {
+		if(scanId != null) {
+			// Method signature : stop(String scanId)
+			zapClientAPI.callApi("ascan", "action", "stop", buildApiParams("scanId", scanId));
+		}
+		partialScanReason = "Scan window of " + scanWindowInMin + " min elapsed, the prioritized scan is stopped after " 
+				+ chunkCount + " of " + chunkTotal + " chunks";
+		listener.getLogger().println(partialScanReason);
+	}
+	
+	/**
+	 * @return the time the scan window ends, {@link Long#MAX_VALUE} if the scan has no window
+	 */
+	private long getScanWindowEnd() {
+		return scanWindowInMin > 0 ? System.currentTimeMillis() + scanWindowInMin * 60000L : Long.MAX_VALUE;
+	}
+	
+	/**
+	 * Wait for the scan of a single URL, without recursion. A scan still running after 
+	 * {@link #URL_SCAN_TIMEOUT_IN_MIN} or at the end of the scan window is stopped, a hung scan never hangs the build.
+	 * 
+	 * @param scanId the id of the scan
+	 * @param url the scanned URL
+	 * @param windowEnd the time the scan window ends
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @return true if the scan is complete, false if it was stopped
+	 * @throws ClientApiException
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	private boolean waitForURLScan(String scanId, String url, long windowEnd, BuildListener listener, ClientApi zapClientAPI) 
+			throws ClientApiException, InterruptedException, IOException {
+		long deadline = Math.min(windowEnd, System.currentTimeMillis() + URL_SCAN_TIMEOUT_IN_MIN * 60000L);
+		while (statusToInt(zapClientAPI.ascan.status(scanId)) < 100) {
+			if(System.currentTimeMillis() >= deadline) {
+				// Method signature : stop(String scanId)
+				zapClientAPI.callApi("ascan", "action", "stop", buildApiParams("scanId", scanId));
+				listener.getLogger().println("Scan of [" + url + "] stopped after " 
+						+ (deadline == windowEnd ? "the end of the scan window" : URL_SCAN_TIMEOUT_IN_MIN + " min"));
+				return false;
+			}
+			adjustRequestRate(listener, zapClientAPI);
+			checkAuthSession(listener, zapClientAPI);
+			Thread.sleep(1000);
+		}
+		return true;
+	}
+	
+	/**
+	 * Stop ZAproxy if it has been previously started.
+	 * 
+	 * @param zapClientAPI the client API to use ZAP API methods
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @throws ClientApiException 
+	 */
+	private void stopZAP(ClientApi zapClientAPI, BuildListener listener) throws ClientApiException {
+		if (zapClientAPI != null) {
+			listener.getLogger().println("Shutdown ZAProxy");
+			//throw new ClientApiException("Exception lancee dans stopZAP");
+			zapClientAPI.core.shutdown(API_KEY);
+		} else {
+			listener.getLogger().println("No shutdown of ZAP (zapClientAPI==null)");
+		}
+	}
+}
@@ -0,0 +1,371 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Orders the active scan so the most valuable checks run first, and a scan cut by its time limit still 
+ * covers them.
+ * <p>
+ * The rules are ranked by the highest risk they ever raised on the target and by their hit rate (the part of 
+ * the scans where they raised an alert). The endpoints are ranked by their risk signals: parameters in the 
+ * query, parameters in the body seen by the passive scan (forms), paths of authenticated areas and alerts 
+ * raised on their template (see {@link ZAPurlSampler#toTemplate(String)}) by the previous scans.
+ * <p>
+ * The scan is a series of chunks, each one a tier of rules run on a batch of endpoints. The chunks are 
+ * ordered by the sum of the rank of their tier and their batch: the best rules on the best endpoints first, 
+ * then the best rules on the next endpoints and the next rules on the best endpoints, ...
+ * <p>
+ * The history of the scans is kept in a text file of the workspace. The alerts of an endpoint are halved at 
+ * each scan, so the old findings weigh less than the recent ones.
+ * 
+ */
+public class ZAPscanPrioritizer {
+	
+	/** File of the history of the scans, relative to the workspace */
+	static final String HISTORY_FILENAME = "zaproxy-scan-history.txt";
+	
+	private static final String HEADER = "# zaproxy-plugin scan history v1";
+	
+	private static final String RULE = "rule";
+	private static final String ENDPOINT = "endpoint";
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	/** Number of tiers of rules */
+	static final int RULE_TIERS = 3;
+	
+	/** Number of batches of endpoints */
+	static final int ENDPOINT_BATCHES = 4;
+	
+	/** Risks by code, as named by the alerts of ZAP */
+	private static final List<String> RISKS = Arrays.asList("Informational", "Low", "Medium", "High");
+	
+	/** Risk of a rule which never raised an alert, the new rules aren't run last */
+	private static final int UNKNOWN_RISK = 2;
+	
+	/** Path segments of the areas usually behind a login */
+	private static final Set<String> AUTHENTICATED_SEGMENTS = new HashSet<String>(Arrays.asList(
+			"account", "accounts", "admin", "administration", "dashboard", "manage", "manager", "my", "private", 
+			"profile", "settings", "user", "users"));
+	
+	/** Weights of the risk signals of an endpoint */
+	private static final int QUERY_PARAM_WEIGHT = 2;
+	private static final int BODY_PARAM_WEIGHT = 3;
+	private static final int AUTHENTICATED_WEIGHT = 3;
+	private static final int FINDING_WEIGHT = 4;
+	
+	/** Alerts of an endpoint counted in its score at most, a noisy endpoint doesn't hide all the others */
+	private static final int MAX_FINDINGS = 5;
+	
+	/** History of the rules by id : number of scans, number of scans with alerts, highest risk raised */
+	private final Map<String, int[]> rules = new TreeMap<String, int[]>();
+	
+	/** Alerts raised by the previous scans, by endpoint template */
+	private final Map<String, Integer> findings = new TreeMap<String, Integer>();
+	
+	/** Templates of the endpoints with parameters in their body, seen by the passive scan */
+	private final Set<String> bodyParams = new HashSet<String>();
+	
+	/** Alerts of the running scan by rule id, and by endpoint template */
+	private final Map<String, Integer> scanRiskByRule = new HashMap<String, Integer>();
+	private final Map<String, Integer> scanFindings = new HashMap<String, Integer>();
+	
+	/**
+	 * Load the history of the previous scans.
+	 * 
+	 * @param historyFile the history file, which can be missing
+	 * @return the prioritizer
+	 * @throws IOException if the file can't be read or isn't a history file
+	 */
+	public static ZAPscanPrioritizer load(File historyFile) throws IOException {
+		ZAPscanPrioritizer prioritizer = new ZAPscanPrioritizer();
+		if(!historyFile.isFile()) {
+			return prioritizer;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(historyFile), UTF_8));
+		try {
+			if(!HEADER.equals(reader.readLine())) {
+				throw new IOException("Invalid scan history file [" + historyFile + "]");
+			}
+			String line;
+			while((line = reader.readLine()) != null) {
+				String[] fields = line.split(" ");
+				if(fields.length == 5 && RULE.equals(fields[0])) {
+					prioritizer.rules.put(fields[1], new int[] { 
+							Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4]) });
+				} else if(fields.length == 3 && ENDPOINT.equals(fields[0])) {
+					prioritizer.findings.put(fields[2], Integer.valueOf(fields[1]));
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid scan history file [" + historyFile + "]", e);
+		} finally {
+			reader.close();
+		}
+		return prioritizer;
+	}
+	
+	/**
+	 * Record an alert raised before the active scan, by the spiders and the passive scan.
+	 * 
+	 * @param url the URL of the alert
+	 * @param param the parameter of the alert, empty if none
+	 */
+	public void addPassiveAlert(String url, String param) {
+		// A parameter which isn't in the query is in the body, a form
+		if(param != null && !param.isEmpty() && !url.contains("?" + param + "=") && !url.contains("&" + param + "=")) {
+			bodyParams.add(ZAPurlSampler.toTemplate(url));
+		}
+	}
+	
+	/**
+	 * Record an alert of the scan, for the history.
+	 * 
+	 * @param pluginId the id of the rule which raised the alert
+	 * @param risk the risk of the alert, e.g. "High"
+	 * @param url the URL of the alert
+	 */
+	public void addAlert(String pluginId, String risk, String url) {
+		int riskCode = Math.max(RISKS.indexOf(risk), 0);
+		Integer previous = scanRiskByRule.get(pluginId);
+		scanRiskByRule.put(pluginId, previous == null ? riskCode : Math.max(previous, riskCode));
+		String template = toKey(url);
+		Integer count = scanFindings.get(template);
+		scanFindings.put(template, count == null ? 1 : count + 1);
+	}
+	
+	/**
+	 * Write the history with the alerts of the scan.
+	 * 
+	 * @param historyFile the history file
+	 * @param rulesRun the ids of the rules run by the scan
+	 * @throws IOException
+	 */
+	public void save(File historyFile, Collection<String> rulesRun) throws IOException {
+		for(String rule : rulesRun) {
+			int[] history = rules.get(rule);
+			if(history == null) {
+				history = new int[] { 0, 0, -1 };
+				rules.put(rule, history);
+			}
+			history[0]++;
+			Integer risk = scanRiskByRule.get(rule);
+			if(risk != null) {
+				history[1]++;
+				history[2] = Math.max(history[2], risk);
+			}
+		}
+		
+		Map<String, Integer> endpoints = new TreeMap<String, Integer>();
+		for(Map.Entry<String, Integer> finding : findings.entrySet()) {
+			if(finding.getValue() / 2 > 0) {
+				endpoints.put(finding.getKey(), finding.getValue() / 2);
+			}
+		}
+		for(Map.Entry<String, Integer> finding : scanFindings.entrySet()) {
+			Integer previous = endpoints.get(finding.getKey());
+			endpoints.put(finding.getKey(), finding.getValue() + (previous == null ? 0 : previous));
+		}
+		
+		File tmpFile = new File(historyFile.getPath() + ".tmp");
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), UTF_8));
+		try {
+			writer.write(HEADER);
+			writer.write('\n');
+			for(Map.Entry<String, int[]> rule : rules.entrySet()) {
+				int[] history = rule.getValue();
+				writer.write(RULE + " " + rule.getKey() + " " + history[0] + " " + history[1] + " " + history[2] + "\n");
+			}
+			for(Map.Entry<String, Integer> endpoint : endpoints.entrySet()) {
+				writer.write(ENDPOINT + " " + endpoint.getValue() + " " + endpoint.getKey() + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+		if(historyFile.exists() && !historyFile.delete() || !tmpFile.renameTo(historyFile)) {
+			throw new IOException("Unable to write the scan history file [" + historyFile + "]");
+		}
+	}
+	
+	/**
+	 * @param ruleId the id of a rule
+	 * @return the score of the rule, its highest risk weighted by its hit rate
+	 */
+	double getRuleScore(String ruleId) {
+		int[] history = rules.get(ruleId);
+		if(history == null) {
+			return (UNKNOWN_RISK + 1) * 0.5;
+		}
+		int risk = history[2] < 0 ? UNKNOWN_RISK : history[2];
+		// A rule never run has a hit rate of 1/2, a rule which never raised an alert tends to 0
+		return (risk + 1) * (history[1] + 1.0) / (history[0] + 2.0);
+	}
+	
+	/**
+	 * @param url the URL of an endpoint
+	 * @return the score of the endpoint, the sum of its weighted risk signals
+	 */
+	int getEndpointScore(String url) {
+		String template = ZAPurlSampler.toTemplate(url);
+		int score = 1;
+		int queryIndex = template.indexOf('?');
+		if(queryIndex >= 0) {
+			score += QUERY_PARAM_WEIGHT * template.substring(queryIndex + 1).split("&").length;
+		}
+		if(bodyParams.contains(template)) {
+			score += BODY_PARAM_WEIGHT;
+		}
+		String path = queryIndex >= 0 ? template.substring(0, queryIndex) : template;
+		for(String segment : path.toLowerCase().split("/")) {
+			if(AUTHENTICATED_SEGMENTS.contains(segment)) {
+				score += AUTHENTICATED_WEIGHT;
+				break;
+			}
+		}
+		Integer count = findings.get(toKey(url));
+		if(count != null) {
+			score += FINDING_WEIGHT * Math.min(count, MAX_FINDINGS);
+		}
+		return score;
+	}
+	
+	/**
+	 * Split the rules in tiers of about the same size, the best rules first.
+	 * 
+	 * @param ruleIds the ids of the rules of the policy
+	 * @return the tiers of rules, without empty tier
+	 */
+	public List<List<String>> rankRules(Collection<String> ruleIds) {
+		List<String> ranked = new ArrayList<String>(ruleIds);
+		final Map<String, Double> scores = new HashMap<String, Double>();
+		for(String ruleId : ranked) {
+			scores.put(ruleId, getRuleScore(ruleId));
+		}
+		Collections.sort(ranked, new Comparator<String>() {
+			@Override
+			public int compare(String r1, String r2) {
+				return Double.compare(scores.get(r2), scores.get(r1));
+			}
+		});
+		return split(ranked, RULE_TIERS);
+	}
+	
+	/**
+	 * Split the endpoints in batches of about the same size, the riskiest endpoints first.
+	 * 
+	 * @param urls the URLs of the endpoints
+	 * @return the batches of URLs, without empty batch
+	 */
+	public List<List<String>> rankEndpoints(Collection<String> urls) {
+		List<String> ranked = new ArrayList<String>(urls);
+		final Map<String, Integer> scores = new HashMap<String, Integer>();
+		for(String url : ranked) {
+			scores.put(url, getEndpointScore(url));
+		}
+		// The sort is stable, the endpoints of the same score stay in the order of the site tree
+		Collections.sort(ranked, new Comparator<String>() {
+			@Override
+			public int compare(String u1, String u2) {
+				return scores.get(u2) - scores.get(u1);
+			}
+		});
+		return split(ranked, ENDPOINT_BATCHES);
+	}
+	
+	/**
+	 * Order the chunks of the scan, the best tiers of rules on the best batches of endpoints first.
+	 * 
+	 * @param tierCount the number of tiers of rules
+	 * @param batchCount the number of batches of endpoints
+	 * @return the chunks, each one the index of its tier and the index of its batch
+	 */
+	public static List<int[]> orderChunks(int tierCount, int batchCount) {
+		List<int[]> chunks = new ArrayList<int[]>();
+		for(int sum = 0; sum < tierCount + batchCount - 1; sum++) {
+			for(int tier = 0; tier < tierCount; tier++) {
+				int batch = sum - tier;
+				if(batch >= 0 && batch < batchCount) {
+					chunks.add(new int[] { tier, batch });
+				}
+			}
+		}
+		return chunks;
+	}
+	
+	/**
+	 * Build the regex of the URLs excluded from the scan of a batch : all the URLs but the ones of the batch, so 
+	 * a single recursive scan of the site only scans the batch.
+	 * 
+	 * @param urls the URLs of the batch
+	 * @return the regex which matches all the URLs but the ones of the batch
+	 */
+	public static String toExclusionRegex(Collection<String> urls) {
+		StringBuilder regex = new StringBuilder("(?!(?:");
+		String separator = "";
+		for(String url : urls) {
+			regex.append(separator).append(Pattern.quote(url));
+			separator = "|";
+		}
+		return regex.append(")$).*").toString();
+	}
+	
+	/**
+	 * @return the template of an URL, without spaces to be a field of the history file
+	 */
+	private static String toKey(String url) {
+		return ZAPurlSampler.toTemplate(url).replace(" ", "%20");
+	}
+	
+	private static List<List<String>> split(List<String> values, int parts) {
+		List<List<String>> split = new ArrayList<List<String>>();
+		int size = (values.size() + parts - 1) / parts;
+		for(int i = 0; i < values.size(); i += size) {
+			split.add(new ArrayList<String>(values.subList(i, Math.min(i + size, values.size()))));
+		}
+		return split;
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summary of the results of a scan : the number of alerts by risk and by rule, and the durations of the phases.
+ * <p>
+ * The summary is stored in a compact binary file of a few KB in the directory of the build, so the trend 
+ * of a job is computed without reading the reports of its builds.
+ * 
+ */
+public class ZAPscanSummary {
+	
+	/** Name of the summary file written in the workspace by the scan */
+	static final String FILENAME = "zaproxy-summary.bin";
+	
+	/** "ZAPS" */
+	private static final int MAGIC = 0x5A415053;
+	
+	private static final int VERSION = 2;
+	
+	/** Risks of the alerts, from the highest, as named by the ZAP API */
+	public static final List<String> RISKS = Collections.unmodifiableList(
+			Arrays.asList("High", "Medium", "Low", "Informational"));
+	
+	private long startTime;
+	
+	private long crawlDurationInMs;
+	
+	private long scanDurationInMs;
+	
+	private long totalDurationInMs;
+	
+	/** Duration of the authentication check, 0 without authentication */
+	private long authDurationInMs;
+	
+	private final int[] riskCounts = new int[RISKS.size()];
+	
+	/** Alerts by rule, the key is the plugin id and the name of the rule */
+	private final Map<String, Rule> rules = new LinkedHashMap<String, Rule>();
+	
+	/**
+	 * @param startTime the start time of the scan
+	 */
+	public ZAPscanSummary(long startTime) {
+		this.startTime = startTime;
+	}
+	
+	/**
+	 * Count an alert.
+	 * 
+	 * @param pluginId the id of the rule which raised the alert
+	 * @param name the name of the alert
+	 * @param risk the risk of the alert, as named by the ZAP API
+	 */
+	public void addAlert(String pluginId, String name, String risk) {
+		int riskIndex = RISKS.indexOf(risk);
+		if(riskIndex < 0) {
+			// Unknown risks are counted as informational
+			riskIndex = RISKS.size() - 1;
+		}
+		riskCounts[riskIndex]++;
+		
+		String key = pluginId + ":" + name;
+		Rule rule = rules.get(key);
+		if(rule == null) {
+			rule = new Rule(pluginId == null ? "" : pluginId, name == null ? "" : name, riskIndex);
+			rules.put(key, rule);
+		}
+		rule.count++;
+	}
+	
+	public void setDurations(long crawlDurationInMs, long scanDurationInMs, long totalDurationInMs) {
+		this.crawlDurationInMs = crawlDurationInMs;
+		this.scanDurationInMs = scanDurationInMs;
+		this.totalDurationInMs = totalDurationInMs;
+	}
+	
+	public void setAuthDurationInMs(long authDurationInMs) {
+		this.authDurationInMs = authDurationInMs;
+	}
+	
+	public List<String> getRisks() {
+		return RISKS;
+	}
+	
+	public long getStartTime() {
+		return startTime;
+	}
+	
+	public long getCrawlDurationInMs() {
+		return crawlDurationInMs;
+	}
+	
+	public long getScanDurationInMs() {
+		return scanDurationInMs;
+	}
+	
+	public long getTotalDurationInMs() {
+		return totalDurationInMs;
+	}
+	
+	public long getAuthDurationInMs() {
+		return authDurationInMs;
+	}
+	
+	/**
+	 * @param risk the risk, as named by the ZAP API
+	 * @return the number of alerts of the risk
+	 */
+	public int getCount(String risk) {
+		int riskIndex = RISKS.indexOf(risk);
+		return riskIndex < 0 ? 0 : riskCounts[riskIndex];
+	}
+	
+	public int getTotalCount() {
+		int total = 0;
+		for(int count : riskCounts) {
+			total += count;
+		}
+		return total;
+	}
+	
+	/**
+	 * @return the rules which raised alerts, from the highest risk and the most alerts
+	 */
+	public List<Rule> getRules() {
+		List<Rule> sorted = new ArrayList<Rule>(rules.values());
+		Collections.sort(sorted, new Comparator<Rule>() {
+			@Override
+			public int compare(Rule r1, Rule r2) {
+				if(r1.riskIndex != r2.riskIndex) {
+					return r1.riskIndex - r2.riskIndex;
+				}
+				return r2.count - r1.count;
+			}
+		});
+		return sorted;
+	}
+	
+	/**
+	 * Add the alerts and the durations of other summaries to this one, e.g. for the scans of several steps of a build.
+	 * 
+	 * @param summaries the summaries to add
+	 */
+	public void addAll(Collection<ZAPscanSummary> summaries) {
+		for(ZAPscanSummary summary : summaries) {
+			for(int i = 0; i < riskCounts.length; i++) {
+				riskCounts[i] += summary.riskCounts[i];
+			}
+			for(Map.Entry<String, Rule> e : summary.rules.entrySet()) {
+				Rule rule = rules.get(e.getKey());
+				if(rule == null) {
+					rule = new Rule(e.getValue().pluginId, e.getValue().name, e.getValue().riskIndex);
+					rules.put(e.getKey(), rule);
+				}
+				rule.count += e.getValue().count;
+			}
+			crawlDurationInMs += summary.crawlDurationInMs;
+			scanDurationInMs += summary.scanDurationInMs;
+			totalDurationInMs += summary.totalDurationInMs;
+			authDurationInMs += summary.authDurationInMs;
+		}
+	}
+	
+	/**
+	 * Write the summary in a file.
+	 * 
+	 * @param file the file to write
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(startTime);
+			out.writeLong(crawlDurationInMs);
+			out.writeLong(scanDurationInMs);
+			out.writeLong(totalDurationInMs);
+			for(int count : riskCounts) {
+				out.writeInt(count);
+			}
+			out.writeInt(rules.size());
+			for(Rule rule : rules.values()) {
+				out.writeUTF(rule.pluginId);
+				out.writeUTF(rule.name);
+				out.writeByte(rule.riskIndex);
+				out.writeInt(rule.count);
+			}
+			out.writeLong(authDurationInMs);
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Read a summary from a file.
+	 * 
+	 * @param file the file written by {@link #write(File)}
+	 * @return the summary
+	 * @throws IOException if the file isn't a summary
+	 */
+	public static ZAPscanSummary read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("[" + file + "] isn't a ZAProxy scan summary");
+			}
+			// The summaries of the previous versions are kept in the old builds
+			int version = in.readByte();
+			if(version < 1 || version > VERSION) {
+				throw new IOException("[" + file + "] has an unknown version of ZAProxy scan summary : " + version);
+			}
+			ZAPscanSummary summary = new ZAPscanSummary(in.readLong());
+			summary.crawlDurationInMs = in.readLong();
+			summary.scanDurationInMs = in.readLong();
+			summary.totalDurationInMs = in.readLong();
+			for(int i = 0; i < summary.riskCounts.length; i++) {
+				summary.riskCounts[i] = in.readInt();
+			}
+			int rulesSize = in.readInt();
+			for(int i = 0; i < rulesSize; i++) {
+				Rule rule = new Rule(in.readUTF(), in.readUTF(), in.readByte());
+				rule.count = in.readInt();
+				summary.rules.put(rule.pluginId + ":" + rule.name, rule);
+			}
+			if(version >= 2) {
+				summary.authDurationInMs = in.readLong();
+			}
+			return summary;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * The alerts raised by a rule.
+	 */
+	public static class Rule {
+		
+		private final String pluginId;
+		
+		private final String name;
+		
+		private final int riskIndex;
+		
+		private int count;
+		
+		private Rule(String pluginId, String name, int riskIndex) {
+			this.pluginId = pluginId;
+			this.name = name;
+			this.riskIndex = riskIndex;
+		}
+		
+		public String getPluginId() {
+			return pluginId;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public String getRisk() {
+			return RISKS.get(riskIndex);
+		}
+		
+		public int getCount() {
+			return count;
+		}
+	}
+}
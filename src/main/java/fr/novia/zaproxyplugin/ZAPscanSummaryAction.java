@@ -0,0 +1,171 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.List;
+
+import jenkins.model.RunAction2;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+
+/**
+ * Shows the summary of a scan in its build. The summary is loaded from the build directory the first time 
+ * it's used and kept while there is memory for it, so the trend of a job doesn't keep the summaries of 
+ * all its builds in memory.
+ * 
+ */
+public class ZAPscanSummaryAction implements RunAction2 {
+	
+	private static final String FILE_EXTENSION = ".bin";
+	
+	/** Name of the summary file in the build directory */
+	private final String filename;
+	
+	private transient Run<?, ?> run;
+	
+	private transient SoftReference<ZAPscanSummary> summary;
+	
+	public ZAPscanSummaryAction(String filename) {
+		this.filename = filename;
+	}
+	
+	/**
+	 * Move the summary written in the workspace by the scan to the build directory, and add its action to the build.
+	 * 
+	 * @param run the build
+	 * @param workspace the workspace of the build
+	 * @param listener the listener to display log during the job execution in jenkins
+	 */
+	public static void attach(Run<?, ?> run, FilePath workspace, TaskListener listener) {
+		attach(run, workspace, ZAPscanSummary.FILENAME, listener);
+	}
+	
+	/**
+	 * Move the summary written in the workspace by a scan to the build directory, and add its action to the build.
+	 * 
+	 * @param run the build
+	 * @param workspace the workspace of the build
+	 * @param summaryFilename the name of the summary file in the workspace, see {@link ZAPscanPlan#getResultFilename(String)}
+	 * @param listener the listener to display log during the job execution in jenkins
+	 */
+	public static void attach(Run<?, ?> run, FilePath workspace, String summaryFilename, TaskListener listener) {
+		FilePath summaryFile = workspace.child(summaryFilename);
+		try {
+			if(!summaryFile.exists()) {
+				return;
+			}
+			// Several steps of a Pipeline can scan
+			String filename = ZAPscanSummary.FILENAME.replace(FILE_EXTENSION, "") + "-" 
+					+ run.getActions(ZAPscanSummaryAction.class).size() + FILE_EXTENSION;
+			summaryFile.copyTo(new FilePath(new File(run.getRootDir(), filename)));
+			summaryFile.delete();
+			run.addAction(new ZAPscanSummaryAction(filename));
+		} catch (IOException e) {
+			listener.error(ExceptionUtils.getStackTrace(e));
+		} catch (InterruptedException e) {
+			listener.error(ExceptionUtils.getStackTrace(e));
+		}
+	}
+	
+	/**
+	 * Replace the summaries of the build by the summary written in the workspace, e.g. the summary of the 
+	 * merged reports of the scans of the build.
+	 * 
+	 * @param run the build
+	 * @param workspace the workspace of the build
+	 * @param listener the listener to display log during the job execution in jenkins
+	 */
+	public static void replace(Run<?, ?> run, FilePath workspace, TaskListener listener) {
+		try {
+			if(!workspace.child(ZAPscanSummary.FILENAME).exists()) {
+				return;
+			}
+		} catch (IOException e) {
+			listener.error(ExceptionUtils.getStackTrace(e));
+			return;
+		} catch (InterruptedException e) {
+			listener.error(ExceptionUtils.getStackTrace(e));
+			return;
+		}
+		List<ZAPscanSummaryAction> replaced = run.getActions(ZAPscanSummaryAction.class);
+		for(ZAPscanSummaryAction action : replaced) {
+			new File(run.getRootDir(), action.filename).delete();
+		}
+		run.getActions().removeAll(replaced);
+		attach(run, workspace, listener);
+	}
+	
+	/**
+	 * @return the summary of the scan, null if it can't be read
+	 */
+	public synchronized ZAPscanSummary getSummary() {
+		ZAPscanSummary loaded = summary == null ? null : summary.get();
+		if(loaded == null && run != null) {
+			try {
+				loaded = ZAPscanSummary.read(new File(run.getRootDir(), filename));
+				summary = new SoftReference<ZAPscanSummary>(loaded);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		return loaded;
+	}
+	
+	public Run<?, ?> getRun() {
+		return run;
+	}
+	
+	@Override
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+	
+	@Override
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+	
+	@Override
+	public String getIconFileName() {
+		return "graph.gif";
+	}
+	
+	@Override
+	public String getDisplayName() {
+		return "ZAProxy Summary";
+	}
+	
+	@Override
+	public String getUrlName() {
+		return filename.replace(FILE_EXTENSION, "");
+	}
+}
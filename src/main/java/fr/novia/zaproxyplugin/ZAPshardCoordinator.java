@@ -0,0 +1,260 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import fr.novia.zaproxyplugin.report.ZAPreport;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Computer;
+import hudson.model.Label;
+import hudson.model.Node;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import jenkins.model.Jenkins;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+
+/**
+ * Distributes the active scan of a big target on several machines. The build's ZAProxy only crawls the 
+ * target, its site tree is split into shards (see {@link ZAPshardPlanner}) and each shard is scanned in 
+ * parallel by its own ZAProxy, launched on a machine of the shards label.
+ * <p>
+ * The summaries, the alert fingerprints and the XML reports of the shards are merged in the workspace of 
+ * the build, so the build shows the results of the whole scan. The reports of each shard are copied to the 
+ * {@link #SHARDS_DIR} directory of the workspace. When a shard fails or its results are missing, the merged 
+ * results miss its alerts and the scan is marked partial.
+ * 
+ */
+public class ZAPshardCoordinator {
+	
+	/** Directory of the results of the shards, in the workspace of the build and on the machines of the shards */
+	static final String SHARDS_DIR = "zaproxy-shards";
+	
+	private final ZAProxy zaproxy;
+	
+	public ZAPshardCoordinator(ZAProxy zaproxy) {
+		this.zaproxy = zaproxy;
+	}
+	
+	/**
+	 * Split the site tree written in the workspace by the crawl, scan the shards in parallel and merge their results.
+	 * 
+	 * @param build the build which crawled the target
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @param plan the plan of the crawl, which names the reports of the shards
+	 * @param crawlDurationInMs the duration of the crawl
+	 * @return true if all the shards succeeded
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public boolean scanShards(final AbstractBuild<?, ?> build, final BuildListener listener, ZAPscanPlan plan, long crawlDurationInMs) 
+			throws IOException, InterruptedException {
+		long startTime = System.currentTimeMillis();
+		FilePath workspace = build.getWorkspace();
+		List<String> urls = new ArrayList<String>();
+		for(String url : workspace.child(ZAPscanPlan.SITE_TREE_FILENAME).readToString().split("\r?\n")) {
+			if(!url.trim().isEmpty()) {
+				urls.add(url.trim());
+			}
+		}
+		List<List<String>> shards = new ZAPshardPlanner(zaproxy.getTargetURL()).split(urls, zaproxy.getShardCount());
+		if(shards.isEmpty()) {
+			listener.getLogger().println("The site tree is empty, nothing to scan");
+			return true;
+		}
+		// The results of the previous build would hide the missing results of a shard
+		workspace.child(SHARDS_DIR).deleteRecursive();
+		List<Node> nodes = getShardNodes(build, listener);
+		
+		final EnvVars envVars = build.getEnvironment(listener);
+		envVars.putAll(build.getBuildVariables());
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for(int i = 0; i < shards.size(); i++) {
+			// More shards than machines : a machine runs several ZAProxy, on leased ports
+			final Node node = nodes.get(i % nodes.size());
+			final List<String> shardURLs = shards.get(i);
+			final int shard = i;
+			listener.getLogger().println("Shard " + shard + " : " + shardURLs.size() + " URLs scanned on [" 
+					+ (node.getNodeName().isEmpty() ? "master" : node.getNodeName()) + "]");
+			results.add(Computer.threadPoolForRemoting.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					return scanShard(build, node, new EnvVars(envVars), shard, shardURLs, listener);
+				}
+			}));
+		}
+		
+		Set<Integer> failedShards = new TreeSet<Integer>();
+		for(int i = 0; i < results.size(); i++) {
+			try {
+				if(!results.get(i).get()) {
+					failedShards.add(i);
+				}
+			} catch (ExecutionException e) {
+				listener.error(ExceptionUtils.getStackTrace(e.getCause()));
+				failedShards.add(i);
+			}
+		}
+		mergeResults(workspace, plan, shards.size(), failedShards, crawlDurationInMs, System.currentTimeMillis() - startTime, listener);
+		mergeReports(workspace, plan, listener);
+		return failedShards.isEmpty();
+	}
+	
+	/**
+	 * @return the online machines of the shards label, the build's machine if there is none
+	 */
+	private List<Node> getShardNodes(AbstractBuild<?, ?> build, BuildListener listener) {
+		List<Node> nodes = new ArrayList<Node>();
+		String labelName = zaproxy.getShardLabel();
+		Label label = labelName == null || labelName.trim().isEmpty() ? null : Jenkins.getInstance().getLabel(labelName.trim());
+		if(label != null) {
+			for(Node node : label.getNodes()) {
+				Computer computer = node.toComputer();
+				if(computer != null && computer.isOnline() && node.getChannel() != null) {
+					nodes.add(node);
+				}
+			}
+		}
+		if(nodes.isEmpty()) {
+			listener.getLogger().println("No online machine with the label [" + labelName + "], the shards are scanned on the build's machine");
+			nodes.add(build.getBuiltOn());
+		}
+		return nodes;
+	}
+	
+	/**
+	 * Launch a ZAProxy on a machine, scan the URLs of a shard with it, then copy the results of the shard 
+	 * to the workspace of the build.
+	 */
+	private boolean scanShard(AbstractBuild<?, ?> build, Node node, EnvVars envVars, int shard, List<String> shardURLs, 
+			BuildListener listener) throws IOException, InterruptedException {
+		String owner = build.getExternalizableId() + "#shard" + shard;
+		FilePath shardWorkspace = node.getRootPath().child(SHARDS_DIR).child(owner.replaceAll("[^A-Za-z0-9_.-]", "_"));
+		shardWorkspace.mkdirs();
+		int port = zaproxy.leasePort(shardWorkspace, owner, listener);
+		try {
+			ZAPscanPlan plan = new ZAPscanPlan(zaproxy, port);
+			plan.setShardURLs(shardURLs);
+			ZAPscanController controller = zaproxy.prepareLaunch(shardWorkspace, node, envVars, build.getProject().getJDK(), listener, port);
+			controller.setPlan(plan);
+			boolean success = ZAPscanController.execute(shardWorkspace, controller, listener);
+			
+			FilePath results = build.getWorkspace().child(SHARDS_DIR).child(String.valueOf(shard));
+			List<String> filenames = new ArrayList<String>(plan.getReportFilenames());
+			filenames.addAll(Arrays.asList(ZAPscanSummary.FILENAME, ZAPalertFingerprints.FILENAME, ZAPscanPlan.PARTIAL_SCAN_FILENAME));
+			for(String filename : filenames) {
+				FilePath file = shardWorkspace.child(filename);
+				if(file.exists()) {
+					file.copyTo(results.child(filename));
+				}
+			}
+			listener.getLogger().println("Shard " + shard + (success ? " scanned" : " failed"));
+			return success;
+		} finally {
+			zaproxy.releasePort(shardWorkspace, owner, listener);
+			shardWorkspace.deleteRecursive();
+		}
+	}
+	
+	/**
+	 * Merge the summaries and the alert fingerprints of the shards in the workspace of the build. The scan 
+	 * is marked partial if a shard failed, if its results are missing or if its own scan is partial, so 
+	 * the alerts of the missing shards aren't compared as fixed.
+	 */
+	private void mergeResults(FilePath workspace, ZAPscanPlan plan, int shardCount, Set<Integer> failedShards, 
+			long crawlDurationInMs, long scanDurationInMs, BuildListener listener) throws IOException, InterruptedException {
+		List<ZAPscanSummary> summaries = new ArrayList<ZAPscanSummary>();
+		ZAPalertFingerprints fingerprints = new ZAPalertFingerprints();
+		List<String> partialScanReasons = new ArrayList<String>();
+		File tmp = File.createTempFile("zaproxy-shard", ".bin");
+		try {
+			for(int i = 0; i < shardCount; i++) {
+				FilePath results = workspace.child(SHARDS_DIR).child(String.valueOf(i));
+				if(failedShards.contains(i)) {
+					partialScanReasons.add("Shard " + i + " failed");
+				}
+				if(results.child(ZAPscanPlan.PARTIAL_SCAN_FILENAME).exists()) {
+					partialScanReasons.add("Shard " + i + " : " + results.child(ZAPscanPlan.PARTIAL_SCAN_FILENAME).readToString().trim());
+				}
+				if(!results.child(ZAPscanSummary.FILENAME).exists()) {
+					partialScanReasons.add("The results of shard " + i + " are missing");
+					continue;
+				}
+				results.child(ZAPscanSummary.FILENAME).copyTo(new FilePath(tmp));
+				summaries.add(ZAPscanSummary.read(tmp));
+				if(results.child(ZAPalertFingerprints.FILENAME).exists()) {
+					results.child(ZAPalertFingerprints.FILENAME).copyTo(new FilePath(tmp));
+					fingerprints.addAll(ZAPalertFingerprints.read(tmp));
+				}
+			}
+			if(!partialScanReasons.isEmpty()) {
+				String partialScanReason = "";
+				for(String reason : partialScanReasons) {
+					partialScanReason += reason + "\n";
+				}
+				workspace.child(plan.getResultFilename(ZAPscanPlan.PARTIAL_SCAN_FILENAME)).write(partialScanReason, "UTF-8");
+				listener.getLogger().print("Partial scan : " + partialScanReason);
+			}
+			if(summaries.isEmpty()) {
+				return;
+			}
+			
+			ZAPscanSummary summary = new ZAPscanSummary(summaries.get(0).getStartTime() - crawlDurationInMs);
+			summary.addAll(summaries);
+			// The shards scan in parallel, the scan lasts as long as the shards together
+			summary.setDurations(crawlDurationInMs, scanDurationInMs, crawlDurationInMs + scanDurationInMs);
+			summary.write(tmp);
+			new FilePath(tmp).copyTo(workspace.child(plan.getResultFilename(ZAPscanSummary.FILENAME)));
+			fingerprints.write(tmp);
+			new FilePath(tmp).copyTo(workspace.child(plan.getResultFilename(ZAPalertFingerprints.FILENAME)));
+			listener.getLogger().println("Results of " + summaries.size() + " shards merged : " + summary.getTotalCount() + " alerts");
+		} finally {
+			tmp.delete();
+		}
+	}
+	
+	/**
+	 * Merge the XML reports of the shards into the XML report of the build, the other formats are kept by shard.
+	 */
+	private void mergeReports(FilePath workspace, ZAPscanPlan plan, BuildListener listener) throws IOException, InterruptedException {
+		String xmlFilename = plan.getReportFilename(ZAPreport.REPORT_FORMAT_XML);
+		if(xmlFilename == null) {
+			return;
+		}
+		listener.getLogger().println(workspace.act(new ZAPreportMerger.MergeCallable(SHARDS_DIR + "/*/" + xmlFilename, xmlFilename, false)));
+	}
+}
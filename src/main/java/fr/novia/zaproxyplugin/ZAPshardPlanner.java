@@ -0,0 +1,206 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Splits the site tree of a target into shards of about the same cost, each one scanned by its own ZAProxy.
+ * <p>
+ * The URLs are grouped by path prefix, so the pages of a part of the application stay in the same shard. 
+ * A prefix costing more than a shard is split by its sub-paths, then into chunks. The cost of a URL is 
+ * estimated from its number of parameters, the active scan attacks each parameter. The groups are then 
+ * given, from the most expensive, to the least loaded shard.
+ * 
+ */
+public class ZAPshardPlanner {
+	
+	/** Number of path segments of the deepest prefix */
+	private static final int MAX_PREFIX_DEPTH = 4;
+	
+	private final String targetURL;
+	
+	/**
+	 * @param targetURL the target of the scan, the URLs of the site tree start with it
+	 */
+	public ZAPshardPlanner(String targetURL) {
+		this.targetURL = targetURL.trim();
+	}
+	
+	/**
+	 * Split the URLs of the site tree into shards.
+	 * 
+	 * @param urls the URLs of the site tree
+	 * @param shardCount the number of shards
+	 * @return the URLs of each shard, without empty shards
+	 */
+	public List<List<String>> split(List<String> urls, int shardCount) {
+		long totalCost = 0;
+		for(String url : urls) {
+			totalCost += estimateCost(url);
+		}
+		long shardCost = Math.max(1, (totalCost + shardCount - 1) / shardCount);
+		
+		List<Group> groups = new ArrayList<Group>();
+		addGroups(urls, 1, shardCost, groups);
+		Collections.sort(groups, new Comparator<Group>() {
+			@Override
+			public int compare(Group g1, Group g2) {
+				return Long.compare(g2.cost, g1.cost);
+			}
+		});
+		
+		PriorityQueue<Group> shards = new PriorityQueue<Group>(shardCount, new Comparator<Group>() {
+			@Override
+			public int compare(Group s1, Group s2) {
+				return Long.compare(s1.cost, s2.cost);
+			}
+		});
+		for(int i = 0; i < shardCount; i++) {
+			shards.add(new Group());
+		}
+		for(Group group : groups) {
+			Group shard = shards.poll();
+			shard.addAll(group);
+			shards.add(shard);
+		}
+		
+		List<List<String>> result = new ArrayList<List<String>>();
+		for(Group shard : shards) {
+			if(!shard.urls.isEmpty()) {
+				result.add(shard.urls);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Group URLs by their prefix of depth path segments, the groups costing more than a shard are split again.
+	 */
+	private void addGroups(List<String> urls, int depth, long shardCost, List<Group> groups) {
+		Map<String, Group> byPrefix = new LinkedHashMap<String, Group>();
+		for(String url : urls) {
+			String prefix = getPrefix(url, depth);
+			Group group = byPrefix.get(prefix);
+			if(group == null) {
+				group = new Group();
+				byPrefix.put(prefix, group);
+			}
+			group.add(url, estimateCost(url));
+		}
+		
+		for(Group group : byPrefix.values()) {
+			if(group.cost <= shardCost || group.urls.size() == 1) {
+				groups.add(group);
+			} else if(depth < MAX_PREFIX_DEPTH) {
+				addGroups(group.urls, depth + 1, shardCost, groups);
+			} else {
+				addChunks(group, shardCost, groups);
+			}
+		}
+	}
+	
+	/**
+	 * Split a group of the deepest prefix into chunks costing a shard at most.
+	 */
+	private void addChunks(Group group, long shardCost, List<Group> groups) {
+		Group chunk = new Group();
+		for(String url : group.urls) {
+			long cost = estimateCost(url);
+			if(!chunk.urls.isEmpty() && chunk.cost + cost > shardCost) {
+				groups.add(chunk);
+				chunk = new Group();
+			}
+			chunk.add(url, cost);
+		}
+		if(!chunk.urls.isEmpty()) {
+			groups.add(chunk);
+		}
+	}
+	
+	/**
+	 * @return the first depth segments of the path of the URL, relative to the target
+	 */
+	String getPrefix(String url, int depth) {
+		String path = url.startsWith(targetURL) ? url.substring(targetURL.length()) : url;
+		int queryStart = path.indexOf('?');
+		if(queryStart >= 0) {
+			path = path.substring(0, queryStart);
+		}
+		StringBuilder prefix = new StringBuilder();
+		int segments = 0;
+		for(String segment : path.split("/")) {
+			if(segment.isEmpty()) {
+				continue;
+			}
+			if(segments++ == depth) {
+				break;
+			}
+			prefix.append('/').append(segment);
+		}
+		return prefix.toString();
+	}
+	
+	/**
+	 * @return the estimated cost of the active scan of a URL : 1 for the page and 1 by parameter of its query
+	 */
+	static long estimateCost(String url) {
+		int queryStart = url.indexOf('?');
+		if(queryStart < 0 || queryStart == url.length() - 1) {
+			return 1;
+		}
+		long cost = 2;
+		for(int i = queryStart + 1; i < url.length(); i++) {
+			if(url.charAt(i) == '&') {
+				cost++;
+			}
+		}
+		return cost;
+	}
+	
+	/**
+	 * URLs with their total cost, a group of URLs or a shard.
+	 */
+	private static class Group {
+		private final List<String> urls = new ArrayList<String>();
+		private long cost;
+		
+		private void add(String url, long cost) {
+			urls.add(url);
+			this.cost += cost;
+		}
+		
+		private void addAll(Group group) {
+			urls.addAll(group.urls);
+			cost += group.cost;
+		}
+	}
+}
@@ -0,0 +1,529 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import net.sf.json.JSON;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.FileUtils;
+
+import fr.novia.zaproxyplugin.ZAPsiteTreeSeeder.SeedRequest;
+
+/**
+ * Reads the requests to add to the ZAP site tree from files describing the target :
+ * <ul>
+ * <li>OpenAPI 3 and Swagger 2 specifications in JSON format. Local references ($ref) are resolved and 
+ * the bodies are built from the examples or the schemas of the specification</li>
+ * <li>HAR files (e.g. recorded with a browser or by functional tests)</li>
+ * <li>plain URL lists, one "URL" or "METHOD URL" per line. Blank lines and lines starting with '#' are ignored</li>
+ * </ul>
+ * Specifications in YAML format are rejected with an error, they have to be converted to JSON.
+ * 
+ */
+public class ZAPsiteTreeImporter {
+
+	private static final String[] HTTP_METHODS = { "get", "put", "post", "delete", "options", "head", "patch" };
+	
+	/** Value used for a parameter of an API specification without example nor default value */
+	private static final String DEFAULT_PARAM_VALUE = "1";
+	
+	/** Maximum depth of the sample bodies, so recursive schemas (e.g. a tree of categories) end */
+	private static final int MAX_SCHEMA_DEPTH = 8;
+	
+	/** Maximum number of references followed to resolve a $ref, so circular references end */
+	private static final int MAX_REF_DEPTH = 16;
+	
+	/** Top level key of an OpenAPI or Swagger specification in YAML format */
+	private static final Pattern YAML_SPEC_KEY = Pattern.compile("(?m)^(openapi|swagger)\\s*:");
+	
+	private static final Pattern HTTP_METHOD = Pattern.compile("[A-Za-z]+");
+	
+	/** Base URL used to resolve relative URLs of the files (e.g. the servers of an OpenAPI specification) */
+	private final String targetURL;
+	
+	public ZAPsiteTreeImporter(String targetURL) {
+		this.targetURL = targetURL.trim();
+	}
+	
+	/**
+	 * Read the requests described by a file. The format is detected from the content of the file.
+	 * 
+	 * @param file the file to read
+	 * @return the requests described by the file
+	 * @throws IOException if the file can't be read or is not valid
+	 */
+	public List<SeedRequest> read(File file) throws IOException {
+		String content = FileUtils.readFileToString(file, "UTF-8");
+		String trimmedContent = content.trim();
+		if(!trimmedContent.startsWith("{")) {
+			if(YAML_SPEC_KEY.matcher(content).find()) {
+				throw new IOException("[" + file + "] is an OpenAPI specification in YAML format, which is not supported : "
+						+ "convert it to JSON");
+			}
+			return readUrlList(file, content);
+		}
+		
+		JSONObject json;
+		try {
+			json = JSONObject.fromObject(trimmedContent);
+		} catch (JSONException e) {
+			throw new IOException("Invalid JSON file [" + file + "] : " + e.getMessage());
+		}
+		if(json.has("log")) {
+			return readHar(json);
+		} else if(json.has("openapi") || json.has("swagger")) {
+			return readOpenApi(json);
+		}
+		throw new IOException("Unknown JSON format for [" + file + "], expected an OpenAPI specification or a HAR file");
+	}
+	
+	/**
+	 * @param file the file of the URL list
+	 * @param content the lines of the URL list
+	 * @return one request per URL
+	 * @throws IOException if a line is neither "URL" nor "METHOD URL"
+	 */
+	private List<SeedRequest> readUrlList(File file, String content) throws IOException {
+		List<SeedRequest> requests = new ArrayList<SeedRequest>();
+		String[] lines = content.split("\r?\n");
+		for(int i = 0; i < lines.length; i++) {
+			String line = lines[i].trim();
+			if(line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			int spaceIndex = line.indexOf(' ');
+			String method = spaceIndex > 0 ? line.substring(0, spaceIndex) : "GET";
+			String url = spaceIndex > 0 ? line.substring(spaceIndex + 1).trim() : line;
+			// A colon which doesn't start "://" is e.g. a key of a YAML or properties file, not a URL
+			int colonIndex = url.indexOf(':');
+			if(!HTTP_METHOD.matcher(method).matches() || url.indexOf(' ') >= 0 || colonIndex >= 0 && !url.startsWith("://", colonIndex)) {
+				throw new IOException("Invalid line " + (i + 1) + " of [" + file + "] : expected \"URL\" or \"METHOD URL\" but was \"" 
+						+ line + "\"");
+			}
+			requests.add(new SeedRequest(method, resolve(url)));
+		}
+		return requests;
+	}
+	
+	/**
+	 * @param har the HAR document
+	 * @return one request per entry of the HAR document
+	 */
+	private List<SeedRequest> readHar(JSONObject har) {
+		List<SeedRequest> requests = new ArrayList<SeedRequest>();
+		JSONArray entries = har.getJSONObject("log").optJSONArray("entries");
+		if(entries == null) {
+			return requests;
+		}
+		for(int i = 0; i < entries.size(); i++) {
+			JSONObject request = entries.getJSONObject(i).optJSONObject("request");
+			if(request == null) {
+				continue;
+			}
+			Map<String, String> headers = new LinkedHashMap<String, String>();
+			JSONArray harHeaders = request.optJSONArray("headers");
+			if(harHeaders != null) {
+				for(int j = 0; j < harHeaders.size(); j++) {
+					JSONObject header = harHeaders.getJSONObject(j);
+					String name = header.optString("name", "");
+					// Pseudo headers of HTTP/2 (e.g. ":authority") can't be sent in a HTTP/1.1 request
+					if(!name.isEmpty() && !name.startsWith(":")) {
+						headers.put(name, header.optString("value", ""));
+					}
+				}
+			}
+			String body = null;
+			JSONObject postData = request.optJSONObject("postData");
+			if(postData != null) {
+				body = postData.optString("text", null);
+			}
+			requests.add(new SeedRequest(request.optString("method", "GET"), request.getString("url"), headers, body));
+		}
+		return requests;
+	}
+	
+	/**
+	 * @param spec the OpenAPI 3 or Swagger 2 specification
+	 * @return one request per operation of the specification
+	 */
+	private List<SeedRequest> readOpenApi(JSONObject spec) {
+		List<SeedRequest> requests = new ArrayList<SeedRequest>();
+		String baseUrl = resolve(getOpenApiBasePath(spec));
+		if(baseUrl.endsWith("/")) {
+			baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+		}
+		
+		JSONObject paths = spec.optJSONObject("paths");
+		if(paths == null) {
+			return requests;
+		}
+		for(Iterator<?> it = paths.keys(); it.hasNext();) {
+			String path = (String) it.next();
+			JSONObject pathItem = paths.getJSONObject(path);
+			for(String method : HTTP_METHODS) {
+				JSONObject operation = pathItem.optJSONObject(method);
+				if(operation == null) {
+					continue;
+				}
+				List<JSONObject> parameters = new ArrayList<JSONObject>();
+				addParameters(spec, parameters, pathItem.optJSONArray("parameters"));
+				addParameters(spec, parameters, operation.optJSONArray("parameters"));
+				requests.add(toRequest(spec, method, baseUrl, path, parameters, operation));
+			}
+		}
+		return requests;
+	}
+	
+	/**
+	 * @param spec the OpenAPI 3 or Swagger 2 specification
+	 * @return the base path of the operations, absolute or relative to the target URL
+	 */
+	private String getOpenApiBasePath(JSONObject spec) {
+		// OpenAPI 3 : servers[0].url
+		JSONArray servers = spec.optJSONArray("servers");
+		if(servers != null && servers.size() > 0) {
+			return servers.getJSONObject(0).optString("url", "");
+		}
+		// Swagger 2 : scheme://host/basePath
+		String basePath = spec.optString("basePath", "");
+		String host = spec.optString("host", "");
+		if(host.isEmpty()) {
+			return basePath;
+		}
+		String scheme = "http";
+		JSONArray schemes = spec.optJSONArray("schemes");
+		if(schemes != null && schemes.size() > 0) {
+			scheme = schemes.getString(0);
+		}
+		return scheme + "://" + host + basePath;
+	}
+	
+	private static void addParameters(JSONObject spec, List<JSONObject> parameters, JSONArray array) {
+		if(array == null) {
+			return;
+		}
+		for(int i = 0; i < array.size(); i++) {
+			JSONObject parameter = dereference(spec, array.optJSONObject(i));
+			if(parameter != null && parameter.has("in")) {
+				parameters.add(parameter);
+			}
+		}
+	}
+	
+	/**
+	 * Follow the local references ($ref, e.g. "#/components/schemas/Pet") of an object of the specification.
+	 * 
+	 * @param spec the OpenAPI 3 or Swagger 2 specification
+	 * @param object an object of the specification, can be null
+	 * @return the referenced object, object if it is not a reference, null if the reference can't be resolved
+	 * (e.g. a reference to another file)
+	 */
+	static JSONObject dereference(JSONObject spec, JSONObject object) {
+		for(int depth = 0; object != null && object.has("$ref"); depth++) {
+			String ref = object.optString("$ref", "");
+			if(depth >= MAX_REF_DEPTH || !ref.startsWith("#/")) {
+				return null;
+			}
+			object = spec;
+			for(String token : ref.substring(2).split("/")) {
+				object = object.optJSONObject(token.replace("~1", "/").replace("~0", "~"));
+				if(object == null) {
+					return null;
+				}
+			}
+		}
+		return object;
+	}
+	
+	/**
+	 * Build the request of an operation, with a sample value for each parameter and a sample body.
+	 */
+	private SeedRequest toRequest(JSONObject spec, String method, String baseUrl, String path, List<JSONObject> parameters, 
+			JSONObject operation) {
+		String resolvedPath = path;
+		StringBuilder query = new StringBuilder();
+		StringBuilder form = new StringBuilder();
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		String body = null;
+		
+		for(JSONObject parameter : parameters) {
+			String name = parameter.optString("name", "");
+			String value = getSampleValue(spec, parameter);
+			String in = parameter.optString("in", "");
+			if("path".equals(in)) {
+				resolvedPath = resolvedPath.replace("{" + name + "}", encode(value));
+			} else if("query".equals(in)) {
+				query.append(query.length() == 0 ? "?" : "&").append(encode(name)).append('=').append(encode(value));
+			} else if("header".equals(in)) {
+				headers.put(name, value);
+			} else if("formData".equals(in)) {
+				form.append(form.length() == 0 ? "" : "&").append(encode(name)).append('=').append(encode(value));
+			} else if("body".equals(in)) {
+				// Swagger 2 body parameter
+				String contentType = getSwaggerContentType(spec, operation);
+				headers.put("Content-Type", contentType);
+				body = toBody(contentType, getSample(spec, parameter.optJSONObject("schema"), 0));
+			}
+		}
+		
+		if(form.length() > 0) {
+			headers.put("Content-Type", "application/x-www-form-urlencoded");
+			body = form.toString();
+		} else if(operation.has("requestBody")) {
+			// OpenAPI 3 request body
+			JSONObject requestBody = dereference(spec, operation.optJSONObject("requestBody"));
+			JSONObject content = requestBody == null ? null : requestBody.optJSONObject("content");
+			String contentType = getOpenApiContentType(content);
+			if(contentType != null) {
+				headers.put("Content-Type", contentType);
+				body = toBody(contentType, getMediaTypeSample(spec, content.optJSONObject(contentType)));
+			}
+		}
+		return new SeedRequest(method, baseUrl + resolvedPath + query, headers, body);
+	}
+	
+	/**
+	 * @param content the content of an OpenAPI 3 request body, by media type
+	 * @return the media type of the body to send, JSON first, then form, then the first one. Null if there is none
+	 */
+	private static String getOpenApiContentType(JSONObject content) {
+		if(content == null || content.isEmpty()) {
+			return null;
+		}
+		String firstType = null;
+		String formType = null;
+		for(Iterator<?> it = content.keys(); it.hasNext();) {
+			String type = (String) it.next();
+			if(type.contains("json")) {
+				return type;
+			}
+			if(type.contains("x-www-form-urlencoded") && formType == null) {
+				formType = type;
+			}
+			if(firstType == null) {
+				firstType = type;
+			}
+		}
+		return formType != null ? formType : firstType;
+	}
+	
+	/**
+	 * @return the media type of a Swagger 2 body, from the consumes of the operation or of the specification
+	 */
+	private static String getSwaggerContentType(JSONObject spec, JSONObject operation) {
+		JSONArray consumes = operation.optJSONArray("consumes");
+		if(consumes == null || consumes.isEmpty()) {
+			consumes = spec.optJSONArray("consumes");
+		}
+		return consumes == null || consumes.isEmpty() ? "application/json" : consumes.getString(0);
+	}
+	
+	/**
+	 * @param mediaType an OpenAPI 3 media type object
+	 * @return the example of the media type, or a sample built from its schema
+	 */
+	private static Object getMediaTypeSample(JSONObject spec, JSONObject mediaType) {
+		if(mediaType == null) {
+			return null;
+		}
+		if(mediaType.has("example")) {
+			return mediaType.opt("example");
+		}
+		JSONObject examples = mediaType.optJSONObject("examples");
+		if(examples != null) {
+			for(Iterator<?> it = examples.keys(); it.hasNext();) {
+				JSONObject example = dereference(spec, examples.optJSONObject((String) it.next()));
+				if(example != null && example.has("value")) {
+					return example.opt("value");
+				}
+			}
+		}
+		return getSample(spec, mediaType.optJSONObject("schema"), 0);
+	}
+	
+	/**
+	 * Build a sample value matching a schema : its example, its default value, its first enum value, 
+	 * or a value built from its type (objects with all their properties, arrays with one item).
+	 * 
+	 * @param spec the OpenAPI 3 or Swagger 2 specification
+	 * @param schema the schema, can be a reference
+	 * @param depth the depth of the schema in the sample
+	 * @return a {@link JSONObject}, a {@link JSONArray}, a String, a Number or a Boolean. 
+	 * Null if the schema can't be resolved or is too deep
+	 */
+	static Object getSample(JSONObject spec, JSONObject schema, int depth) {
+		schema = dereference(spec, schema);
+		if(schema == null || depth > MAX_SCHEMA_DEPTH) {
+			return null;
+		}
+		if(schema.has("example")) {
+			return schema.opt("example");
+		}
+		if(schema.has("default")) {
+			return schema.opt("default");
+		}
+		JSONArray enumValues = schema.optJSONArray("enum");
+		if(enumValues != null && !enumValues.isEmpty()) {
+			return enumValues.opt(0);
+		}
+		JSONArray allOf = schema.optJSONArray("allOf");
+		if(allOf != null) {
+			// The sample of each part is merged
+			JSONObject sample = new JSONObject();
+			for(int i = 0; i < allOf.size(); i++) {
+				Object part = getSample(spec, allOf.optJSONObject(i), depth + 1);
+				if(part instanceof JSONObject) {
+					sample.putAll((JSONObject) part);
+				}
+			}
+			return sample;
+		}
+		for(String alternatives : new String[] { "oneOf", "anyOf" }) {
+			JSONArray schemas = schema.optJSONArray(alternatives);
+			if(schemas != null && !schemas.isEmpty()) {
+				return getSample(spec, schemas.optJSONObject(0), depth + 1);
+			}
+		}
+		
+		String type = schema.optString("type", schema.has("properties") ? "object" : "string");
+		if("object".equals(type)) {
+			JSONObject sample = new JSONObject();
+			JSONObject properties = schema.optJSONObject("properties");
+			if(properties != null) {
+				for(Iterator<?> it = properties.keys(); it.hasNext();) {
+					String name = (String) it.next();
+					Object value = getSample(spec, properties.optJSONObject(name), depth + 1);
+					if(value != null) {
+						sample.element(name, value);
+					}
+				}
+			}
+			return sample;
+		} else if("array".equals(type)) {
+			JSONArray sample = new JSONArray();
+			Object item = getSample(spec, schema.optJSONObject("items"), depth + 1);
+			if(item != null) {
+				sample.add(item);
+			}
+			return sample;
+		} else if("integer".equals(type) || "number".equals(type)) {
+			return Integer.valueOf(1);
+		} else if("boolean".equals(type)) {
+			return Boolean.TRUE;
+		}
+		
+		String format = schema.optString("format", "");
+		if("date".equals(format)) {
+			return "2000-01-01";
+		} else if("date-time".equals(format)) {
+			return "2000-01-01T00:00:00Z";
+		} else if("email".equals(format)) {
+			return "zap@example.com";
+		} else if("uuid".equals(format)) {
+			return "00000000-0000-0000-0000-000000000001";
+		}
+		return DEFAULT_PARAM_VALUE;
+	}
+	
+	/**
+	 * @param contentType the media type of the body
+	 * @param sample the sample value of the body, can be null
+	 * @return the sample serialized for the media type : form fields for a form, the value as is for a string, 
+	 * JSON otherwise
+	 */
+	private static String toBody(String contentType, Object sample) {
+		if(sample == null) {
+			return contentType.contains("json") ? "{}" : "";
+		}
+		if(contentType.contains("x-www-form-urlencoded") && sample instanceof JSONObject) {
+			StringBuilder form = new StringBuilder();
+			JSONObject fields = (JSONObject) sample;
+			for(Iterator<?> it = fields.keys(); it.hasNext();) {
+				String name = (String) it.next();
+				form.append(form.length() == 0 ? "" : "&").append(encode(name)).append('=').append(encode(String.valueOf(fields.get(name))));
+			}
+			return form.toString();
+		}
+		if(sample instanceof String && !contentType.contains("json")) {
+			return (String) sample;
+		}
+		if(sample instanceof String) {
+			return "\"" + ((String) sample).replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+		}
+		return sample.toString();
+	}
+	
+	/**
+	 * @param parameter a parameter of an API specification
+	 * @return the example or the default value of the parameter, a value matching its schema, or a default value
+	 */
+	private static String getSampleValue(JSONObject spec, JSONObject parameter) {
+		if(parameter.has("example")) {
+			return parameter.optString("example", DEFAULT_PARAM_VALUE);
+		}
+		if(parameter.has("default")) {
+			return parameter.optString("default", DEFAULT_PARAM_VALUE);
+		}
+		Object sample = getSample(spec, parameter.has("schema") ? parameter.optJSONObject("schema") : parameter, 0);
+		return sample == null || sample instanceof JSON ? DEFAULT_PARAM_VALUE : String.valueOf(sample);
+	}
+	
+	private static String encode(String s) {
+		try {
+			return URLEncoder.encode(s, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * @param url an absolute URL or a path relative to the target URL
+	 * @return the absolute URL
+	 */
+	private String resolve(String url) {
+		if(url.startsWith("http://") || url.startsWith("https://")) {
+			return url;
+		}
+		// Keep only scheme and authority of the target URL for absolute paths
+		if(url.startsWith("/")) {
+			int authorityEnd = targetURL.indexOf('/', targetURL.indexOf("://") + 3);
+			return (authorityEnd < 0 ? targetURL : targetURL.substring(0, authorityEnd)) + url;
+		}
+		return (targetURL.endsWith("/") ? targetURL : targetURL + "/") + url;
+	}
+}
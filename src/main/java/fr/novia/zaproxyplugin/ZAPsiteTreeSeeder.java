@@ -0,0 +1,244 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.model.BuildListener;
+
+import java.io.Serializable;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.zaproxy.clientapi.core.ClientApi;
+import org.zaproxy.clientapi.core.ClientApiException;
+
+/**
+ * Fills the ZAP site tree by sending requests through the ZAP API instead of crawling the target.
+ * Requests are sent in batches, with a bounded number of requests in flight.
+ * 
+ */
+public class ZAPsiteTreeSeeder {
+
+	/** Number of requests submitted at once, so the progress can be logged between two batches */
+	private static final int BATCH_SIZE = 500;
+	
+	private static final String CRLF = "\r\n";
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private final ClientApi zapClientAPI;
+	
+	private final String apiKey;
+	
+	/** Maximum number of requests sent in parallel to ZAP */
+	private final int concurrency;
+	
+	public ZAPsiteTreeSeeder(ClientApi zapClientAPI, String apiKey, int concurrency) {
+		this.zapClientAPI = zapClientAPI;
+		this.apiKey = apiKey;
+		this.concurrency = concurrency > 0 ? concurrency : 1;
+	}
+	
+	/**
+	 * Send all requests through ZAP. A request which fails is logged and skipped.
+	 * 
+	 * @param requests the requests to send
+	 * @param listener the listener to display log during the job execution in jenkins
+	 * @return the number of requests successfully sent
+	 * @throws InterruptedException
+	 */
+	public int seed(List<SeedRequest> requests, final BuildListener listener) throws InterruptedException {
+		final AtomicInteger sent = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		try {
+			for(int start = 0; start < requests.size(); start += BATCH_SIZE) {
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for(final SeedRequest request : requests.subList(start, Math.min(start + BATCH_SIZE, requests.size()))) {
+					futures.add(executor.submit(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								send(request);
+								sent.incrementAndGet();
+							} catch (ClientApiException e) {
+								listener.getLogger().println("Unable to send [" + request + "] : " + e.getMessage());
+							} catch (MalformedURLException e) {
+								listener.getLogger().println("Invalid URL [" + request + "] : " + e.getMessage());
+							}
+						}
+					}));
+				}
+				for(Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						listener.getLogger().println("Unable to send request : " + e.getCause());
+					}
+				}
+				listener.getLogger().println("Site tree seeding : " + sent.get() + "/" + requests.size() + " requests sent");
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return sent.get();
+	}
+	
+	/**
+	 * Send one request through ZAP, so it is added to the site tree.
+	 * 
+	 * @param request the request to send
+	 * @throws ClientApiException
+	 * @throws MalformedURLException
+	 */
+	private void send(SeedRequest request) throws ClientApiException, MalformedURLException {
+		Map<String, String> map = new HashMap<String, String>();
+		if (apiKey != null) {
+			map.put("apikey", apiKey);
+		}
+		map.put("request", request.toRawRequest());
+		map.put("followRedirects", "false");
+		zapClientAPI.callApi("core", "action", "sendRequest", map);
+	}
+	
+	/**
+	 * A request to add to the site tree.
+	 */
+	public static class SeedRequest implements Serializable {
+		private static final long serialVersionUID = 6104773211318725915L;
+		
+		private final String method;
+		private final String url;
+		private final Map<String, String> headers;
+		private final String body;
+		
+		public SeedRequest(String method, String url) {
+			this(method, url, null, null);
+		}
+		
+		/**
+		 * @param method the HTTP method
+		 * @param url the absolute URL, with the query
+		 * @param headers the headers to send, can be null. The Host header is always computed from url
+		 * @param body the body of the request, can be null
+		 */
+		public SeedRequest(String method, String url, Map<String, String> headers, String body) {
+			this.method = method.toUpperCase();
+			this.url = url;
+			this.headers = headers;
+			this.body = body;
+		}
+		
+		public String getMethod() {
+			return method;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		public String getBody() {
+			return body;
+		}
+
+		/**
+		 * @return the request in the raw format expected by the ZAP API (request line, headers and body)
+		 * @throws MalformedURLException if the URL is not absolute
+		 */
+		public String toRawRequest() throws MalformedURLException {
+			URL parsedUrl = new URL(url);
+			StringBuilder raw = new StringBuilder();
+			raw.append(method).append(' ').append(url).append(" HTTP/1.1").append(CRLF);
+			raw.append("Host: ").append(parsedUrl.getAuthority()).append(CRLF);
+			if(headers != null) {
+				for(Map.Entry<String, String> header : headers.entrySet()) {
+					if(!"host".equalsIgnoreCase(header.getKey()) && !"content-length".equalsIgnoreCase(header.getKey())) {
+						raw.append(header.getKey()).append(": ").append(header.getValue()).append(CRLF);
+					}
+				}
+			}
+			if(body != null && !body.isEmpty()) {
+				raw.append("Content-Length: ").append(body.getBytes(UTF_8).length).append(CRLF);
+			}
+			raw.append(CRLF);
+			if(body != null) {
+				raw.append(body);
+			}
+			return raw.toString();
+		}
+		
+		/**
+		 * Parse a request recorded by ZAP (e.g. returned by core/view/messages).
+		 * The Host, Content-Length and Cookie headers are dropped : Host and Content-Length are computed 
+		 * again when the request is sent, and the recorded cookies belong to a session which has expired since.
+		 * 
+		 * @param requestHeader the request line and the headers, separated by CRLF
+		 * @param requestBody the body of the request, can be null
+		 * @return the request, null if the request line can't be parsed
+		 */
+		public static SeedRequest fromRawRequest(String requestHeader, String requestBody) {
+			if(requestHeader == null) {
+				return null;
+			}
+			String[] lines = requestHeader.split("\r?\n");
+			String[] requestLine = lines[0].trim().split(" ");
+			if(requestLine.length < 2 || requestLine[0].isEmpty()) {
+				return null;
+			}
+			
+			Map<String, String> headers = new LinkedHashMap<String, String>();
+			for(int i = 1; i < lines.length; i++) {
+				int colonIndex = lines[i].indexOf(':');
+				if(colonIndex <= 0) {
+					continue;
+				}
+				String name = lines[i].substring(0, colonIndex).trim();
+				if(!"host".equalsIgnoreCase(name) && !"content-length".equalsIgnoreCase(name) && !"cookie".equalsIgnoreCase(name)) {
+					headers.put(name, lines[i].substring(colonIndex + 1).trim());
+				}
+			}
+			return new SeedRequest(requestLine[0], requestLine[1], headers.isEmpty() ? null : headers, 
+					requestBody == null || requestBody.isEmpty() ? null : requestBody);
+		}
+		
+		@Override
+		public String toString() {
+			return method + " " + url;
+		}
+	}
+}
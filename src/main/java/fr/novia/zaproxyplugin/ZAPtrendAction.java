@@ -0,0 +1,240 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import jenkins.model.TransientActionFactory;
+
+/**
+ * Shows the trend of the alerts of the scans of a job, from the summaries of its builds.
+ * <p>
+ * The trend is computed once for each new completed build and cached, the summaries of the builds 
+ * are only read when the trend is computed.
+ * 
+ */
+public class ZAPtrendAction implements Action {
+	
+	/** Maximum number of builds in the trend */
+	static final int MAX_BUILDS = 1000;
+	
+	private static final int GRAPH_WIDTH = 500;
+	
+	private static final int GRAPH_HEIGHT = 200;
+	
+	private static final String[] RISK_COLORS = { "#d24939", "#f0ad4e", "#f5e342", "#5bc0de" };
+	
+	/** Trend of each job, computed for its last completed build */
+	private static final Map<Job<?, ?>, Trend> TRENDS = new WeakHashMap<Job<?, ?>, Trend>();
+	
+	private final Job<?, ?> job;
+	
+	public ZAPtrendAction(Job<?, ?> job) {
+		this.job = job;
+	}
+	
+	public Job<?, ?> getJob() {
+		return job;
+	}
+	
+	public List<String> getRisks() {
+		return ZAPscanSummary.RISKS;
+	}
+	
+	/**
+	 * @return the points of the trend, from the oldest build
+	 */
+	public List<Point> getPoints() {
+		Run<?, ?> last = job.getLastCompletedBuild();
+		int lastNumber = last == null ? 0 : last.getNumber();
+		synchronized (TRENDS) {
+			Trend trend = TRENDS.get(job);
+			if(trend == null || trend.lastNumber != lastNumber) {
+				trend = new Trend(lastNumber, computePoints());
+				TRENDS.put(job, trend);
+			}
+			return trend.points;
+		}
+	}
+	
+	private List<Point> computePoints() {
+		List<Point> points = new ArrayList<Point>();
+		int builds = 0;
+		for(Run<?, ?> run : job.getBuilds()) {
+			if(builds++ >= MAX_BUILDS) {
+				break;
+			}
+			if(run.isBuilding()) {
+				continue;
+			}
+			List<ZAPscanSummaryAction> actions = run.getActions(ZAPscanSummaryAction.class);
+			if(actions.isEmpty()) {
+				continue;
+			}
+			List<ZAPscanSummary> summaries = new ArrayList<ZAPscanSummary>();
+			for(ZAPscanSummaryAction action : actions) {
+				ZAPscanSummary summary = action.getSummary();
+				if(summary != null) {
+					summaries.add(summary);
+				}
+			}
+			if(!summaries.isEmpty()) {
+				ZAPscanSummary total = new ZAPscanSummary(run.getStartTimeInMillis());
+				total.addAll(summaries);
+				points.add(new Point(run.getNumber(), total));
+			}
+		}
+		Collections.reverse(points);
+		return Collections.unmodifiableList(points);
+	}
+	
+	/**
+	 * @return the trend as a SVG graph with a line by risk, empty if there are less than 2 builds with a summary
+	 */
+	public String getGraph() {
+		List<Point> points = getPoints();
+		if(points.size() < 2) {
+			return "";
+		}
+		int max = 1;
+		for(Point point : points) {
+			for(int count : point.counts) {
+				max = Math.max(max, count);
+			}
+		}
+		
+		StringBuilder svg = new StringBuilder();
+		svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(GRAPH_WIDTH)
+				.append("\" height=\"").append(GRAPH_HEIGHT).append("\">");
+		svg.append("<text x=\"2\" y=\"12\" font-size=\"10\">").append(max).append("</text>");
+		for(int risk = 0; risk < ZAPscanSummary.RISKS.size(); risk++) {
+			svg.append("<polyline fill=\"none\" stroke-width=\"2\" stroke=\"").append(RISK_COLORS[risk]).append("\" points=\"");
+			for(int i = 0; i < points.size(); i++) {
+				long x = (long) i * (GRAPH_WIDTH - 1) / (points.size() - 1);
+				long y = GRAPH_HEIGHT - 1 - (long) points.get(i).counts[risk] * (GRAPH_HEIGHT - 1) / max;
+				svg.append(x).append(',').append(y).append(' ');
+			}
+			svg.append("\"><title>").append(ZAPscanSummary.RISKS.get(risk)).append("</title></polyline>");
+		}
+		svg.append("</svg>");
+		return svg.toString();
+	}
+	
+	@Override
+	public String getIconFileName() {
+		return "graph.gif";
+	}
+	
+	@Override
+	public String getDisplayName() {
+		return "ZAProxy Trend";
+	}
+	
+	@Override
+	public String getUrlName() {
+		return "zaproxy-trend";
+	}
+	
+	/**
+	 * The alerts of a build.
+	 */
+	public static class Point {
+		
+		private final int buildNumber;
+		
+		private final int[] counts;
+		
+		private final long scanDurationInMs;
+		
+		private Point(int buildNumber, ZAPscanSummary summary) {
+			this.buildNumber = buildNumber;
+			this.counts = new int[ZAPscanSummary.RISKS.size()];
+			for(int i = 0; i < counts.length; i++) {
+				counts[i] = summary.getCount(ZAPscanSummary.RISKS.get(i));
+			}
+			this.scanDurationInMs = summary.getScanDurationInMs();
+		}
+		
+		public int getBuildNumber() {
+			return buildNumber;
+		}
+		
+		/**
+		 * @param risk the risk, as named by the ZAP API
+		 * @return the number of alerts of the risk
+		 */
+		public int getCount(String risk) {
+			int riskIndex = ZAPscanSummary.RISKS.indexOf(risk);
+			return riskIndex < 0 ? 0 : counts[riskIndex];
+		}
+		
+		public long getScanDurationInMs() {
+			return scanDurationInMs;
+		}
+	}
+	
+	private static class Trend {
+		
+		private final int lastNumber;
+		
+		private final List<Point> points;
+		
+		private Trend(int lastNumber, List<Point> points) {
+			this.lastNumber = lastNumber;
+			this.points = points;
+		}
+	}
+	
+	/**
+	 * Adds the trend to the jobs whose last completed build has a scan summary.
+	 */
+	@Extension
+	public static class Factory extends TransientActionFactory<Job> {
+		
+		@Override
+		public Class<Job> type() {
+			return Job.class;
+		}
+		
+		@Override
+		public Collection<? extends Action> createFor(Job target) {
+			Run<?, ?> last = target.getLastCompletedBuild();
+			if(last == null || last.getAction(ZAPscanSummaryAction.class) == null) {
+				return Collections.emptyList();
+			}
+			return Collections.singletonList(new ZAPtrendAction(target));
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Groups URLs by structural template and selects a representative subset of each group.
+ * Two URLs share a template when they only differ by identifiers in their path
+ * (numbers, hexadecimal tokens, UUID...) or by the values of their query parameters.
+ * <p>
+ * e.g. <tt>http://shop/product/1234?color=red</tt> and <tt>http://shop/product/98?color=blue</tt>
+ * both belong to the template <tt>http://shop/product/{id}?color=</tt>
+ * 
+ */
+public class ZAPurlSampler implements Serializable {
+
+	private static final long serialVersionUID = -4539237480193406261L;
+
+	/** Placeholder used in templates for a path segment identified as an identifier */
+	public static final String ID_PLACEHOLDER = "{id}";
+
+	/** Numbers, hexadecimal tokens of at least 8 characters and UUID */
+	private static final Pattern ID_SEGMENT = Pattern.compile(
+			"\\d+|[0-9a-fA-F]{8,}|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+	/** Alphanumeric tokens mixing letters and at least 4 digits (e.g. slugs like "sku12345") */
+	private static final Pattern MIXED_ID_SEGMENT = Pattern.compile("(?=(?:[^0-9]*[0-9]){4})[0-9A-Za-z_-]+");
+
+	/** Number of URLs kept for each template */
+	private final int sampleSizePerCluster;
+
+	public ZAPurlSampler(int sampleSizePerCluster) {
+		this.sampleSizePerCluster = sampleSizePerCluster > 0 ? sampleSizePerCluster : 1;
+	}
+
+	public int getSampleSizePerCluster() {
+		return sampleSizePerCluster;
+	}
+
+	/**
+	 * Computes the structural template of an URL. The fragment is removed, the scheme and the host are lower case, 
+	 * path segments looking like identifiers are replaced by {@link #ID_PLACEHOLDER} and query parameters are 
+	 * reduced to their sorted names.
+	 * <p>
+	 * This is the only normalization of the URLs of the plugin : the sampling, the fingerprints of the alerts 
+	 * and the history of the prioritized scans group the same URLs.
+	 * 
+	 * @param url the URL to normalize
+	 * @return the template of the URL
+	 */
+	public static String toTemplate(String url) {
+		String u = url.trim();
+		
+		int fragmentIndex = u.indexOf('#');
+		if(fragmentIndex >= 0) {
+			u = u.substring(0, fragmentIndex);
+		}
+		
+		String query = null;
+		int queryIndex = u.indexOf('?');
+		if(queryIndex >= 0) {
+			query = u.substring(queryIndex + 1);
+			u = u.substring(0, queryIndex);
+		}
+		
+		// Scheme and host are case insensitive, only the path is normalized
+		int pathIndex = u.indexOf('/', u.indexOf("://") >= 0 ? u.indexOf("://") + 3 : 0);
+		StringBuilder template = new StringBuilder();
+		if(pathIndex < 0) {
+			template.append(u.toLowerCase(Locale.ENGLISH));
+		} else {
+			template.append(u.substring(0, pathIndex).toLowerCase(Locale.ENGLISH));
+			String[] segments = u.substring(pathIndex + 1).split("/", -1);
+			for(String segment : segments) {
+				template.append('/');
+				template.append(toSegmentTemplate(segment));
+			}
+		}
+		
+		if(query != null) {
+			TreeSet<String> names = new TreeSet<String>();
+			for(String param : query.split("&")) {
+				if(param.isEmpty()) {
+					continue;
+				}
+				int equalIndex = param.indexOf('=');
+				names.add(equalIndex >= 0 ? param.substring(0, equalIndex) : param);
+			}
+			template.append('?');
+			boolean first = true;
+			for(String name : names) {
+				if(!first) {
+					template.append('&');
+				}
+				template.append(name).append('=');
+				first = false;
+			}
+		}
+		return template.toString();
+	}
+	
+	/**
+	 * @param segment a path segment of an URL
+	 * @return the segment, or {@link #ID_PLACEHOLDER} followed by its extension if it looks like an identifier
+	 */
+	private static String toSegmentTemplate(String segment) {
+		// Keep the extension out of the check (e.g. "1234.html")
+		String name = segment;
+		String extension = "";
+		int dotIndex = segment.lastIndexOf('.');
+		if(dotIndex > 0) {
+			name = segment.substring(0, dotIndex);
+			extension = segment.substring(dotIndex);
+		}
+		if(ID_SEGMENT.matcher(name).matches() || MIXED_ID_SEGMENT.matcher(name).matches()) {
+			return ID_PLACEHOLDER + extension;
+		}
+		return segment;
+	}
+	
+	/**
+	 * Groups URLs by template. The order of the URLs is kept inside each group.
+	 * 
+	 * @param urls the URLs to group
+	 * @return a map where key is the template and value the URLs which match it
+	 */
+	public Map<String, List<String>> cluster(Collection<String> urls) {
+		Map<String, List<String>> clusters = new LinkedHashMap<String, List<String>>();
+		for(String url : urls) {
+			String template = toTemplate(url);
+			List<String> members = clusters.get(template);
+			if(members == null) {
+				members = new ArrayList<String>();
+				clusters.put(template, members);
+			}
+			members.add(url);
+		}
+		return clusters;
+	}
+	
+	/**
+	 * Selects at most {@link #getSampleSizePerCluster()} URLs for each template.
+	 * The URLs are selected evenly in each group so that the sample is spread over the group.
+	 * 
+	 * @param clusters the URLs grouped by template, as returned by {@link #cluster(Collection)}
+	 * @return the sampled URLs
+	 */
+	public List<String> sample(Map<String, List<String>> clusters) {
+		List<String> sample = new ArrayList<String>();
+		for(List<String> members : clusters.values()) {
+			int size = members.size();
+			if(size <= sampleSizePerCluster) {
+				sample.addAll(members);
+			} else {
+				for(int i = 0; i < sampleSizePerCluster; i++) {
+					sample.add(members.get((int) ((long) i * size / sampleSizePerCluster)));
+				}
+			}
+		}
+		return sample;
+	}
+}
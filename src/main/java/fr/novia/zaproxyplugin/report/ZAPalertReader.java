@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin.report;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.zaproxy.clientapi.core.ApiResponse;
+import org.zaproxy.clientapi.core.ApiResponseList;
+import org.zaproxy.clientapi.core.ApiResponseSet;
+import org.zaproxy.clientapi.core.ClientApi;
+import org.zaproxy.clientapi.core.ClientApiException;
+
+/**
+ * Reads the alerts of ZAP one by one, the alerts being fetched by pages, so the alerts of a big scan 
+ * are never all in memory.
+ * <pre>
+ * ZAPalertReader alerts = new ZAPalertReader(clientApi, apikey);
+ * while(alerts.next()) {
+ *     alerts.get(ZAPalertReader.RISK);
+ * }
+ * </pre>
+ * The alerts left out by a filter are skipped, the reports and the results of the scan are built without 
+ * them while ZAP keeps all its alerts.
+ * 
+ */
+public class ZAPalertReader {
+	
+	public static final String ALERT = "alert";
+	public static final String RISK = "risk";
+	public static final String CONFIDENCE = "confidence";
+	public static final String URL = "url";
+	public static final String PARAM = "param";
+	public static final String ATTACK = "attack";
+	public static final String EVIDENCE = "evidence";
+	public static final String DESCRIPTION = "description";
+	public static final String SOLUTION = "solution";
+	public static final String REFERENCE = "reference";
+	public static final String CWE_ID = "cweid";
+	public static final String WASC_ID = "wascid";
+	public static final String PLUGIN_ID = "pluginId";
+	public static final String ID = "id";
+	
+	/** Number of alerts read by call */
+	private static final int PAGE_SIZE = 5000;
+	
+	private final ClientApi clientApi;
+	
+	private final String apikey;
+	
+	/** Alerts to skip, can be null */
+	private final ZAPalertFilter filter;
+	
+	private int suppressedCount;
+	
+	/** Index of the first alert of the next page */
+	private int start;
+	
+	private boolean lastPage;
+	
+	private Iterator<ApiResponse> page;
+	
+	private ApiResponseSet current;
+	
+	/**
+	 * @param clientApi the ZAP api to read the alerts
+	 * @param apikey ZAP apikey. Can be null.
+	 */
+	public ZAPalertReader(ClientApi clientApi, String apikey) {
+		this(clientApi, apikey, null);
+	}
+	
+	/**
+	 * @param clientApi the ZAP api to read the alerts
+	 * @param apikey ZAP apikey. Can be null.
+	 * @param filter the alerts to skip. Can be null.
+	 */
+	public ZAPalertReader(ClientApi clientApi, String apikey, ZAPalertFilter filter) {
+		this.clientApi = clientApi;
+		this.apikey = apikey;
+		this.filter = filter;
+	}
+	
+	/**
+	 * Move to the next alert.
+	 * 
+	 * @return false if there is no more alert
+	 * @throws ClientApiException
+	 */
+	public boolean next() throws ClientApiException {
+		do {
+			if((page == null || !page.hasNext()) && !lastPage) {
+				List<ApiResponse> items = readPage();
+				start += items.size();
+				lastPage = items.size() < PAGE_SIZE;
+				page = items.iterator();
+			}
+			current = page.hasNext() ? (ApiResponseSet) page.next() : null;
+		} while(current != null && isSuppressed());
+		return current != null;
+	}
+	
+	private boolean isSuppressed() {
+		if(filter != null && filter.isSuppressed(get(PLUGIN_ID), get(URL), get(PARAM))) {
+			suppressedCount++;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the number of alerts skipped so far
+	 */
+	public int getSuppressedCount() {
+		return suppressedCount;
+	}
+	
+	/**
+	 * @param attribute the attribute of the alert (e.g. {@link #RISK})
+	 * @return the attribute of the current alert, an empty string if the alert doesn't have it
+	 */
+	public String get(String attribute) {
+		String value = current.getAttribute(attribute);
+		return value == null ? "" : value;
+	}
+	
+	private List<ApiResponse> readPage() throws ClientApiException {
+		Map<String, String> params = new HashMap<String, String>();
+		if(apikey != null) {
+			params.put("apikey", apikey);
+		}
+		params.put("baseurl", "");
+		params.put("start", String.valueOf(start));
+		params.put("count", String.valueOf(PAGE_SIZE));
+		return ((ApiResponseList) clientApi.callApi("core", "view", "alerts", params)).getItems();
+	}
+}
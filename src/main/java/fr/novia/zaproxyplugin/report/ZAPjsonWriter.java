@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin.report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a JSON document while it's built, without keeping it in memory.
+ * 
+ */
+public class ZAPjsonWriter {
+	
+	private final Writer out;
+	
+	/** For each open object or array, true if it has no value yet */
+	private final List<Boolean> firstValues = new ArrayList<Boolean>();
+	
+	/** True just after a name, the next value belongs to it */
+	private boolean afterName;
+	
+	public ZAPjsonWriter(Writer out) {
+		this.out = out;
+	}
+	
+	public ZAPjsonWriter beginObject() throws IOException {
+		return open('{');
+	}
+	
+	public ZAPjsonWriter endObject() throws IOException {
+		return close('}');
+	}
+	
+	public ZAPjsonWriter beginArray() throws IOException {
+		return open('[');
+	}
+	
+	public ZAPjsonWriter endArray() throws IOException {
+		return close(']');
+	}
+	
+	/**
+	 * Write the name of the next value of the current object.
+	 */
+	public ZAPjsonWriter name(String name) throws IOException {
+		separate();
+		writeString(name);
+		out.write(':');
+		afterName = true;
+		return this;
+	}
+	
+	public ZAPjsonWriter value(String value) throws IOException {
+		separate();
+		if(value == null) {
+			out.write("null");
+		} else {
+			writeString(value);
+		}
+		return this;
+	}
+	
+	public ZAPjsonWriter value(long value) throws IOException {
+		separate();
+		out.write(String.valueOf(value));
+		return this;
+	}
+	
+	/**
+	 * Write a name and its string value.
+	 */
+	public ZAPjsonWriter property(String name, String value) throws IOException {
+		return name(name).value(value);
+	}
+	
+	public void flush() throws IOException {
+		out.flush();
+	}
+	
+	private ZAPjsonWriter open(char c) throws IOException {
+		separate();
+		out.write(c);
+		firstValues.add(Boolean.TRUE);
+		return this;
+	}
+	
+	private ZAPjsonWriter close(char c) throws IOException {
+		firstValues.remove(firstValues.size() - 1);
+		out.write(c);
+		return this;
+	}
+	
+	/**
+	 * Write the comma before a value, unless it's the first value of its parent or the value of a name.
+	 */
+	private void separate() throws IOException {
+		if(afterName) {
+			afterName = false;
+			return;
+		}
+		int last = firstValues.size() - 1;
+		if(last >= 0) {
+			if(!firstValues.get(last)) {
+				out.write(',');
+			}
+			firstValues.set(last, Boolean.FALSE);
+		}
+	}
+	
+	private void writeString(String s) throws IOException {
+		out.write('"');
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch(c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				if(c < 0x20) {
+					out.write(String.format("\\u%04x", (int) c));
+				} else {
+					out.write(c);
+				}
+			}
+		}
+		out.write('"');
+	}
+}
@@ -24,22 +24,34 @@
 
 package fr.novia.zaproxyplugin.report;
 
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import jenkins.model.Jenkins;
+
 import org.zaproxy.clientapi.core.ClientApi;
 import org.zaproxy.clientapi.core.ClientApiException;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 
 /**
  * This abstract class is used to generate report in ZAP available format.
+ * <p>
+ * The report formats are an extension point : other plugins can add a format with an {@code @Extension} 
+ * implementation. The report is generated on the build's machine, so the implementations must be serializable.
  * 
  * @author ludovic.roucoux
  *
  */
-public abstract class ZAPreport implements Serializable {
+public abstract class ZAPreport implements Serializable, ExtensionPoint {
 	private static final long serialVersionUID = 2241940678203529066L;
 	
-	protected static final String REPORT_FORMAT_XML = "xml";
+	public static final String REPORT_FORMAT_XML = "xml";
 	protected static final String REPORT_FORMAT_HTML = "html";
+	protected static final String REPORT_FORMAT_JSON = "json";
+	protected static final String REPORT_FORMAT_SARIF = "sarif";
+	protected static final String REPORT_FORMAT_JUNIT = "junit";
 	
 	/** The report format */
 	protected String format;
@@ -53,10 +65,60 @@ public abstract class ZAPreport implements Serializable {
 	 */
 	public abstract byte[] generateReport(ClientApi clientApi, String apikey) throws ClientApiException;
 	
+	/**
+	 * Write a ZAP report in the format of daughter class. The formats rendered by the plugin override it 
+	 * to write the report while they read the alerts, instead of building it in memory.
+	 * 
+	 * @param clientApi the ZAP api to call the method to generate report
+	 * @param apikey ZAP apikey. Can be null.
+	 * @param out the stream where the report is written, not closed by this method
+	 * @throws ClientApiException
+	 * @throws IOException
+	 */
+	public void writeReport(ClientApi clientApi, String apikey, OutputStream out) throws ClientApiException, IOException {
+		out.write(generateReport(clientApi, apikey));
+	}
+	
+	/**
+	 * Write a ZAP report without the alerts left out by a filter. The formats generated by ZAP can't filter 
+	 * their alerts, they write the report with all the alerts, see {@link #isAlertFilterSupported()}.
+	 * 
+	 * @param clientApi the ZAP api to call the method to generate report
+	 * @param apikey ZAP apikey. Can be null.
+	 * @param filter the alerts to leave out. Can be null.
+	 * @param out the stream where the report is written, not closed by this method
+	 * @throws ClientApiException
+	 * @throws IOException
+	 */
+	public void writeReport(ClientApi clientApi, String apikey, ZAPalertFilter filter, OutputStream out) throws ClientApiException, IOException {
+		writeReport(clientApi, apikey, out);
+	}
+	
+	/**
+	 * @return true if {@link #writeReport(ClientApi, String, ZAPalertFilter, OutputStream)} leaves out the filtered alerts
+	 */
+	public boolean isAlertFilterSupported() {
+		return false;
+	}
+	
 	public String getFormat() {
 		return format;
 	}
 	
+	/**
+	 * @return the extension of the report file, the format by default
+	 */
+	public String getFileExtension() {
+		return getFormat();
+	}
+	
+	/**
+	 * @return all the report formats registered in Jenkins
+	 */
+	public static ExtensionList<ZAPreport> all() {
+		return Jenkins.getInstance().getExtensionList(ZAPreport.class);
+	}
+	
 	@Override
 	public String toString() {
 		return getFormat();
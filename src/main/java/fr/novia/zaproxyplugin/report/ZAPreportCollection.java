@@ -25,12 +25,20 @@
 package fr.novia.zaproxyplugin.report;
 
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.TreeMap;
+
+import jenkins.model.Jenkins;
 
 /**
  * This class contains all ZAPreport instance of the application. 
  * It's a singleton class so the application contains only one instance of the class.
+ * <p>
+ * The formats are the {@link ZAPreport} extensions, so they include the formats added by other plugins. 
+ * Out of Jenkins (e.g. on the build's machine), only the formats of this plugin are known.
  * 
  * @author ludovic.roucoux
  *
@@ -39,33 +47,29 @@ public class ZAPreportCollection implements Serializable {
 
 	private static final long serialVersionUID = -470481707608315500L;
 	
-	private static ZAPreportCollection uniqueInstance = new ZAPreportCollection();
-	
-	/** Map where key is the report format represented by a String
-	 *  and value is a ZAPreport object allowing to generate a report with the corresponding format.
-	 */
-	private Map<String, ZAPreport> mapFormatReport;
+	/** Created when the class is loaded, so the singleton is safe to use from several threads */
+	private static final ZAPreportCollection uniqueInstance = new ZAPreportCollection();
 
 	private ZAPreportCollection() {
-		mapFormatReport = new HashMap<String, ZAPreport>();
-
-		// ZAPreport's creation
-		ZAPreportXML reportXML = new ZAPreportXML();
-		ZAPreportHTML reportHTML = new ZAPreportHTML();
-		
-		// Add ZAPreport to the map
-		mapFormatReport.put(reportXML.getFormat(), reportXML);
-		mapFormatReport.put(reportHTML.getFormat(), reportHTML);
 	}
 	
 	public static ZAPreportCollection getInstance(){
-		if(uniqueInstance == null)
-			uniqueInstance = new ZAPreportCollection();
-		
 		return uniqueInstance;
 	}
 
+	/**
+	 * @return a map where key is the report format represented by a String
+	 *  and value is a ZAPreport object allowing to generate a report with the corresponding format.
+	 */
 	public Map<String, ZAPreport> getMapFormatReport() {
-		return mapFormatReport;
+		Collection<ZAPreport> reports = Jenkins.getInstance() != null ? ZAPreport.all() 
+				: Arrays.<ZAPreport>asList(new ZAPreportXML(), new ZAPreportHTML(), new ZAPreportJSON(), 
+						new ZAPreportSARIF(), new ZAPreportJUnit());
+		
+		Map<String, ZAPreport> mapFormatReport = new TreeMap<String, ZAPreport>();
+		for(ZAPreport report : reports) {
+			mapFormatReport.put(report.getFormat(), report);
+		}
+		return Collections.unmodifiableMap(mapFormatReport);
 	}	
 }
@@ -24,6 +24,8 @@
 
 package fr.novia.zaproxyplugin.report;
 
+import hudson.Extension;
+
 import org.zaproxy.clientapi.core.ClientApi;
 import org.zaproxy.clientapi.core.ClientApiException;
 
@@ -33,6 +35,7 @@ import org.zaproxy.clientapi.core.ClientApiException;
  * @author ludovic.roucoux
  *
  */
+@Extension
 public class ZAPreportHTML extends ZAPreport {
 
 	public ZAPreportHTML() {
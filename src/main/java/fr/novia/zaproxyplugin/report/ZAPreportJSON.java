@@ -0,0 +1,72 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin.report;
+
+import hudson.Extension;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+
+import org.zaproxy.clientapi.core.ClientApiException;
+
+/**
+ * Used to generate ZAP report in json, with the attributes of the alerts given by the ZAP API.
+ * 
+ */
+@Extension
+public class ZAPreportJSON extends ZAPstreamingReport {
+
+	private static final long serialVersionUID = 5410391693893117042L;
+	
+	private static final String[] ATTRIBUTES = { ZAPalertReader.PLUGIN_ID, ZAPalertReader.ALERT, ZAPalertReader.RISK, 
+		ZAPalertReader.CONFIDENCE, ZAPalertReader.URL, ZAPalertReader.PARAM, ZAPalertReader.ATTACK, ZAPalertReader.EVIDENCE,
+		ZAPalertReader.DESCRIPTION, ZAPalertReader.SOLUTION, ZAPalertReader.REFERENCE, ZAPalertReader.CWE_ID, ZAPalertReader.WASC_ID };
+
+	public ZAPreportJSON() {
+		this.format = ZAPreport.REPORT_FORMAT_JSON;
+	}
+
+	@Override
+	protected void writeReport(ZAPalertReader alerts, OutputStream out) throws ClientApiException, IOException {
+		ZAPjsonWriter json = new ZAPjsonWriter(new BufferedWriter(new OutputStreamWriter(out, ENCODING)));
+		json.beginObject();
+		json.name("generated").value(System.currentTimeMillis());
+		json.name("alerts").beginArray();
+		
+		while(alerts.next()) {
+			json.beginObject();
+			for(String attribute : ATTRIBUTES) {
+				json.property(attribute, alerts.get(attribute));
+			}
+			json.endObject();
+		}
+		
+		json.endArray();
+		json.endObject();
+		json.flush();
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin.report;
+
+import hudson.Extension;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.zaproxy.clientapi.core.ClientApiException;
+
+/**
+ * Used to generate ZAP report in JUnit XML, read by the JUnit plugin and the test report tools. 
+ * Each alert is a test case, which fails if the risk of the alert isn't informational.
+ * 
+ */
+@Extension
+public class ZAPreportJUnit extends ZAPstreamingReport {
+
+	private static final long serialVersionUID = 3170463720926616512L;
+	
+	private static final String FILE_EXTENSION = "junit.xml";
+	
+	private static final String SUITE_NAME = "ZAProxy";
+	
+	private static final String INFORMATIONAL_RISK = "Informational";
+
+	public ZAPreportJUnit() {
+		this.format = ZAPreport.REPORT_FORMAT_JUNIT;
+	}
+	
+	@Override
+	public String getFileExtension() {
+		return FILE_EXTENSION;
+	}
+
+	@Override
+	protected void writeReport(ZAPalertReader alerts, OutputStream out) throws ClientApiException, IOException {
+		try {
+			XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, ENCODING);
+			xml.writeStartDocument(ENCODING, "1.0");
+			xml.writeStartElement("testsuite");
+			xml.writeAttribute("name", SUITE_NAME);
+			
+			while(alerts.next()) {
+				String risk = alerts.get(ZAPalertReader.RISK);
+				xml.writeStartElement("testcase");
+				xml.writeAttribute("classname", SUITE_NAME + "." + alerts.get(ZAPalertReader.PLUGIN_ID));
+				xml.writeAttribute("name", alerts.get(ZAPalertReader.ALERT) + " [" + alerts.get(ZAPalertReader.URL) + "]");
+				if(!INFORMATIONAL_RISK.equals(risk)) {
+					xml.writeStartElement("failure");
+					xml.writeAttribute("type", risk);
+					xml.writeAttribute("message", alerts.get(ZAPalertReader.ALERT));
+					xml.writeCharacters("Param: " + alerts.get(ZAPalertReader.PARAM) + "\n"
+							+ "Evidence: " + alerts.get(ZAPalertReader.EVIDENCE) + "\n"
+							+ "Confidence: " + alerts.get(ZAPalertReader.CONFIDENCE) + "\n\n"
+							+ alerts.get(ZAPalertReader.DESCRIPTION) + "\n\n"
+							+ alerts.get(ZAPalertReader.SOLUTION));
+					xml.writeEndElement();
+				}
+				xml.writeEndElement();
+			}
+			
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.flush();
+		} catch (XMLStreamException e) {
+			throw new IOException("Unable to write the JUnit report", e);
+		}
+	}
+}
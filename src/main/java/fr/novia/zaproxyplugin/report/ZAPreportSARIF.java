@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin.report;
+
+import hudson.Extension;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.zaproxy.clientapi.core.ClientApiException;
+
+/**
+ * Used to generate ZAP report in SARIF 2.1.0, read by the code scanning tools. 
+ * <p>
+ * The results are written before the rules of the tool, so only the rules (a few hundreds at most) are kept 
+ * in memory while the alerts are read.
+ * 
+ */
+@Extension
+public class ZAPreportSARIF extends ZAPstreamingReport {
+
+	private static final long serialVersionUID = -2236806716001741733L;
+	
+	private static final String SARIF_VERSION = "2.1.0";
+	
+	private static final String SARIF_SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+	
+	private static final String TOOL_NAME = "OWASP ZAP";
+	
+	private static final String TOOL_URI = "https://www.zaproxy.org/";
+
+	public ZAPreportSARIF() {
+		this.format = ZAPreport.REPORT_FORMAT_SARIF;
+	}
+
+	@Override
+	protected void writeReport(ZAPalertReader alerts, OutputStream out) throws ClientApiException, IOException {
+		ZAPjsonWriter json = new ZAPjsonWriter(new BufferedWriter(new OutputStreamWriter(out, ENCODING)));
+		json.beginObject();
+		json.property("$schema", SARIF_SCHEMA);
+		json.property("version", SARIF_VERSION);
+		json.name("runs").beginArray().beginObject();
+		
+		// Rule id, rule name and help
+		Map<String, String[]> rules = new LinkedHashMap<String, String[]>();
+		json.name("results").beginArray();
+		while(alerts.next()) {
+			String ruleId = alerts.get(ZAPalertReader.PLUGIN_ID);
+			if(!rules.containsKey(ruleId)) {
+				rules.put(ruleId, new String[] { alerts.get(ZAPalertReader.ALERT), alerts.get(ZAPalertReader.DESCRIPTION), 
+						alerts.get(ZAPalertReader.SOLUTION) });
+			}
+			writeResult(json, alerts, ruleId);
+		}
+		json.endArray();
+		
+		json.name("tool").beginObject().name("driver").beginObject();
+		json.property("name", TOOL_NAME);
+		json.property("informationUri", TOOL_URI);
+		json.name("rules").beginArray();
+		for(Map.Entry<String, String[]> rule : rules.entrySet()) {
+			json.beginObject();
+			json.property("id", rule.getKey());
+			json.property("name", rule.getValue()[0]);
+			json.name("fullDescription").beginObject().property("text", rule.getValue()[1]).endObject();
+			json.name("help").beginObject().property("text", rule.getValue()[2]).endObject();
+			json.endObject();
+		}
+		json.endArray();
+		json.endObject().endObject();
+		
+		json.endObject().endArray();
+		json.endObject();
+		json.flush();
+	}
+	
+	private static void writeResult(ZAPjsonWriter json, ZAPalertReader alerts, String ruleId) throws IOException {
+		json.beginObject();
+		json.property("ruleId", ruleId);
+		json.property("level", getLevel(alerts.get(ZAPalertReader.RISK)));
+		json.name("message").beginObject().property("text", alerts.get(ZAPalertReader.ALERT)).endObject();
+		json.name("locations").beginArray().beginObject()
+			.name("physicalLocation").beginObject()
+				.name("artifactLocation").beginObject().property("uri", alerts.get(ZAPalertReader.URL)).endObject()
+			.endObject()
+		.endObject().endArray();
+		json.name("properties").beginObject();
+		json.property("confidence", alerts.get(ZAPalertReader.CONFIDENCE));
+		json.property("param", alerts.get(ZAPalertReader.PARAM));
+		json.property("evidence", alerts.get(ZAPalertReader.EVIDENCE));
+		json.property("cweid", alerts.get(ZAPalertReader.CWE_ID));
+		json.endObject();
+		json.endObject();
+	}
+	
+	/**
+	 * @return the SARIF level of a ZAP risk
+	 */
+	private static String getLevel(String risk) {
+		if("High".equals(risk)) {
+			return "error";
+		} else if("Medium".equals(risk)) {
+			return "warning";
+		} else if("Low".equals(risk)) {
+			return "note";
+		}
+		return "none";
+	}
+}
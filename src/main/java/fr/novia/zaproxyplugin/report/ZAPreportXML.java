@@ -24,6 +24,8 @@
 
 package fr.novia.zaproxyplugin.report;
 
+import hudson.Extension;
+
 import org.zaproxy.clientapi.core.ClientApiException;
 import org.zaproxy.clientapi.core.ClientApi;
 
@@ -33,6 +35,7 @@ import org.zaproxy.clientapi.core.ClientApi;
  * @author ludovic.roucoux
  *
  */
+@Extension
 public class ZAPreportXML extends ZAPreport {
 
 	public ZAPreportXML() {
@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin.report;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.zaproxy.clientapi.core.ClientApi;
+import org.zaproxy.clientapi.core.ClientApiException;
+
+/**
+ * A report rendered by the plugin from the alerts of ZAP, written while the alerts are read.
+ * 
+ */
+public abstract class ZAPstreamingReport extends ZAPreport {
+
+	private static final long serialVersionUID = -1758214433097254021L;
+	
+	protected static final String ENCODING = "UTF-8";
+
+	/**
+	 * Build the whole report in memory, {@link #writeReport(ClientApi, String, OutputStream)} should be preferred.
+	 */
+	@Override
+	public byte[] generateReport(ClientApi clientApi, String apikey) throws ClientApiException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			writeReport(clientApi, apikey, out);
+		} catch (IOException e) {
+			// Not thrown by a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return out.toByteArray();
+	}
+	
+	@Override
+	public void writeReport(ClientApi clientApi, String apikey, OutputStream out) throws ClientApiException, IOException {
+		writeReport(new ZAPalertReader(clientApi, apikey), out);
+	}
+	
+	@Override
+	public void writeReport(ClientApi clientApi, String apikey, ZAPalertFilter filter, OutputStream out) throws ClientApiException, IOException {
+		writeReport(new ZAPalertReader(clientApi, apikey, filter), out);
+	}
+	
+	@Override
+	public boolean isAlertFilterSupported() {
+		return true;
+	}
+	
+	/**
+	 * Write the report of the alerts.
+	 * 
+	 * @param alerts the alerts of the report, read once
+	 * @param out the stream where the report is written, not closed by this method
+	 * @throws ClientApiException
+	 * @throws IOException
+	 */
+	protected abstract void writeReport(ZAPalertReader alerts, OutputStream out) throws ClientApiException, IOException;
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZAPalertFingerprintsTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void sameIssueHasTheSameFingerprint() {
+		assertEquals(ZAPalertFingerprints.fingerprint("40012", "http://shop/search?q=boots", "q"), 
+				ZAPalertFingerprints.fingerprint("40012", "http://shop/search?q=hat", "q"));
+		assertEquals(ZAPalertFingerprints.fingerprint("40012", "http://shop/product/12", ""), 
+				ZAPalertFingerprints.fingerprint("40012", "http://shop/product/98", null));
+		assertTrue(ZAPalertFingerprints.fingerprint("40012", "http://shop/a", "q") 
+				!= ZAPalertFingerprints.fingerprint("40014", "http://shop/a", "q"));
+		assertTrue(ZAPalertFingerprints.fingerprint("1", "23", "") != ZAPalertFingerprints.fingerprint("12", "3", ""));
+	}
+	
+	@Test
+	public void duplicatesAreCountedOnce() {
+		ZAPalertFingerprints fingerprints = new ZAPalertFingerprints();
+		fingerprints.addAlert("40012", "http://shop/search?q=boots", "q");
+		fingerprints.addAlert("40012", "http://shop/search?q=hat", "q");
+		fingerprints.addAlert("10021", "http://shop/", "");
+		assertEquals(2, fingerprints.size());
+	}
+	
+	@Test
+	public void mergedShardsAreSortedAgain() {
+		ZAPalertFingerprints first = new ZAPalertFingerprints();
+		ZAPalertFingerprints second = new ZAPalertFingerprints();
+		for(int i = 0; i < 1500; i++) {
+			// The numbers of the URLs are normalized, not the parameters
+			first.addAlert("40012", "http://shop/search", "q" + i);
+			second.addAlert("40012", "http://shop/search", "q" + (i + 1000));
+		}
+		first.addAll(second);
+		assertEquals(2500, first.size());
+		
+		ZAPalertFingerprints.Diff diff = first.diff(second);
+		assertEquals(1000, diff.getNewCount());
+		assertEquals(0, diff.getFixedCount());
+		assertEquals(1500, diff.getPersistingCount());
+	}
+	
+	@Test
+	public void newFixedAndPersistingAlerts() {
+		ZAPalertFingerprints baseline = new ZAPalertFingerprints();
+		baseline.addAlert("40012", "http://shop/a", "q");
+		baseline.addAlert("40012", "http://shop/b", "q");
+		baseline.addAlert("10021", "http://shop/", "");
+		ZAPalertFingerprints current = new ZAPalertFingerprints();
+		current.addAlert("40012", "http://shop/b", "q");
+		current.addAlert("40018", "http://shop/c", "id");
+		
+		ZAPalertFingerprints.Diff diff = current.diff(baseline);
+		assertEquals(1, diff.getNewCount());
+		assertEquals(2, diff.getFixedCount());
+		assertEquals(1, diff.getPersistingCount());
+		
+		diff = current.diff(new ZAPalertFingerprints());
+		assertEquals(2, diff.getNewCount());
+		assertEquals(0, diff.getFixedCount());
+	}
+	
+	@Test
+	public void varLongRoundTrip() throws IOException {
+		long[] values = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, -1 };
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for(long value : values) {
+			ZAPalertFingerprints.writeVarLong(out, value);
+		}
+		out.flush();
+		// 1 byte up to 7 bits, 10 bytes for the negative numbers
+		assertEquals(1 + 1 + 1 + 2 + 2 + 3 + 5 + 9 + 10 + 10, bytes.size());
+		
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		for(long value : values) {
+			assertEquals(value, ZAPalertFingerprints.readVarLong(in));
+		}
+	}
+	
+	@Test
+	public void fileRoundTrip() throws IOException {
+		ZAPalertFingerprints fingerprints = new ZAPalertFingerprints();
+		for(int i = 0; i < 3000; i++) {
+			fingerprints.addAlert(String.valueOf(i % 7), "http://shop/page/" + i, "p" + i);
+		}
+		File file = folder.newFile(ZAPalertFingerprints.FILENAME);
+		fingerprints.write(file);
+		
+		ZAPalertFingerprints read = ZAPalertFingerprints.read(file);
+		assertEquals(3000, read.size());
+		ZAPalertFingerprints.Diff diff = read.diff(fingerprints);
+		assertEquals(0, diff.getNewCount());
+		assertEquals(0, diff.getFixedCount());
+		assertEquals(3000, diff.getPersistingCount());
+		
+		File empty = folder.newFile("empty.bin");
+		new ZAPalertFingerprints().write(empty);
+		assertEquals(0, ZAPalertFingerprints.read(empty).size());
+	}
+	
+	@Test(expected = IOException.class)
+	public void otherFilesAreRejected() throws IOException {
+		File file = folder.newFile("other.bin");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write("not fingerprints".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		ZAPalertFingerprints.read(file);
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZAPalertSuppressionsTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private ZAPalertSuppressions read(String... lines) throws IOException {
+		File file = folder.newFile();
+		FileUtils.writeLines(file, "UTF-8", Arrays.asList(lines));
+		return ZAPalertSuppressions.read(file);
+	}
+	
+	@Test
+	public void suppressionsOfTheRuleAndTheParameter() throws IOException {
+		ZAPalertSuppressions suppressions = read(
+				"# rule   URL   parameter",
+				"",
+				"10202    https://example\\.com/login.*    csrf_token",
+				"40012    https://example\\.com/search\\?.*",
+				"*        https://example\\.com/static/.*",
+				"*        https://example\\.com/api/.*     *");
+		assertEquals(4, suppressions.size());
+		
+		assertTrue(suppressions.isSuppressed("10202", "https://example.com/login?next=/", "csrf_token"));
+		assertFalse(suppressions.isSuppressed("10202", "https://example.com/login?next=/", "user"));
+		assertFalse(suppressions.isSuppressed("10203", "https://example.com/login", "csrf_token"));
+		
+		assertTrue(suppressions.isSuppressed("40012", "https://example.com/search?q=1", "q"));
+		assertTrue(suppressions.isSuppressed("40012", "https://example.com/search?q=1", ""));
+		// The URL expression matches the whole URL
+		assertFalse(suppressions.isSuppressed("40012", "https://example.com/search", "q"));
+		
+		assertTrue(suppressions.isSuppressed("10021", "https://example.com/static/app.js", null));
+		assertTrue(suppressions.isSuppressed("90022", "https://example.com/api/users", "id"));
+		assertFalse(suppressions.isSuppressed("10021", "https://example.com/", ""));
+	}
+	
+	@Test
+	public void expressionsAreKeptApartInTheAlternation() throws IOException {
+		// Each expression is wrapped, its own alternation and its anchors don't leak into the others
+		ZAPalertSuppressions suppressions = read(
+				"40012    https://(a|b)\\.example\\.com/.*",
+				"40012    https://c\\.example\\.com/.*|https://d\\.example\\.com/.*    q",
+				"40012    \\Qhttps://e.example.com/(x)\\E");
+		assertTrue(suppressions.isSuppressed("40012", "https://b.example.com/x", ""));
+		assertTrue(suppressions.isSuppressed("40012", "https://c.example.com/", "q"));
+		assertTrue(suppressions.isSuppressed("40012", "https://d.example.com/", "q"));
+		assertFalse(suppressions.isSuppressed("40012", "https://d.example.com/", "p"));
+		assertTrue(suppressions.isSuppressed("40012", "https://e.example.com/(x)", ""));
+		assertFalse(suppressions.isSuppressed("40012", "https://f.example.com/", ""));
+	}
+	
+	@Test
+	public void manySuppressionsOfARule() throws IOException {
+		String[] lines = new String[5000];
+		for(int i = 0; i < lines.length; i++) {
+			lines[i] = "40012    https://example\\.com/page" + i + "/.*    p" + (i % 10);
+		}
+		ZAPalertSuppressions suppressions = read(lines);
+		assertEquals(5000, suppressions.size());
+		assertTrue(suppressions.isSuppressed("40012", "https://example.com/page4321/edit", "p1"));
+		assertFalse(suppressions.isSuppressed("40012", "https://example.com/page4321/edit", "p2"));
+		assertFalse(suppressions.isSuppressed("40012", "https://example.com/page5000/edit", "p0"));
+	}
+	
+	@Test
+	public void backReferencesAreDetected() {
+		assertTrue(ZAPalertSuppressions.hasBackReference("https://(\\w+)\\.example\\.com/\\1/.*"));
+		assertTrue(ZAPalertSuppressions.hasBackReference("https://(?<host>\\w+)/\\k<host>"));
+		assertFalse(ZAPalertSuppressions.hasBackReference("https://example\\.com/\\\\1"));
+		assertFalse(ZAPalertSuppressions.hasBackReference("\\Qhttps://example.com/\\1\\E.*"));
+		assertFalse(ZAPalertSuppressions.hasBackReference("https://example\\.com/[0-9]+\\d"));
+	}
+	
+	@Test(expected = IOException.class)
+	public void backReferenceIsRejected() throws IOException {
+		read("40012    https://(\\w+)\\.example\\.com/\\1/.*");
+	}
+	
+	@Test
+	public void noSuppression() throws IOException {
+		ZAPalertSuppressions suppressions = read("# nothing yet");
+		assertEquals(0, suppressions.size());
+		assertFalse(suppressions.isSuppressed("40012", "https://example.com/", "q"));
+	}
+	
+	@Test(expected = IOException.class)
+	public void invalidExpressionIsRejected() throws IOException {
+		read("40012    https://example\\.com/(.*");
+	}
+	
+	@Test(expected = IOException.class)
+	public void suppressionWithoutUrlIsRejected() throws IOException {
+		read("40012");
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZAPauthSessionTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void sessionIsSentToTheHostOfTheTargetOnly() {
+		Pattern url = Pattern.compile(ZAPauthSession.getUrlRegex(" https://shop.example.com:8443/app/login "));
+		assertTrue(url.matcher("https://shop.example.com:8443").matches());
+		assertTrue(url.matcher("https://shop.example.com:8443/other/page?q=1").matches());
+		assertTrue(url.matcher("HTTPS://Shop.Example.com:8443/").matches());
+		assertFalse(url.matcher("https://shop.example.com/app/login").matches());
+		assertFalse(url.matcher("https://shop.example.com:8443.evil.com/").matches());
+		assertFalse(url.matcher("https://cdn.example.com/shop.example.com:8443/").matches());
+		assertFalse(url.matcher("http://shop.example.com:8443/").matches());
+	}
+	
+	@Test
+	public void cookieOfTheRequest() {
+		assertEquals("JSESSIONID=42; lang=fr", 
+				ZAPauthSession.extractCookie("GET https://shop/ HTTP/1.1\r\nHost: shop\r\nCookie: JSESSIONID=42; lang=fr\r\n\r\n"));
+		assertNull(ZAPauthSession.extractCookie("GET https://shop/ HTTP/1.1\r\nHost: shop\r\n\r\n"));
+		assertNull(ZAPauthSession.extractCookie(null));
+	}
+	
+	@Test
+	public void sessionIsKeptDuringItsTimeToLive() throws IOException {
+		ZAPauthSession session = new ZAPauthSession(folder.getRoot(), "https://shop/", "alice");
+		assertNull(session.load(60000));
+		session.save("JSESSIONID=42");
+		assertEquals("JSESSIONID=42", new ZAPauthSession(folder.getRoot(), "https://shop/ ", "alice").load(60000));
+		// Each user has its own session
+		assertNull(new ZAPauthSession(folder.getRoot(), "https://shop/", "bob").load(60000));
+		
+		assertNull(session.load(-1));
+		// An expired session is deleted
+		assertNull(session.load(60000));
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.novia.zaproxyplugin.ZAPsiteTreeSeeder.SeedRequest;
+
+public class ZAPcrawlCacheTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void saveAndLoadKeepMethodHeadersAndBody() throws Exception {
+		ZAPcrawlCache cache = new ZAPcrawlCache(folder.newFolder("cache"));
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		headers.put("Content-Type", "application/x-www-form-urlencoded");
+		cache.save("app-1.0", Arrays.asList(
+				new SeedRequest("GET", "http://shop/cart"),
+				new SeedRequest("POST", "http://shop/cart", headers, "item=42&note=a b\nc")));
+		
+		assertTrue(cache.contains("app-1.0"));
+		assertFalse(cache.contains("app-1.1"));
+		List<SeedRequest> requests = cache.load("app-1.0");
+		assertEquals(2, requests.size());
+		assertEquals("GET", requests.get(0).getMethod());
+		assertNull(requests.get(0).getHeaders());
+		assertNull(requests.get(0).getBody());
+		assertEquals("POST", requests.get(1).getMethod());
+		assertEquals("http://shop/cart", requests.get(1).getUrl());
+		assertEquals(headers, requests.get(1).getHeaders());
+		assertEquals("item=42&note=a b\nc", requests.get(1).getBody());
+	}
+	
+	@Test
+	public void saveRemovesDuplicates() throws Exception {
+		ZAPcrawlCache cache = new ZAPcrawlCache(folder.newFolder("cache"));
+		cache.save("app", Arrays.asList(new SeedRequest("GET", "http://shop/"), new SeedRequest("get", "http://shop/"),
+				new SeedRequest("POST", "http://shop/", null, "a=1"), new SeedRequest("POST", "http://shop/", null, "a=2")));
+		assertEquals(3, cache.load("app").size());
+	}
+	
+	@Test
+	public void loadReadsFirstVersionFiles() throws Exception {
+		File cacheDir = folder.newFolder("cache");
+		ZAPcrawlCache cache = new ZAPcrawlCache(cacheDir);
+		Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(cache.getCacheFile("app"))), "UTF-8");
+		writer.write("# zaproxy-plugin crawl cache v1\nGET http://shop/a\nGET http://shop/b\n");
+		writer.close();
+		
+		List<SeedRequest> requests = cache.load("app");
+		assertEquals(2, requests.size());
+		assertEquals("http://shop/b", requests.get(1).getUrl());
+	}
+	
+	@Test
+	public void fromRawRequestDropsComputedHeadersAndCookies() {
+		SeedRequest request = SeedRequest.fromRawRequest("POST http://shop/login HTTP/1.1\r\nHost: shop\r\n"
+				+ "Content-Type: application/json\r\nContent-Length: 7\r\nCookie: JSESSIONID=1\r\n\r\n", "{\"a\":1}");
+		assertEquals("POST", request.getMethod());
+		assertEquals("http://shop/login", request.getUrl());
+		assertEquals(1, request.getHeaders().size());
+		assertEquals("application/json", request.getHeaders().get("Content-Type"));
+		assertEquals("{\"a\":1}", request.getBody());
+		assertNull(SeedRequest.fromRawRequest("garbage", null));
+	}
+}
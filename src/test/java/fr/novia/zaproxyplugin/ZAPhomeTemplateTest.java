@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZAPhomeTemplateTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void templateKeyChangesWithTheVersionOfZap() throws Exception {
+		File installation = folder.newFolder("zap");
+		File program = new File(installation, "zap.sh");
+		FileUtils.writeStringToFile(program, "#!/bin/sh", "UTF-8");
+		File jar = new File(installation, "zap-2.4.2.jar");
+		FileUtils.writeStringToFile(jar, "2.4.2", "UTF-8");
+		File defaultDir = folder.newFolder("home");
+		
+		String key = ZAPhomeTemplate.templateKey(defaultDir, program.getPath());
+		assertEquals(key, ZAPhomeTemplate.templateKey(defaultDir, program.getPath()));
+		
+		// Upgrade in place, same path of zap.sh
+		jar.delete();
+		FileUtils.writeStringToFile(new File(installation, "zap-2.4.3.jar"), "2.4.3", "UTF-8");
+		assertFalse(key.equals(ZAPhomeTemplate.templateKey(defaultDir, program.getPath())));
+	}
+	
+	@Test
+	public void templateKeyChangesWithTheDefaultDirectory() throws Exception {
+		File program = folder.newFile("zap.sh");
+		File defaultDir = folder.newFolder("home");
+		String key = ZAPhomeTemplate.templateKey(defaultDir, program.getPath());
+		
+		FileUtils.writeStringToFile(new File(defaultDir, "policies/default.policy"), "<policy/>", "UTF-8");
+		assertFalse(key.equals(ZAPhomeTemplate.templateKey(defaultDir, program.getPath())));
+	}
+}
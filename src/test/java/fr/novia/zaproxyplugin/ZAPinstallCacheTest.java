@@ -0,0 +1,62 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class ZAPinstallCacheTest {
+	
+	private static final String SHA256 = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+	
+	@Test
+	public void sha256IsSixtyFourHexadecimalCharacters() {
+		assertTrue(ZAPinstallCache.isSha256(SHA256));
+		assertTrue(ZAPinstallCache.isSha256(SHA256.toUpperCase()));
+		assertFalse(ZAPinstallCache.isSha256(SHA256.substring(1)));
+		assertFalse(ZAPinstallCache.isSha256(SHA256 + "0"));
+		assertFalse(ZAPinstallCache.isSha256("../x"));
+		assertFalse(ZAPinstallCache.isSha256(""));
+	}
+	
+	@Test
+	public void invalidSha256IsRejected() {
+		new ZAPinstallCache("zap.zip", " " + SHA256.toUpperCase() + " ", "addon.zap");
+		new ZAPinstallCache("zap.zip", "", null);
+		new ZAPinstallCache("zap.zip", null, null);
+		for(String sha256 : new String[] { "../x", SHA256.substring(0, 20), SHA256.replace('a', 'g') }) {
+			try {
+				new ZAPinstallCache("zap.zip", sha256, "addon.zap");
+				fail("[" + sha256 + "] isn't a SHA-256");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ZAPlaunchProfileTest {
+	
+	private static final long GB = 1024L * 1024L * 1024L;
+	
+	@Test
+	public void heapIsAShareOfTheBudgetPerPlannedInstance() {
+		ZAPlaunchProfile profile = ZAPlaunchProfile.compute(16 * GB, 12 * GB, 8, 0, 0, 2, 50);
+		assertEquals(4096, profile.getHeapInMb());
+		assertEquals(8, profile.getScanThreads());
+		assertTrue(profile.getJavaOptions().contains("-XX:+UseG1GC"));
+	}
+	
+	@Test
+	public void runningDaemonsKeepTheirHeapsInTheBudget() {
+		// 8 GB of budget, 6 GB are already given to the running daemons
+		ZAPlaunchProfile profile = ZAPlaunchProfile.compute(16 * GB, 12 * GB, 8, 2, 6 * 1024, 1, 50);
+		assertEquals(2048, profile.getHeapInMb());
+	}
+	
+	@Test
+	public void heapIsCappedByTheAvailableMemory() {
+		ZAPlaunchProfile profile = ZAPlaunchProfile.compute(16 * GB, 1 * GB, 8, 0, 0, 1, 50);
+		assertEquals(1024, profile.getHeapInMb());
+	}
+	
+	@Test
+	public void minimumHeapIsOnlyGivenIfAvailable() {
+		assertEquals(512, ZAPlaunchProfile.compute(2 * GB, 2 * GB, 2, 0, 0, 4, 50).getHeapInMb());
+		assertEquals(300, ZAPlaunchProfile.compute(2 * GB, 300 * 1024L * 1024L, 2, 0, 0, 1, 50).getHeapInMb());
+		assertEquals(128, ZAPlaunchProfile.compute(2 * GB, 2 * GB, 2, 1, 1024, 1, 50).getHeapInMb());
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZAPlogRouterTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private static final String LOG = "2016-05-02 10:00:00 [ZAP-daemon] INFO Control - Starting\n"
+			+ "2016-05-02 10:00:01 [ZAP-daemon] WARN Proxy - Slow response\n"
+			+ "2016-05-02 10:00:02 [ZAP-daemon] ERROR Scanner - Failed\n"
+			+ "java.io.IOException: closed\n"
+			+ "\tat Scanner.run(Scanner.java:12)\n"
+			+ "2016-05-02 10:00:03 [ZAP-daemon] DEBUG Scanner - Done\n";
+	
+	@Test
+	public void everyLineIsWrittenWithoutMinimumLevel() throws Exception {
+		File logFile = new File(folder.getRoot(), "zap.log");
+		ZAPlogRouter router = new ZAPlogRouter(logFile, 1024 * 1024, 1, null, 10, new PrintStream(new ByteArrayOutputStream()), "");
+		router.write(LOG.getBytes("UTF-8"));
+		router.close();
+		assertEquals(LOG, FileUtils.readFileToString(logFile, "UTF-8"));
+	}
+	
+	@Test
+	public void linesOfTheMinimumLevelAreForwardedAndAllAreWritten() throws Exception {
+		File logFile = new File(folder.getRoot(), "zap.log");
+		ByteArrayOutputStream console = new ByteArrayOutputStream();
+		ZAPlogRouter router = new ZAPlogRouter(logFile, 1024 * 1024, 1, null, 10, new PrintStream(console, true), "WARN");
+		router.write(LOG.getBytes("UTF-8"));
+		router.close();
+		
+		assertEquals(LOG, FileUtils.readFileToString(logFile, "UTF-8"));
+		String eol = System.getProperty("line.separator");
+		assertEquals("[ZAP] 2016-05-02 10:00:01 [ZAP-daemon] WARN Proxy - Slow response" + eol
+				+ "[ZAP] 2016-05-02 10:00:02 [ZAP-daemon] ERROR Scanner - Failed" + eol
+				+ "[ZAP] java.io.IOException: closed" + eol
+				+ "[ZAP] at Scanner.run(Scanner.java:12)" + eol, console.toString("UTF-8"));
+	}
+	
+	@Test
+	public void linesMatchingThePatternAreForwardedBelowTheMinimumLevel() throws Exception {
+		File logFile = new File(folder.getRoot(), "zap.log");
+		ByteArrayOutputStream console = new ByteArrayOutputStream();
+		ZAPlogRouter router = new ZAPlogRouter(logFile, 1024 * 1024, 1, Pattern.compile("Starting"), 10, 
+				new PrintStream(console, true), "ERROR");
+		router.write(LOG.getBytes("UTF-8"));
+		router.close();
+		
+		assertEquals(LOG, FileUtils.readFileToString(logFile, "UTF-8"));
+		String output = console.toString("UTF-8");
+		assertTrue(output.contains("INFO Control - Starting"));
+		assertTrue(output.contains("ERROR Scanner - Failed"));
+		assertFalse(output.contains("WARN"));
+		assertFalse(output.contains("DEBUG"));
+	}
+	
+	@Test
+	public void withoutMinimumLevelOnlyThePatternIsForwarded() throws Exception {
+		File logFile = new File(folder.getRoot(), "zap.log");
+		ByteArrayOutputStream console = new ByteArrayOutputStream();
+		ZAPlogRouter router = new ZAPlogRouter(logFile, 1024 * 1024, 1, Pattern.compile("ERROR"), 10, new PrintStream(console, true), "");
+		router.write(LOG.getBytes("UTF-8"));
+		router.close();
+		
+		assertEquals("[ZAP] 2016-05-02 10:00:02 [ZAP-daemon] ERROR Scanner - Failed" + System.getProperty("line.separator"), 
+				console.toString("UTF-8"));
+	}
+	
+	@Test
+	public void forwardedLinesAreRateLimited() throws Exception {
+		File logFile = new File(folder.getRoot(), "zap.log");
+		ByteArrayOutputStream console = new ByteArrayOutputStream();
+		ZAPlogRouter router = new ZAPlogRouter(logFile, 1024 * 1024, 1, null, 2, new PrintStream(console, true), "TRACE");
+		router.write(LOG.getBytes("UTF-8"));
+		router.close();
+		
+		assertEquals(LOG, FileUtils.readFileToString(logFile, "UTF-8"));
+		String eol = System.getProperty("line.separator");
+		assertEquals("[ZAP] 2016-05-02 10:00:00 [ZAP-daemon] INFO Control - Starting" + eol
+				+ "[ZAP] 2016-05-02 10:00:01 [ZAP-daemon] WARN Proxy - Slow response" + eol
+				+ "[ZAP] 4 lines not displayed (see zap.log)" + eol, console.toString("UTF-8"));
+	}
+	
+	@Test
+	public void logFileIsRotatedAtMaximumSize() throws Exception {
+		File logFile = new File(folder.getRoot(), "zap.log");
+		ZAPlogRouter router = new ZAPlogRouter(logFile, 100, 1, null, 10, new PrintStream(new ByteArrayOutputStream()), null);
+		router.write(LOG.getBytes("UTF-8"));
+		router.close();
+		assertTrue(logFile.length() <= 100);
+		assertTrue(FileUtils.readFileToString(logFile, "UTF-8").endsWith("DEBUG Scanner - Done\n"));
+		assertTrue(new File(folder.getRoot(), "zap.log.1").length() <= 100);
+		assertFalse(new File(folder.getRoot(), "zap.log.2").exists());
+	}
+}
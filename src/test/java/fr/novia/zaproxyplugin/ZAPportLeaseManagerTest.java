@@ -0,0 +1,79 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ZAPportLeaseManagerTest {
+	
+	/** Ports of the tests, above the usual ports of ZAP */
+	private static final int FIRST_PORT = 47100;
+	
+	@After
+	public void releaseLeases() {
+		ZAPportLeaseManager.release("build-1");
+		ZAPportLeaseManager.release("build-2");
+	}
+	
+	@Test
+	public void concurrentBuildsGetDistinctBlocks() throws Exception {
+		int first = ZAPportLeaseManager.lease(FIRST_PORT, 50, 3, "build-1");
+		int second = ZAPportLeaseManager.lease(FIRST_PORT, 50, 3, "build-2");
+		assertTrue(second >= first + 3 || first >= second + 3);
+	}
+	
+	@Test
+	public void releasedPortsCanBeLeasedAgain() throws Exception {
+		int port = ZAPportLeaseManager.lease(FIRST_PORT, 50, 2, "build-1");
+		assertEquals(2, ZAPportLeaseManager.release("build-1"));
+		assertEquals(0, ZAPportLeaseManager.release("build-1"));
+		assertEquals(port, ZAPportLeaseManager.lease(FIRST_PORT, 50, 2, "build-2"));
+	}
+	
+	@Test
+	public void portBoundByAnotherProcessIsSkipped() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			int bound = socket.getLocalPort();
+			assertTrue(ZAPportLeaseManager.lease(bound, 10, 1, "build-1") != bound);
+		} finally {
+			socket.close();
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void leaseFailsWithoutFreeBlockInTheRange() throws Exception {
+		int port = ZAPportLeaseManager.lease(FIRST_PORT, 50, 1, "build-1");
+		ZAPportLeaseManager.lease(port, 1, 1, "build-2");
+	}
+}
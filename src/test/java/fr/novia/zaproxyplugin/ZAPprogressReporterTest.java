@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+public class ZAPprogressReporterTest {
+	
+	private static final long NO_HEARTBEAT = Long.MAX_VALUE;
+	
+	private static int countLines(ByteArrayOutputStream out) throws Exception {
+		String s = out.toString("UTF-8");
+		return s.isEmpty() ? 0 : s.split(System.getProperty("line.separator")).length;
+	}
+	
+	@Test
+	public void smallMovesOfTheCountsAreCollapsed() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ZAPprogressReporter reporter = new ZAPprogressReporter(new PrintStream(out, true), "scan", NO_HEARTBEAT);
+		reporter.report(0, "100", "5000");
+		// An alert and a few messages more at each poll
+		for(int i = 1; i <= 9; i++) {
+			reporter.report(0, String.valueOf(100 + i), String.valueOf(5000 + i * 50));
+		}
+		assertEquals(1, countLines(out));
+		reporter.report(0, "110", "5500");
+		assertEquals(2, countLines(out));
+		assertTrue(out.toString("UTF-8").contains("(9 polls without change)"));
+	}
+	
+	@Test
+	public void messagesAloneCanPrintALine() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ZAPprogressReporter reporter = new ZAPprogressReporter(new PrintStream(out, true), "scan", NO_HEARTBEAT);
+		reporter.report("running", "0", "20000");
+		reporter.report("running", "0", "21999");
+		assertEquals(1, countLines(out));
+		reporter.report("running", "0", "22000");
+		assertEquals(2, countLines(out));
+	}
+	
+	@Test
+	public void progressStepAndFirstAlertPrintALine() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ZAPprogressReporter reporter = new ZAPprogressReporter(new PrintStream(out, true), "spider", NO_HEARTBEAT);
+		reporter.report(0, "0", null);
+		reporter.report(5, "0", null);
+		assertEquals(1, countLines(out));
+		reporter.report(5, "1", null);
+		assertEquals(2, countLines(out));
+		reporter.report(15, "1", null);
+		assertEquals(3, countLines(out));
+	}
+	
+	@Test
+	public void countMovesAreAbsoluteAndRelative() {
+		assertTrue(ZAPprogressReporter.hasCountMoved("0", "1", 10));
+		assertFalse(ZAPprogressReporter.hasCountMoved("5", "14", 10));
+		assertTrue(ZAPprogressReporter.hasCountMoved("5", "15", 10));
+		assertFalse(ZAPprogressReporter.hasCountMoved("1000", "1099", 10));
+		assertTrue(ZAPprogressReporter.hasCountMoved("1000", "1100", 10));
+		assertFalse(ZAPprogressReporter.hasCountMoved("7", "7", 10));
+		assertFalse(ZAPprogressReporter.hasCountMoved("7", null, 10));
+		assertTrue(ZAPprogressReporter.hasCountMoved(null, "7", 10));
+		assertTrue(ZAPprogressReporter.hasCountMoved("-", "unknown", 10));
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ZAPrateLimiterTest {
+	
+	@Test
+	public void limitOfTheHostOrOfAnyHost() {
+		String limits = "staging.example.com=50\n*=5\nbad";
+		assertEquals(50, ZAPrateLimiter.findLimit(limits, "http://Staging.example.com/app"));
+		assertEquals(5, ZAPrateLimiter.findLimit(limits, "http://other/"));
+		assertEquals(0, ZAPrateLimiter.findLimit("staging.example.com=50", "http://other/"));
+	}
+	
+	@Test
+	public void rateIsTurnedIntoThreadsAndDelay() {
+		assertEquals(1, ZAPrateLimiter.getThreads(5));
+		assertEquals(200, ZAPrateLimiter.getDelayInMs(5));
+		assertEquals(5, ZAPrateLimiter.getThreads(50));
+		assertEquals(100, ZAPrateLimiter.getDelayInMs(50));
+	}
+	
+	@Test
+	public void spiderIsPausedWhenAheadOfItsRate() {
+		// 100 requests at 10 req/s take 10 s
+		assertEquals(6000, ZAPrateLimiter.getPauseInMs(10, 100, 4000));
+		assertEquals(0, ZAPrateLimiter.getPauseInMs(10, 100, 12000));
+		assertEquals(0, ZAPrateLimiter.getPauseInMs(0, 100, 0));
+	}
+	
+	@Test
+	public void budgetIsSharedBetweenTheScansOfAHost() {
+		ZAPrateLimiter.Share first = ZAPrateLimiter.acquire("http://shared-host/", 40);
+		ZAPrateLimiter.Share second = ZAPrateLimiter.acquire("http://shared-host/b", 40);
+		try {
+			assertEquals(20, first.getRate());
+			second.release();
+			assertEquals(40, first.getRate());
+		} finally {
+			first.release();
+			second.release();
+		}
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import fr.novia.zaproxyplugin.report.ZAPalertFilter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZAPreportMergerTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File write(String name, String content) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		FileUtils.writeStringToFile(file, content, "UTF-8");
+		return file;
+	}
+	
+	private static String report(String version, String alertItems) {
+		return "<?xml version=\"1.0\"?><OWASPZAPReport version=\"" + version + "\" generated=\"now\">"
+				+ "<site name=\"http://shop\"><alerts>" + alertItems + "</alerts></site></OWASPZAPReport>";
+	}
+	
+	@Test
+	public void alertsFoundBySeveralReportsAreKeptOnce() throws IOException {
+		// ZAP 2.4 : an alert item by instance
+		File first = write("first.xml", report("2.4.3", 
+				"<alertitem><pluginid>40012</pluginid><alert>XSS</alert><riskcode>3</riskcode><uri>http://shop/search?q=a</uri><param>q</param></alertitem>"
+				+ "<alertitem><pluginid>10021</pluginid><alert>Headers</alert><riskcode>1</riskcode><uri>http://shop/</uri><param></param></alertitem>"));
+		// Later versions : the instances of an alert in its item
+		File second = write("second.xml", report("2.7.0", 
+				"<alertitem><pluginid>40012</pluginid><name>XSS</name><riskcode>3</riskcode><count>2</count><instances>"
+				+ "<instance><uri>http://shop/search?q=b</uri><param>q</param></instance>"
+				+ "<instance><uri>http://shop/product?id=1</uri><param>id</param></instance>"
+				+ "</instances></alertitem>"
+				+ "<alertitem><pluginid>10021</pluginid><name>Headers</name><riskcode>1</riskcode><count>1</count><instances>"
+				+ "<instance><uri>http://shop/</uri><param></param></instance>"
+				+ "</instances></alertitem>"));
+		File merged = new File(folder.getRoot(), "merged.xml");
+		ZAPreportMerger merger = new ZAPreportMerger();
+		merger.merge(Arrays.asList(first, second), merged);
+		
+		assertEquals(5, merger.getAlertCount());
+		assertEquals(2, merger.getDuplicateCount());
+		assertEquals(0, merger.getSuppressedCount());
+		assertEquals(3, merger.getSummary().getTotalCount());
+		assertEquals(2, merger.getSummary().getCount("High"));
+		assertEquals(1, merger.getSummary().getCount("Low"));
+		
+		String xml = FileUtils.readFileToString(merged, "UTF-8");
+		// The version of the first report
+		assertTrue(xml.contains("version=\"2.4.3\""));
+		assertTrue(xml.contains("http://shop/search?q=a"));
+		// The query values are normalized, the XSS on q was already merged
+		assertFalse(xml.contains("http://shop/search?q=b"));
+		assertTrue(xml.contains("http://shop/product?id=1"));
+		assertTrue(xml.contains("<count>1</count>"));
+		// The item whose instances were all merged is dropped
+		assertEquals(1, xml.split("<name>").length - 1);
+		assertEquals(2, xml.split("<site ").length - 1);
+	}
+	
+	@Test
+	public void compressedReportsAreReadAndWrittenCompressed() throws IOException {
+		File report = new File(folder.getRoot(), "report.xml.gz");
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(report));
+		try {
+			out.write(report("2.4.3", "<alertitem><pluginid>40012</pluginid><alert>XSS</alert><riskcode>3</riskcode>"
+					+ "<uri>http://shop/search</uri><param>q</param></alertitem>").getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		File merged = new File(folder.getRoot(), "merged.xml.gz");
+		new ZAPreportMerger().merge(Collections.singletonList(report), merged);
+		
+		InputStream in = new GZIPInputStream(new FileInputStream(merged));
+		try {
+			assertTrue(IOUtils.toString(in, "UTF-8").contains("http://shop/search"));
+		} finally {
+			in.close();
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void otherXmlIsRejected() throws IOException {
+		File other = write("pom.xml", "<?xml version=\"1.0\"?><project><alertitem/></project>");
+		new ZAPreportMerger().merge(Collections.singletonList(other), new File(folder.getRoot(), "merged.xml"));
+	}
+	
+	@Test
+	public void externalEntitiesAreNotResolved() throws IOException {
+		File secret = write("secret.txt", "top-secret");
+		File report = write("report.xml", "<?xml version=\"1.0\"?><!DOCTYPE OWASPZAPReport [<!ENTITY xxe SYSTEM \"" 
+				+ secret.toURI() + "\">]><OWASPZAPReport version=\"2.4.3\"><site name=\"&xxe;\"><alerts></alerts></site></OWASPZAPReport>");
+		File merged = new File(folder.getRoot(), "merged.xml");
+		try {
+			new ZAPreportMerger().merge(Collections.singletonList(report), merged);
+		} catch (IOException e) {
+			// Rejected
+			return;
+		}
+		assertFalse(FileUtils.readFileToString(merged, "UTF-8").contains("top-secret"));
+	}
+	
+	@Test
+	public void suppressedAlertsAreDropped() throws IOException {
+		File report = write("report.xml", "<?xml version=\"1.0\"?>"
+				+ "<OWASPZAPReport version=\"2.7.0\"><site name=\"http://shop\"><alerts>"
+				+ "<alertitem><pluginid>40012</pluginid><alert>XSS</alert><riskcode>3</riskcode><count>2</count><instances>"
+				+ "<instance><uri>http://shop/search</uri><param>q</param></instance>"
+				+ "<instance><uri>http://shop/login</uri><param>csrf</param></instance>"
+				+ "</instances></alertitem>"
+				+ "<alertitem><pluginid>10202</pluginid><alert>CSRF</alert><riskcode>1</riskcode><uri>http://shop/login</uri><param>csrf</param></alertitem>"
+				+ "</alerts></site></OWASPZAPReport>");
+		ZAPreportMerger merger = new ZAPreportMerger(new ZAPalertFilter() {
+			@Override
+			public boolean isSuppressed(String pluginId, String url, String param) {
+				return "csrf".equals(param);
+			}
+		});
+		File filtered = new File(folder.getRoot(), "filtered.xml");
+		merger.merge(Collections.singletonList(report), filtered);
+		
+		String xml = FileUtils.readFileToString(filtered, "UTF-8");
+		assertTrue(xml.contains("http://shop/search"));
+		assertFalse(xml.contains("http://shop/login"));
+		assertFalse(xml.contains("CSRF"));
+		assertTrue(xml.contains("<count>1</count>"));
+		assertEquals(3, merger.getAlertCount());
+		assertEquals(2, merger.getSuppressedCount());
+		assertEquals(0, merger.getDuplicateCount());
+		assertEquals(1, merger.getSummary().getTotalCount());
+	}
+	
+	@Test
+	public void instancesOfALargeAlertItemAreStreamed() throws IOException {
+		// ZAP writes the count after the instances
+		File report = new File(folder.getRoot(), "report.xml");
+		Writer out = new OutputStreamWriter(new FileOutputStream(report), "UTF-8");
+		try {
+			out.write("<?xml version=\"1.0\"?><OWASPZAPReport version=\"2.7.0\"><site name=\"http://shop\"><alerts>"
+					+ "<alertitem><pluginid>10202</pluginid><name>CSRF</name><riskcode>1</riskcode><instances>\n");
+			for(int i = 0; i < 200000; i++) {
+				// The identifiers in the path are normalized, the instances differ by their parameter
+				out.write("<instance><uri>http://shop/page</uri><param>" + (i % 4 == 0 ? "csrf" : "token") + i + "</param></instance>\n");
+			}
+			out.write("</instances><count>200000</count><solution>Use a token</solution></alertitem></alerts></site></OWASPZAPReport>");
+		} finally {
+			out.close();
+		}
+		ZAPreportMerger merger = new ZAPreportMerger(new ZAPalertFilter() {
+			@Override
+			public boolean isSuppressed(String pluginId, String url, String param) {
+				return param.startsWith("csrf");
+			}
+		});
+		File merged = new File(folder.getRoot(), "merged.xml");
+		// The second copy of the report only has duplicates
+		merger.merge(Arrays.asList(report, report), merged);
+		
+		assertEquals(400000, merger.getAlertCount());
+		assertEquals(100000, merger.getSuppressedCount());
+		assertEquals(150000, merger.getDuplicateCount());
+		assertEquals(150000, merger.getSummary().getTotalCount());
+		
+		String xml = FileUtils.readFileToString(merged, "UTF-8");
+		assertEquals(150000, xml.split("<instance>").length - 1);
+		assertTrue(xml.contains("</instances><count>150000</count><solution>Use a token</solution></alertitem>"));
+		assertFalse(xml.contains("<count>200000</count>"));
+		assertFalse(xml.contains("<param>csrf0<"));
+		assertTrue(xml.contains("<param>token1<"));
+		// The alert item of the second report is dropped
+		assertEquals(1, xml.split("<alertitem>").length - 1);
+	}
+}
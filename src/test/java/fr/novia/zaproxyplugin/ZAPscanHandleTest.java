@@ -0,0 +1,63 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZAPscanHandleTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void handleIsReloadedByItsOwner() throws Exception {
+		File file = new File(folder.getRoot(), "zaproxy-scan-12-a.handle");
+		new ZAPscanHandle(file, "job#12#a", "localhost", 8090).update(ZAPscanHandle.PHASE_SCAN, "3");
+		
+		ZAPscanHandle handle = ZAPscanHandle.load(file, "job#12#a");
+		assertEquals(ZAPscanHandle.PHASE_SCAN, handle.getPhase());
+		assertEquals("3", handle.getScanId());
+		assertEquals("localhost", handle.getHost());
+		assertEquals(8090, handle.getPort());
+	}
+	
+	@Test
+	public void handleOfAnotherExecutionIsIgnored() throws Exception {
+		File file = new File(folder.getRoot(), "zaproxy-scan.handle");
+		new ZAPscanHandle(file, "job#11#a", "localhost", 8090).update(ZAPscanHandle.PHASE_DONE, null);
+		
+		assertNull(ZAPscanHandle.load(file, "job#12#b"));
+		assertNull(ZAPscanHandle.load(file, null));
+		assertNull(ZAPscanHandle.load(new File(folder.getRoot(), "missing.handle"), "job#11#a"));
+	}
+}
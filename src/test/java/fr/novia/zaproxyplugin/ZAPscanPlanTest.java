@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ZAPscanPlanTest {
+	
+	@Test
+	public void stringsAboveSixtyFourKilobytesAreSerialized() throws Exception {
+		StringBuilder large = new StringBuilder();
+		while(large.length() < 100 * 1024) {
+			large.append("http://shop/produit/été/").append(large.length()).append('\n');
+		}
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		ZAPscanPlan.writeString(out, large.toString());
+		ZAPscanPlan.writeString(out, null);
+		ZAPscanPlan.writeString(out, "");
+		out.close();
+		
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(large.toString(), ZAPscanPlan.readString(in));
+		assertNull(ZAPscanPlan.readString(in));
+		assertEquals("", ZAPscanPlan.readString(in));
+		in.close();
+	}
+	
+	@Test
+	public void resultFilesHaveTheSuffixOfTheExecution() {
+		ZAPscanPlan plan = new ZAPscanPlan();
+		assertEquals(ZAPscanSummary.FILENAME, plan.getResultFilename(ZAPscanSummary.FILENAME));
+		assertEquals(ZAPscanPrioritizer.HISTORY_FILENAME, plan.getHistoryFilename());
+		
+		plan.setResultFileSuffix("12-abc");
+		assertEquals("zaproxy-partial-scan-12-abc.txt", plan.getResultFilename(ZAPscanPlan.PARTIAL_SCAN_FILENAME));
+		assertEquals("results-12-abc", plan.getResultFilename("results"));
+		// The history is kept from build to build
+		assertFalse(plan.getHistoryFilename().contains("12-abc"));
+		plan.setResultFileSuffix("13-def");
+		assertEquals(plan.getHistoryFilename(), plan.getHistoryFilename());
+	}
+	
+	@Test
+	public void reattachPlanKeepsTheHandleAndTheSuffix() throws Exception {
+		ZAPscanPlan plan = new ZAPscanPlan();
+		plan.setScanHandle("zaproxy-scan-12-abc.handle", "job/12#abc");
+		plan.setResultFileSuffix("12-abc");
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(plan.getReattachPlan());
+		out.close();
+		
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		ZAPscanPlan reattachPlan = (ZAPscanPlan) in.readObject();
+		in.close();
+		assertEquals("zaproxy-scan-12-abc.handle", reattachPlan.getScanHandleFilename());
+		assertEquals("zaproxy-summary-12-abc.bin", reattachPlan.getResultFilename(ZAPscanSummary.FILENAME));
+	}
+	
+	@Test
+	public void sampledScanIsPartialWhenTheWindowEndsDuringTheSample() throws Exception {
+		final List<String> scanned = new ArrayList<String>();
+		final long windowEnd = System.currentTimeMillis() + 200;
+		String reason = ZAPscanPlan.scanSample(Arrays.asList("http://shop/a", "http://shop/b", "http://shop/c", "http://shop/d"), 
+				windowEnd, 5, new ZAPscanPlan.SampledURLScanner() {
+			@Override
+			public boolean scan(String url, int index) throws InterruptedException {
+				scanned.add(url);
+				if(index == 0) {
+					return true;
+				}
+				// The scan of the second URL is stopped at the end of the window
+				Thread.sleep(Math.max(0, windowEnd - System.currentTimeMillis()) + 50);
+				return false;
+			}
+		});
+		
+		assertEquals(Arrays.asList("http://shop/a", "http://shop/b"), scanned);
+		assertEquals("Scan window of 5 min elapsed, the sampled scan is stopped after 2 of 4 URLs, 1 of them stopped before the end of their scan", reason);
+	}
+	
+	@Test
+	public void sampledScanIsPartialWhenAURLScanIsStopped() throws Exception {
+		String reason = ZAPscanPlan.scanSample(Arrays.asList("http://shop/a", "http://shop/b"), Long.MAX_VALUE, 0, 
+				new ZAPscanPlan.SampledURLScanner() {
+			@Override
+			public boolean scan(String url, int index) {
+				// The scan of the first URL times out
+				return index > 0;
+			}
+		});
+		assertEquals("1 of 2 sampled URLs were stopped before the end of their scan", reason);
+		
+		assertNull(ZAPscanPlan.scanSample(Arrays.asList("http://shop/a"), Long.MAX_VALUE, 0, new ZAPscanPlan.SampledURLScanner() {
+			@Override
+			public boolean scan(String url, int index) {
+				return true;
+			}
+		}));
+	}
+}
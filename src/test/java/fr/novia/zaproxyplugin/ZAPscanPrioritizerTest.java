@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZAPscanPrioritizerTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private ZAPscanPrioritizer load(String... lines) throws IOException {
+		File historyFile = folder.newFile();
+		List<String> content = new ArrayList<String>();
+		content.add("# zaproxy-plugin scan history v1");
+		content.addAll(Arrays.asList(lines));
+		FileUtils.writeLines(historyFile, "UTF-8", content);
+		return ZAPscanPrioritizer.load(historyFile);
+	}
+	
+	@Test
+	public void rulesAreRankedByRiskAndHitRate() throws IOException {
+		ZAPscanPrioritizer prioritizer = load("rule 40018 4 4 3", "rule 10020 10 0 -1");
+		List<List<String>> tiers = prioritizer.rankRules(Arrays.asList("10020", "90001", "40018"));
+		// A rule never run is between a rule which raises high alerts and a rule which never raised one
+		assertEquals(Arrays.asList(Arrays.asList("40018"), Arrays.asList("90001"), Arrays.asList("10020")), tiers);
+	}
+	
+	@Test
+	public void rulesAreSplitInTiersOfAboutTheSameSize() throws IOException {
+		List<List<String>> tiers = new ZAPscanPrioritizer().rankRules(Arrays.asList("1", "2", "3", "4", "5", "6", "7"));
+		assertEquals(3, tiers.size());
+		assertEquals(3, tiers.get(0).size());
+		assertEquals(3, tiers.get(1).size());
+		assertEquals(1, tiers.get(2).size());
+		assertEquals(1, new ZAPscanPrioritizer().rankRules(Arrays.asList("1")).size());
+		assertTrue(new ZAPscanPrioritizer().rankRules(new ArrayList<String>()).isEmpty());
+	}
+	
+	@Test
+	public void endpointsAreRankedByRiskSignals() throws IOException {
+		ZAPscanPrioritizer prioritizer = load("endpoint 2 http://shop/product/{id}");
+		prioritizer.addPassiveAlert("http://shop/contact", "email");
+		List<List<String>> batches = prioritizer.rankEndpoints(Arrays.asList(
+				"http://shop/about", "http://shop/search?q=boots", "http://shop/admin/users", "http://shop/contact", "http://shop/product/7"));
+		List<String> ranked = new ArrayList<String>();
+		for(List<String> batch : batches) {
+			ranked.addAll(batch);
+		}
+		// The previous findings first, then the same score in the order of the site tree
+		assertEquals(Arrays.asList("http://shop/product/7", "http://shop/admin/users", "http://shop/contact", 
+				"http://shop/search?q=boots", "http://shop/about"), ranked);
+		// 5 URLs in batches of 2, there is no empty batch
+		assertEquals(3, batches.size());
+		assertEquals(Arrays.asList("http://shop/product/7", "http://shop/admin/users"), batches.get(0));
+	}
+	
+	@Test
+	public void passiveAlertOnQueryParamIsNotABodyParam() {
+		ZAPscanPrioritizer prioritizer = new ZAPscanPrioritizer();
+		prioritizer.addPassiveAlert("http://shop/search?q=boots", "q");
+		assertEquals(3, prioritizer.getEndpointScore("http://shop/search?q=boots"));
+	}
+	
+	@Test
+	public void chunksRunTheBestTiersOnTheBestBatchesFirst() {
+		List<int[]> chunks = ZAPscanPrioritizer.orderChunks(3, 4);
+		int[][] expected = { { 0, 0 }, { 0, 1 }, { 1, 0 }, { 0, 2 }, { 1, 1 }, { 2, 0 }, 
+				{ 0, 3 }, { 1, 2 }, { 2, 1 }, { 1, 3 }, { 2, 2 }, { 2, 3 } };
+		assertEquals(expected.length, chunks.size());
+		for(int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i][0], chunks.get(i)[0]);
+			assertEquals(expected[i][1], chunks.get(i)[1]);
+		}
+	}
+	
+	@Test
+	public void chunksCoverEachTierAndBatchOnce() {
+		Set<String> seen = new HashSet<String>();
+		for(int[] chunk : ZAPscanPrioritizer.orderChunks(2, 5)) {
+			assertTrue(seen.add(chunk[0] + "/" + chunk[1]));
+		}
+		assertEquals(10, seen.size());
+		assertTrue(ZAPscanPrioritizer.orderChunks(0, 4).isEmpty());
+	}
+	
+	@Test
+	public void exclusionRegexKeepsOnlyTheBatch() {
+		String regex = ZAPscanPrioritizer.toExclusionRegex(Arrays.asList("http://shop/search?q=a.b", "http://shop/odd\\Epath"));
+		assertFalse("http://shop/search?q=a.b".matches(regex));
+		assertFalse("http://shop/odd\\Epath".matches(regex));
+		assertTrue("http://shop/search?q=aXb".matches(regex));
+		assertTrue("http://shop/search?q=a.b&page=2".matches(regex));
+		assertTrue("http://shop/".matches(regex));
+	}
+	
+	@Test
+	public void savedHistoryOnlyCountsTheRulesRun() throws IOException {
+		File historyFile = new File(folder.getRoot(), "history.txt");
+		ZAPscanPrioritizer prioritizer = new ZAPscanPrioritizer();
+		prioritizer.addAlert("40018", "High", "http://shop/product/7");
+		prioritizer.save(historyFile, Arrays.asList("40018", "10020"));
+		
+		ZAPscanPrioritizer loaded = ZAPscanPrioritizer.load(historyFile);
+		assertEquals(4 * 2.0 / 3.0, loaded.getRuleScore("40018"), 0.0001);
+		assertEquals(3 * 1.0 / 3.0, loaded.getRuleScore("10020"), 0.0001);
+		assertEquals(1.5, loaded.getRuleScore("90001"), 0.0001);
+		assertEquals(1 + 4, loaded.getEndpointScore("http://shop/product/8"));
+	}
+}
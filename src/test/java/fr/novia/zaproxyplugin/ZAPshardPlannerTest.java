@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ZAPshardPlannerTest {
+	
+	private static final String TARGET = "http://shop";
+	
+	@Test
+	public void costOfAUrlIsItsPageAndItsParameters() {
+		assertEquals(1, ZAPshardPlanner.estimateCost("http://shop/cart"));
+		assertEquals(1, ZAPshardPlanner.estimateCost("http://shop/cart?"));
+		assertEquals(2, ZAPshardPlanner.estimateCost("http://shop/search?q=1"));
+		assertEquals(4, ZAPshardPlanner.estimateCost("http://shop/search?q=1&page=2&sort=asc"));
+	}
+	
+	@Test
+	public void prefixIsRelativeToTheTarget() {
+		ZAPshardPlanner planner = new ZAPshardPlanner(" " + TARGET + " ");
+		assertEquals("/admin", planner.getPrefix("http://shop/admin/users/42?tab=1", 1));
+		assertEquals("/admin/users", planner.getPrefix("http://shop/admin/users/42?tab=1", 2));
+		assertEquals("/admin/users/42", planner.getPrefix("http://shop/admin/users/42", 5));
+		assertEquals("", planner.getPrefix("http://shop/?q=/admin", 1));
+	}
+	
+	@Test
+	public void everyUrlIsInOneShard() {
+		List<String> urls = new ArrayList<String>();
+		for(int i = 0; i < 50; i++) {
+			urls.add("http://shop/product/" + i + "?color=red&size=" + i);
+			urls.add("http://shop/blog/post" + i);
+		}
+		urls.add("http://shop/");
+		List<List<String>> shards = new ZAPshardPlanner(TARGET).split(urls, 4);
+		
+		assertEquals(4, shards.size());
+		Set<String> planned = new HashSet<String>();
+		int count = 0;
+		for(List<String> shard : shards) {
+			planned.addAll(shard);
+			count += shard.size();
+		}
+		assertEquals(urls.size(), count);
+		assertEquals(new HashSet<String>(urls), planned);
+	}
+	
+	@Test
+	public void shardsHaveAboutTheSameCost() {
+		List<String> urls = new ArrayList<String>();
+		for(int i = 0; i < 120; i++) {
+			urls.add("http://shop/product/" + i + "?color=red");
+		}
+		for(int i = 0; i < 40; i++) {
+			urls.add("http://shop/account/page" + i);
+		}
+		List<List<String>> shards = new ZAPshardPlanner(TARGET).split(urls, 3);
+		
+		assertEquals(3, shards.size());
+		// 280 in total, about 93 by shard
+		for(List<String> shard : shards) {
+			long cost = 0;
+			for(String url : shard) {
+				cost += ZAPshardPlanner.estimateCost(url);
+			}
+			assertTrue("shard cost " + cost, cost >= 80 && cost <= 100);
+		}
+	}
+	
+	@Test
+	public void pagesOfAPrefixStayTogether() {
+		List<String> urls = Arrays.asList("http://shop/admin/users", "http://shop/admin/roles", 
+				"http://shop/blog/a", "http://shop/blog/b", "http://shop/cart", "http://shop/search?q=1");
+		List<List<String>> shards = new ZAPshardPlanner(TARGET).split(urls, 2);
+		
+		assertEquals(2, shards.size());
+		for(List<String> shard : shards) {
+			assertEquals(shard.contains("http://shop/admin/users"), shard.contains("http://shop/admin/roles"));
+			assertEquals(shard.contains("http://shop/blog/a"), shard.contains("http://shop/blog/b"));
+		}
+	}
+	
+	@Test
+	public void noEmptyShard() {
+		List<List<String>> shards = new ZAPshardPlanner(TARGET).split(Arrays.asList("http://shop/a", "http://shop/b"), 5);
+		assertEquals(2, shards.size());
+		assertTrue(new ZAPshardPlanner(TARGET).split(new ArrayList<String>(), 3).isEmpty());
+	}
+}
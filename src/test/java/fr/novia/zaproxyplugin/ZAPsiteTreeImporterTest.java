@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.novia.zaproxyplugin.ZAPsiteTreeSeeder.SeedRequest;
+
+public class ZAPsiteTreeImporterTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private final ZAPsiteTreeImporter importer = new ZAPsiteTreeImporter("http://shop:8080/app");
+	
+	private List<SeedRequest> read(String name, String content) throws IOException {
+		File file = folder.newFile(name);
+		FileUtils.writeStringToFile(file, content, "UTF-8");
+		return importer.read(file);
+	}
+	
+	@Test
+	public void urlListResolvesRelativeUrls() throws Exception {
+		List<SeedRequest> requests = read("urls.txt", "# comment\n\n/login\nPOST http://other/api\ncart\n");
+		assertEquals(3, requests.size());
+		assertEquals("http://shop:8080/login", requests.get(0).getUrl());
+		assertEquals("POST", requests.get(1).getMethod());
+		assertEquals("http://shop:8080/app/cart", requests.get(2).getUrl());
+	}
+	
+	@Test
+	public void yamlSpecificationIsRejected() throws Exception {
+		try {
+			read("openapi.yaml", "openapi: 3.0.0\ninfo:\n  title: Shop\npaths:\n  /pets:\n    get: {}\n");
+			fail("YAML must be rejected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("YAML"));
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void urlListRejectsLinesWhichAreNotUrls() throws Exception {
+		read("config.yml", "title: Shop\npaths:\n");
+	}
+	
+	@Test
+	public void openApiResolvesReferencesAndBuildsBodiesFromSchemas() throws Exception {
+		List<SeedRequest> requests = read("openapi.json", "{\"openapi\":\"3.0.0\",\"servers\":[{\"url\":\"/api\"}],"
+				+ "\"paths\":{\"/pets/{petId}\":{\"put\":{"
+				+ "\"parameters\":[{\"$ref\":\"#/components/parameters/PetId\"}],"
+				+ "\"requestBody\":{\"$ref\":\"#/components/requestBodies/Pet\"}}}},"
+				+ "\"components\":{"
+				+ "\"parameters\":{\"PetId\":{\"name\":\"petId\",\"in\":\"path\",\"schema\":{\"type\":\"integer\"}}},"
+				+ "\"requestBodies\":{\"Pet\":{\"content\":{\"application/json\":{\"schema\":{\"$ref\":\"#/components/schemas/Pet\"}}}}},"
+				+ "\"schemas\":{\"Pet\":{\"type\":\"object\",\"properties\":{"
+				+ "\"name\":{\"type\":\"string\",\"example\":\"Rex\"},"
+				+ "\"tags\":{\"type\":\"array\",\"items\":{\"type\":\"string\",\"enum\":[\"dog\",\"cat\"]}},"
+				+ "\"parent\":{\"$ref\":\"#/components/schemas/Pet\"}}}}}}");
+		assertEquals(1, requests.size());
+		SeedRequest request = requests.get(0);
+		assertEquals("PUT", request.getMethod());
+		assertEquals("http://shop:8080/api/pets/1", request.getUrl());
+		assertEquals("application/json", request.getHeaders().get("Content-Type"));
+		assertTrue(request.getBody(), request.getBody().startsWith("{\"name\":\"Rex\",\"tags\":[\"dog\"],\"parent\":{\"name\":\"Rex\""));
+	}
+	
+	@Test
+	public void openApiUsesTheExampleOfTheMediaType() throws Exception {
+		List<SeedRequest> requests = read("openapi.json", "{\"openapi\":\"3.0.0\",\"paths\":{\"/login\":{\"post\":{"
+				+ "\"requestBody\":{\"content\":{\"application/x-www-form-urlencoded\":{\"schema\":{\"type\":\"object\","
+				+ "\"properties\":{\"user\":{\"type\":\"string\"},\"remember\":{\"type\":\"boolean\"}}}}}}}}}}");
+		assertEquals("user=1&remember=true", requests.get(0).getBody());
+		
+		requests = read("openapi2.json", "{\"openapi\":\"3.0.0\",\"paths\":{\"/orders\":{\"post\":{"
+				+ "\"requestBody\":{\"content\":{\"application/json\":{\"example\":{\"id\":7}}}}}}}}");
+		assertEquals("{\"id\":7}", requests.get(0).getBody());
+	}
+	
+	@Test
+	public void swaggerBodyParameterUsesTheDefinitions() throws Exception {
+		List<SeedRequest> requests = read("swagger.json", "{\"swagger\":\"2.0\",\"basePath\":\"/v2\",\"consumes\":[\"application/json\"],"
+				+ "\"paths\":{\"/users\":{\"post\":{\"parameters\":[{\"in\":\"body\",\"name\":\"user\","
+				+ "\"schema\":{\"$ref\":\"#/definitions/User\"}}]}}},"
+				+ "\"definitions\":{\"User\":{\"properties\":{\"email\":{\"type\":\"string\",\"format\":\"email\"}}}}}");
+		assertEquals("http://shop:8080/v2/users", requests.get(0).getUrl());
+		assertEquals("{\"email\":\"zap@example.com\"}", requests.get(0).getBody());
+	}
+	
+	@Test
+	public void unresolvedReferenceGivesAnEmptyBody() throws Exception {
+		List<SeedRequest> requests = read("openapi.json", "{\"openapi\":\"3.0.0\",\"paths\":{\"/a\":{\"post\":{"
+				+ "\"requestBody\":{\"content\":{\"application/json\":{\"schema\":{\"$ref\":\"other.json#/Pet\"}}}}}}}}");
+		assertEquals("{}", requests.get(0).getBody());
+	}
+}
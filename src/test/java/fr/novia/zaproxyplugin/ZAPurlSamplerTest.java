@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fr.novia.zaproxyplugin;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ZAPurlSamplerTest {
+	
+	@Test
+	public void templateReplacesIdentifierSegments() {
+		assertEquals("http://shop/product/{id}", ZAPurlSampler.toTemplate("http://shop/product/1234"));
+		assertEquals("http://shop/product/{id}.html", ZAPurlSampler.toTemplate("http://shop/product/98.html"));
+		assertEquals("http://shop/order/{id}", ZAPurlSampler.toTemplate("http://shop/order/3f2504e0-4f89-11d3-9a0c-0305e82c3301"));
+		assertEquals("http://shop/item/{id}", ZAPurlSampler.toTemplate("http://shop/item/deadbeef42"));
+		assertEquals("http://shop/item/{id}", ZAPurlSampler.toTemplate("http://shop/item/sku12345"));
+		assertEquals("http://shop/category/shoes", ZAPurlSampler.toTemplate("http://shop/category/shoes"));
+	}
+	
+	@Test
+	public void templateKeepsSortedQueryNamesOnly() {
+		assertEquals("http://shop/search?color=&q=", ZAPurlSampler.toTemplate("http://shop/search?q=boots&color=red"));
+		assertEquals("http://shop/search?color=&q=", ZAPurlSampler.toTemplate("http://shop/search?color=blue&q=hat#top"));
+	}
+	
+	@Test
+	public void templateLowerCasesSchemeAndHostOnly() {
+		assertEquals("https://shop.example.com/Cart", ZAPurlSampler.toTemplate("HTTPS://Shop.Example.COM/Cart"));
+		assertEquals("http://shop", ZAPurlSampler.toTemplate("http://SHOP"));
+	}
+	
+	@Test
+	public void clusterGroupsUrlsByTemplateInOrder() {
+		Map<String, List<String>> clusters = new ZAPurlSampler(1).cluster(Arrays.asList(
+				"http://shop/product/1", "http://shop/about", "http://shop/product/2"));
+		assertEquals(Arrays.asList("http://shop/product/{id}", "http://shop/about"), Arrays.asList(clusters.keySet().toArray()));
+		assertEquals(Arrays.asList("http://shop/product/1", "http://shop/product/2"), clusters.get("http://shop/product/{id}"));
+	}
+	
+	@Test
+	public void sampleSpreadsOverEachCluster() {
+		ZAPurlSampler sampler = new ZAPurlSampler(2);
+		List<String> sample = sampler.sample(sampler.cluster(Arrays.asList(
+				"http://shop/p/1", "http://shop/p/2", "http://shop/p/3", "http://shop/p/4", "http://shop/about")));
+		assertEquals(Arrays.asList("http://shop/p/1", "http://shop/p/3", "http://shop/about"), sample);
+	}
+	
+	@Test
+	public void sampleSizeIsAtLeastOne() {
+		assertEquals(1, new ZAPurlSampler(0).getSampleSizePerCluster());
+	}
+	
+	@Test
+	public void fingerprintsUseTheSameNormalization() {
+		assertEquals(ZAPurlSampler.toTemplate("http://Shop/p/sku12345?b=1&a=2"), ZAPalertFingerprints.normalizeUrl("http://Shop/p/sku12345?b=1&a=2"));
+		assertEquals(ZAPalertFingerprints.fingerprint("40012", "http://shop/p/1?q=a", "q"), 
+				ZAPalertFingerprints.fingerprint("40012", "http://SHOP/p/2?q=b", "q"));
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin.report;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Alerts given by the tests instead of being read from ZAP.
+ * 
+ */
+class ZAPfixedAlertReader extends ZAPalertReader {
+	
+	private final List<Map<String, String>> alerts = new ArrayList<Map<String, String>>();
+	
+	private int index = -1;
+	
+	ZAPfixedAlertReader() {
+		super(null, null);
+	}
+	
+	/**
+	 * Add an alert made of attribute names and values, e.g. {@code add(RISK, "High", URL, "http://host/")}.
+	 */
+	ZAPfixedAlertReader add(String... attributes) {
+		Map<String, String> alert = new HashMap<String, String>();
+		for(int i = 0; i + 1 < attributes.length; i += 2) {
+			alert.put(attributes[i], attributes[i + 1]);
+		}
+		alerts.add(alert);
+		return this;
+	}
+	
+	@Override
+	public boolean next() {
+		index++;
+		return index < alerts.size();
+	}
+	
+	@Override
+	public String get(String attribute) {
+		String value = alerts.get(index).get(attribute);
+		return value == null ? "" : value;
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin.report;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class ZAPjsonWriterTest {
+	
+	@Test
+	public void valuesAreSeparatedByCommas() throws IOException {
+		StringWriter out = new StringWriter();
+		ZAPjsonWriter json = new ZAPjsonWriter(out);
+		json.beginObject();
+		json.property("a", "1");
+		json.name("b").beginArray().value(2).value("3").beginObject().endObject().beginArray().endArray().endArray();
+		json.name("c").beginObject().property("d", null).endObject();
+		json.endObject();
+		json.flush();
+		assertEquals("{\"a\":\"1\",\"b\":[2,\"3\",{},[]],\"c\":{\"d\":null}}", out.toString());
+	}
+	
+	@Test
+	public void stringsAreEscaped() throws IOException {
+		StringWriter out = new StringWriter();
+		new ZAPjsonWriter(out).beginArray().value("\"q\" \\ \n\r\t\u0001 é</script>").endArray();
+		assertEquals("[\"\\\"q\\\" \\\\ \\n\\r\\t\\u0001 é</script>\"]", out.toString());
+	}
+	
+	@Test
+	public void namesAreEscaped() throws IOException {
+		StringWriter out = new StringWriter();
+		new ZAPjsonWriter(out).beginObject().property("a\"b", "").endObject();
+		assertEquals("{\"a\\\"b\":\"\"}", out.toString());
+	}
+}
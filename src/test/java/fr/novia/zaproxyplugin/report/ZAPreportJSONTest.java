@@ -0,0 +1,69 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin.report;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.junit.Test;
+
+public class ZAPreportJSONTest {
+	
+	@Test
+	public void eachAlertIsAnObjectWithAllItsAttributes() throws Exception {
+		ZAPfixedAlertReader alerts = new ZAPfixedAlertReader()
+			.add(ZAPalertReader.PLUGIN_ID, "40012", ZAPalertReader.ALERT, "XSS \"reflected\"", ZAPalertReader.RISK, "High", 
+					ZAPalertReader.URL, "http://host/?q=<script>", ZAPalertReader.EVIDENCE, "line\nbreak")
+			.add(ZAPalertReader.PLUGIN_ID, "10021", ZAPalertReader.RISK, "Low");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ZAPreportJSON().writeReport(alerts, out);
+		
+		JSONObject report = JSONObject.fromObject(out.toString("UTF-8"));
+		assertTrue(report.has("generated"));
+		JSONArray array = report.getJSONArray("alerts");
+		assertEquals(2, array.size());
+		JSONObject first = array.getJSONObject(0);
+		assertEquals("40012", first.getString(ZAPalertReader.PLUGIN_ID));
+		assertEquals("XSS \"reflected\"", first.getString(ZAPalertReader.ALERT));
+		assertEquals("http://host/?q=<script>", first.getString(ZAPalertReader.URL));
+		assertEquals("line\nbreak", first.getString(ZAPalertReader.EVIDENCE));
+		// Missing attributes are empty
+		assertEquals("", array.getJSONObject(1).getString(ZAPalertReader.ALERT));
+		assertEquals(13, array.getJSONObject(1).size());
+	}
+	
+	@Test
+	public void noAlert() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ZAPreportJSON().writeReport(new ZAPfixedAlertReader(), out);
+		assertTrue(JSONObject.fromObject(out.toString("UTF-8")).getJSONArray("alerts").isEmpty());
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin.report;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+public class ZAPreportJUnitTest {
+	
+	@Test
+	public void alertsAreTestCasesFailingUnlessInformational() throws Exception {
+		ZAPfixedAlertReader alerts = new ZAPfixedAlertReader()
+			.add(ZAPalertReader.PLUGIN_ID, "40012", ZAPalertReader.ALERT, "XSS", ZAPalertReader.RISK, "High", 
+					ZAPalertReader.URL, "http://host/?a=1&b=<2>", ZAPalertReader.PARAM, "b", ZAPalertReader.DESCRIPTION, "desc")
+			.add(ZAPalertReader.PLUGIN_ID, "10096", ZAPalertReader.ALERT, "Timestamp", ZAPalertReader.RISK, "Informational", 
+					ZAPalertReader.URL, "http://host/");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ZAPreportJUnit().writeReport(alerts, out);
+		
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(out.toByteArray()));
+		Element suite = document.getDocumentElement();
+		assertEquals("testsuite", suite.getTagName());
+		assertEquals("ZAProxy", suite.getAttribute("name"));
+		NodeList testCases = suite.getElementsByTagName("testcase");
+		assertEquals(2, testCases.getLength());
+		
+		Element failed = (Element) testCases.item(0);
+		assertEquals("ZAProxy.40012", failed.getAttribute("classname"));
+		assertEquals("XSS [http://host/?a=1&b=<2>]", failed.getAttribute("name"));
+		Element failure = (Element) failed.getElementsByTagName("failure").item(0);
+		assertEquals("High", failure.getAttribute("type"));
+		assertEquals("XSS", failure.getAttribute("message"));
+		assertTrue(failure.getTextContent().startsWith("Param: b\n"));
+		assertTrue(failure.getTextContent().endsWith("desc\n\n"));
+		
+		assertEquals(0, ((Element) testCases.item(1)).getElementsByTagName("failure").getLength());
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 ludovicRoucoux
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fr.novia.zaproxyplugin.report;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.junit.Test;
+
+public class ZAPreportSARIFTest {
+	
+	@Test
+	public void alertsAreResultsAndTheirPluginsAreRules() throws Exception {
+		ZAPfixedAlertReader alerts = new ZAPfixedAlertReader()
+			.add(ZAPalertReader.PLUGIN_ID, "40012", ZAPalertReader.ALERT, "XSS", ZAPalertReader.RISK, "High", 
+					ZAPalertReader.URL, "http://host/a", ZAPalertReader.DESCRIPTION, "desc", ZAPalertReader.SOLUTION, "fix", 
+					ZAPalertReader.PARAM, "q", ZAPalertReader.CWE_ID, "79")
+			.add(ZAPalertReader.PLUGIN_ID, "40012", ZAPalertReader.ALERT, "XSS", ZAPalertReader.RISK, "Medium", 
+					ZAPalertReader.URL, "http://host/b")
+			.add(ZAPalertReader.PLUGIN_ID, "10021", ZAPalertReader.ALERT, "Headers", ZAPalertReader.RISK, "Low")
+			.add(ZAPalertReader.PLUGIN_ID, "10096", ZAPalertReader.ALERT, "Timestamp", ZAPalertReader.RISK, "Informational");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ZAPreportSARIF().writeReport(alerts, out);
+		
+		JSONObject report = JSONObject.fromObject(out.toString("UTF-8"));
+		assertEquals("2.1.0", report.getString("version"));
+		JSONObject run = report.getJSONArray("runs").getJSONObject(0);
+		
+		JSONArray results = run.getJSONArray("results");
+		assertEquals(4, results.size());
+		JSONObject first = results.getJSONObject(0);
+		assertEquals("40012", first.getString("ruleId"));
+		assertEquals("error", first.getString("level"));
+		assertEquals("XSS", first.getJSONObject("message").getString("text"));
+		assertEquals("http://host/a", first.getJSONArray("locations").getJSONObject(0)
+				.getJSONObject("physicalLocation").getJSONObject("artifactLocation").getString("uri"));
+		assertEquals("q", first.getJSONObject("properties").getString("param"));
+		assertEquals("79", first.getJSONObject("properties").getString("cweid"));
+		assertEquals("warning", results.getJSONObject(1).getString("level"));
+		assertEquals("note", results.getJSONObject(2).getString("level"));
+		assertEquals("none", results.getJSONObject(3).getString("level"));
+		
+		// One rule by plugin, described by its first alert
+		JSONArray rules = run.getJSONObject("tool").getJSONObject("driver").getJSONArray("rules");
+		assertEquals(3, rules.size());
+		JSONObject rule = rules.getJSONObject(0);
+		assertEquals("40012", rule.getString("id"));
+		assertEquals("XSS", rule.getString("name"));
+		assertEquals("desc", rule.getJSONObject("fullDescription").getString("text"));
+		assertEquals("fix", rule.getJSONObject("help").getString("text"));
+		assertEquals("10021", rules.getJSONObject(1).getString("id"));
+	}
+}